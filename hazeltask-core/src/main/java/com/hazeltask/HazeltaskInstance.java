@@ -3,6 +3,9 @@ package com.hazeltask;
 import java.io.Serializable;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -11,6 +14,7 @@ import com.hazelcast.core.LifecycleEvent;
 import com.hazelcast.core.LifecycleEvent.LifecycleState;
 import com.hazelcast.core.LifecycleListener;
 import com.hazelcast.core.LifecycleService;
+import com.hazelcast.core.Member;
 import com.hazelcast.core.MemberLeftException;
 import com.hazelcast.partition.MigrationEvent;
 import com.hazelcast.partition.Partition;
@@ -19,6 +23,7 @@ import com.hazeltask.config.ConfigValidator;
 import com.hazeltask.config.ExecutorConfig;
 import com.hazeltask.config.HazeltaskConfig;
 import com.hazeltask.core.concurrent.BackoffTimer;
+import com.hazeltask.core.concurrent.collections.router.LoadAwareRouter;
 import com.hazeltask.executor.DistributedExecutorService;
 import com.hazeltask.executor.DistributedExecutorServiceImpl;
 import com.hazeltask.executor.DistributedFutureTracker;
@@ -26,6 +31,10 @@ import com.hazeltask.executor.HazelcastExecutorTopologyService;
 import com.hazeltask.executor.IExecutorTopologyService;
 import com.hazeltask.executor.local.LocalTaskExecutorService;
 import com.hazeltask.executor.metrics.ExecutorMetrics;
+import com.hazeltask.executor.task.GroupEvictionTimerTask;
+import com.hazeltask.executor.task.IdleTaskStealTimerTask;
+import com.hazeltask.executor.task.IdleTaskStealer;
+import com.hazeltask.executor.task.MemberLoadRefreshTimerTask;
 import com.hazeltask.executor.task.TaskRebalanceTimerTask;
 import com.hazeltask.executor.task.TaskRecoveryTimerTask;
 import com.hazeltask.hazelcast.HazelcastPartitionManager;
@@ -51,6 +60,7 @@ public class HazeltaskInstance<GROUP extends Serializable> {
     private final IExecutorTopologyService<GROUP> executorTopologyService;
     private final LocalTaskExecutorService<GROUP> localExeutorService;
     private final ExecutorMetrics executorMetrics;
+    private final ThreadPoolExecutor asyncDispatcher;
     
     /**
      * @param hazeltaskConfig
@@ -70,7 +80,7 @@ public class HazeltaskInstance<GROUP extends Serializable> {
         PartitionService partitionService = hazelcast.getPartitionService();
         
         this.topology = new HazeltaskTopology<GROUP>(topologyName, hazelcast.getCluster().getLocalMember());
-        executorTopologyService = new HazelcastExecutorTopologyService<GROUP>(hazeltaskConfig, topology);
+        executorTopologyService = new HazelcastExecutorTopologyService<GROUP>(hazeltaskConfig, topology, executorMetrics);
         clusterService = new HazeltaskStatisticsService<GROUP>(executorTopologyService);
         
         if(!executorConfig.isDisableWorkers())
@@ -112,7 +122,13 @@ public class HazeltaskInstance<GROUP extends Serializable> {
             futureTracker = null;
         }
         
-        executor = new DistributedExecutorServiceImpl<GROUP>(topology, executorTopologyService, executorConfig, futureTracker, localExeutorService, executorMetrics);
+        //sends the tasks given to executeAsync
+        asyncDispatcher = new ThreadPoolExecutor(executorConfig.getTaskDistributorThreads(), executorConfig.getTaskDistributorThreads(),
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                hazeltaskConfig.getThreadFactory().named("async-submit"));
+        asyncDispatcher.allowCoreThreadTimeOut(true);
+        executor = new DistributedExecutorServiceImpl<GROUP>(topology, executorTopologyService, executorConfig, futureTracker, localExeutorService, asyncDispatcher, executorMetrics);
         
     }
     
@@ -143,13 +159,38 @@ public class HazeltaskInstance<GROUP extends Serializable> {
         }
     }
     
+    @SuppressWarnings("unchecked")
     private void setupDistributedExecutor(final HazelcastInstance hazelcast, final HazeltaskTopology<GROUP> topology, final BackoffTimer hazeltaskTimer, final ExecutorConfig<GROUP> executorConfig, DistributedExecutorServiceImpl<GROUP> svc, ITopologyService<GROUP> topologySvc, IExecutorTopologyService<GROUP> executorTopologyService, LocalTaskExecutorService<GROUP> localExeutorService, ExecutorMetrics executorMetrics) {
         final TaskRecoveryTimerTask<GROUP> bundleTask = new TaskRecoveryTimerTask<GROUP>(topology, svc, executorTopologyService, executorMetrics);
         final TaskRebalanceTimerTask<GROUP> rebalanceTask;
         if(!svc.getExecutorConfig().isDisableWorkers())
-            rebalanceTask = new TaskRebalanceTimerTask<GROUP>(topology, localExeutorService, executorTopologyService, executorMetrics);
+            rebalanceTask = new TaskRebalanceTimerTask<GROUP>(topology, localExeutorService, executorTopologyService, executorConfig.getLoadBalancingConfig().getTaskStealPolicy(), executorMetrics);
         else
             rebalanceTask = null;
+        final GroupEvictionTimerTask<GROUP> groupEvictionTask;
+        if(!executorConfig.isDisableWorkers() && executorConfig.getGroupIdleEvictionTime() > 0)
+            groupEvictionTask = new GroupEvictionTimerTask<GROUP>(localExeutorService);
+        else
+            groupEvictionTask = null;
+        final MemberLoadRefreshTimerTask<GROUP> memberLoadTask;
+        if(svc.getMemberRouter() instanceof LoadAwareRouter)
+            memberLoadTask = new MemberLoadRefreshTimerTask<GROUP>(executorTopologyService, (LoadAwareRouter<Member>) svc.getMemberRouter());
+        else
+            memberLoadTask = null;
+        final ThreadPoolExecutor idleStealExecutor;
+        final IdleTaskStealTimerTask<GROUP> idleStealTask;
+        if(!executorConfig.isDisableWorkers() && executorConfig.getLoadBalancingConfig().isIdleTaskStealing()) {
+            idleStealExecutor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    hazeltaskConfig.getThreadFactory().named("stealer"));
+            idleStealExecutor.allowCoreThreadTimeOut(true);
+            IdleTaskStealer<GROUP> idleStealer = new IdleTaskStealer<GROUP>(topology, localExeutorService, executorTopologyService, idleStealExecutor, executorConfig.getLoadBalancingConfig(), executorMetrics);
+            localExeutorService.addListener(idleStealer);
+            idleStealTask = new IdleTaskStealTimerTask<GROUP>(idleStealer);
+        } else {
+            idleStealExecutor = null;
+            idleStealTask = null;
+        }
         final IsMemberReadyTimerTask<GROUP> getReadyMembersTask = new IsMemberReadyTimerTask<GROUP>(topologySvc, topology);
         
         //execute the getReadyMembers task immediately
@@ -173,6 +214,21 @@ public class HazeltaskInstance<GROUP extends Serializable> {
                 if(rebalanceTask != null)
                     hazeltaskTimer.schedule(rebalanceTask, 1000, hazeltaskConfig.getExecutorConfig().getLoadBalancingConfig().getRebalanceTaskPeriod());
                 
+                if(groupEvictionTask != null) {
+                    long period = Math.max(1000, executorConfig.getGroupIdleEvictionTime() / 2);
+                    hazeltaskTimer.schedule(groupEvictionTask, period, period);
+                }
+                
+                if(memberLoadTask != null) {
+                    long period = executorConfig.getLoadBalancingConfig().getMemberLoadRefreshPeriod();
+                    hazeltaskTimer.schedule(memberLoadTask, period, period);
+                }
+                
+                if(idleStealTask != null) {
+                    long period = Math.max(1000, executorConfig.getLoadBalancingConfig().getIdleStealMinInterval());
+                    hazeltaskTimer.schedule(idleStealTask, period, period);
+                }
+                
                 if(!executorConfig.isDisableWorkers()) {
                    topology.iAmReady();
                    log.info(topology.getName()+" Hazeltask instance is ready to recieve tasks");                 
@@ -184,6 +240,10 @@ public class HazeltaskInstance<GROUP extends Serializable> {
                 log.info(topology.getName()+" Hazeltask instance is unscheduling timer tasks and stopping the timer thread");              
                 topology.shutdown();
                 hazeltaskTimer.stop();
+                if(idleStealExecutor != null)
+                    idleStealExecutor.shutdown();
+                //sends already handed to it still go out
+                asyncDispatcher.shutdown();
             }      
         });
     }
@@ -6,6 +6,7 @@ import java.util.Map;
 
 import com.google.common.base.Predicate;
 import com.hazeltask.executor.IExecutorTopologyService;
+import com.hazeltask.executor.MemberLoad;
 import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
 
 public class HazeltaskStatisticsService<GROUP extends Serializable> implements ClusterService<GROUP> {
@@ -30,6 +31,11 @@ public class HazeltaskStatisticsService<GROUP extends Serializable> implements C
         return executorTopologyService.getOldestTaskTimestamps();
     }
 
+    @Override
+    public Collection<MemberResponse<MemberLoad>> getMemberLoads() {
+        return executorTopologyService.getMemberLoads();
+    }
+
     @Override
     public Collection<MemberResponse<Integer>> getThreadPoolSizes() {
         return executorTopologyService.getThreadPoolSizes();
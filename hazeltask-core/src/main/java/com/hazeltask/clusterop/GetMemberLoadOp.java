@@ -0,0 +1,38 @@
+package com.hazeltask.clusterop;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+import com.hazeltask.executor.MemberLoad;
+import com.hazeltask.executor.local.LocalTaskExecutorService;
+
+public class GetMemberLoadOp<GROUP extends Serializable> extends AbstractClusterOp<MemberLoad, GROUP> {
+    private static final long serialVersionUID = 1L;
+    
+    //hazelcast dataserializable requires a default constructor
+    private GetMemberLoadOp(){super(null);}
+    
+    public GetMemberLoadOp(String topology) {
+        super(topology);
+    }
+
+    @Override
+    public MemberLoad call() throws Exception {
+        LocalTaskExecutorService<GROUP> localSvc = getLocalTaskExecutorService();
+        return new MemberLoad(localSvc.getQueueSize(), 
+                              getDistributedExecutorService().getExecutorConfig().getThreadCount(), 
+                              localSvc.getExecutionRate());
+    }
+
+    @Override
+    protected void readChildData(DataInput in) throws IOException {
+        
+    }
+
+    @Override
+    protected void writChildData(DataOutput out) throws IOException {
+        
+    }
+}
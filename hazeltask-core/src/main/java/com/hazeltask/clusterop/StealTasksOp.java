@@ -5,12 +5,14 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.UUID;
 
 import com.hazeltask.executor.local.LocalTaskExecutorService;
 import com.hazeltask.executor.task.HazeltaskTask;
 
 /**
- * This cluster operation allows a member to take tasks from another member
+ * This cluster operation allows a member to take tasks from another member.  Chunked steals 
+ * send one of these per chunk with the same stealId, see LocalTaskExecutorService.stealTasks
  * @author jclawson
  *
  */
@@ -18,28 +20,91 @@ public class StealTasksOp<GROUP extends Serializable> extends AbstractClusterOp<
     private static final long serialVersionUID = 1L;
     
     private long numberOfTasks;
+    private long keepAtLeast;
+    private UUID stealId;
+    private int lastChunk;
+    private int acceptedFromLastChunk;
     
     //hazelcast dataserializable requires a default constructor
     private StealTasksOp(){super(null);}
     
     public StealTasksOp(String topology, long numberOfTasks) {
+        this(topology, numberOfTasks, 0);
+    }
+    
+    /**
+     * @param topology
+     * @param numberOfTasks
+     * @param keepAtLeast - the member keeps at least this many tasks queued
+     */
+    public StealTasksOp(String topology, long numberOfTasks, long keepAtLeast) {
         super(topology);
         this.numberOfTasks = numberOfTasks;
+        this.keepAtLeast = keepAtLeast;
+    }
+    
+    /**
+     * Ask for the next chunk of a steal
+     * 
+     * @param topology
+     * @param stealId - the same for every chunk of a steal
+     * @param lastChunk - the number of the last chunk we got, 0 if none
+     * @param acceptedFromLastChunk - how many tasks from the start of the last chunk we kept
+     * @param numberOfTasks - the most the next chunk may have, 0 to end the steal
+     * @param keepAtLeast - the member keeps at least this many tasks queued
+     */
+    public StealTasksOp(String topology, UUID stealId, int lastChunk, int acceptedFromLastChunk, long numberOfTasks, long keepAtLeast) {
+        this(topology, numberOfTasks, keepAtLeast);
+        this.stealId = stealId;
+        this.lastChunk = lastChunk;
+        this.acceptedFromLastChunk = acceptedFromLastChunk;
+    }
+    
+    public UUID getStealId() {
+        return stealId;
+    }
+    
+    public int getLastChunk() {
+        return lastChunk;
+    }
+    
+    public int getAcceptedFromLastChunk() {
+        return acceptedFromLastChunk;
+    }
+    
+    public long getNumberOfTasks() {
+        return numberOfTasks;
     }
 
     @Override
     public Collection<HazeltaskTask<GROUP>> call() throws Exception {
         LocalTaskExecutorService<GROUP> localSvc = getLocalTaskExecutorService();
-        return localSvc.stealTasks(numberOfTasks);
+        if(stealId != null)
+            return localSvc.stealTasks(stealId, lastChunk, acceptedFromLastChunk, numberOfTasks, keepAtLeast);
+        return localSvc.stealTasks(numberOfTasks, keepAtLeast);
     }
 
     @Override
     protected void readChildData(DataInput in) throws IOException {
         this.numberOfTasks = in.readLong();
+        this.keepAtLeast = in.readLong();
+        if(in.readBoolean()) {
+            this.stealId = new UUID(in.readLong(), in.readLong());
+            this.lastChunk = in.readInt();
+            this.acceptedFromLastChunk = in.readInt();
+        }
     }
 
     @Override
     protected void writChildData(DataOutput out) throws IOException {
         out.writeLong(numberOfTasks);
+        out.writeLong(keepAtLeast);
+        out.writeBoolean(stealId != null);
+        if(stealId != null) {
+            out.writeLong(stealId.getMostSignificantBits());
+            out.writeLong(stealId.getLeastSignificantBits());
+            out.writeInt(lastChunk);
+            out.writeInt(acceptedFromLastChunk);
+        }
     }    
 }
@@ -5,7 +5,8 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.io.Serializable;
 
-import com.hazelcast.nio.SerializationHelper;
+import com.hazelcast.nio.Data;
+import com.hazelcast.nio.Serializer;
 import com.hazeltask.executor.local.LocalTaskExecutorService;
 import com.hazeltask.executor.task.HazeltaskTask;
 /**
@@ -25,22 +26,34 @@ public class SubmitTaskOp<GROUP extends Serializable> extends AbstractClusterOp<
         this.task = task;
     }
     
+    HazeltaskTask<GROUP> getTask() {
+        return task;
+    }
+    
+    /**
+     * @return false if the member's task queue is full
+     */
     public Boolean call() throws Exception {
         LocalTaskExecutorService<GROUP> localSvc = getLocalTaskExecutorService();
-        
-        localSvc.execute(task);
-        //TODO: should this ever return false?
-        return true;
+        return localSvc.execute(task);
     }
 
+    /**
+     * The task is written as a length prefixed Data so we know how big it is when
+     * we enforce the member's max queued bytes.  It gets its own serializer because
+     * hazelcast's thread local one is busy writing this op
+     */
     @SuppressWarnings("unchecked")
     @Override
     protected void readChildData(DataInput in) throws IOException {
-        task = (HazeltaskTask<GROUP>) SerializationHelper.readObject(in);
+        Data data = new Data();
+        data.readData(in);
+        task = (HazeltaskTask<GROUP>) new Serializer().readObject(data);
+        task.setSerializedSize(data.size());
     }
 
     @Override
     protected void writChildData(DataOutput out) throws IOException {
-        SerializationHelper.writeObject(out, task);
+        new Serializer().writeObject(task).writeData(out);
     }
 }
@@ -0,0 +1,72 @@
+package com.hazeltask.clusterop;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.hazelcast.nio.Data;
+import com.hazelcast.nio.Serializer;
+import com.hazeltask.executor.local.LocalTaskExecutorService;
+import com.hazeltask.executor.task.HazeltaskTask;
+/**
+ * Used for sending many HazeltaskTasks to a member in one call
+ * @author jclawson
+ *
+ */
+public class SubmitTasksBatchOp<GROUP extends Serializable> extends AbstractClusterOp<Integer, GROUP> {
+    private static final long serialVersionUID = 1L;
+    private List<HazeltaskTask<GROUP>> tasks;
+
+    //hazelcast dataserializable requires a default constructor
+    private SubmitTasksBatchOp(){super(null);}
+
+    public SubmitTasksBatchOp(List<HazeltaskTask<GROUP>> tasks, String topology) {
+        super(topology);
+        this.tasks = tasks;
+    }
+
+    List<HazeltaskTask<GROUP>> getTasks() {
+        return tasks;
+    }
+
+    /**
+     * @return how many tasks from the start of the batch were queued.  The member
+     *         stops at the first task it refuses because its queue is full
+     */
+    public Integer call() throws Exception {
+        LocalTaskExecutorService<GROUP> localSvc = getLocalTaskExecutorService();
+        return localSvc.executeAll(tasks);
+    }
+
+    /**
+     * Like the SubmitTaskOp each task is written as a length prefixed Data so we
+     * know how big it is.  We are already inside hazelcast's thread local serializer 
+     * here so the tasks need their own one
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    protected void readChildData(DataInput in) throws IOException {
+        int size = in.readInt();
+        tasks = new ArrayList<HazeltaskTask<GROUP>>(size);
+        Serializer serializer = new Serializer();
+        for(int i=0; i<size; i++) {
+            Data data = new Data();
+            data.readData(in);
+            HazeltaskTask<GROUP> task = (HazeltaskTask<GROUP>) serializer.readObject(data);
+            task.setSerializedSize(data.size());
+            tasks.add(task);
+        }
+    }
+
+    @Override
+    protected void writChildData(DataOutput out) throws IOException {
+        out.writeInt(tasks.size());
+        Serializer serializer = new Serializer();
+        for(HazeltaskTask<GROUP> task : tasks) {
+            serializer.writeObject(task).writeData(out);
+        }
+    }
+}
@@ -25,5 +25,9 @@ public class ConfigValidator {
         if(executorConfig.getLoadBalancingConfig().getGroupPrioritizer() == null) {
             throw new IllegalArgumentException("Please specify a group prioritizer for the ExecutorConfig LoadBalancingConfig");
         }
+        
+        if(executorConfig.getLoadBalancingConfig().getTaskStealPolicy() == null) {
+            throw new IllegalArgumentException("Please specify a task steal policy for the ExecutorConfig LoadBalancingConfig");
+        }
     }
 }
\ No newline at end of file
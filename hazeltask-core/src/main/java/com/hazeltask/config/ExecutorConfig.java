@@ -4,6 +4,7 @@ import java.io.Serializable;
 import java.util.concurrent.TimeUnit;
 
 import com.hazeltask.executor.task.DefaultTaskIdAdapter;
+import com.hazeltask.executor.task.PayloadCompressor;
 import com.hazeltask.executor.task.TaskIdAdapter;
 
 public class ExecutorConfig<GROUP extends Serializable> {
@@ -21,6 +22,21 @@ public class ExecutorConfig<GROUP extends Serializable> {
     private boolean            asyncronousTaskDistribution = false;
     private int                asyncronousTaskDistributionQueueSize = 500;
     private long               recoveryProcessPollInterval = 30000;
+    private boolean            lockFreeTaskQueue           = false;
+    private int                taskQueueRouteStripes       = 1;
+    private int                maxQueuedTasks              = Integer.MAX_VALUE;
+    private long               maxQueuedBytes              = Long.MAX_VALUE;
+    private int                taskQueueGroupInitialCapacity = 16;
+    private int                workerGroupBatchSize        = 1;
+    private long               groupIdleEvictionTime       = 0;
+    private int                taskDistributorThreads      = 4;
+    private int                maxTasksInFlightPerMember   = 16;
+    private PayloadCompressor  payloadCompressor           = null;
+    private int                payloadCompressionThreshold = 4096;
+    private boolean            asynchronousWriteAheadLog   = false;
+    private int                maxSubmitTries              = 10;
+    private long               submitRetryInitialBackoff   = 10;
+    private long               submitRetryMaxBackoff       = 1000;
     
     private ExecutorLoadBalancingConfig<GROUP> executorLoadBalancingConfig = new ExecutorLoadBalancingConfig<GROUP>();
     
@@ -32,14 +48,9 @@ public class ExecutorConfig<GROUP extends Serializable> {
     }
 
     /**
-     * This setting will make HazelTask buffer task distributions in a bounded queue
-     * before they are sent off to the worker nodes.  This helps you get around slowness
-     * in worker nodes due to GC pauses, or other load that may negatively impact 
-     * Hazelcast's ability to handle calls.
-     * 
-     * NOTE: I think hazelcast might already actually do this???  Still testing... I will 
-     * remove this code if hazelcast does do this behind the scenes.
+     * Tasks are always sent to each member through its own lane now, so this has no effect.
      * 
+     * @see withAsyncronousTaskDistributionQueueSize(int)
      * @return
      */
     @Deprecated
@@ -49,21 +60,19 @@ public class ExecutorConfig<GROUP extends Serializable> {
     }
     
     /**
-     * When using asyncronousTaskDistribution you may define how many tasks are allowed 
-     * to buffer before it start blocking the calling thread.  If a worker is JVM thrashing
-     * and hazelcast is having trouble talking to it, this buffer will fill up.  This is 
-     * meant to protect against JVM pauses.  You really don't want the buffer to be infinite
-     * in case things go bad in your cluster.  You just want it to be big enough to get around
-     * occasional JVM pauses due to GC.
-     * 
-     * NOTE: I think hazelcast might already actually do this???  Still testing... I will 
-     * remove this code if hazelcast does do this behind the scenes.
+     * Tasks sent to a member wait in that member's lane when it already has the maximum
+     * number of tasks in flight.  Set how many tasks may wait per member.  If a worker is 
+     * JVM thrashing and hazelcast is having trouble talking to it, its lane will fill up.
+     * When the task queue is bounded new tasks go to other members instead, otherwise the 
+     * caller waits a moment for room and then the lane takes the task anyway.  You just want 
+     * it to be big enough to get around occasional JVM pauses due to GC.
+     * <p>
+     * Default: 500
      * 
-     * @see useAsyncronousTaskDistribution()
+     * @see withMaxTasksInFlightPerMember(int)
      * @param queueSize
      * @return
      */
-    @Deprecated
     public ExecutorConfig<GROUP> withAsyncronousTaskDistributionQueueSize(int queueSize) {
         this.asyncronousTaskDistributionQueueSize = queueSize;
         return this;
@@ -172,6 +181,292 @@ public class ExecutorConfig<GROUP extends Serializable> {
         return this.recoveryProcessPollInterval;
     }
 
+    /**
+     * This option is not enabled by default
+     * <p>
+     * Use a lock-free grouped task queue for this member's workers instead of the
+     * default queue which serializes every offer and poll through a single lock.  
+     * Group prioritization works the same way.  Consider this if you have a lot of 
+     * worker threads and the task queue poll time is high.
+     * 
+     * @return
+     */
+    public ExecutorConfig<GROUP> useLockFreeTaskQueue() {
+        this.lockFreeTaskQueue = true;
+        return this;
+    }
+    
+    public boolean isLockFreeTaskQueue() {
+        return this.lockFreeTaskQueue;
+    }
+    
+    /**
+     * Only applies when using the lock-free task queue.  By default there is 1 stripe.
+     * <p>
+     * Split the group routes into this many stripes by group hash.  Each worker thread
+     * prefers its own stripe and takes from the others when its stripe is empty.  This
+     * keeps poll time flat when you have many thousands of groups and many workers.
+     * <p>
+     * WARNING: group priority is only honored within a stripe.  If you use a prioritizer
+     * that must strictly order groups (like the EnumOrdinalPrioritizer) leave this at 1
+     * 
+     * @see useLockFreeTaskQueue()
+     * @param stripes
+     * @return
+     */
+    public ExecutorConfig<GROUP> withTaskQueueRouteStripes(int stripes) {
+        this.taskQueueRouteStripes = stripes;
+        return this;
+    }
+    
+    public int getTaskQueueRouteStripes() {
+        return this.taskQueueRouteStripes;
+    }
+
+    /**
+     * Each group gets its own queue on each member.  Set how many tasks it can hold before it
+     * has to resize.  If your groups regularly hold many tasks, raising this avoids repeated
+     * resizing.  If you have a very large number of small groups, lowering it saves memory.
+     * <p>
+     * Default: 16
+     * <p>
+     * NOTE: the lock free task queue's group queues are linked and ignore this
+     * 
+     * @param initialCapacity
+     * @return
+     */
+    public ExecutorConfig<GROUP> withTaskQueueGroupInitialCapacity(int initialCapacity) {
+        this.taskQueueGroupInitialCapacity = initialCapacity;
+        return this;
+    }
+    
+    public int getTaskQueueGroupInitialCapacity() {
+        return this.taskQueueGroupInitialCapacity;
+    }
+
+    /**
+     * By default a group's queue is kept forever once a task for that group is seen.
+     * <p>
+     * If your groups come and go (one per job, customer, etc) set this so a member
+     * forgets a group once its queue has been empty with no activity for this many 
+     * milliseconds.  The group is created again if a task for it shows up later, but it
+     * starts over with a fresh priority from the GroupPrioritizer.
+     * 
+     * @param idleMillis - 0 disables eviction
+     * @return
+     */
+    public ExecutorConfig<GROUP> withGroupIdleEvictionTime(long idleMillis) {
+        this.groupIdleEvictionTime = idleMillis;
+        return this;
+    }
+    
+    public long getGroupIdleEvictionTime() {
+        return this.groupIdleEvictionTime;
+    }
+
+    /**
+     * Each member may be sending tasks to several members at once and each member queues
+     * the tasks sent to it with this many threads.
+     * <p>
+     * Default: 4
+     * 
+     * @param threads
+     * @return
+     */
+    public ExecutorConfig<GROUP> withTaskDistributorThreads(int threads) {
+        this.taskDistributorThreads = threads;
+        return this;
+    }
+    
+    public int getTaskDistributorThreads() {
+        return this.taskDistributorThreads;
+    }
+
+    /**
+     * Tasks are sent to each member through its own lane so a slow member doesn't hold up
+     * sending to the others.  Set how many tasks a lane may have sent to its member that 
+     * haven't been queued there yet.  Further tasks wait in the lane, in order.
+     * <p>
+     * Default: 16
+     * 
+     * @see withAsyncronousTaskDistributionQueueSize(int)
+     * @param maxInFlight
+     * @return
+     */
+    public ExecutorConfig<GROUP> withMaxTasksInFlightPerMember(int maxInFlight) {
+        this.maxTasksInFlightPerMember = maxInFlight;
+        return this;
+    }
+    
+    public int getMaxTasksInFlightPerMember() {
+        return this.maxTasksInFlightPerMember;
+    }
+
+    /**
+     * By default each worker thread takes one task at a time from the task queue.
+     * <p>
+     * Let a worker take up to this many tasks of the same group in one dequeue and run
+     * them back to back.  Groups are still rotated fairly, a group just gets a batch
+     * per turn instead of one task.  This cuts the queue overhead when groups hold many
+     * small tasks.
+     * <p>
+     * WARNING: tasks in a worker's batch have left the task queue.  They can't be stolen 
+     * by other members or cancelled, and aren't counted in the queue size
+     * 
+     * @param batchSize
+     * @return
+     */
+    public ExecutorConfig<GROUP> withWorkerGroupBatchSize(int batchSize) {
+        this.workerGroupBatchSize = batchSize;
+        return this;
+    }
+    
+    public int getWorkerGroupBatchSize() {
+        return this.workerGroupBatchSize;
+    }
+
+    /**
+     * By default the number of tasks queued on a member is unbounded.
+     * <p>
+     * Limit the number of tasks waiting in this member's queue.  When the queue is full
+     * this member will refuse new tasks and submitters will send them to another member.
+     * If every member is full, submitting a task throws a RejectedExecutionException.
+     * <p>
+     * NOTE: when a limit is set, submitters wait for the member to accept each task
+     * 
+     * @param maxQueuedTasks
+     * @return
+     */
+    public ExecutorConfig<GROUP> withMaxQueuedTasks(int maxQueuedTasks) {
+        this.maxQueuedTasks = maxQueuedTasks;
+        return this;
+    }
+    
+    public int getMaxQueuedTasks() {
+        return this.maxQueuedTasks;
+    }
+    
+    /**
+     * By default the size of tasks queued on a member is unbounded.
+     * <p>
+     * Limit the total serialized size of the tasks waiting in this member's queue.  This works
+     * like withMaxQueuedTasks but is better at protecting the heap when task sizes vary a lot.
+     * Tasks this member submits to itself are serialized once to measure their size.
+     * 
+     * @see withMaxQueuedTasks
+     * @param maxQueuedBytes
+     * @return
+     */
+    public ExecutorConfig<GROUP> withMaxQueuedBytes(long maxQueuedBytes) {
+        this.maxQueuedBytes = maxQueuedBytes;
+        return this;
+    }
+    
+    public long getMaxQueuedBytes() {
+        return this.maxQueuedBytes;
+    }
+    
+    /**
+     * By default task payloads and responses are not compressed.
+     * <p>
+     * Compress the Runnable or Callable of a task when it's written to the pending task map
+     * or sent to a member, and compress task responses published to the submitter.  Only
+     * payloads of at least thresholdBytes once encoded are compressed.  The pending task map 
+     * keeps a copy per backup, so large payloads save memory on every backup too.
+     * <p>
+     * LZPayloadCompressor is fast, DeflatePayloadCompressor is slower but compresses better.
+     * Custom compressors need to be registered on every member.
+     * 
+     * @param compressor
+     * @param thresholdBytes
+     * @return
+     */
+    public ExecutorConfig<GROUP> withPayloadCompression(PayloadCompressor compressor, int thresholdBytes) {
+        this.payloadCompressor = compressor;
+        this.payloadCompressionThreshold = thresholdBytes;
+        return this;
+    }
+    
+    public PayloadCompressor getPayloadCompressor() {
+        return this.payloadCompressor;
+    }
+    
+    public int getPayloadCompressionThreshold() {
+        return this.payloadCompressionThreshold;
+    }
+    
+    /**
+     * By default a task send that fails is tried 10 times.
+     * <p>
+     * Set how many times sending a task to a member is tried before the submit fails.  The
+     * task is written to the write ahead log once no matter how many tries it takes.
+     * 
+     * @see withSubmitRetryBackoff
+     * @param maxTries
+     * @return
+     */
+    public ExecutorConfig<GROUP> withMaxSubmitTries(int maxTries) {
+        this.maxSubmitTries = maxTries;
+        return this;
+    }
+    
+    public int getMaxSubmitTries() {
+        return this.maxSubmitTries;
+    }
+    
+    /**
+     * By default retries start after 10ms and back off to at most 1000ms.
+     * <p>
+     * Each retry waits twice as long as the one before, up to maxMillis, with random 
+     * jitter.  A member whose send failed or timed out is avoided by every submit for
+     * maxMillis.
+     * 
+     * @param initialMillis
+     * @param maxMillis
+     * @return
+     */
+    public ExecutorConfig<GROUP> withSubmitRetryBackoff(long initialMillis, long maxMillis) {
+        this.submitRetryInitialBackoff = initialMillis;
+        this.submitRetryMaxBackoff = maxMillis;
+        return this;
+    }
+    
+    public long getSubmitRetryInitialBackoff() {
+        return this.submitRetryInitialBackoff;
+    }
+    
+    public long getSubmitRetryMaxBackoff() {
+        return this.submitRetryMaxBackoff;
+    }
+    
+    /**
+     * By default a task is written to the write ahead log before it's sent to a member.
+     * <p>
+     * Send the task while the write ahead log put is still in flight, so submitting
+     * takes one cluster round trip instead of two.  When a task finishes, a completed 
+     * marker is left behind so a put that lands after the task finished is removed 
+     * instead of recovered and run again.  That costs one more map put when each task 
+     * finishes.  Every member must use the same setting.
+     * 
+     * @see com.hazeltask.executor.DistributedExecutorService#executeAsync(Runnable)
+     * @return
+     */
+    public ExecutorConfig<GROUP> useAsynchronousWriteAheadLog() {
+        this.asynchronousWriteAheadLog = true;
+        return this;
+    }
+    
+    public boolean isAsynchronousWriteAheadLog() {
+        return this.asynchronousWriteAheadLog;
+    }
+    
+    /**
+     * @return true if either withMaxQueuedTasks or withMaxQueuedBytes is set
+     */
+    public boolean isTaskQueueBounded() {
+        return maxQueuedTasks != Integer.MAX_VALUE || maxQueuedBytes != Long.MAX_VALUE;
+    }
+
     /**
      * By default we will automatically startup the task system when its
      * created. Some developers may want to delay the startup, and handle in
@@ -232,6 +527,10 @@ public class ExecutorConfig<GROUP extends Serializable> {
         return this.executorLoadBalancingConfig;
     }
 
+    /**
+     * Tasks are always sent to each member through its own lane now, so this has no effect.
+     */
+    @Deprecated
     public boolean isAsyncronousTaskDistribution() {
         return asyncronousTaskDistribution;
     }
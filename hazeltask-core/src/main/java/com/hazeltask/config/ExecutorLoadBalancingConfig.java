@@ -1,6 +1,7 @@
 package com.hazeltask.config;
 
 import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 import java.io.Serializable;
 
@@ -9,13 +10,27 @@ import com.hazeltask.core.concurrent.collections.grouped.prioritizer.EnumOrdinal
 import com.hazeltask.core.concurrent.collections.grouped.prioritizer.GroupPrioritizer;
 import com.hazeltask.core.concurrent.collections.grouped.prioritizer.LoadBalancedPriorityPrioritizer;
 import com.hazeltask.core.concurrent.collections.grouped.prioritizer.RoundRobinGroupPrioritizer;
+import com.hazeltask.executor.steal.DrainTimeStealPolicy;
+import com.hazeltask.executor.steal.QueueLengthStealPolicy;
+import com.hazeltask.executor.steal.TaskStealPolicy;
+import com.hazeltask.executor.steal.ThreadWeightedStealPolicy;
+import com.hazeltask.core.concurrent.collections.router.ConsistentHashRouter;
 import com.hazeltask.core.concurrent.collections.router.ListRouterFactory;
+import com.hazeltask.core.concurrent.collections.router.PowerOfTwoChoicesRouter;
 import com.hazeltask.core.concurrent.collections.router.RoundRobinRouter;
 
 public class ExecutorLoadBalancingConfig<GROUP extends Serializable> {
     private ListRouterFactory<Member> memberRouterFactory = RoundRobinRouter.newFactory();
     private GroupPrioritizer<GROUP>   groupPrioritizer    = new RoundRobinGroupPrioritizer<GROUP>();
     private long                      rebalanceTaskPeriod = MINUTES.toMillis(2);
+    private long                      memberLoadRefreshPeriod = SECONDS.toMillis(5);
+    private boolean                   partitionOwnerRouting = false;
+    private TaskStealPolicy           taskStealPolicy = new QueueLengthStealPolicy();
+    private int                       stealChunkSize = 500;
+    private long                      stealLeaseTime = MINUTES.toMillis(5);
+    private boolean                   idleTaskStealing = false;
+    private int                       idleStealLowWaterMark = 0;
+    private long                      idleStealMinInterval = SECONDS.toMillis(1);
 
     public static <GROUP extends Serializable> ExecutorLoadBalancingConfig<GROUP> create() {
         return new ExecutorLoadBalancingConfig<GROUP>();
@@ -73,6 +88,81 @@ public class ExecutorLoadBalancingConfig<GROUP extends Serializable> {
         return groupPrioritizer;
     }
 
+    /**
+     * By default new tasks are sent to the members round robin.
+     * <p>
+     * Send each new task to the better of two randomly picked members instead, judged
+     * by how long a new task would wait there given the member's queue size and how fast 
+     * it has been executing tasks.  The member loads are refreshed in the background
+     * every memberLoadRefreshPeriod so submitting never waits on a remote call.
+     * 
+     * @see withMemberLoadRefreshPeriod(long)
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> useLoadAwareMemberRouter() {
+        memberRouterFactory = PowerOfTwoChoicesRouter.newFactory();
+        return this;
+    }
+    
+    /**
+     * Send a group's tasks to the same member, so a member that has warmed up state for
+     * a group (connections, caches) keeps getting that group's work.  Groups are mapped
+     * to members with consistent hashing, so when a member joins or leaves only the groups
+     * next to it on the hash ring move.
+     * <p>
+     * A member whose load reaches loadFactor times the average is skipped and its groups
+     * spill to the next member on the ring, so a hot group can't swamp one member.  Member
+     * loads are refreshed every memberLoadRefreshPeriod.
+     * <p>
+     * NOTE: your group type's hashCode must be the same in every JVM (String, Long, UUID, 
+     * etc).  Enums are hashed by name
+     * 
+     * @param loadFactor - at least 1.  Lower spreads load more evenly, higher keeps groups 
+     *                     on their member longer
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> useGroupAffinityMemberRouter(double loadFactor) {
+        memberRouterFactory = ConsistentHashRouter.newFactory(loadFactor);
+        return this;
+    }
+    
+    /**
+     * @see useGroupAffinityMemberRouter(double)
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> useGroupAffinityMemberRouter() {
+        return useGroupAffinityMemberRouter(ConsistentHashRouter.DEFAULT_LOAD_FACTOR);
+    }
+    
+    public ExecutorLoadBalancingConfig<GROUP> useRoundRobinMemberRouter() {
+        memberRouterFactory = RoundRobinRouter.newFactory();
+        return this;
+    }
+    
+    /**
+     * By default the member router picks where a task runs, which is usually not the 
+     * member that holds the task in the write ahead log.
+     * <p>
+     * Send each task to the member that owns the task's write ahead log partition, so
+     * writing the backup, removing the task when it finishes and recovering it all happen
+     * on the member running it.  Partitions are spread evenly by task id so the load is 
+     * too.  If the owner is not ready, the partition is migrating or the owner's queue is 
+     * full, the member router picks instead.  This takes precedence over group affinity.
+     * <p>
+     * NOTE: task rebalancing still moves tasks off the owner when members are unevenly 
+     * loaded
+     * 
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> usePartitionOwnerRouting() {
+        partitionOwnerRouting = true;
+        return this;
+    }
+    
+    public boolean isPartitionOwnerRouting() {
+        return partitionOwnerRouting;
+    }
+    
     public ListRouterFactory<Member> getMemberRouterFactory() {
         return this.memberRouterFactory;
     }
@@ -93,4 +183,159 @@ public class ExecutorLoadBalancingConfig<GROUP extends Serializable> {
         return this.rebalanceTaskPeriod;
     }
     
+    /**
+     * Rebalance so every member has the same number of tasks queued.  This is the default.
+     * 
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> useQueueLengthStealPolicy() {
+        taskStealPolicy = new QueueLengthStealPolicy();
+        return this;
+    }
+    
+    /**
+     * Rebalance so every member takes the same time to drain its queue, going by how many tasks 
+     * a second each one has been finishing.  Use this when members have different core counts 
+     * or some groups' tasks cost more than others.
+     * 
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> useDrainTimeStealPolicy() {
+        taskStealPolicy = new DrainTimeStealPolicy();
+        return this;
+    }
+    
+    /**
+     * Rebalance so every member has the same number of tasks queued per worker thread
+     * 
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> useThreadWeightedStealPolicy() {
+        taskStealPolicy = new ThreadWeightedStealPolicy();
+        return this;
+    }
+    
+    /**
+     * Use this config option if you would like to decide yourself when and how much the 
+     * rebalance task steals
+     * 
+     * @param policy
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> useCustomStealPolicy(TaskStealPolicy policy) {
+        taskStealPolicy = policy;
+        return this;
+    }
+    
+    public TaskStealPolicy getTaskStealPolicy() {
+        return this.taskStealPolicy;
+    }
+    
+    /**
+     * Stolen tasks are sent in chunks of at most this many tasks.  The member we steal from 
+     * holds on to each chunk until we tell it how many of its tasks we kept, so no tasks are 
+     * lost if we fail part way through.  By default this is 500.
+     * 
+     * @param stealChunkSize
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> withStealChunkSize(int stealChunkSize) {
+        if(stealChunkSize < 1)
+            throw new IllegalArgumentException("stealChunkSize must be at least 1");
+        this.stealChunkSize = stealChunkSize;
+        return this;
+    }
+    
+    public int getStealChunkSize() {
+        return this.stealChunkSize;
+    }
+    
+    /**
+     * How long a member holds a chunk of stolen tasks for the thief to acknowledge before it 
+     * puts the chunk back in its queue.  A thief retries a chunk request that times out after 
+     * a minute up to 3 times, so keep this longer than that or a slow thief and its victim 
+     * may both run the tasks.  By default this is 5 minutes.
+     * 
+     * @param stealLeaseTime - in milliseconds
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> withStealLeaseTime(long stealLeaseTime) {
+        if(stealLeaseTime < 0)
+            throw new IllegalArgumentException("stealLeaseTime cannot be negative");
+        this.stealLeaseTime = stealLeaseTime;
+        return this;
+    }
+    
+    public long getStealLeaseTime() {
+        return this.stealLeaseTime;
+    }
+    
+    /**
+     * How often the load aware and group affinity member routers ask each member for its load.  By default 
+     * this is set to 5 seconds.
+     * 
+     * @see useLoadAwareMemberRouter()
+     * @param refreshPeriod
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> withMemberLoadRefreshPeriod(long refreshPeriod) {
+        this.memberLoadRefreshPeriod = refreshPeriod;
+        return this;
+    }
+    
+    public long getMemberLoadRefreshPeriod() {
+        return this.memberLoadRefreshPeriod;
+    }
+    
+    /**
+     * When the local task queue runs down to lowWaterMark tasks, steal from the most loaded member 
+     * right away instead of waiting for the next rebalance.  A steal only happens when it would 
+     * take more than lowWaterMark tasks, so a member doesn't steal again as soon as it finishes 
+     * the few tasks it took.  The member we steal from keeps at least half of the difference 
+     * between us.
+     * 
+     * <p>Steals are started at most once every minInterval milliseconds.  When a steal finds nothing 
+     * to take the interval doubles, up to the rebalance task period, until a steal takes something.  
+     * A member with no tasks finishing checks its queue every minInterval, or every second if that 
+     * is shorter.  The periodic rebalance still runs.
+     * 
+     * <p>By default this is off.
+     * 
+     * @param lowWaterMark - steal when the local queue has this many tasks or less
+     * @param minInterval - the least time in milliseconds between steals
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> useIdleTaskStealing(int lowWaterMark, long minInterval) {
+        if(lowWaterMark < 0)
+            throw new IllegalArgumentException("lowWaterMark cannot be negative");
+        if(minInterval < 0)
+            throw new IllegalArgumentException("minInterval cannot be negative");
+        this.idleTaskStealing = true;
+        this.idleStealLowWaterMark = lowWaterMark;
+        this.idleStealMinInterval = minInterval;
+        return this;
+    }
+    
+    /**
+     * Steal as soon as the local task queue is empty, at most once a second
+     * 
+     * @see useIdleTaskStealing(int, long)
+     * @return
+     */
+    public ExecutorLoadBalancingConfig<GROUP> useIdleTaskStealing() {
+        return useIdleTaskStealing(0, SECONDS.toMillis(1));
+    }
+    
+    public boolean isIdleTaskStealing() {
+        return this.idleTaskStealing;
+    }
+    
+    public int getIdleStealLowWaterMark() {
+        return this.idleStealLowWaterMark;
+    }
+    
+    public long getIdleStealMinInterval() {
+        return this.idleStealMinInterval;
+    }
+    
 }
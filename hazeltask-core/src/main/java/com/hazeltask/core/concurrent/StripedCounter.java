@@ -0,0 +1,65 @@
+package com.hazeltask.core.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that many threads can update at once without fighting over a single
+ * cache line.  Each thread adds to its own padded cell and get() sums the cells, so
+ * reads are a little slower and not a point in time snapshot.
+ *
+ * This is a small stand-in for Java 8's LongAdder.
+ *
+ * @author jclawson
+ *
+ */
+public class StripedCounter {
+    /**
+     * Cells are this many longs apart so two cells don't share a 64 byte cache line
+     */
+    private static final int PAD = 8;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    public StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param stripes - rounded up to a power of 2
+     */
+    public StripedCounter(int stripes) {
+        int n = 1;
+        while(n < stripes)
+            n <<= 1;
+        mask = n - 1;
+        cells = new AtomicLongArray(n * PAD);
+    }
+
+    public void add(long x) {
+        cells.addAndGet(cell(), x);
+    }
+
+    public void increment() {
+        add(1L);
+    }
+
+    public void decrement() {
+        add(-1L);
+    }
+
+    public long get() {
+        long sum = 0;
+        for(int i = 0; i < cells.length(); i += PAD) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+    private int cell() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32));
+        h ^= (h >>> 16);
+        return (h & mask) * PAD;
+    }
+}
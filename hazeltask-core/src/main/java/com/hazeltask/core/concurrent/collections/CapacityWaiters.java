@@ -0,0 +1,76 @@
+package com.hazeltask.core.concurrent.collections;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Implements the blocking put() and offer(timeout) on top of a bounded queue whose
+ * offer() returns false when it is full.  The queue must call signal() whenever
+ * it removes elements.  signal() doesn't touch the lock unless a producer is waiting.
+ *
+ * Elements can leave a queue without it knowing (for example through a group queue's
+ * iterator) so waiting producers also recheck every so often on their own.
+ *
+ * @author jclawson
+ *
+ * @param <E>
+ */
+public class CapacityWaiters<E> {
+    private static final long RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Queue<E> queue;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    public CapacityWaiters(Queue<E> queue) {
+        this.queue = queue;
+    }
+
+    public void signal() {
+        if(waiting.get() > 0) {
+            lock.lock();
+            try {
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public void put(E e) throws InterruptedException {
+        await(e, false, 0L);
+    }
+
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        return await(e, true, unit.toNanos(timeout));
+    }
+
+    private boolean await(E e, boolean timed, long nanos) throws InterruptedException {
+        if(queue.offer(e))
+            return true;
+
+        lock.lockInterruptibly();
+        waiting.incrementAndGet();
+        try {
+            //retry now that consumers can see we are waiting
+            while(!queue.offer(e)) {
+                if(timed) {
+                    if(nanos <= 0)
+                        return false;
+                    long waitNanos = Math.min(nanos, RECHECK_NANOS);
+                    nanos -= waitNanos - notFull.awaitNanos(waitNanos);
+                } else {
+                    notFull.awaitNanos(RECHECK_NANOS);
+                }
+            }
+            return true;
+        } finally {
+            waiting.decrementAndGet();
+            lock.unlock();
+        }
+    }
+}
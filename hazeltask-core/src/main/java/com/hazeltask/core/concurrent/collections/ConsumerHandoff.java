@@ -0,0 +1,198 @@
+package com.hazeltask.core.concurrent.collections;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lets threads block waiting on a queue without holding (or even touching) the
+ * queue's lock.  Each waiting thread parks on its own slot.  A producer can drop
+ * its element straight into a waiting thread's slot, or just wake one up to
+ * poll the queue again.
+ *
+ * The owning queue must:
+ * <ul>
+ *   <li>call handoff(e) before enqueuing e, and skip the enqueue if it returns true</li>
+ *   <li>call signal() after an element becomes available that wasn't handed off</li>
+ * </ul>
+ *
+ * Waiters register before their final poll and producers check for waiters after
+ * they enqueue, so one of them always sees the other.
+ *
+ * @author jclawson
+ *
+ * @param <E>
+ */
+public class ConsumerHandoff<E> {
+    /**
+     * Put in a waiter's slot to tell it to poll the queue again
+     */
+    private static final Object WAKE = new Object();
+    /**
+     * Put in a waiter's slot by the waiter itself when it gives up
+     */
+    private static final Object CANCELLED = new Object();
+
+    private final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<Waiter>();
+    private final Queue<E> queue;
+    private final Requeue<E> requeue;
+
+    /**
+     * Puts an element back into the owning queue even when the queue is full.  A
+     * waiter that polled an element and was also handed one uses this to give back
+     * the one it polled.  That element was already counted against the queue's
+     * capacity when it was offered so it must not be refused now.
+     */
+    public interface Requeue<E> {
+        void requeue(E e);
+    }
+
+    private static class Waiter {
+        private final Thread thread = Thread.currentThread();
+        private final AtomicReference<Object> slot = new AtomicReference<Object>();
+    }
+
+    /**
+     * @param queue - an unbounded queue waiters poll from.  Its offer() is used to put
+     *                back elements a waiter ended up not needing, so it must never fail
+     */
+    public ConsumerHandoff(final Queue<E> queue) {
+        this(queue, new Requeue<E>() {
+            public void requeue(E e) {
+                if(!queue.offer(e))
+                    throw new IllegalStateException("Unable to put an element back into the queue");
+            }
+        });
+    }
+
+    /**
+     * @param queue - the queue waiters poll from
+     * @param requeue - puts back elements a waiter ended up not needing, without
+     *                  checking the queue's capacity
+     */
+    public ConsumerHandoff(Queue<E> queue, Requeue<E> requeue) {
+        this.queue = queue;
+        this.requeue = requeue;
+    }
+
+    /**
+     * Give the element directly to a waiting thread
+     *
+     * @param e
+     * @return true if a waiting thread took the element
+     */
+    public boolean handoff(E e) {
+        return fill(e);
+    }
+
+    /**
+     * Wake up a waiting thread, if there is one, so it polls the queue again
+     */
+    public void signal() {
+        if(!waiters.isEmpty())
+            fill(WAKE);
+    }
+
+    public boolean hasWaiters() {
+        return !waiters.isEmpty();
+    }
+
+    private boolean fill(Object value) {
+        Waiter w;
+        while((w = waiters.poll()) != null) {
+            if(w.slot.compareAndSet(null, value)) {
+                LockSupport.unpark(w.thread);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public E take() throws InterruptedException {
+        return await(false, 0L);
+    }
+
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return await(true, unit.toNanos(timeout));
+    }
+
+    @SuppressWarnings("unchecked")
+    private E await(boolean timed, long nanos) throws InterruptedException {
+        if(Thread.interrupted())
+            throw new InterruptedException();
+
+        final long deadline = timed ? System.nanoTime() + nanos : 0L;
+        for(;;) {
+            E e = queue.poll();
+            if(e != null)
+                return e;
+
+            Waiter w = new Waiter();
+            waiters.offer(w);
+
+            //something may have been enqueued before we registered
+            e = queue.poll();
+            if(e != null) {
+                return cancel(w, e);
+            }
+
+            Object value;
+            while((value = w.slot.get()) == null) {
+                if(Thread.interrupted()) {
+                    if(w.slot.compareAndSet(null, CANCELLED)) {
+                        waiters.remove(w);
+                        throw new InterruptedException();
+                    }
+                    if(w.slot.get() == WAKE) {
+                        signal();
+                        throw new InterruptedException();
+                    }
+                    //we were handed an element at the last moment, we will return it below
+                    Thread.currentThread().interrupt();
+                } else if(timed) {
+                    long remaining = deadline - System.nanoTime();
+                    if(remaining <= 0) {
+                        if(w.slot.compareAndSet(null, CANCELLED)) {
+                            waiters.remove(w);
+                            return null;
+                        }
+                    } else {
+                        LockSupport.parkNanos(this, remaining);
+                    }
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+
+            if(value != WAKE)
+                return (E) value;
+            //woken up to poll again
+        }
+    }
+
+    /**
+     * We polled an element after registering, so give up our slot.  If a producer
+     * already filled it we have to pass along what it gave us.
+     */
+    @SuppressWarnings("unchecked")
+    private E cancel(Waiter w, E polled) {
+        if(w.slot.compareAndSet(null, CANCELLED)) {
+            waiters.remove(w);
+            return polled;
+        }
+
+        Object value = w.slot.get();
+        if(value == WAKE) {
+            //someone else may need the wakeup we swallowed
+            signal();
+            return polled;
+        }
+
+        //we were handed an element as well, put back the one we polled.  The queue
+        //may have filled up since we polled it so this must skip the capacity check
+        requeue.requeue(polled);
+        return (E) value;
+    }
+}
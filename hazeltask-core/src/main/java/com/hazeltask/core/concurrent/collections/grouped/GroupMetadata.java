@@ -4,7 +4,13 @@ package com.hazeltask.core.concurrent.collections.grouped;
 
 public final class GroupMetadata<G> implements Comparable<GroupMetadata<G>> {
     private final G group;
-    private final long priority;
+    private long priority;
+    
+    /**
+     * Bookkeeping for GroupRouteHeap
+     */
+    int routeIndex = -1;
+    long routeSequence;
     
     public GroupMetadata(G group, long priority) {
         if(group == null) {
@@ -22,6 +28,15 @@ public final class GroupMetadata<G> implements Comparable<GroupMetadata<G>> {
         return priority;
     }
     
+    /**
+     * The locking queue keeps one GroupMetadata per group and updates it in place under
+     * its lock.  Never change the priority while the metadata is in a sorted set, or in 
+     * a route heap that isn't told about it.
+     */
+    void setPriority(long priority) {
+        this.priority = priority;
+    }
+    
     /**
      * compareTo must be consistent with equals.  If the priority is
      * equal however, and the groups are NOT equal, we want to place 
@@ -0,0 +1,161 @@
+package com.hazeltask.core.concurrent.collections.grouped;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * An indexed max-heap of group routes for queues that guard their routes with a lock.
+ * Each group has one GroupMetadata for its whole life.  The entry remembers its own
+ * position, so a polled group can have its priority changed and be moved back in place.
+ * Nothing is allocated except when the heap array grows.
+ *
+ * Routes with equal priority come out in the order they were added or last moved back,
+ * which gives round robin between them.  This matches the ConcurrentSkipListSet ordering
+ * the queue used before.
+ *
+ * Not thread safe.
+ *
+ * @author jclawson
+ *
+ * @param <G>
+ */
+class GroupRouteHeap<G> {
+    private GroupMetadata<G>[] heap;
+    private int size;
+    private long nextSequence;
+
+    private final Comparator<GroupMetadata<G>> pollOrder = new Comparator<GroupMetadata<G>>() {
+        public int compare(GroupMetadata<G> a, GroupMetadata<G> b) {
+            return before(a, b) ? -1 : (before(b, a) ? 1 : 0);
+        }
+    };
+
+    public GroupRouteHeap(int initialCapacity) {
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        GroupMetadata<G>[] heap = new GroupMetadata[Math.max(1, initialCapacity)];
+        this.heap = heap;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(GroupMetadata<G> route) {
+        int i = route.routeIndex;
+        return i >= 0 && i < size && heap[i] == route;
+    }
+
+    /**
+     * Routes the group behind any others with the same priority.  Does nothing if it
+     * is already routed
+     */
+    public void add(GroupMetadata<G> route) {
+        if(contains(route))
+            return;
+        if(size == heap.length)
+            heap = Arrays.copyOf(heap, heap.length * 2);
+        route.routeSequence = nextSequence++;
+        siftUp(size++, route);
+    }
+
+    /**
+     * @return the route poll() would take, without removing it
+     */
+    public GroupMetadata<G> peek() {
+        return size == 0 ? null : heap[0];
+    }
+
+    public GroupMetadata<G> poll() {
+        if(size == 0)
+            return null;
+        GroupMetadata<G> route = heap[0];
+        removeAt(0);
+        return route;
+    }
+
+    public boolean remove(GroupMetadata<G> route) {
+        if(!contains(route))
+            return false;
+        removeAt(route.routeIndex);
+        return true;
+    }
+
+    /**
+     * Change a routed group's priority and move it behind any others with the same
+     * priority, as if it was polled and added again
+     */
+    public void update(GroupMetadata<G> route, long priority) {
+        route.setPriority(priority);
+        route.routeSequence = nextSequence++;
+        int i = route.routeIndex;
+        siftDown(i, route);
+        if(heap[i] == route)
+            siftUp(i, route);
+    }
+
+    /**
+     * @return the routes in the order poll() would return them.  This copies and sorts
+     */
+    public GroupMetadata<G>[] toSortedArray() {
+        GroupMetadata<G>[] sorted = Arrays.copyOf(heap, size);
+        Arrays.sort(sorted, pollOrder);
+        return sorted;
+    }
+
+    private boolean before(GroupMetadata<G> a, GroupMetadata<G> b) {
+        long pa = a.getPriority();
+        long pb = b.getPriority();
+        if(pa != pb)
+            return pa > pb;
+        return a.routeSequence < b.routeSequence;
+    }
+
+    private void removeAt(int i) {
+        GroupMetadata<G> removed = heap[i];
+        int last = --size;
+        GroupMetadata<G> moved = heap[last];
+        heap[last] = null;
+        if(last != i) {
+            siftDown(i, moved);
+            if(heap[i] == moved)
+                siftUp(i, moved);
+        }
+        removed.routeIndex = -1;
+    }
+
+    private void siftUp(int k, GroupMetadata<G> route) {
+        while(k > 0) {
+            int parent = (k - 1) >>> 1;
+            GroupMetadata<G> p = heap[parent];
+            if(!before(route, p))
+                break;
+            heap[k] = p;
+            p.routeIndex = k;
+            k = parent;
+        }
+        heap[k] = route;
+        route.routeIndex = k;
+    }
+
+    private void siftDown(int k, GroupMetadata<G> route) {
+        int half = size >>> 1;
+        while(k < half) {
+            int child = (k << 1) + 1;
+            int right = child + 1;
+            if(right < size && before(heap[right], heap[child]))
+                child = right;
+            GroupMetadata<G> c = heap[child];
+            if(!before(c, route))
+                break;
+            heap[k] = c;
+            c.routeIndex = k;
+            k = child;
+        }
+        heap[k] = route;
+        route.routeIndex = k;
+    }
+}
@@ -0,0 +1,501 @@
+package com.hazeltask.core.concurrent.collections.grouped;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.base.Predicate;
+import com.hazeltask.core.concurrent.collections.CapacityWaiters;
+import com.hazeltask.core.concurrent.collections.ConsumerHandoff;
+import com.hazeltask.core.concurrent.collections.grouped.prioritizer.GroupPrioritizer;
+import com.hazeltask.core.concurrent.collections.tracked.ITrackedQueue;
+import com.hazeltask.core.concurrent.collections.tracked.TrackCreated;
+import com.hazeltask.core.concurrent.collections.tracked.TrackedConcurrentLinkedQueue;
+import com.hazeltask.executor.metrics.ExecutorMetrics;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
+
+/**
+ * A non-blocking version of the GroupedPriorityQueueLocking.  It has the same group
+ * fairness semantics (routes are ordered by the GroupPrioritizer, ties are round robin)
+ * but offer() and poll() never take a lock.
+ *
+ * Each group has its own lock-free queue and a routed flag.  A group's route is in the
+ * groupRoute skiplist only while the routed flag is set.  Whoever flips the flag from
+ * false to true is responsible for adding the route, so a route is never added twice
+ * and a non-empty group never loses its route.
+ *
+ * Threads in take() and poll(timeout) park on their own slot in a ConsumerHandoff, and 
+ * offer() hands its element straight to one of them when there is one.
+ *
+ * An idle group is evicted by claiming its routed flag, so no route can be added for it,
+ * and then marking it evicted.  An offer that lands in an evicted group takes its element
+ * back out and offers it again to a fresh group queue.
+ *
+ * Routes may be split into stripes by group hash.  Each polling thread starts at its
+ * home stripe and moves on to the others when it is empty, so workers aren't all
+ * fighting over the tail of one skiplist.  With more than 1 stripe, group priority 
+ * is only honored within a stripe.  Use 1 stripe (the default) if you rely on a 
+ * prioritizer to order groups strictly.
+ *
+ * @author jclawson
+ *
+ * @param <E>
+ * @param <G>
+ */
+public class GroupedPriorityQueueLockFree<E extends Groupable<G> & TrackCreated, G> extends
+        AbstractQueue<E> implements IGroupedQueue<E, G>, BlockingQueue<E> {
+
+    private final ConcurrentMap<G, GroupQueue> queuesByGroup = new ConcurrentHashMap<G, GroupQueue>();
+    private final ConcurrentSkipListSet<GroupMetadata<G>>[] groupRoutes;
+    private final GroupPrioritizer<G> groupPrioritizer;
+    private final GroupedQueueStats stats = new GroupedQueueStats();
+
+    private final ConsumerHandoff<E> waiters = new ConsumerHandoff<E>(this, new ConsumerHandoff.Requeue<E>() {
+        public void requeue(E e) {
+            enqueue(e, false);
+        }
+    });
+    private final CapacityWaiters<E> producers = new CapacityWaiters<E>(this);
+
+    private final int capacity;
+    private final int groupCapacity;
+
+    private final Meter routesSkipped;
+    private final Meter routeNotFound;
+    private final Meter groupsEvicted;
+    private final Timer pollTimer;
+
+    private class GroupQueue {
+        private final ITrackedQueue<E> queue = stats.track(new TrackedConcurrentLinkedQueue<E>());
+        private final AtomicBoolean routed = new AtomicBoolean(false);
+        private volatile boolean evicted = false;
+        private final ConcurrentSkipListSet<GroupMetadata<G>> groupRoute;
+        /**
+         * The group's current route entry.  It keeps its priority while the group is empty
+         * so prioritizers that depend on the previous priority keep working.  An entry's
+         * priority never changes, a concurrent traversal of the route set may still be 
+         * looking at it.  Only the poller that took it out of the route set may replace it
+         */
+        private volatile GroupMetadata<G> route;
+
+        private GroupQueue(G group) {
+            route = new GroupMetadata<G>(group, groupPrioritizer.computePriority(new GroupMetadata<G>(group, 0)));
+            groupRoute = groupRoutes[stripeFor(group)];
+        }
+
+        /**
+         * Add our route if nobody else has.  Must be called after an item is
+         * added to the queue, or after a poller gives up the route
+         */
+        private boolean route() {
+            if(routed.compareAndSet(false, true)) {
+                groupRoute.add(route);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public GroupedPriorityQueueLockFree(ExecutorMetrics metrics, GroupPrioritizer<G> groupPrioritizer) {
+        this(metrics, groupPrioritizer, 1);
+    }
+
+    public GroupedPriorityQueueLockFree(ExecutorMetrics metrics, GroupPrioritizer<G> groupPrioritizer, int routeStripes) {
+        this(metrics, groupPrioritizer, routeStripes, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Capacity is checked before an item is added without any locking so concurrent
+     * producers may push the queue or a group slightly over its capacity.
+     *
+     * @param metrics
+     * @param groupPrioritizer
+     * @param routeStripes
+     * @param capacity - the most items allowed in the queue across all groups
+     * @param groupCapacity - the most items allowed in a single group
+     */
+    public GroupedPriorityQueueLockFree(ExecutorMetrics metrics, GroupPrioritizer<G> groupPrioritizer, int routeStripes, int capacity, int groupCapacity) {
+        if(routeStripes < 1) {
+            throw new IllegalArgumentException("routeStripes must be at least 1");
+        }
+        if(capacity < 1 || groupCapacity < 1) {
+            throw new IllegalArgumentException("capacity and groupCapacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.groupCapacity = groupCapacity;
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        ConcurrentSkipListSet<GroupMetadata<G>>[] routes = new ConcurrentSkipListSet[routeStripes];
+        this.groupRoutes = routes;
+        for(int i=0; i<routeStripes; i++) {
+            groupRoutes[i] = new ConcurrentSkipListSet<GroupMetadata<G>>();
+        }
+        this.groupPrioritizer = groupPrioritizer;
+        this.routesSkipped = metrics.getRoutesSkipped().getMetric();
+        this.routeNotFound = metrics.getRouteNotFound().getMetric();
+        this.pollTimer = metrics.getTaskQueuePollTimer().getMetric();
+        this.groupsEvicted = metrics.getGroupsEvicted().getMetric();
+    }
+
+    private int stripeFor(G group) {
+        int h = group.hashCode();
+        //spread the bits like HashMap does so sequential keys don't clump
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return (h & 0x7fffffff) % groupRoutes.length;
+    }
+
+    private int homeStripe() {
+        return (int) (Thread.currentThread().getId() % groupRoutes.length);
+    }
+
+    private GroupQueue getOrCreateGroupQueue(G group) {
+        GroupQueue q = queuesByGroup.get(group);
+        if(q != null && q.evicted) {
+            // help the evicting thread finish
+            queuesByGroup.remove(group, q);
+            q = null;
+        }
+        if(q == null) {
+            GroupQueue newQ = new GroupQueue(group);
+            q = queuesByGroup.putIfAbsent(group, newQ);
+            if(q == null) {
+                q = newQ;
+            }
+        }
+        return q;
+    }
+
+    public ITrackedQueue<E> getQueueByGroup(G group) {
+        GroupQueue q = queuesByGroup.get(group);
+        return q == null ? null : q.queue;
+    }
+
+    public Collection<G> getGroups() {
+        return Collections.unmodifiableSet(queuesByGroup.keySet());
+    }
+
+    public int evictIdleGroups(long idleMillis) {
+        long idleSince = System.currentTimeMillis() - idleMillis;
+        int evicted = 0;
+        for(Entry<G, GroupQueue> entry : queuesByGroup.entrySet()) {
+            GroupQueue q = entry.getValue();
+            if(!q.queue.isEmpty() || isActiveSince(q.queue, idleSince))
+                continue;
+            // while we hold the routed flag nobody can route this group.  An empty group
+            // that is still routed can be claimed by taking its route out of the set,
+            // unless a poller has it
+            boolean wasRouted = false;
+            if(!q.routed.compareAndSet(false, true)) {
+                if(!q.groupRoute.remove(q.route))
+                    continue;
+                wasRouted = true;
+            }
+            q.evicted = true;
+            if(!q.queue.isEmpty()) {
+                // an offer got in before it could see the evicted flag, keep the group
+                q.evicted = false;
+                if(wasRouted) {
+                    q.groupRoute.add(q.route);
+                    waiters.signal();
+                    continue;
+                }
+                q.routed.set(false);
+                if(!q.queue.isEmpty() && q.route())
+                    waiters.signal();
+                continue;
+            }
+            stats.untrack(q.queue);
+            if(queuesByGroup.remove(entry.getKey(), q))
+                evicted++;
+        }
+        groupsEvicted.mark(evicted);
+        return evicted;
+    }
+
+    private static boolean isActiveSince(ITrackedQueue<?> q, long time) {
+        Long added = q.getLastAddedTime();
+        Long removed = q.getLastRemovedTime();
+        return (added != null && added >= time) || (removed != null && removed >= time);
+    }
+
+    /**
+     * Returns false if the queue or the element's group is full
+     */
+    public boolean offer(E e) {
+        return enqueue(e, true);
+    }
+
+    private boolean enqueue(E e, boolean checkCapacity) {
+        if(waiters.handoff(e)) {
+            return true;
+        }
+        if(checkCapacity && capacity != Integer.MAX_VALUE && size() >= capacity) {
+            return false;
+        }
+        GroupQueue q;
+        boolean result;
+        for(;;) {
+            q = getOrCreateGroupQueue(e.getGroup());
+            if(checkCapacity && q.queue.size() >= groupCapacity) {
+                return false;
+            }
+            result = q.queue.offer(e);
+            if(!q.evicted)
+                break;
+            // the group was evicted under us.  If nobody took the element already, try again
+            if(!q.queue.remove(e))
+                return result;
+        }
+        q.route();
+        // a thread may have started waiting after we tried the handoff
+        waiters.signal();
+        return result;
+    }
+
+    public E poll() {
+        TimerContext ctx = pollTimer.time();
+        try {
+            int home = homeStripe();
+            for(int i=0; i<groupRoutes.length; i++) {
+                E value = poll(groupRoutes[(home + i) % groupRoutes.length], null, 1);
+                if(value != null) {
+                    producers.signal();
+                    return value;
+                }
+            }
+
+            routeNotFound.mark();
+            return null;
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    /**
+     * Takes up to maxElements from the group poll() would take from next, and moves
+     * that group's route back only once
+     */
+    public int drainNextGroup(Collection<? super E> c, int maxElements) {
+        if(maxElements < 1)
+            return 0;
+        TimerContext ctx = pollTimer.time();
+        try {
+            int before = c.size();
+            int home = homeStripe();
+            for(int i=0; i<groupRoutes.length; i++) {
+                if(poll(groupRoutes[(home + i) % groupRoutes.length], c, maxElements) != null) {
+                    producers.signal();
+                    return c.size() - before;
+                }
+            }
+
+            routeNotFound.mark();
+            return 0;
+        } finally {
+            ctx.stop();
+        }
+    }
+
+    /**
+     * @param batch - if not null, every element taken is added to it
+     * @param max - take up to this many elements from the chosen group
+     * @return the first element taken
+     */
+    private E poll(ConcurrentSkipListSet<GroupMetadata<G>> groupRoute, Collection<? super E> batch, int max) {
+        GroupMetadata<G> route;
+        while((route = groupRoute.pollLast()) != null) {
+            GroupQueue q = queuesByGroup.get(route.getGroup());
+            E value = q.queue.poll();
+            if(value != null) {
+                if(batch != null) {
+                    batch.add(value);
+                    E next;
+                    for(int n = 1; n < max && (next = q.queue.poll()) != null; n++) {
+                        batch.add(next);
+                    }
+                }
+                // we still own the route, put it back as a new entry with its new priority
+                GroupMetadata<G> next = new GroupMetadata<G>(route.getGroup(), groupPrioritizer.computePriority(route));
+                q.route = next;
+                groupRoute.add(next);
+                // another thread may have found the routes empty while we held this one
+                if(!q.queue.isEmpty())
+                    waiters.signal();
+                return value;
+            }
+
+            // give up the route, then make sure an offer didn't sneak in before we did
+            routesSkipped.mark();
+            q.routed.set(false);
+            if(!q.queue.isEmpty() && q.route()) {
+                waiters.signal();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the item the next poll() from this thread would return if nothing 
+     * changes in between.  Groups a poller is working on at this moment are not
+     * visible.
+     */
+    @Override
+    public E peek() {
+        int home = homeStripe();
+        for(int i=0; i<groupRoutes.length; i++) {
+            for(GroupMetadata<G> route : groupRoutes[(home + i) % groupRoutes.length].descendingSet()) {
+                GroupQueue q = queuesByGroup.get(route.getGroup());
+                if(q == null) continue; //evicted while we were iterating
+                E value = q.queue.peek();
+                if(value != null) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Blocks while the queue or the element's group is full
+     */
+    public void put(E e) throws InterruptedException {
+        producers.put(e);
+    }
+
+    /**
+     * Waits up to the timeout while the queue or the element's group is full
+     */
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        return producers.offer(e, timeout, unit);
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        return waiters.take();
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return waiters.poll(timeout, unit);
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return capacity - size();
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        int num = 0;
+        E elem;
+        while(num < maxElements && (elem = poll()) != null) {
+            c.add(elem);
+            num++;
+        }
+        return num;
+    }
+
+    public int drainTo(G partition, Collection<? super E> toCollection) {
+        return drainTo(partition, toCollection, Integer.MAX_VALUE);
+    }
+
+    public int drainTo(G partition, Collection<? super E> toCollection, int max) {
+        GroupQueue q = queuesByGroup.get(partition);
+        if(q == null)
+            return 0;
+        E elem = null;
+        int num = 0;
+        while (num < max && (elem = q.queue.poll()) != null) {
+            toCollection.add(elem);
+            num++;
+        }
+        producers.signal();
+        return num;
+    }
+
+    @Override
+    public Long getOldestQueueTime() {
+        return stats.getOldestItemTime();
+    }
+
+    @Override
+    public int size() {
+        return stats.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for(GroupQueue q : queuesByGroup.values()) {
+            if(!q.queue.isEmpty())
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        final List<Iterator<E>> queueIterators = new ArrayList<Iterator<E>>(queuesByGroup.size());
+        for(GroupQueue q : queuesByGroup.values()) {
+            queueIterators.add(q.queue.iterator());
+        }
+
+        return new Iterator<E>() {
+            private int currentQueue = 0;
+            private Iterator<E> last;
+
+            public boolean hasNext() {
+                while(currentQueue < queueIterators.size()) {
+                    if(queueIterators.get(currentQueue).hasNext())
+                        return true;
+                    currentQueue++;
+                }
+                return false;
+            }
+
+            public E next() {
+                if(!hasNext())
+                    throw new NoSuchElementException();
+                last = queueIterators.get(currentQueue);
+                return last.next();
+            }
+
+            public void remove() {
+                if(last == null)
+                    throw new IllegalStateException();
+                last.remove();
+            }
+        };
+    }
+
+    @Override
+    public Map<G, Integer> getGroupSizes(Predicate<G> predicate) {
+        Map<G, Integer> result = new HashMap<G, Integer>(queuesByGroup.size());
+        for (Entry<G, GroupQueue> groupQueue : queuesByGroup.entrySet()) {
+            G group = groupQueue.getKey();
+            if(predicate == null || predicate.apply(group)) {
+                result.put(group, groupQueue.getValue().queue.size());
+            }
+        }
+        return result;
+    }
+}
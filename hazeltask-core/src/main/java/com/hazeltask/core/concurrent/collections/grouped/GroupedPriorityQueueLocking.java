@@ -10,20 +10,21 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import lombok.extern.slf4j.Slf4j;
 
 import com.google.common.base.Predicate;
+import com.hazeltask.core.concurrent.collections.CapacityWaiters;
+import com.hazeltask.core.concurrent.collections.ConsumerHandoff;
 import com.hazeltask.core.concurrent.collections.grouped.prioritizer.GroupPrioritizer;
 import com.hazeltask.core.concurrent.collections.tracked.ITrackedQueue;
 import com.hazeltask.core.concurrent.collections.tracked.TrackCreated;
-import com.hazeltask.core.concurrent.collections.tracked.TrackedPriorityBlockingQueue;
+import com.hazeltask.core.concurrent.collections.tracked.TrackedRingBufferQueue;
 import com.hazeltask.executor.metrics.ExecutorMetrics;
 import com.yammer.metrics.core.Meter;
 import com.yammer.metrics.core.Timer;
@@ -41,30 +42,75 @@ public class GroupedPriorityQueueLocking<E extends Groupable<G> & TrackCreated,
     private final Map<G, ITrackedQueue<E>>        queuesByGroup = new HashMap<G, ITrackedQueue<E>>();
     
     /**
-     * Using a ConcurrentSkipListSet seems to have more predictable round robin routing than a 
-     * PriorityQueue.  See GroupedPriorityQueueTest
-     * 
-     * This is because a PriorityQueue breaks ties arbitrarily (according to docs) so, insertion
-     * order is not guaranteed
+     * Non-empty groups waiting for a poller, highest priority first.  Ties are broken in
+     * insertion order so equal priority groups are round robined.  See GroupedPriorityQueueTest
      * 
+     * Only touched under the write lock, except peek() which holds the read lock
+     */
+    private final GroupRouteHeap<G>               groupRoute    = new GroupRouteHeap<G>(16);
+    /**
+     * The one route entry each group has, whether or not it's routed right now
      */
-    private final ConcurrentSkipListSet<GroupMetadata<G>> groupRoute    = new ConcurrentSkipListSet<GroupMetadata<G>>();
-    private final Map<G, GroupMetadata<G>>        emptyQueues   = new HashMap<G, GroupMetadata<G>>();
-    private final CopyOnWriteArrayList<G>         groups        = new CopyOnWriteArrayList<G>();
+    private final Map<G, GroupMetadata<G>>        routes        = new HashMap<G, GroupMetadata<G>>();
+    private final Set<G>                          groups        = Collections.newSetFromMap(new ConcurrentHashMap<G, Boolean>());
     private final GroupPrioritizer<G>             groupPrioritizer;
+    private final GroupedQueueStats               stats         = new GroupedQueueStats();
 
     private final ReentrantReadWriteLock          lock          = new ReentrantReadWriteLock(false);
-    private final Condition                       notEmpty      = lock.writeLock().newCondition();
+    
+    /**
+     * Threads in take() and poll(timeout) park here instead of on a condition of the write 
+     * lock.  offer() gives its element straight to a parked thread when there is one.
+     */
+    private final ConsumerHandoff<E>              waiters       = new ConsumerHandoff<E>(this, new ConsumerHandoff.Requeue<E>() {
+        public void requeue(E e) {
+            enqueue(e, false);
+        }
+    });
+    private final CapacityWaiters<E>              producers     = new CapacityWaiters<E>(this);
+    
+    private final int capacity;
+    private final int groupCapacity;
+    private final int groupInitialCapacity;
     
     private final Meter routesSkipped;
     private final Meter routeNotFound;
+    private final Meter groupsEvicted;
     private final Timer pollTimer;
     
     public GroupedPriorityQueueLocking(ExecutorMetrics metrics, GroupPrioritizer<G> groupPrioritizer) {
+        this(metrics, groupPrioritizer, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * @param metrics
+     * @param groupPrioritizer
+     * @param capacity - the most items allowed in the queue across all groups
+     * @param groupCapacity - the most items allowed in a single group
+     */
+    public GroupedPriorityQueueLocking(ExecutorMetrics metrics, GroupPrioritizer<G> groupPrioritizer, int capacity, int groupCapacity) {
+        this(metrics, groupPrioritizer, capacity, groupCapacity, TrackedRingBufferQueue.DEFAULT_INITIAL_CAPACITY);
+    }
+    
+    /**
+     * @param metrics
+     * @param groupPrioritizer
+     * @param capacity - the most items allowed in the queue across all groups
+     * @param groupCapacity - the most items allowed in a single group
+     * @param groupInitialCapacity - how many items a group's queue holds before it resizes
+     */
+    public GroupedPriorityQueueLocking(ExecutorMetrics metrics, GroupPrioritizer<G> groupPrioritizer, int capacity, int groupCapacity, int groupInitialCapacity) {
+        if(capacity < 1 || groupCapacity < 1 || groupInitialCapacity < 1) {
+            throw new IllegalArgumentException("capacity, groupCapacity and groupInitialCapacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.groupCapacity = groupCapacity;
+        this.groupInitialCapacity = groupInitialCapacity;
         this.groupPrioritizer = groupPrioritizer;
         this.routesSkipped = metrics.getRoutesSkipped().getMetric();
         this.routeNotFound = metrics.getRouteNotFound().getMetric();
         this.pollTimer = metrics.getTaskQueuePollTimer().getMetric();
+        this.groupsEvicted = metrics.getGroupsEvicted().getMetric();
     }
 
     // /**
@@ -88,8 +134,40 @@ public class GroupedPriorityQueueLocking<E extends Groupable<G> & TrackCreated,
         }
     }
 
-    public List<G> getGroups() {
-        return Collections.unmodifiableList(groups);
+    public Collection<G> getGroups() {
+        return Collections.unmodifiableSet(groups);
+    }
+    
+    public int evictIdleGroups(long idleMillis) {
+        long idleSince = System.currentTimeMillis() - idleMillis;
+        int evicted = 0;
+        lock.writeLock().lock();
+        try {
+            Iterator<Entry<G, ITrackedQueue<E>>> it = queuesByGroup.entrySet().iterator();
+            while(it.hasNext()) {
+                Entry<G, ITrackedQueue<E>> entry = it.next();
+                ITrackedQueue<E> q = entry.getValue();
+                if(!q.isEmpty() || isActiveSince(q, idleSince))
+                    continue;
+                
+                G group = entry.getKey();
+                it.remove();
+                stats.untrack(q);
+                groupRoute.remove(routes.remove(group));
+                groups.remove(group);
+                evicted++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        groupsEvicted.mark(evicted);
+        return evicted;
+    }
+    
+    private static boolean isActiveSince(ITrackedQueue<?> q, long time) {
+        Long added = q.getLastAddedTime();
+        Long removed = q.getLastRemovedTime();
+        return (added != null && added >= time) || (removed != null && removed >= time);
     }
 
 //    public List<G> getNonEmptyGroups() {
@@ -114,14 +192,13 @@ public class GroupedPriorityQueueLocking<E extends Groupable<G> & TrackCreated,
             try {
                 q = getQueueByGroup(group);
                 if (q == null) {
-                    ITrackedQueue<E> newQ = new TrackedPriorityBlockingQueue<E>();
+                    ITrackedQueue<E> newQ = stats.track(new TrackedRingBufferQueue<E>(groupInitialCapacity));
                     if (queuesByGroup.put(group, newQ) == null) {
                         q = newQ;
     
                         GroupMetadata<G> metadata = new GroupMetadata<G>(group, 0);
-                        long priority = groupPrioritizer.computePriority(metadata);
-                        groupRoute.add(new GroupMetadata<G>(group, priority));
-                        emptyQueues.put(group, new GroupMetadata<G>(group, priority));
+                        metadata.setPriority(groupPrioritizer.computePriority(metadata));
+                        routes.put(group, metadata);
                         groups.add(group);
                     } else {
                         q = queuesByGroup.get(group);
@@ -138,62 +215,100 @@ public class GroupedPriorityQueueLocking<E extends Groupable<G> & TrackCreated,
      * Only 1 thread can write an element at a time... but multiple threads can
      * read as long as they are using poll() or peek()
      * 
-     * Using poll(timeout) or take() will block writers and wait if the queue is
-     * empty
+     * If a thread is waiting in take() or poll(timeout) the element is handed
+     * directly to it and never enters the queue
+     * 
+     * Returns false if the queue or the element's group is full
      */
     public boolean offer(E e) {
+        return enqueue(e, true);
+    }
+
+    private boolean enqueue(E e, boolean checkCapacity) {
+        if(waiters.handoff(e)) {
+            return true;
+        }
+        
         G partition = e.getGroup();
+        boolean result;
         lock.writeLock().lock();
         try {
+            if(checkCapacity && capacity != Integer.MAX_VALUE && size() >= capacity) {
+                return false;
+            }
             Queue<E> q = getOrCreateGroupQueue(partition);
+            if(checkCapacity && q.size() >= groupCapacity) {
+                return false;
+            }
             if (q.size() == 0) {
-                // remove from empty list and push onto available routes
-                GroupMetadata<G> metadata = emptyQueues.remove(partition);
-                if(metadata != null)
-                    groupRoute.add(metadata);
+                // push onto available routes, does nothing if it's still routed
+                groupRoute.add(routes.get(partition));
             }
-            boolean result = q.offer(e);
-            notEmpty.signal();
-            return result;
+            result = q.offer(e);
         } finally {
             lock.writeLock().unlock();
         }
+        
+        // a thread may have started waiting after we tried the handoff
+        waiters.signal();
+        return result;
     }
 
     public E poll() {
+        E value = pollInternal(null, 1);
+        if(value != null) {
+            // never signal while holding the write lock, producers take it while holding theirs
+            producers.signal();
+        }
+        return value;
+    }
+    
+    /**
+     * Takes up to maxElements from the group poll() would take from next, under one
+     * lock acquisition, and moves that group's route back only once
+     */
+    public int drainNextGroup(Collection<? super E> c, int maxElements) {
+        int before = c.size();
+        if(maxElements > 0 && pollInternal(c, maxElements) != null) {
+            producers.signal();
+        }
+        return c.size() - before;
+    }
+    
+    /**
+     * @param batch - if not null, every element taken is added to it
+     * @param max - take up to this many elements from the chosen group
+     * @return the first element taken
+     */
+    private E pollInternal(Collection<? super E> batch, int max) {
         TimerContext ctx = pollTimer.time();
         try {
             lock.writeLock().lock();
             try {
-                E value = null;
-                // this loop is blocking everyone...
-                int i = 1;
-                int size = groups.size();
-                while (value == null && !groupRoute.isEmpty()) {
-                    GroupMetadata<G> route = groupRoute.pollLast();
-                    ITrackedQueue<E> queue = getQueueByGroup(route.getGroup());
-                    value = queue.poll();
+                GroupMetadata<G> route;
+                while ((route = groupRoute.peek()) != null) {
+                    ITrackedQueue<E> queue = queuesByGroup.get(route.getGroup());
+                    E value = queue.poll();
                     if (value == null) {
-                        // stash route in empty queues
+                        // unroute it until something is offered to the group
                         routesSkipped.mark();
-                        emptyQueues.put(route.getGroup(), route);
-                    } else {
-                        // recompute priority for route
-                        long priority = groupPrioritizer.computePriority(route);
-                        groupRoute.add(new GroupMetadata<G>(route.getGroup(), priority));
-                        return value;
+                        groupRoute.poll();
+                        continue;
                     }
                     
-                    if(i > size) {
-                        //since we lock, this should never happen
-                        log.warn("This shouldn't happen, but tracking it just in case: i: {} size: {}", i, groups.size());
+                    if(batch != null) {
+                        batch.add(value);
+                        E next;
+                        for(int n = 1; n < max && (next = queue.poll()) != null; n++) {
+                            batch.add(next);
+                        }
                     }
-                    i++;
+                    // recompute priority for route and move it back in place
+                    groupRoute.update(route, groupPrioritizer.computePriority(route));
+                    return value;
                 }
                 
-                if(groupRoute.isEmpty()) 
-                    routeNotFound.mark();
-    
+                routeNotFound.mark();
                 return null;
             } finally {
                 lock.writeLock().unlock();
@@ -203,117 +318,98 @@ public class GroupedPriorityQueueLocking<E extends Groupable<G> & TrackCreated,
         }
     }
 
+    /**
+     * Returns the item the next poll() would return if nothing changes in between
+     */
     @Override
     public E peek() {
-        throw new RuntimeException("Not Implemented");
+        lock.readLock().lock();
+        try {
+            GroupMetadata<G> first = groupRoute.peek();
+            if(first == null)
+                return null;
+            E value = queuesByGroup.get(first.getGroup()).peek();
+            if(value != null)
+                return value;
+            
+            // the first group was emptied without polling, look through the rest in order
+            for(GroupMetadata<G> route : groupRoute.toSortedArray()) {
+                value = queuesByGroup.get(route.getGroup()).peek();
+                if(value != null) {
+                    return value;
+                }
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
+    /**
+     * Blocks while the queue or the element's group is full
+     */
     public void put(E e) throws InterruptedException {
+        producers.put(e);
     }
 
+    /**
+     * Waits up to the timeout while the queue or the element's group is full
+     */
     public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
-        return this.offer(e);
+        return producers.offer(e, timeout, unit);
     }
 
+    /**
+     * Waits without holding the lock
+     */
     @Override
     public E take() throws InterruptedException {
-        lock.writeLock().lockInterruptibly();
-        try {
-            E el;
-            do {
-                el = this.poll();
-                if (el == null) {
-                    try {
-                        notEmpty.await();
-                    } catch (InterruptedException ie) {
-                        notEmpty.signal();
-                        throw ie;
-                    }
-                }
-            } while (el == null);
-            return el;
-        } finally {
-            lock.writeLock().unlock();
-        }
+        return waiters.take();
     }
 
+    /**
+     * Waits without holding the lock
+     */
     @Override
     public E poll(long timeout, TimeUnit unit) throws InterruptedException {
-        lock.writeLock().lockInterruptibly();
-        try {
-            E el;
-            do {
-                el = this.poll();
-                if (el == null) {
-                    try {
-                        if (!notEmpty.await(timeout, unit)) { return null; }
-                    } catch (InterruptedException ie) {
-                        notEmpty.signal();
-                        throw ie;
-                    }
-                }
-            } while (el == null);
-            return el;
-        } finally {
-            lock.writeLock().unlock();
-        }
+        return waiters.poll(timeout, unit);
     }
 
     @Override
     public int remainingCapacity() {
-        return Integer.MAX_VALUE - size();
+        return capacity - size();
     }
 
     @Override
     public int drainTo(Collection<? super E> c) {
-        lock.writeLock().lock();
-        try {
-            int startSize = c.size();
-//            for (G group : groups) {
-//                drainTo(group, c);
-//            }
-            return c.size() - startSize;
-        } finally {
-            lock.writeLock().unlock();
-        }
+        return drainTo(c, Integer.MAX_VALUE);
     }
 
+    /**
+     * Drains in the same order poll() would
+     */
     @Override
     public int drainTo(Collection<? super E> c, int maxElements) {
-        lock.writeLock().lock();
-        try {
-            int startSize = c.size();
-//            for (G group : groups) {
-//                drainTo(group, c, maxElements);
-//            }
-            return c.size() - startSize;
-        } finally {
-            lock.writeLock().unlock();
+        int num = 0;
+        E elem;
+        while(num < maxElements && (elem = poll()) != null) {
+            c.add(elem);
+            num++;
         }
+        return num;
     }
 
     @Override
     public Long getOldestQueueTime() {
-        long oldestTime = Long.MAX_VALUE;
-        lock.readLock().lock();
-        try {
-            for (Entry<G, ITrackedQueue<E>> entry : this.queuesByGroup.entrySet()) {
-                Long oldest = entry.getValue().getOldestItemTime();
-                if (oldest != null && oldest < oldestTime) oldestTime = oldest;
-            }
-        } finally {
-            lock.readLock().unlock();
-        }
-
-        if (oldestTime == Long.MAX_VALUE) return null;
-
-        return oldestTime;
+        return stats.getOldestItemTime();
     }
 
     public int drainTo(G partition, Collection<? super E> toCollection) {
         E elem = null;
         int num = 0;
         Queue<E> q = getQueueByGroup(partition);
+        if(q == null)
+            return 0;
         lock.writeLock().lock();
         try {
             while ((elem = q.poll()) != null) {
@@ -323,6 +419,7 @@ public class GroupedPriorityQueueLocking<E extends Groupable<G> & TrackCreated,
             return num;
         } finally {
             lock.writeLock().unlock();
+            producers.signal();
         }
     }
 
@@ -330,6 +427,8 @@ public class GroupedPriorityQueueLocking<E extends Groupable<G> & TrackCreated,
         E elem = null;
         int num = 0;
         Queue<E> q = getQueueByGroup(partition);
+        if(q == null)
+            return 0;
         lock.writeLock().lock();
         try {
             while (num < max && (elem = q.poll()) != null) {
@@ -339,6 +438,7 @@ public class GroupedPriorityQueueLocking<E extends Groupable<G> & TrackCreated,
             return num;
         } finally {
             lock.writeLock().unlock();
+            producers.signal();
         }
     }
 
@@ -349,16 +449,7 @@ public class GroupedPriorityQueueLocking<E extends Groupable<G> & TrackCreated,
 
     @Override
     public int size() {
-        int size = 0;
-        lock.readLock().lock();
-        try {
-            for (Queue<E> q : queuesByGroup.values()) {
-                size += q.size();
-            }
-            return size;
-        } finally {
-            lock.readLock().unlock();
-        }
+        return stats.size();
     }
     
     public class FastPartitionedQueueIterator implements Iterator<E> {
@@ -429,13 +520,18 @@ public class GroupedPriorityQueueLocking<E extends Groupable<G> & TrackCreated,
 
     @Override
     public Map<G, Integer> getGroupSizes(Predicate<G> predicate) {
-        Map<G, Integer> result = new HashMap<G, Integer>(queuesByGroup.size());
-        for (Entry<G, ITrackedQueue<E>> groupQueue : queuesByGroup.entrySet()) {
-            G group = groupQueue.getKey();
-            if(predicate == null || predicate.apply(group)) {
-                result.put(group, groupQueue.getValue().size());
+        lock.readLock().lock();
+        try {
+            Map<G, Integer> result = new HashMap<G, Integer>(queuesByGroup.size());
+            for (Entry<G, ITrackedQueue<E>> groupQueue : queuesByGroup.entrySet()) {
+                G group = groupQueue.getKey();
+                if(predicate == null || predicate.apply(group)) {
+                    result.put(group, groupQueue.getValue().size());
+                }
             }
+            return result;
+        } finally {
+            lock.readLock().unlock();
         }
-        return result;
     }
 }
@@ -0,0 +1,247 @@
+package com.hazeltask.core.concurrent.collections.grouped;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.collect.ForwardingQueue;
+import com.hazeltask.core.concurrent.StripedCounter;
+import com.hazeltask.core.concurrent.collections.tracked.ITrackedQueue;
+import com.hazeltask.core.concurrent.collections.tracked.TrackCreated;
+
+/**
+ * Keeps the total size and oldest item time of a grouped queue up to date as its group
+ * queues change, so reading them doesn't visit every group.
+ *
+ * Group queues are handed out by getQueueByGroup() and changed directly (stealing,
+ * cancelling, clearing a group) so each one is wrapped by track() and reports its
+ * own changes.
+ *
+ * The oldest item time is cached and only worked out again, from every group's head, when
+ * a change may have made it wrong: an offer or a new group head older than it, or a removal
+ * of an item no newer than it.  Offers and polls just compare against the cache, so they never lock or allocate.
+ * While a read is working it out the cache is Long.MAX_VALUE, which makes any change that 
+ * lands during the read invalidate the result.
+ *
+ * @author jclawson
+ *
+ */
+class GroupedQueueStats {
+    private static final long EMPTY = Long.MAX_VALUE;
+    
+    private final StripedCounter size = new StripedCounter();
+    private final Set<StatsTrackedQueue<?>> queues = Collections.newSetFromMap(new ConcurrentHashMap<StatsTrackedQueue<?>, Boolean>());
+    private volatile long oldest = EMPTY;
+    private volatile boolean oldestStale = false;
+
+    public int size() {
+        long s = size.get();
+        if(s < 0)
+            return 0;
+        return s > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) s;
+    }
+
+    /**
+     * Only reads synchronize, so a read never sees the cache while another is working it out
+     */
+    public synchronized Long getOldestItemTime() {
+        if(oldestStale) {
+            oldestStale = false;
+            oldest = EMPTY;
+            long time = EMPTY;
+            for(StatsTrackedQueue<?> queue : queues) {
+                Long head = queue.getOldestItemTime();
+                if(head != null && head < time)
+                    time = head;
+            }
+            oldest = time;
+        }
+        long time = oldest;
+        return time == EMPTY ? null : time;
+    }
+
+    private void added(long time) {
+        if(time < oldest && !oldestStale)
+            oldestStale = true;
+    }
+
+    private void removed(long time) {
+        if(time <= oldest && !oldestStale)
+            oldestStale = true;
+    }
+
+    public <E extends TrackCreated> ITrackedQueue<E> track(ITrackedQueue<E> queue) {
+        StatsTrackedQueue<E> tracked = new StatsTrackedQueue<E>(queue);
+        queues.add(tracked);
+        return tracked;
+    }
+
+    /**
+     * Stop looking at a queue that was given out by track().  Call when its group is evicted
+     */
+    public void untrack(ITrackedQueue<?> queue) {
+        queues.remove(queue);
+    }
+
+    /**
+     * Only the mutators that change the delegate are overridden, the rest forward as is
+     */
+    private class StatsTrackedQueue<E extends TrackCreated> extends ForwardingQueue<E> implements ITrackedQueue<E> {
+        private final ITrackedQueue<E> delegate;
+
+        private StatsTrackedQueue(ITrackedQueue<E> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        protected Queue<E> delegate() {
+            return delegate;
+        }
+
+        /**
+         * Items of a FIFO group queue may be out of time order, so the next head can be older
+         * than the one just removed
+         */
+        private void headMayHaveChanged() {
+            E head = delegate.peek();
+            if(head != null)
+                added(head.getTimeCreated());
+        }
+
+        @Override
+        public boolean offer(E e) {
+            if(delegate.offer(e)) {
+                size.increment();
+                added(e.getTimeCreated());
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean add(E e) {
+            if(offer(e))
+                return true;
+            throw new IllegalStateException("Queue full");
+        }
+
+        @Override
+        public E poll() {
+            E e = delegate.poll();
+            if(e != null) {
+                size.decrement();
+                removed(e.getTimeCreated());
+                headMayHaveChanged();
+            }
+            return e;
+        }
+
+        public E pollNewest() {
+            E e = delegate.pollNewest();
+            if(e != null) {
+                size.decrement();
+                removed(e.getTimeCreated());
+                headMayHaveChanged();
+            }
+            return e;
+        }
+
+        public int pollNewest(int max, Collection<? super E> sink) {
+            List<E> taken = new ArrayList<E>();
+            int n = delegate.pollNewest(max, taken);
+            if(n > 0) {
+                for(E e : taken) {
+                    size.decrement();
+                    removed(e.getTimeCreated());
+                }
+                headMayHaveChanged();
+                sink.addAll(taken);
+            }
+            return n;
+        }
+
+        @Override
+        public E remove() {
+            E e = poll();
+            if(e == null)
+                throw new NoSuchElementException();
+            return e;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if(delegate.remove(o)) {
+                size.decrement();
+                removed(((TrackCreated) o).getTimeCreated());
+                headMayHaveChanged();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends E> c) {
+            return standardAddAll(c);
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> c) {
+            return standardRemoveAll(c);
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> c) {
+            return standardRetainAll(c);
+        }
+
+        @Override
+        public void clear() {
+            while(poll() != null);
+        }
+
+        /**
+         * Removes through remove(Object) so we know whether the item was still there
+         */
+        @Override
+        public Iterator<E> iterator() {
+            final Iterator<E> it = delegate.iterator();
+            return new Iterator<E>() {
+                private E last;
+
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                public E next() {
+                    last = it.next();
+                    return last;
+                }
+
+                public void remove() {
+                    if(last == null)
+                        throw new IllegalStateException();
+                    StatsTrackedQueue.this.remove(last);
+                    last = null;
+                }
+            };
+        }
+
+        public Long getOldestItemTime() {
+            return delegate.getOldestItemTime();
+        }
+
+        public Long getLastAddedTime() {
+            return delegate.getLastAddedTime();
+        }
+
+        public Long getLastRemovedTime() {
+            return delegate.getLastRemovedTime();
+        }
+    }
+}
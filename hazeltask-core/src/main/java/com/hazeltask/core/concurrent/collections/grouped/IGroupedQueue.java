@@ -16,8 +16,24 @@ public interface IGroupedQueue<E extends Groupable<G>, G> extends BlockingQueue<
 
     public abstract int drainTo(G partition, Collection<? super E> toCollection, int max);
 
+    /**
+     * Removes up to maxElements from the group poll() would take from next.  The group
+     * is rotated as if it was polled once.
+     * 
+     * @return the number of elements added to c
+     */
+    public int drainNextGroup(Collection<? super E> c, int maxElements);
+
     public Collection<G> getGroups();
     
+    /**
+     * Forget groups that are empty and haven't had anything added or removed for
+     * idleMillis.  A group is created again the next time something is offered to it.
+     * 
+     * @return the number of groups evicted
+     */
+    public int evictIdleGroups(long idleMillis);
+    
     public Map<G, Integer> getGroupSizes(Predicate<G> predicate);
     
     public ITrackedQueue<E> getQueueByGroup(G group);
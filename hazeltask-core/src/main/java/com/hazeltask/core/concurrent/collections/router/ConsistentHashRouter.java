@@ -0,0 +1,221 @@
+package com.hazeltask.core.concurrent.collections.router;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends each key to the same route with consistent hashing, so the items of a key keep
+ * landing where that key's state is warm.  Each route owns many points on a hash ring.
+ * When a route is added or removed only the keys next to its points move.
+ *
+ * Loads are bounded: a route is skipped while its load is at least loadFactor times
+ * the average, and the key goes on to the next route on the ring.  A hot key spills over
+ * to other routes instead of swamping its own.  Loads are pushed in with updateLoads(),
+ * and between updates each route counts what it was given.
+ *
+ * Every JVM must map a key to the same route, so routes and keys need a hashCode that
+ * is the same everywhere.  Enum keys are hashed by name.
+ *
+ * @author jclawson
+ *
+ * @param <T>
+ */
+public class ConsistentHashRouter<T> implements KeyedRouter<T>, LoadAwareRouter<T> {
+    public static final int DEFAULT_POINTS_PER_ROUTE = 64;
+    public static final double DEFAULT_LOAD_FACTOR = 1.25;
+
+    public static <E> ListRouterFactory<E> newFactory(final double loadFactor) {
+        return new ListRouterFactory<E>() {
+            public ListRouter<E> createRouter(Callable<List<E>> list) {
+                return new ConsistentHashRouter<E>(list, loadFactor, DEFAULT_POINTS_PER_ROUTE);
+            }
+
+            public ListRouter<E> createRouter(List<E> list) {
+                return new ConsistentHashRouter<E>(list, loadFactor, DEFAULT_POINTS_PER_ROUTE);
+            }
+        };
+    }
+
+    private static class Ring<T> {
+        private final List<T> routes;
+        private final long[] points;
+        private final Object[] owners;
+
+        private Ring(List<T> routes, int pointsPerRoute) {
+            this.routes = routes;
+            Point[] sorted = new Point[routes.size() * pointsPerRoute];
+            int n = 0;
+            for(T route : routes) {
+                long routeHash = route.hashCode();
+                for(int i = 0; i < pointsPerRoute; i++) {
+                    sorted[n++] = new Point(mix(routeHash * 0x9E3779B97F4A7C15L + i), route);
+                }
+            }
+            Arrays.sort(sorted);
+            points = new long[sorted.length];
+            owners = new Object[sorted.length];
+            for(int i = 0; i < sorted.length; i++) {
+                points[i] = sorted[i].hash;
+                owners[i] = sorted[i].owner;
+            }
+        }
+    }
+
+    private static class Point implements Comparable<Point> {
+        private final long hash;
+        private final Object owner;
+
+        private Point(long hash, Object owner) {
+            this.hash = hash;
+            this.owner = owner;
+        }
+
+        public int compareTo(Point o) {
+            return hash < o.hash ? -1 : (hash == o.hash ? 0 : 1);
+        }
+    }
+
+    private final List<T> list;
+    private final Callable<List<T>> fetchList;
+    private final double loadFactor;
+    private final int pointsPerRoute;
+    private RouteCondition<T> condition;
+    private volatile Ring<T> ring;
+    private volatile ConcurrentMap<T, RouteLoad> loads = new ConcurrentHashMap<T, RouteLoad>();
+    private final AtomicInteger unkeyed = new AtomicInteger();
+
+    public ConsistentHashRouter(List<T> list, double loadFactor, int pointsPerRoute) {
+        this(null, list, loadFactor, pointsPerRoute);
+    }
+
+    public ConsistentHashRouter(Callable<List<T>> fetchList, double loadFactor, int pointsPerRoute) {
+        this(fetchList, null, loadFactor, pointsPerRoute);
+    }
+
+    private ConsistentHashRouter(Callable<List<T>> fetchList, List<T> list, double loadFactor, int pointsPerRoute) {
+        if(loadFactor < 1)
+            throw new IllegalArgumentException("loadFactor must be at least 1");
+        if(pointsPerRoute < 1)
+            throw new IllegalArgumentException("pointsPerRoute must be at least 1");
+        this.fetchList = fetchList;
+        this.list = list;
+        this.loadFactor = loadFactor;
+        this.pointsPerRoute = pointsPerRoute;
+    }
+
+    public void updateLoads(Map<T, RouteLoad> loads) {
+        this.loads = new ConcurrentHashMap<T, RouteLoad>(loads);
+    }
+
+    /**
+     * Items without a key are spread around the ring
+     */
+    public T next() {
+        return next(unkeyed.incrementAndGet());
+    }
+
+    @SuppressWarnings("unchecked")
+    public T next(Object key) {
+        List<T> routes = getList();
+        if(routes.isEmpty())
+            return null;
+
+        long total = 0;
+        int routable = 0;
+        for(T route : routes) {
+            if(isRoutable(route)) {
+                total += getLoad(route).getLoad();
+                routable++;
+            }
+        }
+        if(routable == 0)
+            return null;
+        double limit = Math.ceil(loadFactor * (total + 1) / routable);
+
+        Ring<T> ring = getRing(routes);
+        int length = ring.points.length;
+        int start = Arrays.binarySearch(ring.points, mix(hash(key)));
+        if(start < 0)
+            start = -(start + 1);
+
+        T owner = null;
+        for(int i = 0; i < length; i++) {
+            T route = (T) ring.owners[(start + i) % length];
+            if(!isRoutable(route))
+                continue;
+            if(owner == null)
+                owner = route;
+            RouteLoad load = getLoad(route);
+            if(load.getLoad() < limit) {
+                load.routed();
+                return route;
+            }
+        }
+
+        //everything is at the limit, stick with the owner
+        getLoad(owner).routed();
+        return owner;
+    }
+
+    private boolean isRoutable(T route) {
+        return condition == null || condition.isRoutable(route);
+    }
+
+    private Ring<T> getRing(List<T> routes) {
+        Ring<T> ring = this.ring;
+        if(ring == null || !ring.routes.equals(routes)) {
+            ring = new Ring<T>(new ArrayList<T>(routes), pointsPerRoute);
+            this.ring = ring;
+        }
+        return ring;
+    }
+
+    private RouteLoad getLoad(T route) {
+        ConcurrentMap<T, RouteLoad> loads = this.loads;
+        RouteLoad load = loads.get(route);
+        if(load == null) {
+            load = new RouteLoad(0, 1);
+            RouteLoad existing = loads.putIfAbsent(route, load);
+            if(existing != null)
+                load = existing;
+        }
+        return load;
+    }
+
+    private static long hash(Object key) {
+        if(key == null)
+            return 0;
+        if(key instanceof Enum)
+            return ((Enum<?>) key).name().hashCode();
+        return key.hashCode();
+    }
+
+    /**
+     * Spread the bits of a hashCode over the whole ring
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private List<T> getList(){
+        try {
+            List<T> result = (list == null) ? fetchList.call() : list;
+            return result == null ? Collections.<T>emptyList() : result;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void setRouteCondition(RouteCondition<T> condition) {
+        this.condition = condition;
+    }
+}
@@ -0,0 +1,16 @@
+package com.hazeltask.core.concurrent.collections.router;
+
+/**
+ * A router that sends the same key to the same route while it can
+ * 
+ * @author jclawson
+ *
+ * @param <T>
+ */
+public interface KeyedRouter<T> extends ListRouter<T> {
+    /**
+     * @param key - its hashCode must be the same in every JVM
+     * @return
+     */
+    public T next(Object key);
+}
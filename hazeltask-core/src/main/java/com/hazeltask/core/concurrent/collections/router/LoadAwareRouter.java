@@ -0,0 +1,17 @@
+package com.hazeltask.core.concurrent.collections.router;
+
+import java.util.Map;
+
+/**
+ * A router that needs to be told how loaded each route is
+ * 
+ * @author jclawson
+ *
+ * @param <T>
+ */
+public interface LoadAwareRouter<T> extends ListRouter<T> {
+    /**
+     * Replace all the loads.  Routes left out are treated as empty until the next update
+     */
+    public void updateLoads(Map<T, RouteLoad> loads);
+}
@@ -0,0 +1,124 @@
+package com.hazeltask.core.concurrent.collections.router;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Picks two routes at random and returns the one with the shorter expected wait.  Always
+ * picking the least loaded route would send every caller to the same route until the
+ * loads are refreshed, picking the better of two spreads them out while still avoiding
+ * loaded routes.
+ *
+ * The loads are pushed in with updateLoads() by whoever measures them, next() never
+ * waits on anything.  Routes we have no load for are treated as empty.  Between updates
+ * each route counts what it was given so the wait estimate doesn't go stale.
+ *
+ * @author jclawson
+ *
+ * @param <T>
+ */
+public class PowerOfTwoChoicesRouter<T> implements LoadAwareRouter<T> {
+
+    private static ListRouterFactory<Object> FACTORY = new ListRouterFactory<Object>() {
+        public ListRouter<Object> createRouter(Callable<List<Object>> list) {
+            return new PowerOfTwoChoicesRouter<Object>(list);
+        }
+
+        public ListRouter<Object> createRouter(List<Object> list) {
+            return new PowerOfTwoChoicesRouter<Object>(list);
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    public static <E> ListRouterFactory<E> newFactory() {
+        return (ListRouterFactory<E>) FACTORY;
+    }
+
+    private final List<T> list;
+    private final Callable<List<T>> fetchList;
+    private RouteCondition<T> condition;
+    private volatile ConcurrentMap<T, RouteLoad> loads = new ConcurrentHashMap<T, RouteLoad>();
+    private final Random random = new Random();
+
+    public PowerOfTwoChoicesRouter(List<T> list){
+        this.list = list;
+        this.fetchList = null;
+    }
+
+    public PowerOfTwoChoicesRouter(Callable<List<T>> fetchList){
+        this.fetchList = fetchList;
+        this.list = null;
+    }
+
+    public void updateLoads(Map<T, RouteLoad> loads) {
+        this.loads = new ConcurrentHashMap<T, RouteLoad>(loads);
+    }
+
+    public T next() {
+        List<T> routes = getList();
+        if(condition != null) {
+            List<T> routable = new ArrayList<T>(routes.size());
+            for(T route : routes) {
+                if(condition.isRoutable(route))
+                    routable.add(route);
+            }
+            routes = routable;
+        }
+
+        int size = routes.size();
+        if(size == 0)
+            return null;
+
+        T result;
+        try {
+            if(size == 1) {
+                result = routes.get(0);
+            } else {
+                int a = random.nextInt(size);
+                int b = random.nextInt(size - 1);
+                if(b >= a)
+                    b++;
+                T first = routes.get(a);
+                T second = routes.get(b);
+                result = getLoad(second).getExpectedWait() < getLoad(first).getExpectedWait() ? second : first;
+            }
+        } catch(IndexOutOfBoundsException e) {
+            //list changed under us... try again
+            return next();
+        }
+
+        getLoad(result).routed();
+        return result;
+    }
+
+    private RouteLoad getLoad(T route) {
+        ConcurrentMap<T, RouteLoad> loads = this.loads;
+        RouteLoad load = loads.get(route);
+        if(load == null) {
+            load = new RouteLoad(0, 1);
+            RouteLoad existing = loads.putIfAbsent(route, load);
+            if(existing != null)
+                load = existing;
+        }
+        return load;
+    }
+
+    private List<T> getList(){
+        try {
+            List<T> result = (list == null) ? fetchList.call() : list;
+            return result == null ? Collections.<T>emptyList() : result;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void setRouteCondition(RouteCondition<T> condition) {
+        this.condition = condition;
+    }
+}
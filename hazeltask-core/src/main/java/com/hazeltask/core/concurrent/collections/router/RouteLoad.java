@@ -0,0 +1,44 @@
+package com.hazeltask.core.concurrent.collections.router;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A route's load as of the last update, plus what was routed to it since
+ * 
+ * @author jclawson
+ *
+ */
+public class RouteLoad {
+    private final long queued;
+    private final double drainRate;
+    private final AtomicLong routed = new AtomicLong();
+
+    /**
+     * @param queued - items waiting on the route
+     * @param drainRate - items the route finishes per second, must be greater than 0
+     */
+    public RouteLoad(long queued, double drainRate) {
+        if(!(drainRate > 0))
+            throw new IllegalArgumentException("drainRate must be greater than 0");
+        this.queued = queued;
+        this.drainRate = drainRate;
+    }
+
+    /**
+     * @return items waiting on the route, counting the ones routed since the update
+     */
+    public long getLoad() {
+        return queued + routed.get();
+    }
+
+    /**
+     * @return seconds until a new item on this route would be started
+     */
+    public double getExpectedWait() {
+        return getLoad() / drainRate;
+    }
+
+    void routed() {
+        routed.incrementAndGet();
+    }
+}
@@ -1,9 +1,25 @@
 package com.hazeltask.core.concurrent.collections.tracked;
 
+import java.util.Collection;
 import java.util.Queue;
 
 public interface ITrackedQueue<E> extends Queue<E> {
     public Long getOldestItemTime();
     public Long getLastAddedTime();
     public Long getLastRemovedTime();
+    
+    /**
+     * Remove the most recently created item, the one poll() would return last
+     * 
+     * @return null if the queue is empty
+     */
+    public E pollNewest();
+    
+    /**
+     * Remove up to max of the most recently created items, newest first, in a single
+     * pass instead of calling pollNewest() max times
+     * 
+     * @return how many items were added to the sink
+     */
+    public int pollNewest(int max, Collection<? super E> sink);
 }
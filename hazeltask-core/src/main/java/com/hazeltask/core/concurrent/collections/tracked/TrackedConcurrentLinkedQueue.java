@@ -0,0 +1,222 @@
+package com.hazeltask.core.concurrent.collections.tracked;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A non-blocking FIFO ITrackedQueue.  Items are returned in insertion order, not
+ * strictly in time created order like the TrackedPriorityBlockingQueue.  Tasks are
+ * almost always offered in the order they were created so this is close enough and
+ * lets producers and consumers work on the same group without a lock.
+ *
+ * ConcurrentLinkedQueue.size() is O(n) so we keep our own count.
+ *
+ * Each item sits in a holder that whoever takes the item must claim with a CAS.  That
+ * lets pollNewest claim items at the tail while walking the queue once, where
+ * ConcurrentLinkedQueue.remove(Object) would walk it again from the head for each one.
+ * Claimed holders stay linked until a poller reaches them and skips them.
+ *
+ * @author jclawson
+ *
+ * @param <E>
+ */
+public class TrackedConcurrentLinkedQueue<E extends TrackCreated> extends AbstractQueue<E> implements ITrackedQueue<E> {
+    private final ConcurrentLinkedQueue<AtomicReference<E>> queue = new ConcurrentLinkedQueue<AtomicReference<E>>();
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile Long lastAddedTime = null;
+    private volatile Long lastRemovedTime = null;
+
+    public Long getOldestItemTime() {
+        E elem = peek();
+        if(elem != null)
+            return elem.getTimeCreated();
+        else
+            return null;
+    }
+
+    public boolean offer(E e) {
+        if(e == null)
+            throw new NullPointerException();
+        boolean r = queue.offer(new AtomicReference<E>(e));
+        size.incrementAndGet();
+        lastAddedTime = System.currentTimeMillis();
+        return r;
+    }
+
+    public E poll() {
+        E e = null;
+        AtomicReference<E> holder;
+        while((holder = queue.poll()) != null) {
+            e = holder.getAndSet(null);
+            if(e != null) {
+                size.decrementAndGet();
+                break;
+            }
+            //claimed by pollNewest or remove, skip it
+        }
+        lastRemovedTime = System.currentTimeMillis();
+        return e;
+    }
+
+    public E pollNewest() {
+        while(true) {
+            AtomicReference<E> newest = null;
+            for(AtomicReference<E> holder : queue) {
+                if(holder.get() != null)
+                    newest = holder;
+            }
+            if(newest == null) {
+                lastRemovedTime = System.currentTimeMillis();
+                return null;
+            }
+            E e = claim(newest);
+            if(e != null)
+                return e;
+            //a poller took it first, look again
+        }
+    }
+
+    /**
+     * The newest items are the last ones offered.  ConcurrentLinkedQueue can only be
+     * walked from the head so we do that once, remembering the last max holders, and then
+     * claim them newest first.  Items a poller took in the meantime are not replaced so
+     * this may return fewer than max even though the queue still has older items.
+     */
+    public int pollNewest(int max, Collection<? super E> sink) {
+        int taken = 0;
+        if(max > 0) {
+            @SuppressWarnings({ "unchecked", "rawtypes" })
+            AtomicReference<E>[] window = new AtomicReference[max];
+            int seen = 0;
+            for(AtomicReference<E> holder : queue) {
+                if(holder.get() != null)
+                    window[seen++ % max] = holder;
+            }
+            for(int n = 1; n <= Math.min(seen, max); n++) {
+                E e = claim(window[(seen - n) % max]);
+                if(e != null) {
+                    sink.add(e);
+                    taken++;
+                }
+            }
+        }
+        lastRemovedTime = System.currentTimeMillis();
+        return taken;
+    }
+
+    /**
+     * Take the item out of its holder.  Only one of the threads racing for an item gets it
+     *
+     * @return null if someone else got it
+     */
+    private E claim(AtomicReference<E> holder) {
+        E e = holder.getAndSet(null);
+        if(e != null) {
+            size.decrementAndGet();
+            lastRemovedTime = System.currentTimeMillis();
+        }
+        return e;
+    }
+
+    /**
+     * Unlinks claimed holders it finds at the head.  They are the first node in the queue
+     * so removing them is O(1)
+     */
+    public E peek() {
+        AtomicReference<E> holder;
+        while((holder = queue.peek()) != null) {
+            E e = holder.get();
+            if(e != null)
+                return e;
+            queue.remove(holder);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        boolean r = false;
+        if(o != null) {
+            Iterator<AtomicReference<E>> it = queue.iterator();
+            while(it.hasNext()) {
+                AtomicReference<E> holder = it.next();
+                E e = holder.get();
+                if(e != null && o.equals(e) && holder.compareAndSet(e, null)) {
+                    size.decrementAndGet();
+                    //we own the holder now so it doesn't matter who unlinks it
+                    it.remove();
+                    r = true;
+                    break;
+                }
+            }
+        }
+        lastRemovedTime = System.currentTimeMillis();
+        return r;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return peek() == null;
+    }
+
+    @Override
+    public int size() {
+        return Math.max(0, size.get());
+    }
+
+    /**
+     * Skips claimed holders.  remove() claims the holder of the last item returned so we
+     * know whether a poller beat us to it
+     */
+    @Override
+    public Iterator<E> iterator() {
+        final Iterator<AtomicReference<E>> it = queue.iterator();
+        return new Iterator<E>() {
+            private AtomicReference<E> nextHolder;
+            private E nextItem;
+            private AtomicReference<E> lastHolder;
+            private E lastItem;
+
+            public boolean hasNext() {
+                while(nextItem == null && it.hasNext()) {
+                    nextHolder = it.next();
+                    nextItem = nextHolder.get();
+                }
+                return nextItem != null;
+            }
+
+            public E next() {
+                if(!hasNext())
+                    throw new NoSuchElementException();
+                lastHolder = nextHolder;
+                lastItem = nextItem;
+                nextItem = null;
+                return lastItem;
+            }
+
+            public void remove() {
+                if(lastHolder == null)
+                    throw new IllegalStateException();
+                if(lastHolder.compareAndSet(lastItem, null)) {
+                    size.decrementAndGet();
+                    lastRemovedTime = System.currentTimeMillis();
+                }
+                lastHolder = null;
+                lastItem = null;
+            }
+        };
+    }
+
+    public Long getLastAddedTime() {
+        return lastAddedTime;
+    }
+
+    public Long getLastRemovedTime() {
+        return lastRemovedTime;
+    }
+}
@@ -1,5 +1,8 @@
 package com.hazeltask.core.concurrent.collections.tracked;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.concurrent.PriorityBlockingQueue;
 
@@ -10,20 +13,23 @@ public class TrackedPriorityBlockingQueue<E extends TrackCreated> extends Priori
     private volatile Long lastAddedTime = null;
     private volatile Long lastRemovedTime = null;
     
-    //TODO: make this size configurable to prevent a lot of resizes
     private static final int DEFAULT_INITIAL_SIZE = 100;
     
     private static class TimeCreatedComparator<E extends TrackCreated> implements Comparator<E> {
         
         public int compare(E o1, E o2) {
-            Long t1 = o1.getTimeCreated();
-            Long t2 = o2.getTimeCreated();
-            return t1.compareTo(t2);
+            long t1 = o1.getTimeCreated();
+            long t2 = o2.getTimeCreated();
+            return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
         }
     }
     
     public TrackedPriorityBlockingQueue() {        
-        super(DEFAULT_INITIAL_SIZE, new TimeCreatedComparator<E>());
+        this(DEFAULT_INITIAL_SIZE);
+    }
+    
+    public TrackedPriorityBlockingQueue(int initialCapacity) {        
+        super(initialCapacity, new TimeCreatedComparator<E>());
     }
     
     public Long getOldestItemTime() {
@@ -48,6 +54,46 @@ public class TrackedPriorityBlockingQueue<E extends TrackCreated> extends Priori
         return e;
     }
 
+    /**
+     * The heap only knows its oldest item so this looks at all of them
+     */
+    public E pollNewest() {
+        while(true) {
+            E newest = null;
+            for(E e : this) {
+                if(newest == null || e.getTimeCreated() > newest.getTimeCreated())
+                    newest = e;
+            }
+            if(newest == null)
+                return null;
+            if(remove(newest))
+                return newest;
+            //a poller took it first, look again
+        }
+    }
+
+    /**
+     * Sorts one snapshot instead of looking at every item for each one we take.  The
+     * PriorityBlockingQueue can still only remove an item by searching for it, so this
+     * is for the odd steal, not for workers.
+     */
+    @SuppressWarnings("unchecked")
+    public int pollNewest(int max, Collection<? super E> sink) {
+        int taken = 0;
+        if(max > 0) {
+            Object[] snapshot = toArray();
+            Arrays.sort(snapshot, Collections.reverseOrder((Comparator<Object>) (Comparator<?>) comparator()));
+            for(int n = 0; n < snapshot.length && taken < max; n++) {
+                if(remove(snapshot[n])) {
+                    sink.add((E) snapshot[n]);
+                    taken++;
+                }
+            }
+        }
+        lastRemovedTime = System.currentTimeMillis();
+        return taken;
+    }
+
     @Override
     public boolean remove(Object o) {
         boolean r = super.remove(o);
@@ -0,0 +1,403 @@
+package com.hazeltask.core.concurrent.collections.tracked;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An ITrackedQueue ordered by time created, like the TrackedPriorityBlockingQueue, that
+ * is cheaper when items arrive (nearly) in time created order, which they almost always do.
+ *
+ * Items are kept in a ring buffer and offer/poll are O(1) while each offered item is
+ * no older than the newest one in the queue.  An out of order offer turns the buffer into
+ * a binary heap (a sorted array already is one) until the queue is drained, at which point
+ * it goes back to being a ring buffer.
+ *
+ * The times created are copied into a parallel long[] so comparisons never touch the
+ * items or box a Long.
+ *
+ * @author jclawson
+ *
+ * @param <E>
+ */
+public class TrackedRingBufferQueue<E extends TrackCreated> extends AbstractQueue<E> implements ITrackedQueue<E> {
+    public static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private Object[] items;
+    private long[] times;
+    /**
+     * Index of the oldest item while we are a ring buffer.  Always 0 in heap mode
+     */
+    private int head;
+    private int count;
+    private boolean heap;
+
+    private volatile Long lastAddedTime = null;
+    private volatile Long lastRemovedTime = null;
+
+    public TrackedRingBufferQueue() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    public TrackedRingBufferQueue(int initialCapacity) {
+        if(initialCapacity < 1)
+            throw new IllegalArgumentException("initialCapacity must be at least 1");
+        items = new Object[initialCapacity];
+        times = new long[initialCapacity];
+    }
+
+    public boolean offer(E e) {
+        if(e == null)
+            throw new NullPointerException();
+        long time = e.getTimeCreated();
+        lock.lock();
+        try {
+            if(count == items.length)
+                grow();
+
+            if(!heap && (count == 0 || time >= times[index(count - 1)])) {
+                int i = index(count);
+                items[i] = e;
+                times[i] = time;
+            } else {
+                if(!heap) {
+                    //out of order, the items in ring order are sorted so they are already a heap
+                    compact(items.length);
+                    heap = true;
+                }
+                siftUp(count, e, time);
+            }
+            count++;
+        } finally {
+            lock.unlock();
+        }
+        lastAddedTime = System.currentTimeMillis();
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        E e = null;
+        lock.lock();
+        try {
+            if(count > 0) {
+                e = (E) items[head];
+                removeAt(head);
+            }
+        } finally {
+            lock.unlock();
+        }
+        lastRemovedTime = System.currentTimeMillis();
+        return e;
+    }
+
+    /**
+     * O(1) while we are a ring buffer.  In heap mode the newest item is one of the
+     * leaves so we look through those
+     */
+    @SuppressWarnings("unchecked")
+    public E pollNewest() {
+        E e = null;
+        lock.lock();
+        try {
+            if(count > 0) {
+                int i;
+                if(!heap) {
+                    i = index(count - 1);
+                } else {
+                    i = count >>> 1;
+                    for(int n = i + 1; n < count; n++) {
+                        if(times[n] > times[i])
+                            i = n;
+                    }
+                }
+                e = (E) items[i];
+                removeAt(i);
+            }
+        } finally {
+            lock.unlock();
+        }
+        lastRemovedTime = System.currentTimeMillis();
+        return e;
+    }
+
+    /**
+     * O(k) while we are a ring buffer.  In heap mode we heap sort the items once, which
+     * leaves us a ring buffer again, instead of looking through the leaves for each item
+     */
+    @SuppressWarnings("unchecked")
+    public int pollNewest(int max, Collection<? super E> sink) {
+        int taken = 0;
+        lock.lock();
+        try {
+            if(heap && count > 0)
+                sortHeap();
+            for(; taken < max && count > 0; taken++) {
+                int i = index(count - 1);
+                sink.add((E) items[i]);
+                items[i] = null;
+                count--;
+            }
+            if(count == 0)
+                head = 0;
+        } finally {
+            lock.unlock();
+        }
+        lastRemovedTime = System.currentTimeMillis();
+        return taken;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        lock.lock();
+        try {
+            return count == 0 ? null : (E) items[head];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Long getOldestItemTime() {
+        lock.lock();
+        try {
+            return count == 0 ? null : times[head];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        boolean r = false;
+        if(o != null) {
+            lock.lock();
+            try {
+                for(int n = 0; n < count; n++) {
+                    int i = index(n);
+                    if(o.equals(items[i])) {
+                        removeAt(i);
+                        r = true;
+                        break;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        lastRemovedTime = System.currentTimeMillis();
+        return r;
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            for(int n = 0; n < count; n++) {
+                items[index(n)] = null;
+            }
+            head = 0;
+            count = 0;
+            heap = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean removeIdentity(Object o) {
+        boolean r = false;
+        lock.lock();
+        try {
+            for(int n = 0; n < count; n++) {
+                int i = index(n);
+                if(items[i] == o) {
+                    removeAt(i);
+                    r = true;
+                    break;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        lastRemovedTime = System.currentTimeMillis();
+        return r;
+    }
+
+    /**
+     * Like the PriorityBlockingQueue, iterates over a snapshot of the items in no
+     * particular order
+     */
+    @Override
+    public Iterator<E> iterator() {
+        final Object[] snapshot;
+        lock.lock();
+        try {
+            snapshot = new Object[count];
+            for(int n = 0; n < count; n++) {
+                snapshot[n] = items[index(n)];
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        return new Iterator<E>() {
+            private int cursor;
+            private int last = -1;
+
+            public boolean hasNext() {
+                return cursor < snapshot.length;
+            }
+
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if(cursor >= snapshot.length)
+                    throw new NoSuchElementException();
+                last = cursor++;
+                return (E) snapshot[last];
+            }
+
+            public void remove() {
+                if(last < 0)
+                    throw new IllegalStateException();
+                removeIdentity(snapshot[last]);
+                last = -1;
+            }
+        };
+    }
+
+    public Long getLastAddedTime() {
+        return lastAddedTime;
+    }
+
+    public Long getLastRemovedTime() {
+        return lastRemovedTime;
+    }
+
+    /**
+     * Position of the n'th item in ring order.  In heap mode head is 0 and this is n
+     */
+    private int index(int n) {
+        int i = head + n;
+        return i >= items.length ? i - items.length : i;
+    }
+
+    private void grow() {
+        int oldCapacity = items.length;
+        int newCapacity = oldCapacity < 64 ? oldCapacity * 2 + 2 : oldCapacity + (oldCapacity >> 1);
+        if(newCapacity < 0)
+            throw new OutOfMemoryError();
+        compact(newCapacity);
+    }
+
+    /**
+     * Copy the items in ring order to the start of new arrays of the given size
+     */
+    private void compact(int capacity) {
+        Object[] newItems = new Object[capacity];
+        long[] newTimes = new long[capacity];
+        int firstRun = Math.min(count, items.length - head);
+        System.arraycopy(items, head, newItems, 0, firstRun);
+        System.arraycopy(times, head, newTimes, 0, firstRun);
+        System.arraycopy(items, 0, newItems, firstRun, count - firstRun);
+        System.arraycopy(times, 0, newTimes, firstRun, count - firstRun);
+        items = newItems;
+        times = newTimes;
+        head = 0;
+    }
+
+    /**
+     * Poll the heap empty into new arrays, oldest first, and become a ring buffer again
+     */
+    private void sortHeap() {
+        Object[] sortedItems = new Object[items.length];
+        long[] sortedTimes = new long[times.length];
+        int size = count;
+        for(int n = 0; n < size; n++) {
+            sortedItems[n] = items[0];
+            sortedTimes[n] = times[0];
+            removeAt(0);
+        }
+        items = sortedItems;
+        times = sortedTimes;
+        head = 0;
+        count = size;
+        heap = false;
+    }
+
+    private void removeAt(int i) {
+        if(!heap) {
+            if(i == head) {
+                items[head] = null;
+                head = index(1);
+            } else {
+                //keep ring order by shifting the newer items down
+                int n = i >= head ? i - head : i + items.length - head;
+                for(; n < count - 1; n++) {
+                    int to = index(n);
+                    int from = index(n + 1);
+                    items[to] = items[from];
+                    times[to] = times[from];
+                }
+                items[index(count - 1)] = null;
+            }
+            count--;
+            if(count == 0)
+                head = 0;
+            return;
+        }
+
+        int last = --count;
+        Object moved = items[last];
+        long movedTime = times[last];
+        items[last] = null;
+        if(last != i) {
+            siftDown(i, moved, movedTime);
+            if(items[i] == moved)
+                siftUp(i, moved, movedTime);
+        }
+        if(count == 0)
+            heap = false;
+    }
+
+    private void siftUp(int k, Object x, long time) {
+        while(k > 0) {
+            int parent = (k - 1) >>> 1;
+            if(time >= times[parent])
+                break;
+            items[k] = items[parent];
+            times[k] = times[parent];
+            k = parent;
+        }
+        items[k] = x;
+        times[k] = time;
+    }
+
+    private void siftDown(int k, Object x, long time) {
+        int half = count >>> 1;
+        while(k < half) {
+            int child = (k << 1) + 1;
+            int right = child + 1;
+            if(right < count && times[right] < times[child])
+                child = right;
+            if(time <= times[child])
+                break;
+            items[k] = items[child];
+            times[k] = times[child];
+            k = child;
+        }
+        items[k] = x;
+        times[k] = time;
+    }
+}
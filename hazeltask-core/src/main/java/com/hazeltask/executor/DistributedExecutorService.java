@@ -1,8 +1,11 @@
 package com.hazeltask.executor;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import com.hazeltask.ServiceListenable;
@@ -18,4 +21,40 @@ public interface DistributedExecutorService<GROUP extends Serializable> extends
     
     @Override
     public <T> ListenableFuture<T> submit(Runnable task, T result);
+    
+    /**
+     * Submit many tasks at once.  The tasks are spread over the members like submit()
+     * spreads them, but they are written to the write ahead log with one putAll and each
+     * member gets its share in one call.
+     * 
+     * @return a future for each task, in the same order.  The future of a task that no 
+     *         member had room for fails with a RejectedExecutionException
+     */
+    public <T> List<ListenableFuture<T>> submitAll(Collection<? extends Callable<T>> tasks);
+    
+    /**
+     * Execute many tasks at once, see submitAll
+     * 
+     * @throws RejectedExecutionException if some tasks were refused because every member's
+     *         task queue is full.  The rest are still executed
+     */
+    public void executeAll(Collection<? extends Runnable> tasks);
+    
+    /**
+     * Execute a task and find out when it's safely submitted.  With an asynchronous write 
+     * ahead log this returns right away.  The task is sent to a member on another thread 
+     * while the write ahead log put is in flight.  Otherwise the put is done and the task 
+     * is sent before this returns, and the future is already complete.
+     * <p>
+     * If the future fails because the put failed, the task was already sent and will 
+     * probably run.  It just isn't in the write ahead log, so it won't be recovered if its 
+     * member dies.  Don't resubmit it unless running it twice is ok.
+     * 
+     * @see com.hazeltask.config.ExecutorConfig#useAsynchronousWriteAheadLog()
+     * @return completes when the task is in the write ahead log and a member accepted it.
+     *         Fails with a RejectedExecutionException if every member's task queue is full
+     * @throws RejectedExecutionException if every member's task queue is full and the write
+     *         ahead log is not asynchronous
+     */
+    public ListenableFuture<Void> executeAsync(Runnable task);
 }
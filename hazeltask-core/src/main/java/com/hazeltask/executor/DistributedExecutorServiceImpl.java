@@ -4,28 +4,42 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import lombok.extern.slf4j.Slf4j;
 
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.hazelcast.core.Member;
+import com.hazelcast.nio.IOUtil;
 import com.hazeltask.HazeltaskServiceListener;
 import com.hazeltask.HazeltaskTopology;
 import com.hazeltask.config.ExecutorConfig;
+import com.hazeltask.core.concurrent.collections.router.KeyedRouter;
 import com.hazeltask.core.concurrent.collections.router.ListRouter;
 import com.hazeltask.executor.local.LocalTaskExecutorService;
 import com.hazeltask.executor.metrics.ExecutorMetrics;
 import com.hazeltask.executor.task.HazeltaskTask;
+import com.hazeltask.executor.task.PayloadCompression;
 import com.hazeltask.executor.task.TaskIdAdapter;
 import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Histogram;
 import com.yammer.metrics.core.Meter;
 import com.yammer.metrics.core.TimerContext;
 
@@ -50,9 +64,21 @@ public class DistributedExecutorServiceImpl<GROUP extends Serializable> implemen
     
     private com.yammer.metrics.core.Timer taskAddedTimer;
     private Meter tasksRejected;
+    private Meter memberSaturated;
+    private Histogram taskBatchSize;
+    private Meter partitionOwnerMissed;
+    private Meter localDispatches;
+    private Meter remoteDispatches;
+    private final boolean partitionOwnerRouting;
+    private final PayloadCompression payloadCompression;
+    private final boolean asynchronousWriteAheadLog;
+    /**
+     * Sends the tasks given to executeAsync so the caller doesn't wait for a member
+     */
+    private final Executor asyncDispatcher;
     
-    //max number of times to try and submit a work before giving up
-    private final int MAX_SUBMIT_TRIES = 10;
+    private final MemberFailureBackoff retries;
+    private Meter submitRetries;
     
     private boolean isStarted = false;
     private boolean isShutdown = false;
@@ -63,6 +89,7 @@ public class DistributedExecutorServiceImpl<GROUP extends Serializable> implemen
                                       ExecutorConfig<GROUP>            executorConfig, 
                                       DistributedFutureTracker<GROUP>  futureTracker, 
                                       LocalTaskExecutorService<GROUP> localExecutorService,
+                                      Executor asyncDispatcher,
                                       ExecutorMetrics metrics) {
         this.topology = hcTopology;
         this.executorConfig = executorConfig;
@@ -80,6 +107,19 @@ public class DistributedExecutorServiceImpl<GROUP extends Serializable> implemen
         
         taskAddedTimer = metrics.getTaskSubmitTimer().getMetric();
         tasksRejected = metrics.getTaskRejectedMeter().getMetric();
+        memberSaturated = metrics.getMemberSaturatedMeter().getMetric();
+        taskBatchSize = metrics.getTaskBatchSizeHistogram().getMetric();
+        partitionOwnerMissed = metrics.getPartitionOwnerMissedMeter().getMetric();
+        localDispatches = metrics.getLocalDispatchMeter().getMetric();
+        remoteDispatches = metrics.getRemoteDispatchMeter().getMetric();
+        partitionOwnerRouting = executorConfig.getLoadBalancingConfig().isPartitionOwnerRouting();
+        payloadCompression = PayloadCompression.create(executorConfig, metrics);
+        asynchronousWriteAheadLog = executorConfig.isAsynchronousWriteAheadLog();
+        this.asyncDispatcher = asyncDispatcher;
+        retries = new MemberFailureBackoff(executorConfig.getMaxSubmitTries(), 
+                executorConfig.getSubmitRetryInitialBackoff(), 
+                executorConfig.getSubmitRetryMaxBackoff());
+        submitRetries = metrics.getSubmitRetryMeter().getMetric();
         
         metrics.registerLocalWriteAheadLogSizeGauge(new Gauge<Integer>(){
             @Override
@@ -103,6 +143,110 @@ public class DistributedExecutorServiceImpl<GROUP extends Serializable> implemen
         }
     }
     
+    @Override
+    public void executeAll(Collection<? extends Runnable> tasks) {
+        TimerContext ctx = taskAddedTimer.time();
+        try {
+            List<HazeltaskTask<GROUP>> wrappers = new ArrayList<HazeltaskTask<GROUP>>(tasks.size());
+            List<HazeltaskTask<GROUP>> resubmitted = new ArrayList<HazeltaskTask<GROUP>>();
+            for(Runnable task : tasks) {
+                //a HazeltaskTask keeps its id so it may already be in the write ahead log
+                if(task instanceof HazeltaskTask)
+                    resubmitted.add(createHazeltaskTaskWrapper(task));
+                else
+                    wrappers.add(createHazeltaskTaskWrapper(task));
+            }
+            
+            List<HazeltaskTask<GROUP>> refused = submitHazeltaskTasks(wrappers, resubmitted);
+            if(!refused.isEmpty())
+                throw new RejectedExecutionException("Unable to submit "+refused.size()+" of "+tasks.size()+" tasks.  Every member's task queue is full");
+        } finally {
+            ctx.stop();
+        }
+    }
+    
+    @Override
+    public ListenableFuture<Void> executeAsync(Runnable command) {
+        TimerContext ctx = taskAddedTimer.time();
+        try {
+            HazeltaskTask<GROUP> wrapper = createHazeltaskTaskWrapper(command);
+            if(!asynchronousWriteAheadLog) {
+                submitHazeltaskTask(wrapper, false);
+                return Futures.immediateFuture(null);
+            }
+            
+            wrapper.setPayloadCompression(payloadCompression);
+            final ListenableFuture<HazeltaskTask<GROUP>> logged = executorTopologyService.addPendingTaskAsync(wrapper);
+            final SettableFuture<Void> sent = SettableFuture.create();
+            final HazeltaskTask<GROUP> task = wrapper;
+            Runnable send = new Runnable() {
+                public void run() {
+                    try {
+                        dispatchTask(task, true, logged);
+                        sent.set(null);
+                    } catch (Throwable t) {
+                        sent.setException(t);
+                    }
+                }
+            };
+            try {
+                asyncDispatcher.execute(send);
+            } catch (RejectedExecutionException e) {
+                send.run();
+            }
+            
+            //only look at the put once we know whether the task went out, so a failed put 
+            //always means the task was sent
+            return Futures.transform(sent, new AsyncFunction<Void, Void>() {
+                public ListenableFuture<Void> apply(Void input) {
+                    return Futures.transform(logged, new Function<Object, Void>() {
+                        public Void apply(Object input) {
+                            return null;
+                        }
+                    });
+                }
+            });
+        } finally {
+            ctx.stop();
+        }
+    }
+    
+    @Override
+    public <T> List<ListenableFuture<T>> submitAll(Collection<? extends Callable<T>> tasks) {
+        TimerContext ctx = taskAddedTimer.time();
+        try {
+            if(futureTracker == null)
+                throw new IllegalStateException("FutureTracker is null");
+            
+            List<HazeltaskTask<GROUP>> wrappers = new ArrayList<HazeltaskTask<GROUP>>(tasks.size());
+            List<ListenableFuture<T>> futures = new ArrayList<ListenableFuture<T>>(tasks.size());
+            for(Callable<T> task : tasks) {
+                HazeltaskTask<GROUP> taskWrapper = createHazeltaskTaskWrapper(task);
+                wrappers.add(taskWrapper);
+                futures.add(futureTracker.<T>createFuture(taskWrapper));
+            }
+            
+            List<HazeltaskTask<GROUP>> refused;
+            try {
+                refused = submitHazeltaskTasks(wrappers, Collections.<HazeltaskTask<GROUP>>emptyList());
+            } catch (RuntimeException e) {
+                //nobody will see these futures
+                for(HazeltaskTask<GROUP> taskWrapper : wrappers)
+                    futureTracker.remove(taskWrapper.getId());
+                throw e;
+            }
+            
+            for(HazeltaskTask<GROUP> taskWrapper : refused) {
+                DistributedFuture<GROUP, Serializable> future = futureTracker.remove(taskWrapper.getId());
+                if(future != null)
+                    future.setException(new RejectedExecutionException("Unable to submit task.  Every member's task queue is full"));
+            }
+            return futures;
+        } finally {
+            ctx.stop();
+        }
+    }
+    
     @Override
     public void shutdown() {
         doShutdownNow(false);
@@ -165,7 +309,7 @@ public class DistributedExecutorServiceImpl<GROUP extends Serializable> implemen
             
             HazeltaskTask<GROUP> taskWrapper = createHazeltaskTaskWrapper(task);
             DistributedFuture<GROUP, T> future = futureTracker.createFuture(taskWrapper);
-            if(!submitHazeltaskTask(taskWrapper, false)) {
+            if(!submitHazeltaskTaskTracked(taskWrapper)) {
                 //remove future from tracker, error out future with duplicate exception
                 //i hate this... it would be a cool feature to attach this future to the 
                 //work in progress.  its easier to just cancel it for now
@@ -231,58 +375,347 @@ public class DistributedExecutorServiceImpl<GROUP extends Serializable> implemen
             
             HazeltaskTask<GROUP> taskWrapper = createHazeltaskTaskWrapper(task);
             DistributedFuture<GROUP, ?> future = futureTracker.createFuture(taskWrapper);
-            submitHazeltaskTask(taskWrapper, false);
+            submitHazeltaskTaskTracked(taskWrapper);
             return future;
         } finally {
             ctx.stop();
         }
     }
     
+    /**
+     * Stop tracking the future if every member refused the task
+     */
+    private boolean submitHazeltaskTaskTracked(HazeltaskTask<GROUP> taskWrapper) {
+        try {
+            return submitHazeltaskTask(taskWrapper, false);
+        } catch (RejectedExecutionException e) {
+            futureTracker.remove(taskWrapper.getId());
+            throw e;
+        }
+    }
+    
+    /**
+     * 
+     * @param wrapper
+     * @param isResubmitting
+     * @return
+     * @throws RejectedExecutionException if this is a new task and every member's task queue is full.
+     *         Members only refuse tasks when the task queue is bounded
+     */
     public boolean submitHazeltaskTask(HazeltaskTask<GROUP> wrapper, boolean isResubmitting) {      
+        final boolean isNewTask = !isResubmitting;
+        wrapper.setPayloadCompression(payloadCompression);
+        
+        //a task we wrapped has a new id so there is nothing to check putIfAbsent against
+        if(isNewTask && asynchronousWriteAheadLog)
+            return dispatchTask(wrapper, true, executorTopologyService.addPendingTaskAsync(wrapper));
         
-        //WorkId workKey = wrapper.getWorkId();
-        boolean executeTask = true;
-        /*
-         * with acknowledgeWorkSubmition, we will sit in this loop until a 
-         * node accepts our work item.  Currently, a node will accept as long as
-         * a MemberLeftException is not thrown
-         */
+        if(isResubmitting) {
+            wrapper.setSubmissionCount(wrapper.getSubmissionCount()+1);
+            executorTopologyService.addPendingTask(wrapper, true);
+        } else if(!executorTopologyService.addPendingTask(wrapper, false)) {
+            //do not submit
+            tasksRejected.mark();
+            return false;
+        }
+        return dispatchTask(wrapper, isNewTask, null);
+    }
+
+    /**
+     * Send a task that is in the write ahead log, or on its way there, to a member.  A 
+     * failed send is retried with backoff, avoiding the members that just failed.  Only
+     * the target changes, so the write ahead log entry is left alone.  If the write ahead 
+     * log put is still in flight and the task finishes first, the completed marker keeps
+     * recovery from running it again.
+     * 
+     * @param wrapper
+     * @param isNewTask
+     * @param logged - the write ahead log put if it's still in flight (nullable)
+     * @return false if no member is online or every member refused a task we are 
+     *         resubmitting.  The task stays in the write ahead log
+     * @throws RejectedExecutionException if this is a new task and every member's task queue is full.
+     *         Members only refuse tasks when the task queue is bounded
+     */
+    private boolean dispatchTask(HazeltaskTask<GROUP> wrapper, boolean isNewTask, Future<?> logged) {
+        int maxTries = retries.getMaxTries();
         int tries = 0;
-        while(++tries <= MAX_SUBMIT_TRIES) {
-            if(isResubmitting) {
-                wrapper.setSubmissionCount(wrapper.getSubmissionCount()+1);
-                executorTopologyService.addPendingTask(wrapper, true);
-            } else {
-                executeTask = executorTopologyService.addPendingTask(wrapper, false);
+        while(++tries <= maxTries) {
+            Member m = routeTask(wrapper);
+            if(m == null) {
+                log.warn("Work submitted to writeAheadLog but no members are online to do the work.");
+                tasksRejected.mark();
+                return false;
             }
             
-            if(executeTask) {
-                Member m = memberRouter.next();
-                if(m == null) {
-                    log.warn("Work submitted to writeAheadLog but no members are online to do the work.");
-                    tasksRejected.mark();
-                    return false;
-                }
-                
-                try {
-                    executorTopologyService.sendTask(wrapper, m);
+            try {
+                if(sendTask(wrapper, m) 
+                        || sendTaskToUnsaturatedMember(wrapper, m)) {
                     return true;
-                } catch (RuntimeException e) {
-                    log.error("Tried to distribute task, but I got an exception",e);
-                    isResubmitting = true;
-                } catch (TimeoutException e) {
-                    log.warn("Timed out while trying to submit task for try #"+tries+", trying again...");
-                    isResubmitting = true;
                 }
-            } else {
-                //do not submit
+                
                 tasksRejected.mark();
+                if(isNewTask) {
+                    if(logged != null) {
+                        //the remove must not overtake the put
+                        try {
+                            Uninterruptibles.getUninterruptibly(logged);
+                        } catch (ExecutionException e) {
+                            log.warn("Unable to write the task to the write ahead log", e.getCause());
+                        }
+                    }
+                    executorTopologyService.removePendingTask(wrapper);
+                    throw new RejectedExecutionException("Unable to submit task.  Every member's task queue is full");
+                }
+                //leave it in the write ahead log, recovery will try again later
                 return false;
+            } catch (RejectedExecutionException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                log.error("Tried to distribute task, but I got an exception",e);
+                retries.failed(m);
+            } catch (TimeoutException e) {
+                log.warn("Timed out while trying to submit task for try #"+tries+", trying again...");
+                retries.failed(m);
+            }
+            
+            if(tries < maxTries) {
+                submitRetries.mark();
+                if(!retries.backoff(tries))
+                    break;
             }
         }
         
         tasksRejected.mark();
-        throw new RuntimeException("Unable to submit work to nodes. I tried "+MAX_SUBMIT_TRIES+" times.");
+        throw new RuntimeException("Unable to submit work to nodes. I tried "+Math.min(tries, maxTries)+" times.");
+    }
+
+    /**
+     * Submit new tasks in batches.  The tasks are routed one by one like submitHazeltaskTask
+     * routes them, then each member's share is sent in one call.  If no member is online, or
+     * a batch can't be sent within the retry budget, the tasks stay in the write ahead log 
+     * for recovery to pick up.
+     * 
+     * <p>The new tasks are written to the write ahead log with one call.  Tasks that are 
+     * submitted again may still be in it, so like submitHazeltaskTask each of them is only 
+     * written if it isn't there, and skipped if it is.  If writing to the write ahead log 
+     * fails, what was written is removed again and the exception is thrown.
+     * 
+     * @param tasks - tasks we created, whose ids can't be in the write ahead log
+     * @param resubmitted - tasks submitted as HazeltaskTasks
+     * @return the tasks that were refused because every member's task queue is full.  They
+     *         are removed from the write ahead log
+     */
+    protected List<HazeltaskTask<GROUP>> submitHazeltaskTasks(List<HazeltaskTask<GROUP>> tasks, List<HazeltaskTask<GROUP>> resubmitted) {
+        if(tasks.isEmpty() && resubmitted.isEmpty())
+            return Collections.emptyList();
+        
+        for(HazeltaskTask<GROUP> task : tasks)
+            task.setPayloadCompression(payloadCompression);
+        for(HazeltaskTask<GROUP> task : resubmitted)
+            task.setPayloadCompression(payloadCompression);
+        
+        List<HazeltaskTask<GROUP>> logged = new ArrayList<HazeltaskTask<GROUP>>(tasks.size() + resubmitted.size());
+        try {
+            if(!tasks.isEmpty())
+                executorTopologyService.addPendingTasks(tasks);
+            logged.addAll(tasks);
+            for(HazeltaskTask<GROUP> task : resubmitted) {
+                if(executorTopologyService.addPendingTask(task, false)) {
+                    logged.add(task);
+                } else {
+                    log.error("Unable to submit HazeltaskTask "+task.getId()+".  It is already in the write ahead log");
+                    tasksRejected.mark();
+                }
+            }
+        } catch (RuntimeException e) {
+            //a failed putAll may have written some of the new tasks
+            for(HazeltaskTask<GROUP> task : logged.isEmpty() ? tasks : logged)
+                executorTopologyService.removePendingTask(task);
+            throw e;
+        }
+        tasks = logged;
+        if(tasks.isEmpty())
+            return Collections.emptyList();
+        
+        Map<Member, List<HazeltaskTask<GROUP>>> batches = new LinkedHashMap<Member, List<HazeltaskTask<GROUP>>>();
+        for(HazeltaskTask<GROUP> task : tasks) {
+            Member m = routeTask(task);
+            if(m == null) {
+                log.warn("Work submitted to writeAheadLog but no members are online to do the work.");
+                tasksRejected.mark(tasks.size());
+                return Collections.emptyList();
+            }
+            List<HazeltaskTask<GROUP>> batch = batches.get(m);
+            if(batch == null) {
+                batch = new ArrayList<HazeltaskTask<GROUP>>();
+                batches.put(m, batch);
+            }
+            batch.add(task);
+        }
+        
+        List<HazeltaskTask<GROUP>> refused = new ArrayList<HazeltaskTask<GROUP>>();
+        for(Entry<Member, List<HazeltaskTask<GROUP>>> entry : batches.entrySet()) {
+            refused.addAll(sendBatch(entry.getValue(), entry.getKey()));
+        }
+        
+        if(!refused.isEmpty()) {
+            tasksRejected.mark(refused.size());
+            for(HazeltaskTask<GROUP> task : refused) {
+                executorTopologyService.removePendingTask(task);
+            }
+        }
+        return refused;
+    }
+    
+    /**
+     * Send the batch to the member.  Whatever it refuses, or can't be sent because of an 
+     * error, is sent to the next member until every ready member has been full once
+     * 
+     * @return the tasks no member had room for
+     */
+    private List<HazeltaskTask<GROUP>> sendBatch(List<HazeltaskTask<GROUP>> batch, Member member) {
+        int tries = 0;
+        int saturatedMembers = 0;
+        int readyMembers = topology.getReadyMembers().size();
+        while(true) {
+            int accepted = 0;
+            boolean failed = true;
+            try {
+                taskBatchSize.update(batch.size());
+                accepted = sendTasks(batch, member);
+                if(accepted >= batch.size())
+                    return Collections.emptyList();
+                
+                memberSaturated.mark(batch.size() - accepted);
+                if(++saturatedMembers >= readyMembers)
+                    return batch.subList(accepted, batch.size());
+                failed = false;
+            } catch (RuntimeException e) {
+                log.error("Tried to distribute a batch of tasks, but I got an exception",e);
+                tries++;
+                retries.failed(member);
+            } catch (TimeoutException e) {
+                log.warn("Timed out while trying to submit a batch of tasks for try #"+(tries+1)+", trying again...");
+                tries++;
+                retries.failed(member);
+            }
+            
+            if(tries >= retries.getMaxTries()) {
+                log.error("Unable to submit a batch of "+batch.size()+" tasks. I tried "+tries+" times.  They will be recovered from the writeAheadLog");
+                return Collections.emptyList();
+            }
+            if(failed) {
+                submitRetries.mark();
+                if(!retries.backoff(tries)) {
+                    log.error("Interrupted while submitting a batch of "+batch.size()+" tasks.  They will be recovered from the writeAheadLog");
+                    return Collections.emptyList();
+                }
+            }
+            
+            batch = batch.subList(accepted, batch.size());
+            Member next = memberRouter.next();
+            if(next != null && retries.isExcluded(next))
+                next = routeAroundFailedMembers(next);
+            if(next != null && next.equals(member) && readyMembers > 1)
+                next = memberRouter.next();
+            if(next == null) {
+                log.warn("Work submitted to writeAheadLog but no members are online to do the work.");
+                tasksRejected.mark(batch.size());
+                return Collections.emptyList();
+            }
+            member = next;
+        }
+    }
+
+    /**
+     * Tasks for this member are queued directly, skipping serialization and the cluster call.
+     * If the member limits its queued bytes we still have to serialize to learn their size
+     */
+    private boolean sendTask(HazeltaskTask<GROUP> task, Member member) throws TimeoutException {
+        if(localExecutorService != null && member.localMember()) {
+            localDispatches.mark();
+            measureLocalTask(task);
+            return localExecutorService.execute(task);
+        }
+        remoteDispatches.mark();
+        return executorTopologyService.sendTask(task, member);
+    }
+    
+    private int sendTasks(List<HazeltaskTask<GROUP>> tasks, Member member) throws TimeoutException {
+        if(localExecutorService != null && member.localMember()) {
+            localDispatches.mark(tasks.size());
+            for(HazeltaskTask<GROUP> task : tasks) {
+                measureLocalTask(task);
+            }
+            return localExecutorService.executeAll(tasks);
+        }
+        remoteDispatches.mark(tasks.size());
+        return executorTopologyService.sendTasks(tasks, member);
+    }
+    
+    private void measureLocalTask(HazeltaskTask<GROUP> task) {
+        if(executorConfig.getMaxQueuedBytes() != Long.MAX_VALUE)
+            task.setSerializedSize(IOUtil.toData(task).size());
+    }
+    
+    /**
+     * With partition owner routing the task goes to the member holding it in the write
+     * ahead log if it can take it.  Routers that keep a group on the same member get the 
+     * task's group as the key.  The owner is looked up again on every try, so a retry 
+     * after the partition migrated goes to the new owner.  Routing to the owner only saves
+     * a hop, a task that lands on the old one still runs
+     */
+    @SuppressWarnings("unchecked")
+    private Member routeTask(HazeltaskTask<GROUP> task) {
+        if(partitionOwnerRouting) {
+            Member owner = executorTopologyService.getPendingTaskOwner(task.getId());
+            if(owner != null && !retries.isExcluded(owner) && topology.getReadyMembers().contains(owner))
+                return owner;
+            partitionOwnerMissed.mark();
+        }
+        Member m;
+        if(memberRouter instanceof KeyedRouter)
+            m = ((KeyedRouter<Member>) memberRouter).next(task.getGroup());
+        else
+            m = memberRouter.next();
+        if(m != null && retries.isExcluded(m))
+            m = routeAroundFailedMembers(m);
+        return m;
+    }
+    
+    /**
+     * The router picked a member that just failed.  Take the next one that didn't, or 
+     * the one we were given if they all failed
+     */
+    private Member routeAroundFailedMembers(Member failed) {
+        int members = topology.getReadyMembers().size();
+        for(int i=0; i<members; i++) {
+            Member m = memberRouter.next();
+            if(m == null)
+                break;
+            if(!retries.isExcluded(m))
+                return m;
+        }
+        return failed;
+    }
+
+    /**
+     * The member we picked is full.  Try each other ready member once before giving up
+     */
+    private boolean sendTaskToUnsaturatedMember(HazeltaskTask<GROUP> wrapper, Member saturated) throws TimeoutException {
+        memberSaturated.mark();
+        int others = topology.getReadyMembers().size() - 1;
+        for(int i=0; i<others; i++) {
+            Member m = memberRouter.next();
+            if(m == null)
+                return false;
+            if(m.equals(saturated))
+                continue;
+            if(sendTask(wrapper, m))
+                return true;
+            memberSaturated.mark();
+        }
+        return false;
     }
 
     public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks)
@@ -333,6 +766,10 @@ public class DistributedExecutorServiceImpl<GROUP extends Serializable> implemen
             this.localExecutorService.addListener(listener);
     }
     
+    public ListRouter<Member> getMemberRouter() {
+        return this.memberRouter;
+    }
+    
     public LocalTaskExecutorService<GROUP> getLocalTaskExecutorService() {
         return (LocalTaskExecutorService<GROUP>) this.localExecutorService;
     }
@@ -3,25 +3,29 @@ package com.hazeltask.executor;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Lock;
 
 import lombok.extern.slf4j.Slf4j;
 
+import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.JdkFutureAdapters;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.hazelcast.config.ExecutorConfig;
 import com.hazelcast.config.MapConfig;
 import com.hazelcast.config.MapIndexConfig;
@@ -32,22 +36,30 @@ import com.hazelcast.core.IMap;
 import com.hazelcast.core.ITopic;
 import com.hazelcast.core.Member;
 import com.hazelcast.core.MessageListener;
+import com.hazelcast.partition.Partition;
 import com.hazelcast.query.SqlPredicate;
 import com.hazeltask.HazeltaskTopology;
 import com.hazeltask.clusterop.CancelTaskOp;
 import com.hazeltask.clusterop.ClearGroupQueueOp;
 import com.hazeltask.clusterop.GetLocalGroupQueueSizesOp;
 import com.hazeltask.clusterop.GetLocalQueueSizesOp;
+import com.hazeltask.clusterop.GetMemberLoadOp;
 import com.hazeltask.clusterop.GetOldestTimestampOp;
 import com.hazeltask.clusterop.GetThreadPoolSizesOp;
 import com.hazeltask.clusterop.StealTasksOp;
 import com.hazeltask.clusterop.SubmitTaskOp;
+import com.hazeltask.clusterop.SubmitTasksBatchOp;
 import com.hazeltask.config.HazeltaskConfig;
+import com.hazeltask.executor.metrics.ExecutorMetrics;
+import com.hazeltask.executor.steal.StolenTaskReceiver;
+import com.hazeltask.executor.steal.TaskSteal;
 import com.hazeltask.executor.task.HazeltaskTask;
+import com.hazeltask.executor.task.PayloadCompression;
 import com.hazeltask.executor.task.TaskResponse;
 import com.hazeltask.hazelcast.MemberTasks;
 import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
 import com.hazeltask.hazelcast.MemberValuePair;
+import com.yammer.metrics.core.Histogram;
 
 @Slf4j
 public class HazelcastExecutorTopologyService<GROUP extends Serializable> implements IExecutorTopologyService<GROUP> {
@@ -61,14 +73,41 @@ public class HazelcastExecutorTopologyService<GROUP extends Serializable> implem
     private final ExecutorService taskDistributor;
     //private final CopyOnWriteArrayListSet<Member> readyMembers;
     private final IMap<UUID, HazeltaskTask<GROUP>>                            pendingTask;
+    /**
+     * Ids of tasks that finished, kept for a while so a write ahead log put that lands 
+     * after its task finished isn't recovered.  Null unless the write ahead log is asynchronous
+     */
+    private final IMap<UUID, Boolean>                 completedTasks;
+    private final long completedMarkerTtl;
     private final ILock rebalanceTasksLock;
     private final ITopic<TaskResponse<Serializable>>      taskResponseTopic;
     private final HazelcastInstance hazelcast;
     
-    private final Executor asyncTaskDistributorExecutor;
+    private final MemberTaskDistributor memberTaskDistributor;
+    private final PayloadCompression payloadCompression;
+    
+    /**
+     * If members may refuse tasks, we have to wait for their answer
+     */
+    private final boolean awaitTaskAcceptance;
+    private static final long TASK_ACCEPTANCE_TIMEOUT_SECONDS = 30;
+    /**
+     * When members never refuse tasks, how long a caller waits for room in a full lane 
+     * before the lane takes the task anyway
+     */
+    private static final long FULL_LANE_WAIT_MILLIS = 1000;
+    private static final long COMPLETED_MARKER_MIN_TTL_SECONDS = 300;
+    private static final long STEAL_CHUNK_TIMEOUT_SECONDS = 60;
+    private static final int STEAL_REQUEST_ATTEMPTS = 3;
+    
+    private final int stealChunkSize;
+    private final Histogram stealChunkHistogram;
     
-    public HazelcastExecutorTopologyService(HazeltaskConfig<GROUP> hazeltaskConfig, HazeltaskTopology<GROUP> topology) {
+    public HazelcastExecutorTopologyService(HazeltaskConfig<GROUP> hazeltaskConfig, HazeltaskTopology<GROUP> topology, ExecutorMetrics metrics) {
         com.hazeltask.config.ExecutorConfig<GROUP> executorConfig = hazeltaskConfig.getExecutorConfig();
+        payloadCompression = PayloadCompression.create(executorConfig, metrics);
+        stealChunkSize = executorConfig.getLoadBalancingConfig().getStealChunkSize();
+        stealChunkHistogram = metrics.getStealChunkHistogram().getMetric();
         topologyName = hazeltaskConfig.getTopologyName();
         this.topology = topology;
         hazelcast = hazeltaskConfig.getHazelcast();
@@ -77,25 +116,31 @@ public class HazelcastExecutorTopologyService<GROUP extends Serializable> implem
         
         String taskDistributorName = name("task-distributor");
         
-        //limit the threads on the distributor to 1 thread
+        //the threads each member uses to queue the tasks sent to it
         hazelcast.getConfig()
             .addExecutorConfig(new ExecutorConfig()
                 .setName(taskDistributorName)
-                .setMaxPoolSize(1)
-                .setCorePoolSize(1)
+                .setMaxPoolSize(executorConfig.getTaskDistributorThreads())
+                .setCorePoolSize(executorConfig.getTaskDistributorThreads())
             );
         
         taskDistributor =  hazelcast.getExecutorService(taskDistributorName);
         //readyMembers = new CopyOnWriteArrayListSet<Member>();
         
-        if(hazeltaskConfig.getExecutorConfig().isAsyncronousTaskDistribution())
-            asyncTaskDistributorExecutor =  new ThreadPoolExecutor(1, 1,
-                            0L, TimeUnit.MILLISECONDS,
-                            new LinkedBlockingQueue<Runnable>(executorConfig.getAsyncronousTaskDistributionQueueSize()),
-                            hazeltaskConfig.getThreadFactory().named("async"),
-                            new CallerRunsPolicy());
-        else
-            asyncTaskDistributorExecutor = null;
+        awaitTaskAcceptance = executorConfig.isTaskQueueBounded();
+        
+        //sends the next task in a member's lane when one finishes
+        ThreadPoolExecutor laneDispatcher = new ThreadPoolExecutor(executorConfig.getTaskDistributorThreads(), executorConfig.getTaskDistributorThreads(),
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                hazeltaskConfig.getThreadFactory().named("distributor"));
+        laneDispatcher.allowCoreThreadTimeOut(true);
+        memberTaskDistributor = new MemberTaskDistributor(taskDistributor, 
+                laneDispatcher, 
+                executorConfig.getMaxTasksInFlightPerMember(), 
+                executorConfig.getAsyncronousTaskDistributionQueueSize(),
+                awaitTaskAcceptance,
+                FULL_LANE_WAIT_MILLIS);
         
         String pendingTaskMapName = name("pending-tasks");
         hazelcast.getConfig()
@@ -104,6 +149,20 @@ public class HazelcastExecutorTopologyService<GROUP extends Serializable> implem
             .addMapIndexConfig(new MapIndexConfig("createdAtMillis", false)));
         
         pendingTask = hazelcast.getMap(pendingTaskMapName);
+        
+        if(executorConfig.isAsynchronousWriteAheadLog()) {
+            String completedTaskMapName = name("completed-tasks");
+            //recovery has to see the marker, so keep it for several recovery intervals
+            completedMarkerTtl = Math.min(Integer.MAX_VALUE, Math.max(COMPLETED_MARKER_MIN_TTL_SECONDS, TimeUnit.MILLISECONDS.toSeconds(executorConfig.getRecoveryProcessPollInterval() * 10)));
+            hazelcast.getConfig()
+                .addMapConfig(new MapConfig()
+                    .setName(completedTaskMapName)
+                    .setTimeToLiveSeconds((int) completedMarkerTtl));
+            completedTasks = hazelcast.getMap(completedTaskMapName);
+        } else {
+            completedMarkerTtl = 0;
+            completedTasks = null;
+        }
         taskResponseTopic = hazelcast.getTopic(name("task-response"));
         
         rebalanceTasksLock = hazelcast.getLock(name("task-balance"));
@@ -113,28 +172,38 @@ public class HazelcastExecutorTopologyService<GROUP extends Serializable> implem
         return topologyName + "-" + name;
     }
     
-    public void sendTask(HazeltaskTask<GROUP> task, Member member) throws TimeoutException {
+    public boolean sendTask(HazeltaskTask<GROUP> task, Member member) throws TimeoutException {
         DistributedTask<Boolean> distTask = MemberTasks.create(new SubmitTaskOp<GROUP>(task, topologyName), member);
-        if(asyncTaskDistributorExecutor != null) {
-            asyncTaskDistributorExecutor.execute(new $SendTaskToWorker(distTask, taskDistributor));
-        } else {
-            taskDistributor.execute(distTask);
+        if(!memberTaskDistributor.send(distTask, member))
+            return false;
+        if(awaitTaskAcceptance) {
+            try {
+                return distTask.get(TASK_ACCEPTANCE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for "+member+" to accept a task", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Unable to send task to "+member, e.getCause());
+            }
         }
+        return true;
     }
     
-    private static class $SendTaskToWorker implements Runnable {
-        private final ExecutorService taskDistributor;
-        private final DistributedTask<Boolean> task;
-        
-        private $SendTaskToWorker(DistributedTask<Boolean> task, ExecutorService taskDistributor) {
-            this.task = task;
-            this.taskDistributor = taskDistributor;
-        }
-        
-        @Override
-        public void run() {
-            taskDistributor.execute(task);
+    public int sendTasks(List<HazeltaskTask<GROUP>> tasks, Member member) throws TimeoutException {
+        DistributedTask<Integer> distTask = MemberTasks.create(new SubmitTasksBatchOp<GROUP>(tasks, topologyName), member);
+        if(!memberTaskDistributor.send(distTask, member))
+            return 0;
+        if(awaitTaskAcceptance) {
+            try {
+                return distTask.get(TASK_ACCEPTANCE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for "+member+" to accept a batch of tasks", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Unable to send a batch of tasks to "+member, e.getCause());
+            }
         }
+        return tasks.size();
     }
 
     /**
@@ -149,22 +218,57 @@ public class HazelcastExecutorTopologyService<GROUP extends Serializable> implem
     }
     
     /**
-     * Asynchronously put the work into the pending map so we can work on submitting it to the worker
-     * if we wanted.  Could possibly cause duplicate work if we execute the work, then add to the map.
-     * @param task
-     * @return
+     * Add many tasks to the write ahead log with one putAll.  Unlike addPendingTask
+     * this doesn't check whether a task is already there, so the tasks must be new
      */
-    public Future<HazeltaskTask<GROUP>> addPendingTaskAsync(HazeltaskTask<GROUP> task) {
-        return pendingTask.putAsync(task.getId(), task);
+    public void addPendingTasks(Collection<HazeltaskTask<GROUP>> tasks) {
+        Map<UUID, HazeltaskTask<GROUP>> entries = new HashMap<UUID, HazeltaskTask<GROUP>>(tasks.size() * 2);
+        for(HazeltaskTask<GROUP> task : tasks) {
+            entries.put(task.getId(), task);
+        }
+        pendingTask.putAll(entries);
+    }
+    
+    public Member getPendingTaskOwner(UUID taskId) {
+        Partition partition = hazelcast.getPartitionService().getPartition(taskId);
+        return partition == null ? null : partition.getOwner();
+    }
+    
+    /**
+     * If the task finished before the put landed its entry is stale.  The completed marker is 
+     * written before the entry is removed, so once the put is done we can check for it 
+     * and remove the entry ourselves, whatever the marker's time to live
+     */
+    public ListenableFuture<HazeltaskTask<GROUP>> addPendingTaskAsync(final HazeltaskTask<GROUP> task) {
+        ListenableFuture<HazeltaskTask<GROUP>> put = JdkFutureAdapters.listenInPoolThread(pendingTask.putAsync(task.getId(), task));
+        return Futures.transform(put, new Function<HazeltaskTask<GROUP>, HazeltaskTask<GROUP>>() {
+            public HazeltaskTask<GROUP> apply(HazeltaskTask<GROUP> previous) {
+                try {
+                    if(isTaskCompleted(task.getId()))
+                        pendingTask.removeAsync(task.getId());
+                } catch (RuntimeException e) {
+                    //recovery checks the marker too
+                    log.warn("Unable to check whether task "+task.getId()+" finished before it was written to the write ahead log", e);
+                }
+                return previous;
+            }
+        });
+    }
+    
+    public boolean isTaskCompleted(UUID taskId) {
+        return completedTasks != null && completedTasks.containsKey(taskId);
     }
 
     public boolean removePendingTask(HazeltaskTask<GROUP> task) {
+        //the marker has to be there before the entry is gone for addPendingTaskAsync to see it
+        if(completedTasks != null)
+            completedTasks.set(task.getId(), Boolean.TRUE, completedMarkerTtl, TimeUnit.SECONDS);
         pendingTask.removeAsync(task.getId());
         return true;
     }
 
     public void broadcastTaskCompletion(UUID taskId, Serializable response) {
-        TaskResponse<Serializable> message = new TaskResponse<Serializable>(me, taskId, response, TaskResponse.Status.SUCCESS);
+        TaskResponse<Serializable> message = new TaskResponse<Serializable>(me, taskId, response, TaskResponse.Status.SUCCESS, payloadCompression);
         taskResponseTopic.publish(message);
     }
 
@@ -183,6 +287,14 @@ public class HazelcastExecutorTopologyService<GROUP extends Serializable> implem
         return pendingTask.getAll(keys).values();
     }
 
+    public Collection<MemberResponse<MemberLoad>> getMemberLoads() {
+        return MemberTasks.executeOptimistic(
+                communicationExecutorService, 
+                topology.getReadyMembers(),
+                new GetMemberLoadOp<GROUP>(topology.getName())
+        );
+    }
+    
     public Collection<MemberResponse<Long>> getMemberQueueSizes() {
         return MemberTasks.executeOptimistic(
                 communicationExecutorService, 
@@ -210,36 +322,132 @@ public class HazelcastExecutorTopologyService<GROUP extends Serializable> implem
 
     
 
+    @Deprecated
     public Lock getRebalanceTaskClusterLock() {
         return rebalanceTasksLock;
     }
 
-    @SuppressWarnings("unchecked")
-    public Collection<HazeltaskTask<GROUP>> stealTasks(List<MemberValuePair<Long>> numToTake) {
-        Collection<HazeltaskTask<GROUP>> result = new LinkedList<HazeltaskTask<GROUP>>();
-        Collection<Future<Collection<HazeltaskTask<GROUP>>>> futures = new ArrayList<Future<Collection<HazeltaskTask<GROUP>>>>(numToTake.size());
+    @Deprecated
+    public Collection<HazeltaskTask<GROUP>> stealTasks(List<MemberValuePair<Long>> numToTake, long keepAtLeast) {
+        List<TaskSteal> steals = new ArrayList<TaskSteal>(numToTake.size());
         for(MemberValuePair<Long> entry : numToTake) {
-            futures.add((Future<Collection<HazeltaskTask<GROUP>>>)
-                    communicationExecutorService.submit(MemberTasks.create(new StealTasksOp<GROUP>(topology.getName(), entry.getValue()), entry.getMember())));
+            steals.add(new TaskSteal(entry.getMember(), entry.getValue(), keepAtLeast));
         }
+        final Collection<HazeltaskTask<GROUP>> result = new LinkedList<HazeltaskTask<GROUP>>();
+        stealTasks(steals, new StolenTaskReceiver<GROUP>() {
+            public int receive(List<HazeltaskTask<GROUP>> tasks) {
+                result.addAll(tasks);
+                return tasks.size();
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * A steal from one member.  Every member we steal from gets a request for its next chunk 
+     * at the same time, then we hand the chunks to the receiver one by one.
+     * 
+     * <p>Each request carries the acknowledgement of the chunk before it, including the last 
+     * one which only acknowledges.  A request that fails or times out is sent again as is, 
+     * the member recognizes it by the chunk number.  Otherwise the member would put back the 
+     * tasks we kept when its lease runs out and they would run twice.
+     */
+    private class ChunkedSteal {
+        private final TaskSteal steal;
+        private final UUID stealId = UUID.randomUUID();
+        private long remaining;
+        private int chunks;
+        private int accepted;
+        private boolean done;
+        private int failedAttempts;
+        private Future<Collection<HazeltaskTask<GROUP>>> chunk;
         
-        for(Future<Collection<HazeltaskTask<GROUP>>> f : futures) {
-            try {
-                Collection<HazeltaskTask<GROUP>> task = f.get(3, TimeUnit.MINUTES);//wait at most 3 minutes
-                result.addAll(task);
-            } catch (InterruptedException e) {
-                log.error("Unable to take tasks. I was interrupted.  We may have pulled work out of another member... it will need to be recovered", e);
-                Thread.currentThread().interrupt();
-                return result;
-            } catch (ExecutionException e) {
-                log.error("Unable to take tasks. I got an exception.  We may have pulled work out of another member... it will need to be recovered", e);
-                continue;
-            } catch (TimeoutException e) {
-                log.error("Unable to take tasks within 3 minutes.  We may have pulled work out of another member... it will need to be recovered");
-                continue;
-            } 
+        private ChunkedSteal(TaskSteal steal) {
+            this.steal = steal;
+            this.remaining = steal.getNumberOfTasks();
         }
-        return result;
+        
+        @SuppressWarnings("unchecked")
+        private void requestNext() {
+            //once done, this only tells the member how much of the last chunk we kept
+            long numberOfTasks = done ? 0 : Math.min(stealChunkSize, remaining);
+            chunk = (Future<Collection<HazeltaskTask<GROUP>>>) communicationExecutorService.submit(MemberTasks.create(
+                    new StealTasksOp<GROUP>(topology.getName(), stealId, chunks, accepted, numberOfTasks, steal.getKeepAtLeast()), steal.getMember()));
+        }
+        
+        /**
+         * @return true to send the same request again
+         */
+        private boolean retry() {
+            return ++failedAttempts < STEAL_REQUEST_ATTEMPTS;
+        }
+    }
+    
+    public long stealTasks(List<TaskSteal> steals, StolenTaskReceiver<GROUP> receiver) {
+        List<ChunkedSteal> active = new LinkedList<ChunkedSteal>();
+        for(TaskSteal steal : steals) {
+            if(steal.getNumberOfTasks() > 0)
+                active.add(new ChunkedSteal(steal));
+        }
+        
+        long received = 0;
+        while(!active.isEmpty()) {
+            for(ChunkedSteal steal : active) {
+                steal.requestNext();
+            }
+            
+            Iterator<ChunkedSteal> it = active.iterator();
+            while(it.hasNext()) {
+                ChunkedSteal steal = it.next();
+                Collection<HazeltaskTask<GROUP>> chunk;
+                try {
+                    chunk = steal.chunk.get(STEAL_CHUNK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    log.error("Unable to take tasks. I was interrupted.  The members we were stealing from will put back the tasks we didn't acknowledge", e);
+                    Thread.currentThread().interrupt();
+                    return received;
+                } catch (ExecutionException e) {
+                    if(steal.retry()) {
+                        log.warn("Unable to take tasks from "+steal.steal.getMember()+". I got an exception.  Asking again", e);
+                    } else {
+                        log.error("Unable to take tasks from "+steal.steal.getMember()+". I got an exception.  It will put back the tasks we didn't acknowledge", e);
+                        it.remove();
+                    }
+                    continue;
+                } catch (TimeoutException e) {
+                    if(steal.retry()) {
+                        log.warn("Unable to take tasks from "+steal.steal.getMember()+" within "+STEAL_CHUNK_TIMEOUT_SECONDS+" seconds.  Asking again");
+                    } else {
+                        log.error("Unable to take tasks from "+steal.steal.getMember()+" within "+STEAL_CHUNK_TIMEOUT_SECONDS+" seconds.  It will put back the tasks we didn't acknowledge");
+                        it.remove();
+                    }
+                    continue;
+                }
+                steal.failedAttempts = 0;
+                
+                if(steal.done) {
+                    //the member has our last acknowledgement
+                    it.remove();
+                    continue;
+                }
+                
+                if(chunk.isEmpty()) {
+                    //nothing was held so there is nothing to acknowledge
+                    it.remove();
+                    continue;
+                }
+                
+                stealChunkHistogram.update(chunk.size());
+                steal.chunks++;
+                List<HazeltaskTask<GROUP>> tasks = new ArrayList<HazeltaskTask<GROUP>>(chunk);
+                steal.accepted = receiver.receive(tasks);
+                received += steal.accepted;
+                steal.remaining -= tasks.size();
+                if(steal.remaining <= 0 || steal.accepted < tasks.size() || tasks.size() < stealChunkSize)
+                    steal.done = true;
+            }
+        }
+        return received;
     }
 
     public int getLocalPendingTaskMapSize() {
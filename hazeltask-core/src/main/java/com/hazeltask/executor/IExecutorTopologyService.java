@@ -9,8 +9,11 @@ import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Lock;
 
 import com.google.common.base.Predicate;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.hazelcast.core.Member;
 import com.hazelcast.core.MessageListener;
+import com.hazeltask.executor.steal.StolenTaskReceiver;
+import com.hazeltask.executor.steal.TaskSteal;
 import com.hazeltask.executor.task.HazeltaskTask;
 import com.hazeltask.executor.task.TaskResponse;
 import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
@@ -27,9 +30,22 @@ import com.hazeltask.hazelcast.MemberValuePair;
 public interface IExecutorTopologyService<GROUP extends Serializable> {
     //public boolean isMemberReady(Member member);
     
-    public void sendTask(HazeltaskTask<GROUP> task, Member member) throws TimeoutException;
+    /**
+     * @return false if the member refused the task because its queue is full.  When the
+     *         task queue is not bounded we don't wait for the member and this is always true
+     */
+    public boolean sendTask(HazeltaskTask<GROUP> task, Member member) throws TimeoutException;
     
     
+    /**
+     * Send a batch of tasks to a member in one call
+     * 
+     * @return how many tasks from the start of the list the member queued.  The member
+     *         stops at the first task it refuses.  When the task queue is not bounded we
+     *         don't wait for the member and this is always tasks.size()
+     */
+    public int sendTasks(List<HazeltaskTask<GROUP>> tasks, Member member) throws TimeoutException;
+    
     /**
      * 
      * @param task
@@ -38,6 +54,38 @@ public interface IExecutorTopologyService<GROUP extends Serializable> {
      */
     public boolean addPendingTask(HazeltaskTask<GROUP> task, boolean replaceIfExists);
     
+    /**
+     * Start writing the task to the write ahead log without waiting for it.  The task is
+     * serialized before this returns.  If the task may finish before the write lands, 
+     * removePendingTask leaves a completed marker so recovery doesn't run it again, and 
+     * the entry is removed when the write lands.
+     * 
+     * @param task
+     * @return completes when the write is acknowledged and a stale entry was removed
+     */
+    public ListenableFuture<HazeltaskTask<GROUP>> addPendingTaskAsync(HazeltaskTask<GROUP> task);
+    
+    /**
+     * @return true if the task was removed from the write ahead log after it finished
+     *         recently.  Only tracked with an asynchronous write ahead log
+     */
+    public boolean isTaskCompleted(UUID taskId);
+    
+    /**
+     * Add all the tasks to the write ahead log at once.  There is no duplicate check like 
+     * addPendingTask(task, false) has, a task with the same id is replaced.  Only use this
+     * for tasks with new ids.  If this throws some of the tasks may have been added.
+     * @param tasks
+     */
+    public void addPendingTasks(Collection<HazeltaskTask<GROUP>> tasks);
+    
+    /**
+     * @param taskId
+     * @return the member that owns the write ahead log partition of the task, or null if 
+     *         the partition has no owner right now (it is migrating)
+     */
+    public Member getPendingTaskOwner(UUID taskId);
+    
     /**
      * Retrive the hazeltasks in the local pending task map with the predicate restriction
      * @param predicate
@@ -53,6 +101,13 @@ public interface IExecutorTopologyService<GROUP extends Serializable> {
      */
     public Collection<MemberResponse<Long>> getMemberQueueSizes();
     
+    /**
+     * Get the queue size, thread count and execution rate of each member
+     * 
+     * @return
+     */
+    public Collection<MemberResponse<MemberLoad>> getMemberLoads();
+    
     /**
      * Get the local queue sizes for each group on each member
      * 
@@ -82,9 +137,36 @@ public interface IExecutorTopologyService<GROUP extends Serializable> {
     public void broadcastTaskError(UUID taskId, Throwable exception);
     public void addTaskResponseMessageHandler(MessageListener<TaskResponse<Serializable>> listener);
     
+    /**
+     * Rebalancing doesn't lock the cluster anymore, see stealTasks
+     */
+    @Deprecated
     public Lock getRebalanceTaskClusterLock();
     
-    public Collection<HazeltaskTask<GROUP>> stealTasks(List<MemberValuePair<Long>> numToTake);
+    /**
+     * Take tasks from other members.  Each member hands out tasks one steal at a time and
+     * only down to keepAtLeast, so members stealing at once can't take more than it can spare.
+     * 
+     * @param numToTake - how many tasks to take from each member
+     * @param keepAtLeast - how many tasks each member keeps
+     * @return
+     * @deprecated use stealTasks(List, StolenTaskReceiver) so stolen tasks don't all have 
+     *             to be held in memory at once
+     */
+    @Deprecated
+    public Collection<HazeltaskTask<GROUP>> stealTasks(List<MemberValuePair<Long>> numToTake, long keepAtLeast);
+    
+    /**
+     * Take tasks from other members in chunks.  Each chunk is handed to the receiver as it 
+     * arrives, and the member it came from holds on to it until we tell it how many tasks the 
+     * receiver kept.  A steal stops when its member runs out of tasks to spare or the receiver 
+     * doesn't keep a whole chunk.
+     * 
+     * @param steals - how many tasks to take from each member and how many it keeps
+     * @param receiver
+     * @return the number of tasks the receiver kept
+     */
+    public long stealTasks(List<TaskSteal> steals, StolenTaskReceiver<GROUP> receiver);
     //public boolean addTaskToLocalQueue(HazelcastWork task);
     
     public Collection<MemberResponse<Integer>> getThreadPoolSizes();
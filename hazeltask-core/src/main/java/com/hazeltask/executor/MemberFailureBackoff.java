@@ -0,0 +1,105 @@
+package com.hazeltask.executor;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.hazelcast.core.Member;
+
+/**
+ * Paces submit retries and remembers which members just failed.  Each retry waits
+ * twice as long as the one before, up to maxBackoff, with random jitter so submitters
+ * that failed together don't retry together.  A member that failed is avoided for
+ * maxBackoff, by this submit and every other one.
+ * 
+ * @author jclawson
+ *
+ */
+class MemberFailureBackoff {
+    private final int maxTries;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final ConcurrentMap<Member, Long> excludedUntil = new ConcurrentHashMap<Member, Long>();
+    private final Random random = new Random();
+    
+    /**
+     * @param maxTries - how many times a submit may be tried
+     * @param initialBackoff - millis to wait before the first retry
+     * @param maxBackoff - the longest wait, and how long a failed member is avoided
+     */
+    public MemberFailureBackoff(int maxTries, long initialBackoff, long maxBackoff) {
+        if(maxTries < 1)
+            throw new IllegalArgumentException("maxTries must be at least 1");
+        this.maxTries = maxTries;
+        this.initialBackoff = Math.max(0, initialBackoff);
+        this.maxBackoff = Math.max(this.initialBackoff, maxBackoff);
+    }
+    
+    public int getMaxTries() {
+        return maxTries;
+    }
+    
+    /**
+     * @param tries - how many tries failed so far
+     * @return millis to wait before the next try, half fixed and half random
+     */
+    public long getBackoff(int tries) {
+        long backoff = initialBackoff;
+        for(int i = 1; i < tries && backoff < maxBackoff; i++)
+            backoff *= 2;
+        backoff = Math.min(backoff, maxBackoff);
+        long half = backoff / 2;
+        return half + (long) (random.nextDouble() * (backoff - half));
+    }
+    
+    /**
+     * Wait out the backoff before the next try
+     * 
+     * @return false if we were interrupted
+     */
+    public boolean backoff(int tries) {
+        long backoff = getBackoff(tries);
+        if(backoff <= 0)
+            return true;
+        try {
+            Thread.sleep(backoff);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    public void failed(Member member) {
+        if(member != null && maxBackoff > 0) {
+            expire();
+            excludedUntil.put(member, System.currentTimeMillis() + maxBackoff);
+        }
+    }
+    
+    public boolean isExcluded(Member member) {
+        if(excludedUntil.isEmpty())
+            return false;
+        Long until = excludedUntil.get(member);
+        if(until == null)
+            return false;
+        if(until > System.currentTimeMillis())
+            return true;
+        excludedUntil.remove(member, until);
+        return false;
+    }
+    
+    /**
+     * Forget members whose exclusion ran out, in case they never come up again
+     */
+    private void expire() {
+        long now = System.currentTimeMillis();
+        Iterator<Entry<Member, Long>> it = excludedUntil.entrySet().iterator();
+        while(it.hasNext()) {
+            if(it.next().getValue() <= now)
+                it.remove();
+        }
+    }
+}
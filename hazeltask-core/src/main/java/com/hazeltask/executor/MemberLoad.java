@@ -0,0 +1,56 @@
+package com.hazeltask.executor;
+
+import java.io.Serializable;
+
+/**
+ * A member's task load, used to decide where to send new tasks
+ * 
+ * @author jclawson
+ *
+ */
+public class MemberLoad implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    private final long queueSize;
+    private final int threadCount;
+    private final double executionRate;
+    
+    public MemberLoad(long queueSize, int threadCount, double executionRate) {
+        this.queueSize = queueSize;
+        this.threadCount = threadCount;
+        this.executionRate = executionRate;
+    }
+
+    public long getQueueSize() {
+        return queueSize;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @return the one minute rate of tasks executed per second
+     */
+    public double getExecutionRate() {
+        return executionRate;
+    }
+    
+    /**
+     * A member that hasn't executed anything lately has no measured rate so we 
+     * assume each of its threads finishes a task per second until it has one.  A 
+     * measured rate is used as is, even when it's slower than that
+     * 
+     * @return tasks per second the member can be expected to finish
+     */
+    public double getExpectedDrainRate() {
+        if(executionRate > 0)
+            return executionRate;
+        return Math.max(1, threadCount);
+    }
+    
+    @Override
+    public String toString() {
+        return "MemberLoad [queueSize=" + queueSize + ", threadCount=" + threadCount + ", executionRate=" + executionRate + "]";
+    }
+}
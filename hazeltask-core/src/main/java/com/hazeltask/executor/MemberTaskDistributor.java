@@ -0,0 +1,207 @@
+package com.hazeltask.executor;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import com.hazelcast.core.DistributedTask;
+import com.hazelcast.core.ExecutionCallback;
+import com.hazelcast.core.Member;
+
+/**
+ * Sends DistributedTasks to members with one ordered lane per member.  Each lane lets
+ * up to maxInFlight tasks be on their way to its member at once and buffers up to
+ * maxQueued more in the order they were sent.  When a task finishes, its lane sends
+ * the next one from the dispatcher, so sends to different members run in parallel and
+ * a slow member only backs up its own lane.
+ *
+ * When the members' task queues are bounded, a lane that is full refuses the task instead
+ * of blocking the caller, so the caller can pick another member.  Otherwise nothing
+ * downstream refuses tasks either, so a full lane holds the caller back until a task
+ * finishes, and after fullLaneWait takes the task over its limit rather than refuse it.
+ *
+ * @author jclawson
+ *
+ */
+@Slf4j
+class MemberTaskDistributor {
+    private final ExecutorService taskDistributor;
+    private final Executor dispatcher;
+    private final int maxInFlight;
+    private final int maxQueued;
+    private final boolean refuseWhenFull;
+    private final long fullLaneWaitNanos;
+    private final ConcurrentMap<Member, Lane> lanes = new ConcurrentHashMap<Member, Lane>();
+
+    /**
+     * @param taskDistributor - the hazelcast executor the tasks are sent through
+     * @param dispatcher - sends the next task of a lane after one completes
+     * @param maxInFlight - tasks per member that may be sent but not finished
+     * @param maxQueued - tasks per member that may wait for an in flight slot
+     * @param refuseWhenFull - true if the members' task queues are bounded
+     * @param fullLaneWaitMillis - how long a caller waits for room in a full lane when
+     *                             we don't refuse
+     */
+    public MemberTaskDistributor(ExecutorService taskDistributor, Executor dispatcher, int maxInFlight, int maxQueued, 
+                                 boolean refuseWhenFull, long fullLaneWaitMillis) {
+        if(maxInFlight < 1)
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        this.taskDistributor = taskDistributor;
+        this.dispatcher = dispatcher;
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = Math.max(0, maxQueued);
+        this.refuseWhenFull = refuseWhenFull;
+        this.fullLaneWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, fullLaneWaitMillis));
+    }
+
+    /**
+     * @param task - a task targeted at member.  Its ExecutionCallback is replaced
+     * @param member
+     * @return false if the member's lane is full and refuseWhenFull is set
+     */
+    public boolean send(DistributedTask<?> task, Member member) {
+        while(true) {
+            Lane lane = lanes.get(member);
+            if(lane == null) {
+                lane = new Lane(member);
+                Lane existing = lanes.putIfAbsent(member, lane);
+                if(existing != null)
+                    lane = existing;
+            }
+
+            Boolean accepted = lane.offer(task);
+            if(accepted != null)
+                return accepted;
+            //the lane retired while we were getting it
+        }
+    }
+
+    /**
+     * @return the tasks sent to the member that haven't finished plus the ones waiting to be sent
+     */
+    public int getPending(Member member) {
+        Lane lane = lanes.get(member);
+        return lane == null ? 0 : lane.pending();
+    }
+
+    private class Lane implements ExecutionCallback<Object>, Runnable {
+        private final Member member;
+        /**
+         * Guarded by this
+         */
+        private final ArrayDeque<DistributedTask<?>> queued = new ArrayDeque<DistributedTask<?>>();
+        private int inFlight;
+        private boolean retired;
+
+        private Lane(Member member) {
+            this.member = member;
+        }
+
+        /**
+         * @return null if the lane retired and a new one has to be used
+         */
+        private Boolean offer(DistributedTask<?> task) {
+            synchronized (this) {
+                long deadline = 0;
+                while(true) {
+                    if(retired)
+                        return null;
+                    if(inFlight < maxInFlight) {
+                        inFlight++;
+                        break;
+                    }
+                    if(queued.size() < maxQueued || (deadline != 0 && System.nanoTime() - deadline >= 0)) {
+                        queued.add(task);
+                        return true;
+                    }
+                    if(refuseWhenFull)
+                        return false;
+                    if(deadline == 0)
+                        deadline = System.nanoTime() + fullLaneWaitNanos;
+                    if(!awaitRoom(deadline - System.nanoTime())) {
+                        queued.add(task);
+                        return true;
+                    }
+                }
+            }
+            dispatch(task);
+            return true;
+        }
+
+        /**
+         * @return false if we were interrupted.  The interrupt is kept for the caller
+         */
+        private boolean awaitRoom(long nanos) {
+            if(nanos <= 0)
+                return true;
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, nanos);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        private synchronized int pending() {
+            return inFlight + queued.size();
+        }
+
+        public void done(Future<Object> future) {
+            boolean sendNext;
+            synchronized (this) {
+                sendNext = !queued.isEmpty();
+                if(!sendNext && --inFlight == 0) {
+                    //nothing to do, stop tracking this member until we send to it again
+                    retired = true;
+                    lanes.remove(member, this);
+                }
+                if(!sendNext)
+                    notifyAll();
+            }
+            if(sendNext) {
+                try {
+                    dispatcher.execute(this);
+                } catch (RejectedExecutionException e) {
+                    run();
+                }
+            }
+        }
+
+        /**
+         * Send the next queued task in the slot a finished task gave up
+         */
+        public void run() {
+            DistributedTask<?> task;
+            synchronized (this) {
+                task = queued.poll();
+                //callers waiting for room in a full lane can go on
+                notifyAll();
+                if(task == null) {
+                    inFlight--;
+                    return;
+                }
+            }
+            dispatch(task);
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private void dispatch(DistributedTask<?> task) {
+            ((DistributedTask) task).setExecutionCallback(this);
+            try {
+                taskDistributor.execute(task);
+            } catch (RuntimeException e) {
+                log.error("Unable to send a task to "+member, e);
+                done(null);
+                throw e;
+            }
+        }
+    }
+}
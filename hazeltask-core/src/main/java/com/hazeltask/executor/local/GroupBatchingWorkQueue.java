@@ -0,0 +1,124 @@
+package com.hazeltask.executor.local;
+
+import java.io.Serializable;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.hazeltask.core.concurrent.collections.grouped.IGroupedQueue;
+import com.hazeltask.executor.task.HazeltaskTask;
+
+/**
+ * The work queue the thread pool sees when group batching is on.  When a worker's
+ * batch runs out it takes up to batchSize tasks from the next group in one dequeue
+ * and runs them back to back.  Groups are still rotated as if one task was polled,
+ * so a busy group gets one batch per turn instead of one task.
+ *
+ * Each worker keeps its batch to itself.  Tasks in a batch are no longer in the task
+ * queue so they can't be stolen or cancelled and don't count toward size().  They are
+ * still in the write ahead log.
+ *
+ * @author jclawson
+ *
+ * @param <G>
+ */
+public class GroupBatchingWorkQueue<G extends Serializable> extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+    private final IGroupedQueue<HazeltaskTask<G>, G> taskQueue;
+    private final int batchSize;
+    private final ThreadLocal<ArrayDeque<HazeltaskTask<G>>> batches = new ThreadLocal<ArrayDeque<HazeltaskTask<G>>>() {
+        @Override
+        protected ArrayDeque<HazeltaskTask<G>> initialValue() {
+            return new ArrayDeque<HazeltaskTask<G>>(batchSize);
+        }
+    };
+
+    public GroupBatchingWorkQueue(IGroupedQueue<HazeltaskTask<G>, G> taskQueue, int batchSize) {
+        if(batchSize < 1)
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        this.taskQueue = taskQueue;
+        this.batchSize = batchSize;
+    }
+
+    public Runnable poll() {
+        ArrayDeque<HazeltaskTask<G>> batch = batches.get();
+        if(batch.isEmpty())
+            taskQueue.drainNextGroup(batch, batchSize);
+        return batch.poll();
+    }
+
+    public Runnable take() throws InterruptedException {
+        Runnable r = poll();
+        if(r != null)
+            return r;
+        return taskQueue.take();
+    }
+
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        Runnable r = poll();
+        if(r != null)
+            return r;
+        return taskQueue.poll(timeout, unit);
+    }
+
+    public Runnable peek() {
+        Runnable r = batches.get().peek();
+        if(r != null)
+            return r;
+        return taskQueue.peek();
+    }
+
+    /**
+     * The pool asks this from a worker before it lets the worker exit after shutdown,
+     * so the calling worker's batch counts
+     */
+    @Override
+    public boolean isEmpty() {
+        return batches.get().isEmpty() && taskQueue.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return taskQueue.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    public boolean offer(Runnable e) {
+        return taskQueue.offer((HazeltaskTask<G>) e);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void put(Runnable e) throws InterruptedException {
+        taskQueue.put((HazeltaskTask<G>) e);
+    }
+
+    @SuppressWarnings("unchecked")
+    public boolean offer(Runnable e, long timeout, TimeUnit unit) throws InterruptedException {
+        return taskQueue.offer((HazeltaskTask<G>) e, timeout, unit);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return taskQueue.remove(o);
+    }
+
+    public int remainingCapacity() {
+        return taskQueue.remainingCapacity();
+    }
+
+    public int drainTo(Collection<? super Runnable> c) {
+        return taskQueue.drainTo(c);
+    }
+
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        return taskQueue.drainTo(c, maxElements);
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @Override
+    public Iterator<Runnable> iterator() {
+        return (Iterator<Runnable>) (Iterator) taskQueue.iterator();
+    }
+}
@@ -4,6 +4,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -12,8 +13,10 @@ import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor.AbortPolicy;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -21,7 +24,9 @@ import com.google.common.base.Predicate;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazeltask.config.ExecutorConfig;
 import com.hazeltask.core.concurrent.NamedThreadFactory;
+import com.hazeltask.core.concurrent.collections.grouped.GroupedPriorityQueueLockFree;
 import com.hazeltask.core.concurrent.collections.grouped.GroupedPriorityQueueLocking;
+import com.hazeltask.core.concurrent.collections.grouped.IGroupedQueue;
 import com.hazeltask.core.concurrent.collections.tracked.ITrackedQueue;
 import com.hazeltask.executor.ExecutorListener;
 import com.hazeltask.executor.IExecutorTopologyService;
@@ -29,6 +34,7 @@ import com.hazeltask.executor.metrics.CollectionSizeGauge;
 import com.hazeltask.executor.metrics.ExecutorMetrics;
 import com.hazeltask.executor.metrics.TaskThroughputGauge;
 import com.hazeltask.executor.task.HazeltaskTask;
+import com.hazeltask.executor.task.PayloadCompression;
 import com.yammer.metrics.core.Meter;
 import com.yammer.metrics.core.Timer;
 import com.yammer.metrics.core.TimerContext;
@@ -40,9 +46,8 @@ import com.yammer.metrics.core.TimerContext;
  */
 @Slf4j
 public class LocalTaskExecutorService<G extends Serializable> {
-
 	private final HazeltaskThreadPoolExecutor localExecutorPool;
-	private final GroupedPriorityQueueLocking<HazeltaskTask<G>, G> taskQueue;
+	private final IGroupedQueue<HazeltaskTask<G>, G> taskQueue;
 	private final TasksInProgressTracker tasksInProgressTracker;
 	private final HazelcastInstance hazelcast;
 	private final IExecutorTopologyService<G> executorTopologyService;
@@ -56,13 +61,44 @@ public class LocalTaskExecutorService<G extends Serializable> {
     private final Timer getQueueSizeTimer;
     
     private final Meter taskErrorsMeter;
+    private final Meter taskQueueFullMeter;
     private final Timer removeFromWriteAheadLogTimer;
     private final Timer taskFinishedNotificationTimer;
+    
+    /**
+     * Serialized size of the tasks accepted but not yet started
+     */
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final long maxQueuedBytes;
+    private final PayloadCompression payloadCompression;
+    private final Object stealLock = new Object();
+    
+    /**
+     * Chunks we handed to a thief that it hasn't acknowledged yet.  Guarded by stealLock
+     */
+    private final Map<UUID, HeldSteal> heldSteals = new HashMap<UUID, HeldSteal>();
+    /**
+     * How long a thief has to acknowledge a chunk of stolen tasks before we put it back
+     */
+    private final long stealLeaseTime;
+    private final Meter stealReclaimedMeter;
+    
+    /**
+     * When a worker last found the queue empty, 0 if it has tasks
+     */
+    private final AtomicLong emptySince = new AtomicLong();
+    private final Timer workerIdleTimer;
 	
     public LocalTaskExecutorService(HazelcastInstance hazelcast, ExecutorConfig<G> executorConfig, NamedThreadFactory namedThreadFactory, IExecutorTopologyService<G> executorTopologyService, ExecutorMetrics metrics) {
 		this.hazelcast = hazelcast;
 		
-		taskQueue = new GroupedPriorityQueueLocking<HazeltaskTask<G>, G>(metrics, executorConfig.getLoadBalancingConfig().getGroupPrioritizer());
+		if(executorConfig.isLockFreeTaskQueue())
+		    taskQueue = new GroupedPriorityQueueLockFree<HazeltaskTask<G>, G>(metrics, executorConfig.getLoadBalancingConfig().getGroupPrioritizer(), executorConfig.getTaskQueueRouteStripes(), executorConfig.getMaxQueuedTasks(), Integer.MAX_VALUE);
+		else
+		    taskQueue = new GroupedPriorityQueueLocking<HazeltaskTask<G>, G>(metrics, executorConfig.getLoadBalancingConfig().getGroupPrioritizer(), executorConfig.getMaxQueuedTasks(), Integer.MAX_VALUE, executorConfig.getTaskQueueGroupInitialCapacity());
+		maxQueuedBytes = executorConfig.getMaxQueuedBytes();
+		stealLeaseTime = executorConfig.getLoadBalancingConfig().getStealLeaseTime();
+		payloadCompression = PayloadCompression.create(executorConfig, metrics);
 
 		taskSubmittedTimer = metrics.getLocalTaskSubmitTimer().getMetric();
 		taskExecutedTimer = metrics.getTaskExecutionTimer().getMetric();
@@ -70,14 +106,24 @@ public class LocalTaskExecutorService<G extends Serializable> {
 		getOldestTaskTimeTimer = metrics.getGetOldestTaskTimeTimer().getMetric();
 		getQueueSizeTimer = metrics.getGetQueueSizeTimer().getMetric();
 		taskErrorsMeter = metrics.getTaskErrors().getMetric();
+		taskQueueFullMeter = metrics.getTaskQueueFullMeter().getMetric();
 		removeFromWriteAheadLogTimer = metrics.getRemoveFromWriteAheadLogTimer().getMetric();
 		taskFinishedNotificationTimer = metrics.getTaskFinishedNotificationTimer().getMetric();
+		workerIdleTimer = metrics.getWorkerIdleTimer().getMetric();
+		stealReclaimedMeter = metrics.getStealReclaimedMeter().getMetric();
 		
 		metrics.registerCollectionSizeGauge(new CollectionSizeGauge(taskQueue));
+		metrics.registerLiveGroupsGauge(new CollectionSizeGauge(taskQueue.getGroups()));
 		metrics.registerExecutionThroughputGauge(new TaskThroughputGauge(taskSubmittedTimer, taskExecutedTimer));
 		
-		@SuppressWarnings({ "rawtypes", "unchecked" })
-        BlockingQueue<Runnable> blockingQueue = (BlockingQueue<Runnable>) (BlockingQueue) taskQueue;
+		BlockingQueue<Runnable> blockingQueue;
+		if(executorConfig.getWorkerGroupBatchSize() > 1) {
+		    blockingQueue = new GroupBatchingWorkQueue<G>(taskQueue, executorConfig.getWorkerGroupBatchSize());
+		} else {
+		    @SuppressWarnings({ "rawtypes", "unchecked" })
+		    BlockingQueue<Runnable> unbatched = (BlockingQueue<Runnable>) (BlockingQueue) taskQueue;
+		    blockingQueue = unbatched;
+		}
 		
 		localExecutorPool = new HazeltaskThreadPoolExecutor(
 		        executorConfig.getThreadCount(), 
@@ -96,6 +142,23 @@ public class LocalTaskExecutorService<G extends Serializable> {
 		tasksInProgressTracker = new TasksInProgressTracker();
 		localExecutorPool.addListener(tasksInProgressTracker);
 		
+		localExecutorPool.addListener(new ExecutorListener<G>() {
+		    public void beforeExecute(HazeltaskTask<G> runnable) {}
+		    public void afterExecute(HazeltaskTask<G> runnable, Throwable exception) {
+		        if(taskQueue.isEmpty())
+		            emptySince.compareAndSet(0, System.currentTimeMillis());
+		    }
+		});
+		
+		if(maxQueuedBytes != Long.MAX_VALUE) {
+		    localExecutorPool.addListener(new ExecutorListener<G>() {
+		        public void beforeExecute(HazeltaskTask<G> runnable) {
+		            dequeued(runnable);
+		        }
+		        public void afterExecute(HazeltaskTask<G> runnable, Throwable exception) {}
+		    });
+		}
+		
 		this.executorTopologyService = executorTopologyService;
 		this.executorConfig = executorConfig;
 	}
@@ -197,6 +260,11 @@ public class LocalTaskExecutorService<G extends Serializable> {
     	    if(inProgressOldestTime < oldest)
     	        oldest = inProgressOldestTime;
     	    
+    	    //tasks on their way to a thief aren't lost, don't let them be recovered
+    	    long heldOldestTime = getHeldOldestTime();
+    	    if(heldOldestTime < oldest)
+    	        oldest = heldOldestTime;
+    	    
     	    return oldest;
 	    } finally {
 	        ctx.stop();
@@ -212,6 +280,13 @@ public class LocalTaskExecutorService<G extends Serializable> {
 	    }
 	}
 	
+	/**
+	 * @return the one minute rate of tasks executed per second
+	 */
+	public double getExecutionRate() {
+	    return taskExecutedTimer.oneMinuteRate();
+	}
+	
 	public Map<G, Integer> getGroupSizes() {
 	    return getGroupSizes(null);
 	}
@@ -233,6 +308,8 @@ public class LocalTaskExecutorService<G extends Serializable> {
     
     public void clearGroup(G group) {
         Queue<HazeltaskTask<G>> q = taskQueue.getQueueByGroup(group);
+        if(q == null)
+            return;
         Iterator<HazeltaskTask<G>> queueIterator = q.iterator();
         while(queueIterator.hasNext()) {
             try {
@@ -240,56 +317,247 @@ public class LocalTaskExecutorService<G extends Serializable> {
                 if(executorConfig.isFutureSupportEnabled())
                     executorTopologyService.broadcastTaskCancellation(next.getId());
                 executorTopologyService.removePendingTask(next);
-                queueIterator.remove();            
+                queueIterator.remove();
+                dequeued(next);
             } catch (NoSuchElementException e) {
                 return;//bail out
             }
         }
     }
 	
-	public void execute(HazeltaskTask<G> command) {
+	/**
+	 * @param command
+	 * @return false if the task was not queued because the queue is full or shut down
+	 */
+	public boolean execute(HazeltaskTask<G> command) {
 		if(localExecutorPool.isShutdown()) {
 		    log.warn("Cannot enqueue the task "+command+".  The executor threads are shutdown.");
-		    return;
+		    return false;
 		}
 	    
 	    TimerContext tCtx = null;
 		if(taskSubmittedTimer != null)
 			tCtx = taskSubmittedTimer.time();
 		try {
+		    if(!reserveQueuedBytes(command)) {
+		        taskQueueFullMeter.mark();
+		        return false;
+		    }
 			command.setExecutionTimer(taskExecutedTimer);
+			//tasks stolen from this member are written again
+			command.setPayloadCompression(payloadCompression);
 		    command.setHazelcastInstance(hazelcast);
-			localExecutorPool.execute(command);
+		    try {
+		        localExecutorPool.execute(command);
+		    } catch (RejectedExecutionException e) {
+		        //the bounded task queue is full or we just shut down
+		        dequeued(command);
+		        taskQueueFullMeter.mark();
+		        return false;
+		    }
+		    long idleSince = emptySince.get();
+		    if(idleSince != 0 && emptySince.compareAndSet(idleSince, 0))
+		        workerIdleTimer.update(System.currentTimeMillis() - idleSince, TimeUnit.MILLISECONDS);
+			return true;
 		} finally {
 			if(tCtx != null)
 				tCtx.stop();
 		}
 	}
 	
+	/**
+	 * Queue the tasks in order, stopping at the first one that is refused
+	 *
+	 * @param commands
+	 * @return how many tasks from the start of the list were queued
+	 */
+	public int executeAll(List<HazeltaskTask<G>> commands) {
+	    int accepted = 0;
+	    for(HazeltaskTask<G> command : commands) {
+	        if(!execute(command))
+	            break;
+	        accepted++;
+	    }
+	    return accepted;
+	}
+
+	private boolean reserveQueuedBytes(HazeltaskTask<G> task) {
+	    if(maxQueuedBytes == Long.MAX_VALUE)
+	        return true;
+	    int size = task.getSerializedSize();
+	    //always let one task in so a task bigger than the limit can't get stuck forever
+	    if(queuedBytes.addAndGet(size) > maxQueuedBytes && queuedBytes.get() != size) {
+	        queuedBytes.addAndGet(-size);
+	        return false;
+	    }
+	    return true;
+	}
+	
+	/**
+	 * Call when a task we accepted leaves the queue without being executed by the pool
+	 */
+	private void dequeued(HazeltaskTask<G> task) {
+	    if(maxQueuedBytes != Long.MAX_VALUE)
+	        queuedBytes.addAndGet(-task.getSerializedSize());
+	}
+	
+	/**
+	 * Hand a thief the next chunk of a steal.  The chunk is held until the thief asks for the 
+	 * next one, telling us how many tasks of this one it kept.  Those are dropped and the rest 
+	 * are put back in our queue.  If the thief never comes back reclaimExpiredSteals() puts 
+	 * the whole chunk back.
+	 * 
+	 * <p>Chunks are numbered so the thief can safely repeat a request it got no answer to.  If 
+	 * we already handed out the chunk it asks for, we hand out the same one again.  If we 
+	 * already settled the chunk it acknowledges, the acknowledgement is ignored.
+	 * 
+	 * @param stealId - the same for every chunk of a steal
+	 * @param lastChunk - the number of the last chunk the thief got, 0 if none
+	 * @param acceptedFromLastChunk - how many tasks from the start of the last chunk the thief kept
+	 * @param numberOfTasks - the most this chunk may have, 0 to end the steal
+	 * @param keepAtLeast
+	 * @return
+	 */
+	public Collection<HazeltaskTask<G>> stealTasks(UUID stealId, int lastChunk, int acceptedFromLastChunk, long numberOfTasks, long keepAtLeast) {
+	    synchronized (stealLock) {
+	        HeldSteal held = heldSteals.get(stealId);
+	        if(held != null && held.chunk == lastChunk + 1 && numberOfTasks > 0) {
+	            //the thief never got our answer and is asking again
+	            held.heldSince = System.currentTimeMillis();
+	            return new ArrayList<HazeltaskTask<G>>(held.tasks);
+	        }
+	        if(held != null) {
+	            heldSteals.remove(stealId);
+	            if(held.chunk != lastChunk)
+	                log.warn("A thief acknowledged chunk "+lastChunk+" but we held chunk "+held.chunk+", putting it back");
+	            settle(held.tasks, held.chunk == lastChunk ? acceptedFromLastChunk : 0);
+	        }
+	        reclaimExpiredSteals();
+	        
+	        Collection<HazeltaskTask<G>> chunk = stealTasks(numberOfTasks, keepAtLeast);
+	        if(!chunk.isEmpty())
+	            heldSteals.put(stealId, new HeldSteal(lastChunk + 1, chunk));
+	        return chunk;
+	    }
+	}
+	
+	/**
+	 * Put back the chunks of steals whose thieves haven't come back within the steal lease time
+	 * 
+	 * @return how many tasks were put back
+	 */
+	public int reclaimExpiredSteals() {
+	    synchronized (stealLock) {
+	        if(heldSteals.isEmpty())
+	            return 0;
+	        int reclaimed = 0;
+	        long expired = System.currentTimeMillis() - stealLeaseTime;
+	        Iterator<HeldSteal> it = heldSteals.values().iterator();
+	        while(it.hasNext()) {
+	            HeldSteal held = it.next();
+	            if(held.heldSince < expired) {
+	                it.remove();
+	                log.warn("A thief didn't acknowledge "+held.tasks.size()+" stolen tasks, putting them back");
+	                settle(held.tasks, 0);
+	                reclaimed += held.tasks.size();
+	            }
+	        }
+	        return reclaimed;
+	    }
+	}
+	
+	/**
+	 * Drop the tasks the thief kept and queue the rest again
+	 */
+	private void settle(List<HazeltaskTask<G>> tasks, int accepted) {
+	    accepted = Math.max(0, Math.min(accepted, tasks.size()));
+	    for(HazeltaskTask<G> task : tasks.subList(accepted, tasks.size())) {
+	        stealReclaimedMeter.mark();
+	        if(!execute(task)) {
+	            //it is still in the write ahead log so recovery will pick it up
+	            log.warn("Local task queue is full, unable to put back stolen task "+task.getId());
+	        }
+	    }
+	}
+	
+	private long getHeldOldestTime() {
+	    long oldest = Long.MAX_VALUE;
+	    synchronized (stealLock) {
+	        for(HeldSteal held : heldSteals.values()) {
+	            for(HazeltaskTask<G> task : held.tasks) {
+	                if(task.getTimeCreated() < oldest)
+	                    oldest = task.getTimeCreated();
+	            }
+	        }
+	    }
+	    return oldest;
+	}
+	
+	private class HeldSteal {
+	    private final int chunk;
+	    private final List<HazeltaskTask<G>> tasks;
+	    private long heldSince = System.currentTimeMillis();
+	    
+	    private HeldSteal(int chunk, Collection<HazeltaskTask<G>> tasks) {
+	        this.chunk = chunk;
+	        this.tasks = new ArrayList<HazeltaskTask<G>>(tasks);
+	    }
+	}
+	
 	public Collection<HazeltaskTask<G>> stealTasks(long numberOfTasks) {
+	    return stealTasks(numberOfTasks, 0);
+	}
+	
+	/**
+	 * Give up to numberOfTasks tasks but keep at least keepAtLeast queued.  Steals are
+	 * handled one at a time, so members stealing from us at once each see what the others
+	 * took and can't take our surplus twice.
+	 * 
+	 * <p>The newest tasks of each group are given up so the oldest ones, which have waited 
+	 * the longest, run here instead of waiting to cross the network.
+	 * 
+	 * @param numberOfTasks
+	 * @param keepAtLeast - the queue size the stealer thinks every member should have
+	 * @return
+	 */
+	public Collection<HazeltaskTask<G>> stealTasks(long numberOfTasks, long keepAtLeast) {
+	    synchronized (stealLock) {
+	        numberOfTasks = Math.min(numberOfTasks, taskQueue.size() - keepAtLeast);
+	        if(numberOfTasks <= 0)
+	            return Collections.emptyList();
+	        return doStealTasks(numberOfTasks);
+	    }
+	}
+	
+	private Collection<HazeltaskTask<G>> doStealTasks(long numberOfTasks) {
 	    if(!this.localExecutorPool.isShutdown()) {
     	    long totalSize = taskQueue.size();
     	    ArrayList<HazeltaskTask<G>> result = new ArrayList<HazeltaskTask<G>>((int)numberOfTasks);
     	    for(G group : this.taskQueue.getGroups()) {
     	        ITrackedQueue<HazeltaskTask<G>> q = this.taskQueue.getQueueByGroup(group);
+    	        if(q == null) continue; //evicted
     	        int qSize = q.size();
     	        if(qSize == 0) continue;
     	        
     	        double p = (double)qSize / (double)totalSize;
     	        long tasksToTake = Math.round(numberOfTasks * p);
     	        
-    	        for(int i=0; i < tasksToTake; i++) {
-    	            //TODO: this really sucks that we use q.poll() ... why can't this be a dequeue????
-    	            HazeltaskTask<G> task = q.poll();
-    	            if(task == null)
-    	                break;
-    	            result.add(task);
-    	        }
+    	        tasksToTake = Math.min(tasksToTake, numberOfTasks - result.size());
+    	        stealNewest(q, tasksToTake, result);
     	    }
     	    
+    	    //rounding per group can leave us short, top up from whichever groups still have tasks
     	    if(result.size() < numberOfTasks) {
-    	        //TODO: should we really care? or is this good enough...
-    	    }   
+    	        for(G group : this.taskQueue.getGroups()) {
+    	            ITrackedQueue<HazeltaskTask<G>> q = this.taskQueue.getQueueByGroup(group);
+    	            if(q == null) continue; //evicted
+    	            //pollers may take some of the ones we picked, so go until the group is empty
+    	            while(result.size() < numberOfTasks
+    	                    && stealNewest(q, numberOfTasks - result.size(), result) > 0);
+    	            if(result.size() >= numberOfTasks)
+    	                break;
+    	        }
+    	    }
     	    
     	    return result;
 	    } else {
@@ -297,6 +565,32 @@ public class LocalTaskExecutorService<G extends Serializable> {
 	        return Collections.emptyList();
 	    }
 	}
+	
+	/**
+	 * Take the newest tasks of a group in one pass over its queue
+	 */
+	private int stealNewest(ITrackedQueue<HazeltaskTask<G>> q, long tasksToTake, List<HazeltaskTask<G>> result) {
+	    if(tasksToTake <= 0)
+	        return 0;
+	    int from = result.size();
+	    int taken = q.pollNewest((int) tasksToTake, result);
+	    for(int i = from; i < result.size(); i++) {
+	        dequeued(result.get(i));
+	    }
+	    return taken;
+	}
+
+	/**
+	 * Forget groups that have been idle longer than the configured group idle eviction time
+	 * 
+	 * @return the number of groups evicted
+	 */
+	public int evictIdleGroups() {
+	    long idleMillis = executorConfig.getGroupIdleEvictionTime();
+	    if(idleMillis <= 0)
+	        return 0;
+	    return taskQueue.evictIdleGroups(idleMillis);
+	}
 
 	//TODO: time how long it takes to shutdown
 	public void shutdown() {
@@ -307,7 +601,14 @@ public class LocalTaskExecutorService<G extends Serializable> {
 	//SuppressWarnings I really want to return HazeltaskTasks instead of Runnable
 	@SuppressWarnings({ "unchecked", "rawtypes" })
     public List<HazeltaskTask<G>> shutdownNow() {
-	    return (List<HazeltaskTask<G>>) (List) localExecutorPool.shutdownNow();
+	    List<HazeltaskTask<G>> tasks = new ArrayList<HazeltaskTask<G>>((List<HazeltaskTask<G>>) (List) localExecutorPool.shutdownNow());
+	    //chunks a thief hasn't acknowledged are still ours
+	    synchronized (stealLock) {
+	        for(HeldSteal held : heldSteals.values())
+	            tasks.addAll(held.tasks);
+	        heldSteals.clear();
+	    }
+	    return tasks;
 	}
 
 	public boolean isShutdown() {
@@ -324,6 +625,7 @@ public class LocalTaskExecutorService<G extends Serializable> {
                     if(executorConfig.isFutureSupportEnabled())
                         executorTopologyService.broadcastTaskCancellation(taskId);                
                     it.remove();
+                    dequeued(task);
                     return true;
                 }
             }
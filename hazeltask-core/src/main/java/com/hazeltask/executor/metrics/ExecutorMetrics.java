@@ -9,6 +9,8 @@ import com.hazeltask.core.metrics.MetricNamer;
 import com.hazeltask.executor.DistributedExecutorService;
 import com.hazeltask.executor.DistributedFutureTracker;
 import com.hazeltask.executor.local.LocalTaskExecutorService;
+import com.hazeltask.executor.task.IdleTaskStealer;
+import com.hazeltask.executor.task.PayloadCompression;
 import com.hazeltask.executor.task.TaskRebalanceTimerTask;
 import com.hazeltask.executor.task.TaskRecoveryTimerTask;
 import com.yammer.metrics.core.Counter;
@@ -48,12 +50,29 @@ public class ExecutorMetrics {
     private final Metric<Timer> taskBalanceTimer;
     private final Metric<Histogram> taskBalanceHistogram;
     private final Metric<Timer> taskBalanceLockWaitTimer;
+    private final Metric<Timer> taskStealTimer;
+    private final Metric<Histogram> rebalanceMembersHistogram;
+    private final Metric<Timer> workerIdleTimer;
+    private final Metric<Histogram> stealChunkHistogram;
+    private final Metric<Meter> stealReclaimedMeter;
+    private final Metric<Timer> idleStealTimer;
+    private final Metric<Histogram> idleStealHistogram;
     
     private final Metric<Timer> taskSubmitTimer;
     private final Metric<Meter> taskRejectedMeter;
+    private final Metric<Meter> memberSaturatedMeter;
+    private final Metric<Histogram> taskBatchSizeHistogram;
+    private final Metric<Meter> partitionOwnerMissedMeter;
+    private final Metric<Meter> localDispatchMeter;
+    private final Metric<Meter> remoteDispatchMeter;
+    private final Metric<Meter> submitRetryMeter;
+    
+    private final Metric<Timer> payloadCompressionTimer;
+    private final Metric<Histogram> payloadCompressionRatio;
     
     private final Metric<Timer> localTaskSubmitTimer;
     private final Metric<Timer> taskExecutionTimer;
+    private final Metric<Meter> taskQueueFullMeter;
     
     private final Metric<Timer> getGroupSizesTimer;
     private final Metric<Timer> getOldestTaskTimeTimer;
@@ -65,6 +84,7 @@ public class ExecutorMetrics {
     private final Metric<Meter> routesSkipped;
     private final Metric<Meter> routeNotFound;
     private final Metric<Timer> taskQueuePollTimer;
+    private final Metric<Meter> groupsEvicted;
     
     private final Metric<Counter> noRebalanceToDo;
     private final Metric<Meter> recoveryMeter;
@@ -100,11 +120,56 @@ public class ExecutorMetrics {
         name = createMetricName(TaskRebalanceTimerTask.class, "lock-wait-time");
         taskBalanceLockWaitTimer = new Metric<Timer>(name, metrics.newTimer(name, TimeUnit.MILLISECONDS, TimeUnit.MINUTES));
         
+        name = createMetricName(TaskRebalanceTimerTask.class, "steal-time");
+        taskStealTimer = new Metric<Timer>(name, metrics.newTimer(name, TimeUnit.MILLISECONDS, TimeUnit.MINUTES));
+        
+        name = createMetricName(TaskRebalanceTimerTask.class, "rebalance-members");
+        rebalanceMembersHistogram = new Metric<Histogram>(name, metrics.newHistogram(name, false));
+        
+        name = createMetricName(TaskRebalanceTimerTask.class, "steal-chunk-size");
+        stealChunkHistogram = new Metric<Histogram>(name, metrics.newHistogram(name, false));
+        
+        name = createMetricName(LocalTaskExecutorService.class, "steal-reclaimed-meter");
+        stealReclaimedMeter = new Metric<Meter>(name, metrics.newMeter(name, "stolen tasks put back", TimeUnit.MINUTES));
+        
+        name = createMetricName(LocalTaskExecutorService.class, "idle-time");
+        workerIdleTimer = new Metric<Timer>(name, metrics.newTimer(name, TimeUnit.MILLISECONDS, TimeUnit.MINUTES));
+        
+        name = createMetricName(IdleTaskStealer.class, "idle-steal-time");
+        idleStealTimer = new Metric<Timer>(name, metrics.newTimer(name, TimeUnit.MILLISECONDS, TimeUnit.MINUTES));
+        
+        name = createMetricName(IdleTaskStealer.class, "idle-steal-tasks");
+        idleStealHistogram = new Metric<Histogram>(name, metrics.newHistogram(name, false));
+        
         name = createMetricName(DistributedExecutorService.class, "task-submit-time");
         taskSubmitTimer = new Metric<Timer>(name, metrics.newTimer(name, TimeUnit.MILLISECONDS, TimeUnit.MINUTES));
         
         name = createMetricName(DistributedExecutorService.class, "task-rejected-meter");
         taskRejectedMeter = new Metric<Meter>(name, metrics.newMeter(name, "tasks rejected", TimeUnit.MINUTES));
+        
+        name = createMetricName(DistributedExecutorService.class, "member-saturated-meter");
+        memberSaturatedMeter = new Metric<Meter>(name, metrics.newMeter(name, "tasks refused by a full member", TimeUnit.MINUTES));
+        
+        name = createMetricName(DistributedExecutorService.class, "task-batch-size");
+        taskBatchSizeHistogram = new Metric<Histogram>(name, metrics.newHistogram(name, false));
+        
+        name = createMetricName(DistributedExecutorService.class, "partition-owner-missed-meter");
+        partitionOwnerMissedMeter = new Metric<Meter>(name, metrics.newMeter(name, "tasks not routed to their partition owner", TimeUnit.MINUTES));
+        
+        name = createMetricName(DistributedExecutorService.class, "local-dispatch-meter");
+        localDispatchMeter = new Metric<Meter>(name, metrics.newMeter(name, "tasks queued on this member directly", TimeUnit.MINUTES));
+        
+        name = createMetricName(DistributedExecutorService.class, "remote-dispatch-meter");
+        remoteDispatchMeter = new Metric<Meter>(name, metrics.newMeter(name, "tasks sent to another member", TimeUnit.MINUTES));
+        
+        name = createMetricName(DistributedExecutorService.class, "submit-retry-meter");
+        submitRetryMeter = new Metric<Meter>(name, metrics.newMeter(name, "submits retried after a failure", TimeUnit.MINUTES));
+        
+        name = createMetricName(PayloadCompression.class, "compression-time");
+        payloadCompressionTimer = new Metric<Timer>(name, metrics.newTimer(name, TimeUnit.MICROSECONDS, TimeUnit.MINUTES));
+        
+        name = createMetricName(PayloadCompression.class, "compression-ratio");
+        payloadCompressionRatio = new Metric<Histogram>(name, metrics.newHistogram(name, false));
 
         name = createMetricName(LocalTaskExecutorService.class, "task-submitted");
         localTaskSubmitTimer = new Metric<Timer>(name, metrics.newTimer(name, TimeUnit.MILLISECONDS, TimeUnit.MINUTES));
@@ -112,6 +177,9 @@ public class ExecutorMetrics {
         name = createMetricName(LocalTaskExecutorService.class, "task-executed");
         taskExecutionTimer = new Metric<Timer>(name, metrics.newTimer(name, TimeUnit.MILLISECONDS, TimeUnit.MINUTES));
         
+        name = createMetricName(LocalTaskExecutorService.class, "task-queue-full");
+        taskQueueFullMeter = new Metric<Meter>(name, metrics.newMeter(name, "tasks refused", TimeUnit.MINUTES));
+        
         name = createMetricName(LocalTaskExecutorService.class, "getGroupSizes-timer");
         getGroupSizesTimer = new Metric<Timer>(name, metrics.newTimer(name, TimeUnit.MILLISECONDS, TimeUnit.MINUTES));
         
@@ -136,7 +204,10 @@ public class ExecutorMetrics {
         routeNotFound = new Metric<Meter>(name, metrics.newMeter(name, "routes not found", TimeUnit.SECONDS));
         
         name = createMetricName("GroupedPriorityQueue", "poll-time");
-        taskQueuePollTimer = new Metric<Timer>(name, metrics.newTimer(name, TimeUnit.MILLISECONDS, TimeUnit.MINUTES));   
+        taskQueuePollTimer = new Metric<Timer>(name, metrics.newTimer(name, TimeUnit.MILLISECONDS, TimeUnit.MINUTES));
+        
+        name = createMetricName("GroupedPriorityQueue", "groups-evicted");
+        groupsEvicted = new Metric<Meter>(name, metrics.newMeter(name, "idle groups evicted", TimeUnit.MINUTES));   
         
         
         name = createMetricName(TaskRebalanceTimerTask.class, "task-rebalance-noop");
@@ -185,10 +256,72 @@ public class ExecutorMetrics {
         return taskBalanceHistogram;
     }
 
+    /**
+     * Rebalancing doesn't take a cluster lock anymore so this isn't updated
+     * @return
+     */
+    @Deprecated
     public Metric<Timer> getTaskBalanceLockWaitTimer() {
         return taskBalanceLockWaitTimer;
     }
     
+    /**
+     * Time a rebalance spends taking tasks from other members
+     * @return
+     */
+    public Metric<Timer> getTaskStealTimer() {
+        return taskStealTimer;
+    }
+    
+    /**
+     * How many members each rebalance looked at.  Compare with getTaskBalanceTimer to see
+     * how rebalancing time grows with the cluster
+     * @return
+     */
+    public Metric<Histogram> getRebalanceMembersHistogram() {
+        return rebalanceMembersHistogram;
+    }
+    
+    /**
+     * Tasks in each chunk of stolen tasks we received
+     * @return
+     */
+    public Metric<Histogram> getStealChunkHistogram() {
+        return stealChunkHistogram;
+    }
+    
+    /**
+     * Tasks a thief didn't keep, or didn't acknowledge in time, that we put back in our queue
+     * @return
+     */
+    public Metric<Meter> getStealReclaimedMeter() {
+        return stealReclaimedMeter;
+    }
+    
+    /**
+     * How long the local task queue sat empty before a task arrived
+     * @return
+     */
+    public Metric<Timer> getWorkerIdleTimer() {
+        return workerIdleTimer;
+    }
+    
+    /**
+     * Time to find the most loaded member and steal from it after our queue ran low
+     * @return
+     */
+    public Metric<Timer> getIdleStealTimer() {
+        return idleStealTimer;
+    }
+    
+    /**
+     * Tasks taken by each steal our queue running low started
+     * @return
+     */
+    public Metric<Histogram> getIdleStealHistogram() {
+        return idleStealHistogram;
+    }
+    
     
 
     public Metric<Timer> getTaskSubmitTimer() {
@@ -199,6 +332,67 @@ public class ExecutorMetrics {
         return taskRejectedMeter;
     }
     
+    public Metric<Meter> getMemberSaturatedMeter() {
+        return memberSaturatedMeter;
+    }
+
+    /**
+     * How many tasks went to a member in each batch sent by submitAll
+     * @return
+     */
+    public Metric<Histogram> getTaskBatchSizeHistogram() {
+        return taskBatchSizeHistogram;
+    }
+
+    /**
+     * Tasks that couldn't go to their write ahead log partition owner because it
+     * wasn't ready or the partition was migrating
+     * @return
+     */
+    public Metric<Meter> getPartitionOwnerMissedMeter() {
+        return partitionOwnerMissedMeter;
+    }
+
+    /**
+     * Tasks routed to this member and queued without serializing them
+     * @return
+     */
+    public Metric<Meter> getLocalDispatchMeter() {
+        return localDispatchMeter;
+    }
+
+    /**
+     * Tasks sent to other members
+     * @return
+     */
+    public Metric<Meter> getRemoteDispatchMeter() {
+        return remoteDispatchMeter;
+    }
+    
+    /**
+     * Sends retried after the member failed or timed out
+     * @return
+     */
+    public Metric<Meter> getSubmitRetryMeter() {
+        return submitRetryMeter;
+    }
+    
+    /**
+     * CPU time spent compressing task payloads and responses
+     * @return
+     */
+    public Metric<Timer> getPayloadCompressionTimer() {
+        return payloadCompressionTimer;
+    }
+    
+    /**
+     * Compressed payload size as a percent of the original size
+     * @return
+     */
+    public Metric<Histogram> getPayloadCompressionRatio() {
+        return payloadCompressionRatio;
+    }
+    
     
     
     private MetricName createMetricName(Class<?> clz, String name) {
@@ -222,6 +416,10 @@ public class ExecutorMetrics {
     public Metric<Timer> getTaskExecutionTimer() {
         return taskExecutionTimer;
     }
+    
+    public Metric<Meter> getTaskQueueFullMeter() {
+        return taskQueueFullMeter;
+    }
 
 
 
@@ -262,6 +460,11 @@ public class ExecutorMetrics {
         metrics.newGauge(name, throughputGauge);  
     }
     
+    public void registerLiveGroupsGauge(Gauge<Integer> gauge) {
+        MetricName name = createMetricName("GroupedPriorityQueue", "live-groups");
+        metrics.newGauge(name, gauge);
+    }
+    
     public void registerLocalFuturesWaitingGauge(LocalFuturesWaitingGauge gauge) {
         MetricName name = createMetricName(DistributedExecutorService.class, "futures-waiting-count");
         metrics.newGauge(name, gauge);  
@@ -271,6 +474,37 @@ public class ExecutorMetrics {
         MetricName name = createMetricName(DistributedExecutorService.class, "write-ahead-log-size");
         metrics.newGauge(name, gauge);
     }
+    
+    /**
+     * Tasks each rebalance asked the given steal policy's victims for.  Every policy 
+     * class gets its own metrics so policies can be compared
+     * @param policyClass
+     * @return
+     */
+    public Metric<Histogram> getStealPolicyPlannedTasksHistogram(Class<?> policyClass) {
+        MetricName name = createMetricName(policyClass, "planned-tasks");
+        return new Metric<Histogram>(name, metrics.newHistogram(name, false));
+    }
+    
+    /**
+     * How many members each rebalance with the given steal policy stole from
+     * @param policyClass
+     * @return
+     */
+    public Metric<Histogram> getStealPolicyVictimsHistogram(Class<?> policyClass) {
+        MetricName name = createMetricName(policyClass, "victims");
+        return new Metric<Histogram>(name, metrics.newHistogram(name, false));
+    }
+    
+    /**
+     * Rebalances the given steal policy decided not to steal in
+     * @param policyClass
+     * @return
+     */
+    public Metric<Counter> getStealPolicyNoopCounter(Class<?> policyClass) {
+        MetricName name = createMetricName(policyClass, "noop-counter");
+        return new Metric<Counter>(name, metrics.newCounter(name));
+    }
 
 
 
@@ -335,6 +569,10 @@ public class ExecutorMetrics {
     public Metric<Timer> getTaskQueuePollTimer() {
         return taskQueuePollTimer;
     }
+    
+    public Metric<Meter> getGroupsEvicted() {
+        return groupsEvicted;
+    }
 
 
 
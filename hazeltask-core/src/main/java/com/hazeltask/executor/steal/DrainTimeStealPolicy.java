@@ -0,0 +1,27 @@
+package com.hazeltask.executor.steal;
+
+import com.hazeltask.executor.MemberLoad;
+
+/**
+ * Every member should take the same time to drain its queue.  A member's share is in
+ * proportion to how many tasks a second it has been finishing, so members with more cores
+ * or groups of cheaper tasks get more of the work.
+ * 
+ * @see MemberLoad#getExpectedDrainRate()
+ * @author jclawson
+ *
+ */
+public class DrainTimeStealPolicy extends WeightedTaskStealPolicy {
+    public DrainTimeStealPolicy() {
+        this(DEFAULT_THRESHOLD);
+    }
+    
+    public DrainTimeStealPolicy(double threshold) {
+        super(threshold);
+    }
+
+    @Override
+    protected double getWeight(MemberLoad load) {
+        return load.getExpectedDrainRate();
+    }
+}
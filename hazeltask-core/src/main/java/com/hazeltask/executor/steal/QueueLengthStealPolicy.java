@@ -0,0 +1,24 @@
+package com.hazeltask.executor.steal;
+
+import com.hazeltask.executor.MemberLoad;
+
+/**
+ * Every member should have the same number of tasks queued
+ * 
+ * @author jclawson
+ *
+ */
+public class QueueLengthStealPolicy extends WeightedTaskStealPolicy {
+    public QueueLengthStealPolicy() {
+        this(DEFAULT_THRESHOLD);
+    }
+    
+    public QueueLengthStealPolicy(double threshold) {
+        super(threshold);
+    }
+
+    @Override
+    protected double getWeight(MemberLoad load) {
+        return 1;
+    }
+}
@@ -0,0 +1,22 @@
+package com.hazeltask.executor.steal;
+
+import java.io.Serializable;
+import java.util.List;
+
+import com.hazeltask.executor.task.HazeltaskTask;
+
+/**
+ * Takes the chunks of tasks a steal brings back, usually by queueing them locally
+ * 
+ * @author jclawson
+ *
+ * @param <GROUP>
+ */
+public interface StolenTaskReceiver<GROUP extends Serializable> {
+    /**
+     * @param tasks - the next chunk of stolen tasks
+     * @return how many tasks from the start of the chunk were kept.  The member they were 
+     *         stolen from puts the rest back in its queue
+     */
+    public int receive(List<HazeltaskTask<GROUP>> tasks);
+}
@@ -0,0 +1,38 @@
+package com.hazeltask.executor.steal;
+
+import com.hazelcast.core.Member;
+
+/**
+ * Take up to numberOfTasks tasks from a member, leaving it at least keepAtLeast
+ * 
+ * @author jclawson
+ *
+ */
+public class TaskSteal {
+    private final Member member;
+    private final long numberOfTasks;
+    private final long keepAtLeast;
+    
+    public TaskSteal(Member member, long numberOfTasks, long keepAtLeast) {
+        this.member = member;
+        this.numberOfTasks = numberOfTasks;
+        this.keepAtLeast = keepAtLeast;
+    }
+
+    public Member getMember() {
+        return member;
+    }
+
+    public long getNumberOfTasks() {
+        return numberOfTasks;
+    }
+
+    public long getKeepAtLeast() {
+        return keepAtLeast;
+    }
+
+    @Override
+    public String toString() {
+        return "TaskSteal [member=" + member + ", numberOfTasks=" + numberOfTasks + ", keepAtLeast=" + keepAtLeast + "]";
+    }
+}
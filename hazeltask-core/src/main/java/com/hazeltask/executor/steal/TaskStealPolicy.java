@@ -0,0 +1,23 @@
+package com.hazeltask.executor.steal;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.hazelcast.core.Member;
+import com.hazeltask.executor.MemberLoad;
+import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
+
+/**
+ * Decides when the rebalance task steals and how much it takes from each member
+ * 
+ * @author jclawson
+ *
+ */
+public interface TaskStealPolicy {
+    /**
+     * @param localMember - the member that is stealing
+     * @param loads - the load of every member, including the local one
+     * @return the steals to make, empty if we should leave things as they are
+     */
+    public List<TaskSteal> plan(Member localMember, Collection<MemberResponse<MemberLoad>> loads);
+}
@@ -0,0 +1,26 @@
+package com.hazeltask.executor.steal;
+
+import com.hazeltask.executor.MemberLoad;
+
+/**
+ * Every member should have the same number of tasks queued per worker thread.  Unlike the
+ * DrainTimeStealPolicy this doesn't depend on recent throughput, which is noisy while a
+ * member is starting up or idle.
+ * 
+ * @author jclawson
+ *
+ */
+public class ThreadWeightedStealPolicy extends WeightedTaskStealPolicy {
+    public ThreadWeightedStealPolicy() {
+        this(DEFAULT_THRESHOLD);
+    }
+    
+    public ThreadWeightedStealPolicy(double threshold) {
+        super(threshold);
+    }
+
+    @Override
+    protected double getWeight(MemberLoad load) {
+        return Math.max(1, load.getThreadCount());
+    }
+}
@@ -0,0 +1,86 @@
+package com.hazeltask.executor.steal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import com.hazelcast.core.Member;
+import com.hazeltask.executor.MemberLoad;
+import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
+
+/**
+ * Gives each member a share of all the queued tasks in proportion to its weight.  When
+ * our queue is below threshold of our share we steal the difference from the members
+ * above their share, taking more from the bigger queues.  Each member we steal from
+ * keeps at least its own share.
+ * 
+ * @author jclawson
+ *
+ */
+public abstract class WeightedTaskStealPolicy implements TaskStealPolicy {
+    public static final double DEFAULT_THRESHOLD = 0.30;
+    
+    private final double threshold;
+    
+    /**
+     * @param threshold - only steal when our queue is below this fraction of our share
+     */
+    protected WeightedTaskStealPolicy(double threshold) {
+        if(threshold <= 0 || threshold > 1)
+            throw new IllegalArgumentException("threshold must be more than 0 and at most 1");
+        this.threshold = threshold;
+    }
+    
+    /**
+     * @return how much of the work a member should get compared to the others
+     */
+    protected abstract double getWeight(MemberLoad load);
+    
+    public List<TaskSteal> plan(Member localMember, Collection<MemberResponse<MemberLoad>> loads) {
+        long totalSize = 0;
+        double totalWeight = 0;
+        MemberLoad localLoad = null;
+        for(MemberResponse<MemberLoad> response : loads) {
+            totalSize += response.getValue().getQueueSize();
+            totalWeight += getWeight(response.getValue());
+            if(response.getMember().equals(localMember))
+                localLoad = response.getValue();
+        }
+        if(localLoad == null || totalSize == 0 || totalWeight <= 0)
+            return Collections.emptyList();
+        
+        long localShare = share(localLoad, totalSize, totalWeight);
+        if(localLoad.getQueueSize() >= localShare * threshold)
+            return Collections.emptyList();
+        
+        long totalExceedingShare = 0;
+        for(MemberResponse<MemberLoad> response : loads) {
+            MemberLoad load = response.getValue();
+            if(load.getQueueSize() > share(load, totalSize, totalWeight))
+                totalExceedingShare += load.getQueueSize();
+        }
+        
+        final long needToTake = localShare - localLoad.getQueueSize();
+        List<TaskSteal> steals = new ArrayList<TaskSteal>();
+        for(MemberResponse<MemberLoad> response : loads) {
+            MemberLoad load = response.getValue();
+            long share = share(load, totalSize, totalWeight);
+            if(load.getQueueSize() > share) {
+                double percent = (double) load.getQueueSize() / (double) totalExceedingShare;
+                long take = Math.round(needToTake * percent);
+                if(take > 0)
+                    steals.add(new TaskSteal(response.getMember(), take, share));
+            }
+        }
+        return steals;
+    }
+    
+    private long share(MemberLoad load, long totalSize, double totalWeight) {
+        return (long) (totalSize * getWeight(load) / totalWeight);
+    }
+    
+    public double getThreshold() {
+        return threshold;
+    }
+}
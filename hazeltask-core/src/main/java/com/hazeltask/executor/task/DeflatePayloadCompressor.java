@@ -0,0 +1,76 @@
+package com.hazeltask.executor.task;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses with the JDK's Deflater.  It compresses better than LZPayloadCompressor
+ * but costs a lot more CPU.
+ * 
+ * @author jclawson
+ *
+ */
+public class DeflatePayloadCompressor implements PayloadCompressor {
+    public static final byte ID = 1;
+    
+    private final int level;
+    
+    public DeflatePayloadCompressor() {
+        this(Deflater.BEST_SPEED);
+    }
+    
+    /**
+     * @param level - the Deflater compression level, 1 through 9
+     */
+    public DeflatePayloadCompressor(int level) {
+        this.level = level;
+    }
+    
+    public byte getId() {
+        return ID;
+    }
+
+    public byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] out = new byte[data.length + (data.length >> 3) + 64];
+            int length = 0;
+            while(!deflater.finished()) {
+                if(length == out.length)
+                    out = Arrays.copyOf(out, out.length * 2);
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            return Arrays.copyOf(out, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public byte[] decompress(byte[] data, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            //one extra byte so data longer than expected is caught
+            byte[] out = new byte[length + 1];
+            int read = 0;
+            while(!inflater.finished() && read < out.length) {
+                int n = inflater.inflate(out, read, out.length - read);
+                if(n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                read += n;
+            }
+            if(read != length || !inflater.finished())
+                throw new IOException("Compressed payload is corrupt");
+            return Arrays.copyOf(out, length);
+        } catch (DataFormatException e) {
+            throw new IOException("Compressed payload is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.hazeltask.executor.task;
+
+import java.io.Serializable;
+
+import lombok.extern.slf4j.Slf4j;
+
+import com.hazeltask.core.concurrent.BackoffTimer.BackoffTask;
+import com.hazeltask.executor.local.LocalTaskExecutorService;
+
+/**
+ * Periodically evicts the local task queue's idle groups
+ * 
+ * @author jclawson
+ */
+@Slf4j
+public class GroupEvictionTimerTask<GROUP extends Serializable> extends BackoffTask {
+    private final LocalTaskExecutorService<GROUP> localSvc;
+    
+    public GroupEvictionTimerTask(LocalTaskExecutorService<GROUP> localSvc) {
+        this.localSvc = localSvc;
+    }
+
+    @Override
+    public boolean execute() {
+        try {
+            int evicted = localSvc.evictIdleGroups();
+            if(evicted > 0)
+                log.debug("Evicted "+evicted+" idle groups");
+        } catch (Throwable t) {
+            //swallow this exception so it doesn't cancel this task
+            log.error("An error occurred while evicting idle groups", t);
+        }
+        return true;
+    }
+}
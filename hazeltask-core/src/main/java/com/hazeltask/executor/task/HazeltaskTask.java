@@ -25,6 +25,12 @@ public class HazeltaskTask< G extends Serializable>
     implements Runnable, Task<G>, HazelcastInstanceAware, TrackCreated {
 	private static final long serialVersionUID = 1L;
 	
+	/**
+	 * Written after the id.  Tasks written before TaskCodecs have a SerializationHelper
+	 * type byte there instead, which is never negative
+	 */
+	private static final byte CODEC_FORMAT = -1;
+	
 	private Runnable runTask;
 	private Callable<?> callTask;
 	
@@ -34,6 +40,8 @@ public class HazeltaskTask< G extends Serializable>
 	private int submissionCount;
 	private transient HazelcastInstance hazelcastInstance;
 	private transient Timer taskExecutedTimer;
+	private transient int serializedSize;
+	private transient PayloadCompression payloadCompression;
 	
 	private volatile transient Object result;
     private volatile transient Exception e;
@@ -132,9 +140,10 @@ public class HazeltaskTask< G extends Serializable>
         out.writeLong(id.getMostSignificantBits());
         out.writeLong(id.getLeastSignificantBits());
         
-        SerializationHelper.writeObject(out, group);
-        SerializationHelper.writeObject(out, runTask);
-        SerializationHelper.writeObject(out, callTask);
+        out.writeByte(CODEC_FORMAT);
+        TaskCodecs.writeObject(out, group);
+        PayloadCompression.writePayload(out, runTask, payloadCompression);
+        PayloadCompression.writePayload(out, callTask, payloadCompression);
         out.writeLong(createdAtMillis);
         out.writeInt(submissionCount);
     }
@@ -146,6 +155,22 @@ public class HazeltaskTask< G extends Serializable>
         long l = in.readLong();
         
         id = new UUID(m, l);
+        byte format = in.readByte();
+        if(format != CODEC_FORMAT) {
+            //written before the codecs, like write ahead log entries from an older member
+            readSerializationHelperData(TaskCodecs.unread(format, in));
+            return;
+        }
+        group = (G) TaskCodecs.readObject(in);
+        runTask = (Runnable) PayloadCompression.readPayload(in);
+        callTask = (Callable<?>) PayloadCompression.readPayload(in);
+        
+        createdAtMillis = in.readLong();
+        submissionCount = in.readInt();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private void readSerializationHelperData(DataInput in) throws IOException {
         group = (G) SerializationHelper.readObject(in);
         runTask = (Runnable) SerializationHelper.readObject(in);
         callTask = (Callable<?>) SerializationHelper.readObject(in);
@@ -154,6 +179,27 @@ public class HazeltaskTask< G extends Serializable>
         submissionCount = in.readInt();
     }
 
+    /**
+     * The size of this task on the wire when it was sent to this member.  0 if it
+     * was never serialized.
+     */
+    public int getSerializedSize() {
+        return serializedSize;
+    }
+
+    public void setSerializedSize(int serializedSize) {
+        this.serializedSize = serializedSize;
+    }
+
+    /**
+     * Compress the Runnable or Callable when this task is written
+     * 
+     * @param payloadCompression (nullable)
+     */
+    public void setPayloadCompression(PayloadCompression payloadCompression) {
+        this.payloadCompression = payloadCompression;
+    }
+
     public void setExecutionTimer(Timer taskExecutedTimer) {
         this.taskExecutedTimer = taskExecutedTimer;
     }
@@ -0,0 +1,34 @@
+package com.hazeltask.executor.task;
+
+import java.io.Serializable;
+
+import lombok.extern.slf4j.Slf4j;
+
+import com.hazeltask.core.concurrent.BackoffTimer.BackoffTask;
+
+/**
+ * Keeps an idle member stealing.  Once the local queue is empty no task finishes to trigger the
+ * IdleTaskStealer, so a steal that came back empty would be the last one until the next rebalance.
+ * The stealer's own rate limit still applies.
+ * 
+ * @author jclawson
+ */
+@Slf4j
+public class IdleTaskStealTimerTask<GROUP extends Serializable> extends BackoffTask {
+    private final IdleTaskStealer<GROUP> stealer;
+    
+    public IdleTaskStealTimerTask(IdleTaskStealer<GROUP> stealer) {
+        this.stealer = stealer;
+    }
+
+    @Override
+    public boolean execute() {
+        try {
+            stealer.triggerIfIdle();
+        } catch (Throwable t) {
+            //swallow this exception so it doesn't cancel this task
+            log.error("An error occurred while starting an idle task steal", t);
+        }
+        return true;
+    }
+}
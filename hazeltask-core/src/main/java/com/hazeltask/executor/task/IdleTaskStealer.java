@@ -0,0 +1,171 @@
+package com.hazeltask.executor.task;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import lombok.extern.slf4j.Slf4j;
+
+import com.hazelcast.core.Member;
+import com.hazeltask.HazeltaskTopology;
+import com.hazeltask.config.ExecutorLoadBalancingConfig;
+import com.hazeltask.executor.ExecutorListener;
+import com.hazeltask.executor.IExecutorTopologyService;
+import com.hazeltask.executor.local.LocalTaskExecutorService;
+import com.hazeltask.executor.metrics.ExecutorMetrics;
+import com.hazeltask.executor.steal.StolenTaskReceiver;
+import com.hazeltask.executor.steal.TaskSteal;
+import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
+
+/**
+ * Steals from the most loaded member as soon as the local task queue runs low, so a member
+ * that drains its queue doesn't sit idle until the next rebalance.  After each task finishes,
+ * and periodically from the IdleTaskStealTimerTask, we look at the queue size, and if it is at
+ * or below the low water mark a steal is started on the steal executor.  Only one steal runs
+ * at a time.
+ *
+ * Steals are rate limited.  After a steal we wait minInterval before starting another one,
+ * and every steal that comes back empty doubles the wait up to maxInterval so an idle cluster
+ * isn't asked for its queue sizes after every task.  We only steal when we can take more than
+ * the low water mark, and the member we steal from keeps at least half of the difference
+ * between us, so two members can't keep handing the same tasks back and forth.
+ *
+ * @author jclawson
+ */
+@Slf4j
+public class IdleTaskStealer<GROUP extends Serializable> implements ExecutorListener<GROUP>, Runnable {
+    private final Member localMember;
+    private final IExecutorTopologyService<GROUP> executorTopologyService;
+    private final LocalTaskExecutorService<GROUP> localSvc;
+    private final Executor stealExecutor;
+    private final int lowWaterMark;
+    private final long minInterval;
+    private final long maxInterval;
+
+    private final AtomicBoolean stealing = new AtomicBoolean();
+    private volatile long nextStealTime;
+    /**
+     * Only changed by the steal that is running
+     */
+    private long interval;
+
+    private final Timer idleStealTimer;
+    private final Histogram idleStealHistogram;
+
+    public IdleTaskStealer(HazeltaskTopology<GROUP> topology, LocalTaskExecutorService<GROUP> localSvc, IExecutorTopologyService<GROUP> executorTopologyService, Executor stealExecutor, ExecutorLoadBalancingConfig<GROUP> config, ExecutorMetrics metrics) {
+        this.localMember = topology.getLocalMember();
+        this.executorTopologyService = executorTopologyService;
+        this.localSvc = localSvc;
+        this.stealExecutor = stealExecutor;
+        this.lowWaterMark = config.getIdleStealLowWaterMark();
+        this.minInterval = config.getIdleStealMinInterval();
+        this.maxInterval = Math.max(minInterval, config.getRebalanceTaskPeriod());
+        this.interval = minInterval;
+
+        idleStealTimer = metrics.getIdleStealTimer().getMetric();
+        idleStealHistogram = metrics.getIdleStealHistogram().getMetric();
+    }
+
+    public void beforeExecute(HazeltaskTask<GROUP> runnable) {}
+
+    public void afterExecute(HazeltaskTask<GROUP> runnable, Throwable exception) {
+        triggerIfIdle();
+    }
+
+    /**
+     * Start a steal if the local queue is at or below the low water mark.  Called after
+     * each task and by the IdleTaskStealTimerTask, because a member with nothing left to
+     * run has no tasks finishing to trigger the next steal
+     *
+     * @return true if a steal was started
+     */
+    public boolean triggerIfIdle() {
+        if(localSvc.getQueueSize() <= lowWaterMark)
+            return trigger();
+        return false;
+    }
+
+    /**
+     * Start a steal unless one is running or the last one was too recent
+     *
+     * @return true if a steal was started
+     */
+    public boolean trigger() {
+        if(System.currentTimeMillis() < nextStealTime)
+            return false;
+        if(!stealing.compareAndSet(false, true))
+            return false;
+        try {
+            stealExecutor.execute(this);
+            return true;
+        } catch (RejectedExecutionException e) {
+            //we are shutting down
+            stealing.set(false);
+            return false;
+        }
+    }
+
+    public void run() {
+        long added = 0;
+        try {
+            added = steal();
+        } catch (Throwable t) {
+            log.error("Error stealing tasks for an idle queue", t);
+        } finally {
+            if(added > 0)
+                interval = minInterval;
+            else
+                interval = Math.min(maxInterval, Math.max(1, interval) * 2);
+            nextStealTime = System.currentTimeMillis() + interval;
+            stealing.set(false);
+        }
+    }
+
+    /**
+     * @return how many stolen tasks were added to the local queue
+     */
+    protected long steal() {
+        TimerContext ctx = idleStealTimer.time();
+        try {
+            //BOUNDED: MemberTasks.executeOptimistic waits a max of 60 seconds
+            Collection<MemberResponse<Long>> queueSizes = executorTopologyService.getMemberQueueSizes();
+            long localQueueSize = localSvc.getQueueSize();
+
+            Member victim = null;
+            long victimQueueSize = 0;
+            for(MemberResponse<Long> response : queueSizes) {
+                if(!response.getMember().equals(localMember) && response.getValue() > victimQueueSize) {
+                    victim = response.getMember();
+                    victimQueueSize = response.getValue();
+                }
+            }
+
+            long take = (victimQueueSize - localQueueSize) / 2;
+            if(victim == null || take <= lowWaterMark) {
+                log.debug("No member has enough tasks to steal from");
+                return 0;
+            }
+
+            long added = executorTopologyService.stealTasks(
+                    Collections.singletonList(new TaskSteal(victim, take, victimQueueSize - take)),
+                    new StolenTaskReceiver<GROUP>() {
+                        public int receive(List<HazeltaskTask<GROUP>> tasks) {
+                            return localSvc.executeAll(tasks);
+                        }
+                    });
+
+            idleStealHistogram.update(added);
+            log.debug("Stole "+added+" tasks from "+victim);
+            return added;
+        } finally {
+            ctx.stop();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.hazeltask.executor.task;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A fast pure java compressor that writes the LZ4 block format.  Repeated sequences of
+ * at least 4 bytes within the last 64KB are replaced with a back reference.  It doesn't
+ * compress as well as Deflate but is many times faster at both ends.
+ * 
+ * @author jclawson
+ *
+ */
+public class LZPayloadCompressor implements PayloadCompressor {
+    public static final byte ID = 2;
+    
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_LOG = 12;
+    private static final int MAX_OFFSET = 65535;
+    /**
+     * The format requires the last 5 bytes to be literals and the last match to start
+     * at least 12 bytes before the end
+     */
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    
+    public byte getId() {
+        return ID;
+    }
+
+    public byte[] compress(byte[] src) {
+        int length = src.length;
+        byte[] dst = new byte[length + length / 255 + 16];
+        int op = 0;
+        int anchor = 0;
+        
+        if(length > MF_LIMIT) {
+            int[] table = new int[1 << HASH_LOG];
+            int matchLimit = length - LAST_LITERALS;
+            int ip = 0;
+            while(ip < length - MF_LIMIT) {
+                int sequence = readInt(src, ip);
+                int h = (sequence * -1640531535) >>> (32 - HASH_LOG);
+                //positions are stored plus one so 0 means empty
+                int ref = table[h] - 1;
+                table[h] = ip + 1;
+                if(ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                    ip++;
+                    continue;
+                }
+                
+                while(ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while(ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength])
+                    matchLength++;
+                
+                op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, matchLength - MIN_MATCH);
+                ip += matchLength;
+                anchor = ip;
+            }
+        }
+        
+        op = writeSequence(src, anchor, length - anchor, dst, op, 0, -1);
+        return Arrays.copyOf(dst, op);
+    }
+    
+    /**
+     * @param matchLength - the match length minus MIN_MATCH, or -1 for the final literals
+     */
+    private static int writeSequence(byte[] src, int literalStart, int literals, byte[] dst, int op, int offset, int matchLength) {
+        int token = op++;
+        dst[token] = (byte) (Math.min(literals, 15) << 4);
+        if(literals >= 15)
+            op = writeLength(dst, op, literals - 15);
+        System.arraycopy(src, literalStart, dst, op, literals);
+        op += literals;
+        
+        if(matchLength >= 0) {
+            dst[op++] = (byte) offset;
+            dst[op++] = (byte) (offset >>> 8);
+            dst[token] |= (byte) Math.min(matchLength, 15);
+            if(matchLength >= 15)
+                op = writeLength(dst, op, matchLength - 15);
+        }
+        return op;
+    }
+    
+    private static int writeLength(byte[] dst, int op, int length) {
+        while(length >= 255) {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op++] = (byte) length;
+        return op;
+    }
+    
+    private static int readInt(byte[] src, int i) {
+        return (src[i] & 0xFF) | (src[i + 1] & 0xFF) << 8 | (src[i + 2] & 0xFF) << 16 | (src[i + 3] & 0xFF) << 24;
+    }
+
+    public byte[] decompress(byte[] src, int length) throws IOException {
+        byte[] dst = new byte[length];
+        int ip = 0;
+        int op = 0;
+        try {
+            while(ip < src.length) {
+                int token = src[ip++] & 0xFF;
+                
+                int literals = token >>> 4;
+                if(literals == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literals += b;
+                    } while(b == 255);
+                }
+                System.arraycopy(src, ip, dst, op, literals);
+                ip += literals;
+                op += literals;
+                if(ip == src.length)
+                    break;
+                
+                int offset = (src[ip++] & 0xFF) | (src[ip++] & 0xFF) << 8;
+                int matchLength = token & 0x0F;
+                if(matchLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLength += b;
+                    } while(b == 255);
+                }
+                matchLength += MIN_MATCH;
+                
+                int ref = op - offset;
+                if(offset == 0 || ref < 0)
+                    throw new IOException("Compressed payload is corrupt");
+                //byte by byte because the match may overlap what it is copying
+                for(int i = 0; i < matchLength; i++)
+                    dst[op++] = dst[ref++];
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Compressed payload is corrupt", e);
+        }
+        if(op != length)
+            throw new IOException("Compressed payload is corrupt");
+        return dst;
+    }
+}
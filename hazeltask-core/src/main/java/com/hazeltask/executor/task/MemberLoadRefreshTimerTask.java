@@ -0,0 +1,49 @@
+package com.hazeltask.executor.task;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+
+import com.hazelcast.core.Member;
+import com.hazeltask.core.concurrent.BackoffTimer.BackoffTask;
+import com.hazeltask.core.concurrent.collections.router.LoadAwareRouter;
+import com.hazeltask.core.concurrent.collections.router.RouteLoad;
+import com.hazeltask.executor.IExecutorTopologyService;
+import com.hazeltask.executor.MemberLoad;
+import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
+
+/**
+ * Periodically asks each member for its load and hands it to the member router
+ * 
+ * @author jclawson
+ */
+@Slf4j
+public class MemberLoadRefreshTimerTask<GROUP extends Serializable> extends BackoffTask {
+    private final IExecutorTopologyService<GROUP> executorTopologyService;
+    private final LoadAwareRouter<Member> memberRouter;
+    
+    public MemberLoadRefreshTimerTask(IExecutorTopologyService<GROUP> executorTopologyService, LoadAwareRouter<Member> memberRouter) {
+        this.executorTopologyService = executorTopologyService;
+        this.memberRouter = memberRouter;
+    }
+
+    @Override
+    public boolean execute() {
+        try {
+            Collection<MemberResponse<MemberLoad>> responses = executorTopologyService.getMemberLoads();
+            Map<Member, RouteLoad> loads = new HashMap<Member, RouteLoad>(responses.size() * 2);
+            for(MemberResponse<MemberLoad> response : responses) {
+                MemberLoad load = response.getValue();
+                loads.put(response.getMember(), new RouteLoad(load.getQueueSize(), load.getExpectedDrainRate()));
+            }
+            memberRouter.updateLoads(loads);
+        } catch (Throwable t) {
+            //swallow this exception so it doesn't cancel this task
+            log.error("An error occurred while refreshing member loads", t);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,139 @@
+package com.hazeltask.executor.task;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.hazeltask.config.ExecutorConfig;
+import com.hazeltask.executor.metrics.ExecutorMetrics;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.Timer;
+
+/**
+ * Compresses task payloads and task responses once their encoded size reaches a
+ * threshold.  Each payload starts with the id of the compressor used, or 0 if it isn't
+ * compressed, so any member can read it whether or not it compresses itself.
+ * 
+ * @author jclawson
+ *
+ */
+public class PayloadCompression {
+    private static final byte UNCOMPRESSED = 0;
+    private static final ConcurrentMap<Byte, PayloadCompressor> compressors = new ConcurrentHashMap<Byte, PayloadCompressor>();
+    
+    static {
+        register(new DeflatePayloadCompressor());
+        register(new LZPayloadCompressor());
+    }
+    
+    private final PayloadCompressor compressor;
+    private final int threshold;
+    private final Timer compressionTimer;
+    private final Histogram compressionRatio;
+    
+    /**
+     * Readers find compressors by id, so a custom compressor has to be registered on
+     * every member.  Using it in the ExecutorConfig registers it.
+     * 
+     * @param compressor
+     */
+    public static void register(PayloadCompressor compressor) {
+        if(compressor.getId() <= UNCOMPRESSED)
+            throw new IllegalArgumentException("Compressor ids must be above 0");
+        PayloadCompressor existing = compressors.putIfAbsent(compressor.getId(), compressor);
+        if(existing != null && existing.getClass() != compressor.getClass())
+            throw new IllegalArgumentException("Compressor id "+compressor.getId()+" is already used by "+existing.getClass().getName());
+    }
+    
+    /**
+     * @return null if payload compression isn't enabled
+     */
+    public static PayloadCompression create(ExecutorConfig<?> config, ExecutorMetrics metrics) {
+        if(config.getPayloadCompressor() == null)
+            return null;
+        return new PayloadCompression(config.getPayloadCompressor(), config.getPayloadCompressionThreshold(), metrics);
+    }
+    
+    /**
+     * @param compressor
+     * @param threshold - payloads smaller than this many bytes are not compressed
+     * @param metrics (nullable)
+     */
+    public PayloadCompression(PayloadCompressor compressor, int threshold, ExecutorMetrics metrics) {
+        register(compressor);
+        this.compressor = compressor;
+        this.threshold = threshold;
+        if(metrics != null) {
+            compressionTimer = metrics.getPayloadCompressionTimer().getMetric();
+            compressionRatio = metrics.getPayloadCompressionRatio().getMetric();
+        } else {
+            compressionTimer = null;
+            compressionRatio = null;
+        }
+    }
+    
+    /**
+     * Write value with TaskCodecs, compressed if compression is set and the value is big enough
+     * 
+     * @param out
+     * @param value
+     * @param compression (nullable)
+     * @throws IOException
+     */
+    public static void writePayload(DataOutput out, Object value, PayloadCompression compression) throws IOException {
+        if(compression == null || value == null) {
+            out.writeByte(UNCOMPRESSED);
+            TaskCodecs.writeObject(out, value);
+        } else {
+            compression.write(out, value);
+        }
+    }
+    
+    public static Object readPayload(DataInput in) throws IOException {
+        byte id = in.readByte();
+        if(id == UNCOMPRESSED)
+            return TaskCodecs.readObject(in);
+        
+        PayloadCompressor compressor = compressors.get(id);
+        if(compressor == null)
+            throw new IOException("No payload compressor is registered with id "+id);
+        int length = in.readInt();
+        byte[] compressed = new byte[in.readInt()];
+        in.readFully(compressed);
+        byte[] data = compressor.decompress(compressed, length);
+        return TaskCodecs.readObject(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+    
+    private void write(DataOutput out, Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TaskCodecs.writeObject(new DataOutputStream(bytes), value);
+        byte[] data = bytes.toByteArray();
+        
+        if(data.length >= threshold) {
+            long start = System.nanoTime();
+            byte[] compressed = compressor.compress(data);
+            if(compressionTimer != null) {
+                compressionTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                compressionRatio.update(compressed.length * 100L / data.length);
+            }
+            
+            if(compressed.length < data.length) {
+                out.writeByte(compressor.getId());
+                out.writeInt(data.length);
+                out.writeInt(compressed.length);
+                out.write(compressed);
+                return;
+            }
+        }
+        
+        out.writeByte(UNCOMPRESSED);
+        out.write(data);
+    }
+}
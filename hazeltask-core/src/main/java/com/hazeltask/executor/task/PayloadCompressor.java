@@ -0,0 +1,28 @@
+package com.hazeltask.executor.task;
+
+import java.io.IOException;
+
+/**
+ * Compresses the payload of tasks and task responses.  The id is written in front of
+ * every compressed payload so the reading member can find the same compressor.
+ * 
+ * @see DeflatePayloadCompressor
+ * @see LZPayloadCompressor
+ * @author jclawson
+ *
+ */
+public interface PayloadCompressor {
+    /**
+     * @return a unique id above 0.  Ids below 10 are reserved for the built in compressors
+     */
+    public byte getId();
+    
+    public byte[] compress(byte[] data);
+    
+    /**
+     * @param data - the output of compress
+     * @param length - the length of the original data
+     * @throws IOException if the data is corrupt
+     */
+    public byte[] decompress(byte[] data, int length) throws IOException;
+}
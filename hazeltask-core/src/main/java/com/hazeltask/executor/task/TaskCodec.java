@@ -0,0 +1,18 @@
+package com.hazeltask.executor.task;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes one type of group, Runnable or Callable inside a HazeltaskTask without
+ * java serialization.  Register it with TaskCodecs on every member.
+ * 
+ * @author jclawson
+ *
+ * @param <T>
+ */
+public interface TaskCodec<T> {
+    public void write(DataOutput out, T value) throws IOException;
+    public T read(DataInput in) throws IOException;
+}
@@ -0,0 +1,232 @@
+package com.hazeltask.executor.task;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.lang.reflect.Constructor;
+import java.nio.charset.Charset;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.hazelcast.nio.DataSerializable;
+import com.hazelcast.nio.SerializationHelper;
+
+/**
+ * Writes the group, Runnable and Callable of a HazeltaskTask.  Strings, Longs,
+ * Integers, Enums and UUIDs are written inline.  DataSerializable values and values
+ * with a registered TaskCodec are written by class name or codec id followed by their
+ * own data.  Anything else falls back to hazelcast's SerializationHelper, which is java
+ * serialization for most types.
+ * 
+ * Codecs are looked up by the exact class of the value and must be registered under
+ * the same id on every member before tasks of that class are sent.
+ * 
+ * @author jclawson
+ *
+ */
+public final class TaskCodecs {
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte LONG = 2;
+    private static final byte INTEGER = 3;
+    private static final byte ENUM = 4;
+    private static final byte UUID_TYPE = 5;
+    private static final byte DATA_SERIALIZABLE = 6;
+    private static final byte CODEC = 7;
+    private static final byte SERIALIZED = 8;
+    private static final byte LONG_STRING = 9;
+    
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    
+    /**
+     * writeUTF is limited to 65535 bytes, longer strings could need 3 bytes per char
+     */
+    private static final int MAX_UTF_LENGTH = 65535 / 3;
+    
+    private static final ConcurrentMap<Class<?>, Registration<?>> codecsByType = new ConcurrentHashMap<Class<?>, Registration<?>>();
+    private static final ConcurrentMap<Integer, Registration<?>> codecsById = new ConcurrentHashMap<Integer, Registration<?>>();
+    
+    private static class Registration<T> {
+        private final int id;
+        private final TaskCodec<T> codec;
+        
+        private Registration(int id, TaskCodec<T> codec) {
+            this.id = id;
+            this.codec = codec;
+        }
+    }
+    
+    private TaskCodecs() {}
+    
+    /**
+     * Write values of type with codec.  The id is what goes on the wire so it must
+     * be the same for this type on every member.
+     * 
+     * @param type
+     * @param id
+     * @param codec
+     * @throws IllegalArgumentException if the type or id already has a different codec
+     */
+    public static synchronized <T> void register(Class<T> type, int id, TaskCodec<T> codec) {
+        Registration<?> byType = codecsByType.get(type);
+        Registration<?> byId = codecsById.get(id);
+        if(byType != null && byType == byId && byType.codec == codec)
+            return;
+        if(byType != null)
+            throw new IllegalArgumentException(type.getName()+" already has a codec with id "+byType.id);
+        if(byId != null)
+            throw new IllegalArgumentException("Codec id "+id+" is already registered");
+        
+        Registration<T> registration = new Registration<T>(id, codec);
+        codecsById.put(id, registration);
+        codecsByType.put(type, registration);
+    }
+    
+    public static synchronized void unregister(Class<?> type) {
+        Registration<?> registration = codecsByType.remove(type);
+        if(registration != null)
+            codecsById.remove(registration.id, registration);
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static void writeObject(DataOutput out, Object value) throws IOException {
+        if(value == null) {
+            out.writeByte(NULL);
+        } else if(value instanceof String) {
+            String str = (String) value;
+            if(str.length() <= MAX_UTF_LENGTH) {
+                out.writeByte(STRING);
+                out.writeUTF(str);
+            } else {
+                byte[] bytes = str.getBytes(UTF8);
+                out.writeByte(LONG_STRING);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        } else if(value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if(value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if(value instanceof Enum) {
+            Enum<?> e = (Enum<?>) value;
+            out.writeByte(ENUM);
+            out.writeUTF(e.getDeclaringClass().getName());
+            out.writeUTF(e.name());
+        } else if(value instanceof UUID) {
+            UUID id = (UUID) value;
+            out.writeByte(UUID_TYPE);
+            out.writeLong(id.getMostSignificantBits());
+            out.writeLong(id.getLeastSignificantBits());
+        } else {
+            Registration registration = codecsByType.get(value.getClass());
+            if(registration != null) {
+                out.writeByte(CODEC);
+                out.writeInt(registration.id);
+                registration.codec.write(out, value);
+            } else if(value instanceof DataSerializable) {
+                out.writeByte(DATA_SERIALIZABLE);
+                out.writeUTF(value.getClass().getName());
+                ((DataSerializable) value).writeData(out);
+            } else {
+                out.writeByte(SERIALIZED);
+                SerializationHelper.writeObject(out, value);
+            }
+        }
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static Object readObject(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch(type) {
+            case NULL:
+                return null;
+            case STRING:
+                return in.readUTF();
+            case LONG_STRING:
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return new String(bytes, UTF8);
+            case LONG:
+                return in.readLong();
+            case INTEGER:
+                return in.readInt();
+            case ENUM:
+                Class enumType = classForName(in.readUTF());
+                return Enum.valueOf(enumType, in.readUTF());
+            case UUID_TYPE:
+                return new UUID(in.readLong(), in.readLong());
+            case CODEC:
+                int id = in.readInt();
+                Registration<?> registration = codecsById.get(id);
+                if(registration == null)
+                    throw new IOException("No codec is registered with id "+id);
+                return registration.codec.read(in);
+            case DATA_SERIALIZABLE:
+                String className = in.readUTF();
+                Class<?> valueType = classForName(className);
+                DataSerializable value;
+                try {
+                    //like hazelcast, the no-arg constructor doesn't have to be public
+                    Constructor<?> constructor = valueType.getDeclaredConstructor();
+                    constructor.setAccessible(true);
+                    value = (DataSerializable) constructor.newInstance();
+                } catch (Exception e) {
+                    throw new IOException("Unable to create "+className, e);
+                }
+                value.readData(in);
+                return value;
+            case SERIALIZED:
+                return SerializationHelper.readObject(in);
+            default:
+                throw new IOException("Unknown task value type "+type);
+        }
+    }
+    
+    /**
+     * @return in with b put back in front of it
+     */
+    static DataInput unread(byte b, DataInput in) {
+        InputStream rest = in instanceof InputStream ? (InputStream) in : new DataInputStreamAdapter(in);
+        return new DataInputStream(new SequenceInputStream(new ByteArrayInputStream(new byte[]{b}), rest));
+    }
+    
+    private static class DataInputStreamAdapter extends InputStream {
+        private final DataInput in;
+        
+        private DataInputStreamAdapter(DataInput in) {
+            this.in = in;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            try {
+                return in.readUnsignedByte();
+            } catch (EOFException e) {
+                return -1;
+            }
+        }
+    }
+    
+    private static Class<?> classForName(String className) throws IOException {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        try {
+            if(loader != null)
+                return Class.forName(className, true, loader);
+        } catch (ClassNotFoundException e) {
+            //try our own loader
+        }
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unable to find class "+className, e);
+        }
+    }
+}
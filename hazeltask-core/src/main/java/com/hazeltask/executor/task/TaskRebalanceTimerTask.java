@@ -2,8 +2,7 @@ package com.hazeltask.executor.task;
 
 import java.io.Serializable;
 import java.util.Collection;
-import java.util.LinkedList;
-import java.util.concurrent.locks.Lock;
+import java.util.List;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -11,24 +10,25 @@ import com.hazelcast.core.Member;
 import com.hazeltask.HazeltaskTopology;
 import com.hazeltask.core.concurrent.BackoffTimer.BackoffTask;
 import com.hazeltask.executor.IExecutorTopologyService;
+import com.hazeltask.executor.MemberLoad;
 import com.hazeltask.executor.local.LocalTaskExecutorService;
 import com.hazeltask.executor.metrics.ExecutorMetrics;
+import com.hazeltask.executor.steal.StolenTaskReceiver;
+import com.hazeltask.executor.steal.TaskSteal;
+import com.hazeltask.executor.steal.TaskStealPolicy;
 import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
-import com.hazeltask.hazelcast.MemberValuePair;
 import com.yammer.metrics.core.Counter;
 import com.yammer.metrics.core.Histogram;
 import com.yammer.metrics.core.Timer;
 import com.yammer.metrics.core.TimerContext;
 
 /**
- * Is there a way we can do this without locking?
+ * Periodically asks every member for its load and lets the TaskStealPolicy decide how many
+ * tasks to take from whom.
  * 
- * We will only take work if we find a node that has PERCENT_THRESHOLD more work than 
- * this node.
- * 
- * We lock these tasks with a cluster wide lock so that only one per node may run
- * 
- * TODO: lets have TaskStealPolicies so this is customizable, when and how much to steal
+ * Every member rebalances on its own, there is no cluster lock.  The members we steal from 
+ * hand out tasks one steal at a time and never drop below the share the policy left them, 
+ * so members stealing at the same time can't take more than a member can spare.
  * 
  * @author jclawson
  */
@@ -37,29 +37,31 @@ public class TaskRebalanceTimerTask<GROUP extends Serializable> extends BackoffT
     private final Member localMember;
     private final IExecutorTopologyService<GROUP> executorTopologyService;
     private final LocalTaskExecutorService<GROUP> localSvc;
+    private final TaskStealPolicy stealPolicy;
     
     private Histogram histogram;
     private Timer redistributionTimer;
-    private Timer lockWaitTimer;
+    private Timer stealTimer;
+    private Histogram membersHistogram;
     private Counter getRebalanceNoopCounter;
+    private Histogram policyPlannedHistogram;
+    private Histogram policyVictimsHistogram;
+    private Counter policyNoopCounter;
 	
-	/**
-	 * If a member has this percent MORE works than the current member, steal them
-	 */
-	private static final double THRESHOLD = 0.30;
-	
-	private final Lock LOCK;
-	
-	public TaskRebalanceTimerTask(HazeltaskTopology<GROUP> topology, LocalTaskExecutorService<GROUP> localSvc, IExecutorTopologyService<GROUP> executorTopologyService, ExecutorMetrics metrics) {
-	    LOCK = executorTopologyService.getRebalanceTaskClusterLock();
+	public TaskRebalanceTimerTask(HazeltaskTopology<GROUP> topology, LocalTaskExecutorService<GROUP> localSvc, IExecutorTopologyService<GROUP> executorTopologyService, TaskStealPolicy stealPolicy, ExecutorMetrics metrics) {
 		localMember = topology.getLocalMember();
 		this.executorTopologyService = executorTopologyService;
 		this.localSvc = localSvc;
+		this.stealPolicy = stealPolicy;
 		
 		histogram = metrics.getTaskBalanceHistogram().getMetric();
         redistributionTimer = metrics.getTaskBalanceTimer().getMetric();
-        lockWaitTimer = metrics.getTaskBalanceLockWaitTimer().getMetric();
+        stealTimer = metrics.getTaskStealTimer().getMetric();
+        membersHistogram = metrics.getRebalanceMembersHistogram().getMetric();
         getRebalanceNoopCounter = metrics.getRebalanceNoopCounter().getMetric();
+        policyPlannedHistogram = metrics.getStealPolicyPlannedTasksHistogram(stealPolicy.getClass()).getMetric();
+        policyVictimsHistogram = metrics.getStealPolicyVictimsHistogram(stealPolicy.getClass()).getMetric();
+        policyNoopCounter = metrics.getStealPolicyNoopCounter(stealPolicy.getClass()).getMetric();
 	}
 	
 	
@@ -67,100 +69,46 @@ public class TaskRebalanceTimerTask<GROUP extends Serializable> extends BackoffT
     public boolean execute() {
 	    try {
     	    log.debug( "Running Rebalance Task");
-    	    TimerContext waitCtx = lockWaitTimer.time();
-    	    try {    	        
-    	        LOCK.lock();
-    	    } finally {
-    	        //TODO: refactor this so its cleaner
-    	        try {
-    	            waitCtx.stop();
-    	        } catch (Throwable t) {
-    	            //not sure if this is possible
-    	            LOCK.unlock();
-    	            throw t;//outer catch should get this.
-    	        }
-    	    }
-    	    /*
-    	     * NOTE: because we are locking here, we need to make ABSOLUTELY sure all our waits are bounded
-    	     * ----> Comment on any external calls to note that they are bounded
-    	     */
-    	    TimerContext timerCtx = null; 
+    	    int reclaimed = localSvc.reclaimExpiredSteals();
+    	    if(reclaimed > 0)
+    	        log.warn("Put back "+reclaimed+" tasks a thief didn't acknowledge");
+    	    TimerContext timerCtx = redistributionTimer.time();
     	    try {
-    	        timerCtx = redistributionTimer.time();
-    	        //ClusterServices clusterServices = distributedExecutorService.getTopology().getClusterServices();
-        		
         	    //BOUNDED: MemberTasks.executeOptimistic waits a max of 60 seconds
-        	    Collection<MemberResponse<Long>> queueSizes = executorTopologyService.getMemberQueueSizes();
-        	    if(queueSizes.size() == 0) {
+        	    Collection<MemberResponse<MemberLoad>> loads = executorTopologyService.getMemberLoads();
+        	    if(loads.size() == 0) {
         	        getRebalanceNoopCounter.inc();
         	        return false;
         	    }
-        		
-                long localQueueSize = -1;        
-        		long totalSize = 0;
-        	
-        		for(MemberResponse<Long> response : queueSizes) {
-        			totalSize += response.getValue();
-        			if(response.getMember().equals(localMember)) {
-        			    localQueueSize = response.getValue();
-        			}
-        		}
-        		
-        		final long optimalSize = totalSize / queueSizes.size();
-        		
-        		if(localQueueSize == -1) {
-        		    //the localQueueSize was not fetched for some reason... 
-        		    //TODO: throw exception?
-        		    log.error( "Cannot get localQueueSize");
-        		    return false;
-        		}	
-        		
-        		if(localQueueSize >= optimalSize || (optimalSize * THRESHOLD) <= localQueueSize) {
-        		    //nothing to do
-        		    log.info( "No rebalance needed");
-        		    getRebalanceNoopCounter.inc();
-        		    return false;
-        		}
-        		
-        		//------------------------
-        		// Figure out how much is available to take.. (sum of those that exceed the average size)
-        		//------------------------
-        		long totalExceedingIdeal = 0;
-        		for(MemberResponse<Long> response : queueSizes) {
-        		    if(response.getValue() > optimalSize)
-        		        totalExceedingIdeal += response.getValue();
-        		}
-        		
-        		final long needToTake =  optimalSize - localQueueSize;
-        		LinkedList<MemberValuePair<Long>> numToTake = new LinkedList<MemberValuePair<Long>>();
-        		
-        		log.info( "Total Size: "+totalSize+", Optimal size: "+optimalSize+", Local Size: "+localQueueSize);
-        		log.info( "I will take "+needToTake+" tasks from "+numToTake.size()+" nodes");
-        		
-        		//------------------------
-        		// Take a percentage according to the total available to take
-        		//------------------------
-        		for(MemberResponse<Long> response : queueSizes) {
-        		    if(response.getValue() > optimalSize) {
-        		        double percent = ((double)response.getValue() / (double)totalExceedingIdeal);
-        		        long take = (long) Math.round(needToTake * percent);
-        		    	numToTake.add(new MemberValuePair<Long>(response.getMember(), take));
-        		    	log.info( "I will take "+take+" tasks from "+response.getMember());
-        		    }
-        		}
+        	    membersHistogram.update(loads.size());
+        	    
+        	    List<TaskSteal> steals = stealPolicy.plan(localMember, loads);
+        	    if(steals.isEmpty()) {
+        	        log.info( "No rebalance needed");
+        	        getRebalanceNoopCounter.inc();
+        	        policyNoopCounter.inc();
+        	        return false;
+        	    }
+        	    
+        	    long planned = 0;
+        	    for(TaskSteal steal : steals) {
+        	        planned += steal.getNumberOfTasks();
+        	        log.info( "I will take "+steal.getNumberOfTasks()+" tasks from "+steal.getMember()+", leaving it at least "+steal.getKeepAtLeast());
+        	    }
+        	    policyPlannedHistogram.update(planned);
+        	    policyVictimsHistogram.update(steals.size());
     		
-        		
-    		//for each numToTake, send a message to steal work
-    		//use a completion service to manage futures and recieve results
-        	//make sure to bound the waiting of each call with something like 5 minutes or 10 minutes
-        		
-        		//TODO: replace this with a completion service so we can process results as we get them
-        		Collection<HazeltaskTask<GROUP>> stolenTasks = executorTopologyService.stealTasks(numToTake);
-        		//add to local queue
-        		int totalAdded = 0;
-        		for(HazeltaskTask<GROUP> task : stolenTasks) {
-        		    localSvc.execute(task);
-        		    totalAdded++;
+        		//each chunk goes straight into the local queue, what doesn't fit is put back
+        		long totalAdded;
+        		TimerContext stealCtx = stealTimer.time();
+        		try {
+        		    totalAdded = executorTopologyService.stealTasks(steals, new StolenTaskReceiver<GROUP>() {
+        		        public int receive(List<HazeltaskTask<GROUP>> tasks) {
+        		            return localSvc.executeAll(tasks);
+        		        }
+        		    });
+        		} finally {
+        		    stealCtx.stop();
         		}
         		
         		if(histogram != null)
@@ -170,11 +118,7 @@ public class TaskRebalanceTimerTask<GROUP extends Serializable> extends BackoffT
         		
         		
     	    } finally {
-    	        try {
-    	            LOCK.unlock();
-    	        } finally {
-    	            timerCtx.stop();
-    	        }
+    	        timerCtx.stop();
     	    }
             return false;
 	    } catch (Throwable t) {
@@ -75,6 +75,11 @@ public class TaskRecoveryTimerTask<GROUP extends Serializable> extends BackoffTa
     	        }
     	        
     	        for(HazeltaskTask<GROUP> work : works) {
+    	            //its write ahead log put landed after it finished
+    	            if(executorTopologyService.isTaskCompleted(work.getId())) {
+    	                executorTopologyService.removePendingTask(work);
+    	                continue;
+    	            }
     	            svc.submitHazeltaskTask(work, true);
     	        }
     	        
@@ -1,5 +1,8 @@
 package com.hazeltask.executor.task;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.UUID;
 
@@ -9,9 +12,10 @@ public class TaskResponse<R extends Serializable> implements Serializable {
     private static final long serialVersionUID = 1L;
     private final Member from;
     private final UUID taskId;
-    private final R response;
+    private transient R response;
     private final Throwable error;
     private final Status status;
+    private transient PayloadCompression payloadCompression;
     
     public static enum Status {
         SUCCESS,
@@ -20,11 +24,19 @@ public class TaskResponse<R extends Serializable> implements Serializable {
     }
     
     public TaskResponse(Member from, UUID taskId, R response, Status status) {
+        this(from, taskId, response, status, null);
+    }
+    
+    /**
+     * @param payloadCompression - compresses the response when this is published (nullable)
+     */
+    public TaskResponse(Member from, UUID taskId, R response, Status status, PayloadCompression payloadCompression) {
         this.from = from;
         this.taskId = taskId;
         this.response = response;
         this.error = null;
         this.status = status;
+        this.payloadCompression = payloadCompression;
     }
     
     public TaskResponse(Member from, UUID taskId, Throwable error) {
@@ -54,4 +66,15 @@ public class TaskResponse<R extends Serializable> implements Serializable {
     public Status getStatus() {
         return status;
     }
+    
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        PayloadCompression.writePayload(out, response, payloadCompression);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        response = (R) PayloadCompression.readPayload(in);
+    }
 }
@@ -0,0 +1,32 @@
+package com.hazeltask.clusterop;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.hazelcast.nio.IOUtil;
+import com.hazeltask.executor.task.HazeltaskTask;
+
+public class SubmitTaskOpTest {
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void roundTripKeepsTheTaskSize() {
+        HazeltaskTask<String> task = new HazeltaskTask<String>(UUID.randomUUID(), "group", new NoopTask());
+        
+        SubmitTaskOp<String> op = (SubmitTaskOp<String>) IOUtil.toObject(
+                IOUtil.toData(new SubmitTaskOp<String>(task, "topology")));
+        
+        Assert.assertEquals(task.getId(), op.getTask().getId());
+        Assert.assertEquals("group", op.getTask().getGroup());
+        Assert.assertEquals(IOUtil.toData(task).size(), op.getTask().getSerializedSize());
+    }
+    
+    private static class NoopTask implements Runnable, Serializable {
+        private static final long serialVersionUID = 1L;
+        public void run() {}
+    }
+}
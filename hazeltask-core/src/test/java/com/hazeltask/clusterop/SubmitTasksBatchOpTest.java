@@ -0,0 +1,62 @@
+package com.hazeltask.clusterop;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.hazelcast.nio.IOUtil;
+import com.hazeltask.executor.task.HazeltaskTask;
+
+public class SubmitTasksBatchOpTest {
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void roundTripKeepsOrderAndSizes() {
+        List<HazeltaskTask<String>> tasks = new ArrayList<HazeltaskTask<String>>();
+        tasks.add(new HazeltaskTask<String>(UUID.randomUUID(), "a", new PayloadTask("small")));
+        tasks.add(new HazeltaskTask<String>(UUID.randomUUID(), "b", new PayloadTask(text(5000))));
+        tasks.add(new HazeltaskTask<String>(UUID.randomUUID(), "a", new PayloadTask("")));
+        
+        SubmitTasksBatchOp<String> op = (SubmitTasksBatchOp<String>) IOUtil.toObject(
+                IOUtil.toData(new SubmitTasksBatchOp<String>(tasks, "topology")));
+        
+        List<HazeltaskTask<String>> read = op.getTasks();
+        Assert.assertEquals(tasks.size(), read.size());
+        for(int i=0; i<tasks.size(); i++) {
+            Assert.assertEquals(tasks.get(i).getId(), read.get(i).getId());
+            Assert.assertEquals(tasks.get(i).getGroup(), read.get(i).getGroup());
+            //each task knows its own size, not the size of the batch
+            Assert.assertEquals(IOUtil.toData(tasks.get(i)).size(), read.get(i).getSerializedSize());
+        }
+        Assert.assertTrue(read.get(1).getSerializedSize() > 5000);
+        Assert.assertTrue(read.get(0).getSerializedSize() < 5000);
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void emptyBatch() {
+        SubmitTasksBatchOp<String> op = (SubmitTasksBatchOp<String>) IOUtil.toObject(
+                IOUtil.toData(new SubmitTasksBatchOp<String>(new ArrayList<HazeltaskTask<String>>(), "topology")));
+        Assert.assertTrue(op.getTasks().isEmpty());
+    }
+    
+    private static String text(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for(int i=0; i<length; i++)
+            sb.append((char)('a' + (i * 7) % 26));
+        return sb.toString();
+    }
+    
+    private static class PayloadTask implements Runnable, Serializable {
+        private static final long serialVersionUID = 1L;
+        @SuppressWarnings("unused")
+        private final String payload;
+        private PayloadTask(String payload) { this.payload = payload; }
+        public void run() {}
+    }
+}
@@ -6,13 +6,23 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.Serializable;
+import java.util.Collections;
 
 import junit.framework.Assert;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import com.hazelcast.core.Member;
+import com.hazeltask.core.concurrent.collections.router.ConsistentHashRouter;
+import com.hazeltask.core.concurrent.collections.router.PowerOfTwoChoicesRouter;
+import com.hazeltask.core.concurrent.collections.router.RoundRobinRouter;
+import com.hazeltask.executor.steal.DrainTimeStealPolicy;
+import com.hazeltask.executor.steal.QueueLengthStealPolicy;
+import com.hazeltask.executor.steal.TaskStealPolicy;
+import com.hazeltask.executor.steal.ThreadWeightedStealPolicy;
 import com.hazeltask.executor.task.DefaultTaskIdAdapter;
+import com.hazeltask.executor.task.LZPayloadCompressor;
 import com.hazeltask.executor.task.TaskIdAdapter;
 
 public class ExecutorConfigTest {
@@ -117,6 +127,146 @@ public class ExecutorConfigTest {
         assertEquals(1, config.getRecoveryProcessPollInterval());
     }
     
+    @Test
+    public void lockFreeTaskQueue() {
+        assertFalse(config.isLockFreeTaskQueue());
+        config.useLockFreeTaskQueue();
+        assertTrue(config.isLockFreeTaskQueue());
+    }
+    
+    @Test
+    public void taskQueueRouteStripes() {
+        assertEquals(1, config.getTaskQueueRouteStripes());
+        config.withTaskQueueRouteStripes(8);
+        assertEquals(8, config.getTaskQueueRouteStripes());
+    }
+    
+    @Test
+    public void taskQueueGroupInitialCapacity() {
+        assertEquals(16, config.getTaskQueueGroupInitialCapacity());
+        config.withTaskQueueGroupInitialCapacity(256);
+        assertEquals(256, config.getTaskQueueGroupInitialCapacity());
+    }
+    
+    @Test
+    public void workerGroupBatchSize() {
+        assertEquals(1, config.getWorkerGroupBatchSize());
+        config.withWorkerGroupBatchSize(32);
+        assertEquals(32, config.getWorkerGroupBatchSize());
+    }
+    
+    @Test
+    public void groupIdleEvictionTime() {
+        assertEquals(0, config.getGroupIdleEvictionTime());
+        config.withGroupIdleEvictionTime(60000);
+        assertEquals(60000, config.getGroupIdleEvictionTime());
+    }
+    
+    @Test
+    public void taskDistribution() {
+        assertEquals(4, config.getTaskDistributorThreads());
+        assertEquals(16, config.getMaxTasksInFlightPerMember());
+        assertEquals(500, config.getAsyncronousTaskDistributionQueueSize());
+        config.withTaskDistributorThreads(8)
+              .withMaxTasksInFlightPerMember(2)
+              .withAsyncronousTaskDistributionQueueSize(10);
+        assertEquals(8, config.getTaskDistributorThreads());
+        assertEquals(2, config.getMaxTasksInFlightPerMember());
+        assertEquals(10, config.getAsyncronousTaskDistributionQueueSize());
+    }
+    
+    @Test
+    public void maxQueuedTasks() {
+        assertEquals(Integer.MAX_VALUE, config.getMaxQueuedTasks());
+        assertFalse(config.isTaskQueueBounded());
+        config.withMaxQueuedTasks(1000);
+        assertEquals(1000, config.getMaxQueuedTasks());
+        assertTrue(config.isTaskQueueBounded());
+    }
+    
+    @Test
+    public void maxQueuedBytes() {
+        assertEquals(Long.MAX_VALUE, config.getMaxQueuedBytes());
+        config.withMaxQueuedBytes(1024L*1024L);
+        assertEquals(1024L*1024L, config.getMaxQueuedBytes());
+        assertTrue(config.isTaskQueueBounded());
+    }
+    
+    @Test
+    public void memberRouting() {
+        ExecutorLoadBalancingConfig<Serializable> lbConfig = new ExecutorLoadBalancingConfig<Serializable>();
+        assertFalse(lbConfig.isPartitionOwnerRouting());
+        assertEquals(5000, lbConfig.getMemberLoadRefreshPeriod());
+        assertTrue(lbConfig.getMemberRouterFactory().createRouter(Collections.<Member>emptyList()) instanceof RoundRobinRouter);
+        
+        lbConfig.useGroupAffinityMemberRouter();
+        assertTrue(lbConfig.getMemberRouterFactory().createRouter(Collections.<Member>emptyList()) instanceof ConsistentHashRouter);
+        lbConfig.useLoadAwareMemberRouter();
+        assertTrue(lbConfig.getMemberRouterFactory().createRouter(Collections.<Member>emptyList()) instanceof PowerOfTwoChoicesRouter);
+        
+        lbConfig.usePartitionOwnerRouting()
+                .withMemberLoadRefreshPeriod(1000);
+        assertTrue(lbConfig.isPartitionOwnerRouting());
+        assertEquals(1000, lbConfig.getMemberLoadRefreshPeriod());
+    }
+    
+    @Test
+    public void taskStealPolicy() {
+        ExecutorLoadBalancingConfig<Serializable> lbConfig = new ExecutorLoadBalancingConfig<Serializable>();
+        assertTrue(lbConfig.getTaskStealPolicy() instanceof QueueLengthStealPolicy);
+        lbConfig.useDrainTimeStealPolicy();
+        assertTrue(lbConfig.getTaskStealPolicy() instanceof DrainTimeStealPolicy);
+        lbConfig.useThreadWeightedStealPolicy();
+        assertTrue(lbConfig.getTaskStealPolicy() instanceof ThreadWeightedStealPolicy);
+        TaskStealPolicy custom = new QueueLengthStealPolicy(0.5);
+        lbConfig.useCustomStealPolicy(custom);
+        assertSame(custom, lbConfig.getTaskStealPolicy());
+        
+        assertEquals(500, lbConfig.getStealChunkSize());
+        assertEquals(100, lbConfig.withStealChunkSize(100).getStealChunkSize());
+    }
+    
+    @Test
+    public void idleTaskStealing() {
+        ExecutorLoadBalancingConfig<Serializable> lbConfig = new ExecutorLoadBalancingConfig<Serializable>();
+        assertFalse(lbConfig.isIdleTaskStealing());
+        lbConfig.useIdleTaskStealing();
+        assertTrue(lbConfig.isIdleTaskStealing());
+        assertEquals(0, lbConfig.getIdleStealLowWaterMark());
+        assertEquals(1000, lbConfig.getIdleStealMinInterval());
+        lbConfig.useIdleTaskStealing(10, 250);
+        assertEquals(10, lbConfig.getIdleStealLowWaterMark());
+        assertEquals(250, lbConfig.getIdleStealMinInterval());
+    }
+    
+    @Test
+    public void submitRetries() {
+        assertEquals(10, config.getMaxSubmitTries());
+        assertEquals(10, config.getSubmitRetryInitialBackoff());
+        assertEquals(1000, config.getSubmitRetryMaxBackoff());
+        config.withMaxSubmitTries(3).withSubmitRetryBackoff(50, 5000);
+        assertEquals(3, config.getMaxSubmitTries());
+        assertEquals(50, config.getSubmitRetryInitialBackoff());
+        assertEquals(5000, config.getSubmitRetryMaxBackoff());
+    }
+    
+    @Test
+    public void asynchronousWriteAheadLog() {
+        assertFalse(config.isAsynchronousWriteAheadLog());
+        config.useAsynchronousWriteAheadLog();
+        assertTrue(config.isAsynchronousWriteAheadLog());
+    }
+    
+    @Test
+    public void payloadCompression() {
+        assertNull(config.getPayloadCompressor());
+        assertEquals(4096, config.getPayloadCompressionThreshold());
+        LZPayloadCompressor compressor = new LZPayloadCompressor();
+        config.withPayloadCompression(compressor, 1024);
+        assertSame(compressor, config.getPayloadCompressor());
+        assertEquals(1024, config.getPayloadCompressionThreshold());
+    }
+    
     @Test
     public void executorLoadBalancingConfig() {
         assertNotNull(config.getLoadBalancingConfig());
@@ -0,0 +1,153 @@
+package com.hazeltask.core.concurrent.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConsumerHandoffTest {
+    
+    private ConcurrentLinkedQueue<String> queue;
+    private ConsumerHandoff<String> handoff;
+    
+    @Before
+    public void setup() {
+        queue = new ConcurrentLinkedQueue<String>();
+        handoff = new ConsumerHandoff<String>(queue);
+    }
+    
+    @Test
+    public void noWaitersNoHandoff() {
+        Assert.assertFalse(handoff.hasWaiters());
+        Assert.assertFalse(handoff.handoff("a"));
+    }
+    
+    @Test
+    public void pollsQueueFirst() throws InterruptedException {
+        queue.offer("a");
+        Assert.assertEquals("a", handoff.take());
+        Assert.assertFalse(handoff.hasWaiters());
+    }
+    
+    @Test
+    public void timeout() throws InterruptedException {
+        Assert.assertNull(handoff.poll(10, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(handoff.hasWaiters());
+    }
+    
+    @Test(timeout = 10000)
+    public void handoffToWaiter() throws InterruptedException {
+        final AtomicReference<String> result = new AtomicReference<String>();
+        final CountDownLatch done = new CountDownLatch(1);
+        new Thread() {
+            public void run() {
+                try {
+                    result.set(handoff.take());
+                    done.countDown();
+                } catch (InterruptedException e) {}
+            }
+        }.start();
+        
+        while(!handoff.hasWaiters()) {
+            Thread.sleep(1);
+        }
+        
+        Assert.assertTrue(handoff.handoff("a"));
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals("a", result.get());
+        Assert.assertTrue(queue.isEmpty());
+    }
+    
+    @Test(timeout = 10000)
+    public void signalWakesWaiterToPoll() throws InterruptedException {
+        final AtomicReference<String> result = new AtomicReference<String>();
+        final CountDownLatch done = new CountDownLatch(1);
+        new Thread() {
+            public void run() {
+                try {
+                    result.set(handoff.take());
+                    done.countDown();
+                } catch (InterruptedException e) {}
+            }
+        }.start();
+        
+        while(!handoff.hasWaiters()) {
+            Thread.sleep(1);
+        }
+        
+        queue.offer("b");
+        handoff.signal();
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals("b", result.get());
+    }
+    
+    @Test(timeout = 10000)
+    public void interruptWaiter() throws InterruptedException {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    handoff.take();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+        };
+        t.start();
+        
+        while(!handoff.hasWaiters()) {
+            Thread.sleep(1);
+        }
+        
+        t.interrupt();
+        Assert.assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse(handoff.hasWaiters());
+        Assert.assertFalse(handoff.handoff("a"));
+    }
+    
+    /**
+     * A waiter that polls an element after registering and is also handed one has
+     * to put the polled element back, even if the queue filled up in the meantime
+     */
+    @Test
+    public void cancelRequeuesIntoFullQueue() throws InterruptedException {
+        final List<String> requeued = new ArrayList<String>();
+        final AtomicReference<ConsumerHandoff<String>> ref = new AtomicReference<ConsumerHandoff<String>>();
+        ArrayBlockingQueue<String> bounded = new ArrayBlockingQueue<String>(1) {
+            private static final long serialVersionUID = 1L;
+            private int polls;
+            
+            @Override
+            public String poll() {
+                if(++polls == 1)
+                    return super.poll();
+                //we are registered now, a producer hands us "b" while "a" is queued
+                super.offer("a");
+                Assert.assertTrue(ref.get().handoff("b"));
+                String polled = super.poll();
+                //and another producer fills the queue back up before we can put "a" back
+                Assert.assertTrue(super.offer("c"));
+                return polled;
+            }
+        };
+        ref.set(new ConsumerHandoff<String>(bounded, new ConsumerHandoff.Requeue<String>() {
+            public void requeue(String e) {
+                requeued.add(e);
+            }
+        }));
+        
+        Assert.assertEquals("b", ref.get().take());
+        Assert.assertEquals(1, requeued.size());
+        Assert.assertEquals("a", requeued.get(0));
+        Assert.assertEquals(0, bounded.remainingCapacity());
+        Assert.assertFalse(ref.get().hasWaiters());
+    }
+}
@@ -0,0 +1,76 @@
+package com.hazeltask.core.concurrent.collections.grouped;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class GroupRouteHeapTest {
+    
+    @Test
+    public void highestPriorityFirst() {
+        GroupRouteHeap<String> heap = new GroupRouteHeap<String>(1);
+        heap.add(new GroupMetadata<String>("low", 1));
+        heap.add(new GroupMetadata<String>("high", 10));
+        heap.add(new GroupMetadata<String>("mid", 5));
+        
+        Assert.assertEquals("high", heap.poll().getGroup());
+        Assert.assertEquals("mid", heap.poll().getGroup());
+        Assert.assertEquals("low", heap.poll().getGroup());
+        Assert.assertNull(heap.poll());
+    }
+    
+    @Test
+    public void equalPrioritiesRoundRobin() {
+        GroupRouteHeap<String> heap = new GroupRouteHeap<String>(4);
+        GroupMetadata<String> a = new GroupMetadata<String>("a", 0);
+        GroupMetadata<String> b = new GroupMetadata<String>("b", 0);
+        GroupMetadata<String> c = new GroupMetadata<String>("c", 0);
+        heap.add(a);
+        heap.add(b);
+        heap.add(c);
+        
+        StringBuilder order = new StringBuilder();
+        for(int i=0; i<6; i++) {
+            GroupMetadata<String> route = heap.peek();
+            order.append(route.getGroup());
+            heap.update(route, 0);
+        }
+        Assert.assertEquals("abcabc", order.toString());
+    }
+    
+    @Test
+    public void updateMovesInPlace() {
+        GroupRouteHeap<String> heap = new GroupRouteHeap<String>(4);
+        GroupMetadata<String> a = new GroupMetadata<String>("a", 10);
+        GroupMetadata<String> b = new GroupMetadata<String>("b", 5);
+        heap.add(a);
+        heap.add(b);
+        
+        heap.update(a, 1);
+        Assert.assertSame(b, heap.peek());
+        Assert.assertEquals(1, a.getPriority());
+        
+        //adding a routed entry again does nothing
+        heap.add(a);
+        Assert.assertEquals(2, heap.size());
+    }
+    
+    @Test
+    public void remove() {
+        GroupRouteHeap<String> heap = new GroupRouteHeap<String>(4);
+        GroupMetadata<String> a = new GroupMetadata<String>("a", 3);
+        GroupMetadata<String> b = new GroupMetadata<String>("b", 2);
+        GroupMetadata<String> c = new GroupMetadata<String>("c", 1);
+        heap.add(a);
+        heap.add(b);
+        heap.add(c);
+        
+        Assert.assertTrue(heap.remove(b));
+        Assert.assertFalse(heap.remove(b));
+        Assert.assertFalse(heap.contains(b));
+        GroupMetadata<String>[] sorted = heap.toSortedArray();
+        Assert.assertEquals(2, sorted.length);
+        Assert.assertSame(a, sorted[0]);
+        Assert.assertSame(c, sorted[1]);
+    }
+}
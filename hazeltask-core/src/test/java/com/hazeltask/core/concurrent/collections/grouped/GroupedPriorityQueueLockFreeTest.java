@@ -0,0 +1,349 @@
+package com.hazeltask.core.concurrent.collections.grouped;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.hazeltask.config.HazeltaskConfig;
+import com.hazeltask.core.concurrent.collections.grouped.prioritizer.RoundRobinGroupPrioritizer;
+import com.hazeltask.executor.metrics.ExecutorMetrics;
+
+import data.MyGroupableItem;
+
+public class GroupedPriorityQueueLockFreeTest {
+    
+    private GroupedPriorityQueueLockFree<MyGroupableItem,Long> newQueue() {
+        return new GroupedPriorityQueueLockFree<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>());
+    }
+    
+    @Test
+    public void emptyGroupHandling() {
+        GroupedPriorityQueueLockFree<MyGroupableItem,Long> queue = newQueue();
+        for(long i=0; i<4; i++) {
+            queue.offer(new MyGroupableItem(i));
+        }
+        
+        Assert.assertEquals(0L, (long)queue.poll().getGroup());
+        Assert.assertEquals(1L, (long)queue.poll().getGroup());
+        Assert.assertEquals(2L, (long)queue.poll().getGroup());
+        
+        //groups 0, 1, and 2 are empty
+        
+        queue.offer(new MyGroupableItem(0));
+        queue.offer(new MyGroupableItem(1));
+        queue.offer(new MyGroupableItem(2));
+        
+        Assert.assertEquals(3L, (long)queue.poll().getGroup());
+        Assert.assertEquals(0L, (long)queue.poll().getGroup());
+        Assert.assertEquals(1L, (long)queue.poll().getGroup());
+        Assert.assertEquals(2L, (long)queue.poll().getGroup());
+        
+        Assert.assertNull(queue.poll());
+        Assert.assertEquals(0, queue.size());
+    }
+    
+    @Test
+    public void roundRobinWithinGroups() {
+        GroupedPriorityQueueLockFree<MyGroupableItem,Long> queue = newQueue();
+        queue.add(new MyGroupableItem(1,1));
+        queue.add(new MyGroupableItem(2,1));
+        queue.add(new MyGroupableItem(3,2));
+        queue.add(new MyGroupableItem(4,2));
+        
+        Assert.assertEquals(4, queue.size());
+        Assert.assertEquals(1, queue.poll().id);
+        Assert.assertEquals(3, queue.poll().id);
+        Assert.assertEquals(2, queue.poll().id);
+        Assert.assertEquals(4, queue.poll().id);
+    }
+    
+    @Test
+    public void stripedRoutesDrainEveryGroup() {
+        GroupedPriorityQueueLockFree<MyGroupableItem,Long> queue = new GroupedPriorityQueueLockFree<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>(), 4);
+        for(long i=0; i<1000; i++) {
+            queue.offer(new MyGroupableItem(i % 37));
+        }
+        
+        Assert.assertEquals(1000, queue.size());
+        int polled = 0;
+        while(queue.poll() != null) {
+            polled++;
+        }
+        Assert.assertEquals(1000, polled);
+        Assert.assertEquals(0, queue.size());
+    }
+    
+    @Test(timeout = 30000)
+    public void concurrentOfferAndTake() throws InterruptedException {
+        concurrentOfferAndTake(newQueue());
+    }
+    
+    @Test(timeout = 30000)
+    public void concurrentOfferAndTakeStriped() throws InterruptedException {
+        concurrentOfferAndTake(new GroupedPriorityQueueLockFree<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>(), 8));
+    }
+    
+    private void concurrentOfferAndTake(final GroupedPriorityQueueLockFree<MyGroupableItem,Long> queue) throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 20000;
+        final AtomicInteger taken = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(producers * perProducer);
+        
+        for(int i=0; i<4; i++) {
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        while(true) {
+                            queue.take();
+                            taken.incrementAndGet();
+                            done.countDown();
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            };
+            t.setDaemon(true);
+            t.start();
+        }
+        
+        for(int p=0; p<producers; p++) {
+            final int offset = p;
+            new Thread() {
+                public void run() {
+                    for(long i=0; i<perProducer; i++) {
+                        queue.offer(new MyGroupableItem((i + offset) % 50));
+                    }
+                }
+            }.start();
+        }
+        
+        Assert.assertTrue(done.await(20, TimeUnit.SECONDS));
+        Assert.assertEquals(producers * perProducer, taken.get());
+        Assert.assertEquals(0, queue.size());
+        Assert.assertNull(queue.poll());
+    }
+    
+    @Test
+    public void peekMatchesPoll() {
+        GroupedPriorityQueueLockFree<MyGroupableItem,Long> queue = new GroupedPriorityQueueLockFree<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>());
+        Assert.assertNull(queue.peek());
+        queue.offer(new MyGroupableItem(1,1));
+        queue.offer(new MyGroupableItem(2,1));
+        queue.offer(new MyGroupableItem(3,2));
+        
+        for(int i=0; i<3; i++) {
+            MyGroupableItem peeked = queue.peek();
+            Assert.assertEquals(peeked, queue.poll());
+        }
+        Assert.assertNull(queue.peek());
+    }
+    
+    @Test
+    public void capacity() throws InterruptedException {
+        GroupedPriorityQueueLockFree<MyGroupableItem,Long> queue = new GroupedPriorityQueueLockFree<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>(), 1, 3, 2);
+        Assert.assertEquals(3, queue.remainingCapacity());
+        Assert.assertTrue(queue.offer(new MyGroupableItem(1)));
+        Assert.assertTrue(queue.offer(new MyGroupableItem(1)));
+        //group 1 is full
+        Assert.assertFalse(queue.offer(new MyGroupableItem(1)));
+        Assert.assertTrue(queue.offer(new MyGroupableItem(2)));
+        //queue is full
+        Assert.assertFalse(queue.offer(new MyGroupableItem(3)));
+        Assert.assertFalse(queue.offer(new MyGroupableItem(3), 10, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(0, queue.remainingCapacity());
+        Assert.assertEquals(3, queue.size());
+    }
+    
+    @Test(timeout = 10000)
+    public void putBlocksUntilSpace() throws InterruptedException {
+        final GroupedPriorityQueueLockFree<MyGroupableItem,Long> queue = new GroupedPriorityQueueLockFree<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>(), 1, 1, 1);
+        queue.put(new MyGroupableItem(1,1));
+        
+        final CountDownLatch putDone = new CountDownLatch(1);
+        new Thread() {
+            public void run() {
+                try {
+                    queue.put(new MyGroupableItem(2,1));
+                    putDone.countDown();
+                } catch (InterruptedException e) {}
+            }
+        }.start();
+        
+        Assert.assertFalse(putDone.await(50, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(1, queue.poll().id);
+        Assert.assertTrue(putDone.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, queue.poll().id);
+    }
+    @Test
+    public void sizeAndOldestTimeFollowGroupQueues() {
+        GroupedPriorityQueueLockFree<MyGroupableItem,Long> queue = new GroupedPriorityQueueLockFree<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>());
+        Assert.assertNull(queue.getOldestQueueTime());
+        queue.offer(new MyGroupableItem(1,1,300));
+        queue.offer(new MyGroupableItem(2,1,400));
+        queue.offer(new MyGroupableItem(3,2,100));
+        queue.offer(new MyGroupableItem(4,2,200));
+        Assert.assertEquals(4, queue.size());
+        Assert.assertEquals(100L, (long)queue.getOldestQueueTime());
+        
+        //changes made directly to a group's queue count too
+        Assert.assertEquals(3, queue.getQueueByGroup(2L).poll().id);
+        Assert.assertEquals(3, queue.size());
+        Assert.assertEquals(200L, (long)queue.getOldestQueueTime());
+        
+        Iterator<MyGroupableItem> it = queue.getQueueByGroup(2L).iterator();
+        it.next();
+        it.remove();
+        Assert.assertEquals(2, queue.size());
+        Assert.assertEquals(300L, (long)queue.getOldestQueueTime());
+        
+        Assert.assertEquals(1, queue.poll().id);
+        Assert.assertEquals(400L, (long)queue.getOldestQueueTime());
+        Assert.assertEquals(2, queue.poll().id);
+        Assert.assertEquals(0, queue.size());
+        Assert.assertNull(queue.getOldestQueueTime());
+    }
+    @Test
+    public void oldestTimeFollowsOlderOffersAndSteals() {
+        GroupedPriorityQueueLockFree<MyGroupableItem,Long> queue = newQueue();
+        queue.offer(new MyGroupableItem(1,1,300));
+        Assert.assertEquals(300L, (long)queue.getOldestQueueTime());
+        
+        //an older task shows up after the time was read
+        queue.offer(new MyGroupableItem(2,2,100));
+        Assert.assertEquals(100L, (long)queue.getOldestQueueTime());
+        
+        //newer tasks don't change it
+        queue.offer(new MyGroupableItem(3,3,500));
+        Assert.assertEquals(100L, (long)queue.getOldestQueueTime());
+        Assert.assertEquals(3, queue.getQueueByGroup(3L).pollNewest().id);
+        Assert.assertEquals(100L, (long)queue.getOldestQueueTime());
+        
+        //stealing the oldest task
+        Assert.assertEquals(2, queue.getQueueByGroup(2L).pollNewest().id);
+        Assert.assertEquals(300L, (long)queue.getOldestQueueTime());
+    }
+    
+    @Test
+    public void oldestTimeIsRightAfterConcurrentChanges() throws InterruptedException {
+        final GroupedPriorityQueueLockFree<MyGroupableItem,Long> queue = newQueue();
+        final CountDownLatch done = new CountDownLatch(4);
+        for(int t=0; t<4; t++) {
+            final int thread = t;
+            new Thread() {
+                public void run() {
+                    for(int i=0; i<5000; i++) {
+                        queue.offer(new MyGroupableItem(i, i % 7, 1000 + ((i * 31 + thread) % 997)));
+                        if(i % 3 == 0)
+                            queue.poll();
+                        if(i % 100 == 0)
+                            queue.getOldestQueueTime();
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+        
+        //group queues are FIFO so the oldest time is the oldest of their heads
+        long oldest = Long.MAX_VALUE;
+        for(Long group : queue.getGroups()) {
+            Long head = queue.getQueueByGroup(group).getOldestItemTime();
+            if(head != null)
+                oldest = Math.min(oldest, head);
+        }
+        Assert.assertEquals(oldest, (long)queue.getOldestQueueTime());
+    }
+    
+    @Test
+    public void drainNextGroup() {
+        GroupedPriorityQueueLockFree<MyGroupableItem,Long> queue = new GroupedPriorityQueueLockFree<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>());
+        for(int i=0; i<5; i++) {
+            queue.offer(new MyGroupableItem(i,1));
+        }
+        queue.offer(new MyGroupableItem(10,2));
+        
+        List<MyGroupableItem> batch = new ArrayList<MyGroupableItem>();
+        Assert.assertEquals(3, queue.drainNextGroup(batch, 3));
+        for(int i=0; i<3; i++) {
+            Assert.assertEquals(i, batch.get(i).id);
+        }
+        
+        //group 1 was rotated to the back
+        batch.clear();
+        Assert.assertEquals(1, queue.drainNextGroup(batch, 3));
+        Assert.assertEquals(10, batch.get(0).id);
+        
+        batch.clear();
+        Assert.assertEquals(2, queue.drainNextGroup(batch, 3));
+        Assert.assertEquals(0, queue.drainNextGroup(batch, 3));
+        Assert.assertEquals(0, queue.size());
+    }
+    @Test
+    public void evictIdleGroups() throws InterruptedException {
+        GroupedPriorityQueueLockFree<MyGroupableItem,Long> queue = new GroupedPriorityQueueLockFree<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>());
+        queue.offer(new MyGroupableItem(1,1));
+        queue.offer(new MyGroupableItem(2,2));
+        Assert.assertEquals(1, queue.poll().id);
+        Assert.assertEquals(2, queue.getGroups().size());
+        
+        //nothing has been idle that long
+        Assert.assertEquals(0, queue.evictIdleGroups(60000));
+        
+        Thread.sleep(10);
+        //group 2 still has an item
+        Assert.assertEquals(1, queue.evictIdleGroups(5));
+        Assert.assertEquals(1, queue.getGroups().size());
+        Assert.assertNull(queue.getQueueByGroup(1L));
+        
+        //group 1 comes back when it gets a new item
+        queue.offer(new MyGroupableItem(3,1));
+        Assert.assertEquals(2, queue.getGroups().size());
+        Assert.assertEquals(2, queue.size());
+        Assert.assertEquals(2, queue.poll().id);
+        Assert.assertEquals(3, queue.poll().id);
+        Assert.assertNull(queue.poll());
+    }
+    
+    @Test
+    public void peekWhileGroupsAreEvicted() throws InterruptedException {
+        final GroupedPriorityQueueLockFree<MyGroupableItem,Long> queue = newQueue();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicBoolean stop = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(2);
+        for(int t=0; t<2; t++) {
+            new Thread() {
+                public void run() {
+                    try {
+                        while(!stop.get())
+                            queue.peek();
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        
+        //empty groups keep their routes until they are evicted
+        for(int i=0; i<50000 && failure.get() == null; i++) {
+            queue.offer(new MyGroupableItem(i, i % 50));
+            queue.poll();
+            if(i % 50 == 0)
+                queue.evictIdleGroups(0);
+        }
+        stop.set(true);
+        Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+        Assert.assertNull(String.valueOf(failure.get()), failure.get());
+    }
+}
@@ -3,6 +3,11 @@ package com.hazeltask.core.concurrent.collections.grouped;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import junit.framework.Assert;
 
@@ -56,6 +61,13 @@ public class GroupedPriorityQueuePerformanceTest {
         runOfferTest(queue);
     }
     
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 50, warmupRounds = 5)
+    public void offer_lockFree() {
+        GroupedPriorityQueueLockFree<MyGroupableItem,Long> queue = new GroupedPriorityQueueLockFree<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>());
+        runOfferTest(queue);
+    }
+    
     private void runOfferTest(BlockingQueue<MyGroupableItem> queue) {
         for(MyGroupableItem item : bigList) {
             queue.offer(item);
@@ -125,6 +137,16 @@ public class GroupedPriorityQueuePerformanceTest {
 //        System.out.println(queue.size());
     }
     
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 50, warmupRounds = 5, concurrency = -1)
+    public void poll_lockFree() {
+        GroupedPriorityQueueLockFree<MyGroupableItem,Long> queue = new GroupedPriorityQueueLockFree<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>());
+        
+        runPollTest(queue);
+
+        Assert.assertEquals(0, queue.size());
+    }
+    
     @Test
     @BenchmarkOptions(benchmarkRounds = 2, warmupRounds = 0)
     public void offerAndPoll_locking() {
@@ -154,6 +176,139 @@ public class GroupedPriorityQueuePerformanceTest {
         }
     }
     
+    @Test
+    public void batchedPoll_locking() throws InterruptedException {
+        for(int batchSize : new int[]{1, 16}) {
+            GroupedPriorityQueueLocking<MyGroupableItem,Long> queue = new GroupedPriorityQueueLocking<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>());
+            long throughput = runBatchedPollTest(queue, batchSize);
+//            System.out.println("drain locking, batch "+batchSize+" (items/ms): "+throughput);
+            Assert.assertEquals(0, queue.size());
+        }
+    }
+    
+    @Test
+    public void batchedPoll_lockFree() throws InterruptedException {
+        for(int batchSize : new int[]{1, 16}) {
+            GroupedPriorityQueueLockFree<MyGroupableItem,Long> queue = new GroupedPriorityQueueLockFree<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>());
+            long throughput = runBatchedPollTest(queue, batchSize);
+//            System.out.println("drain lock free, batch "+batchSize+" (items/ms): "+throughput);
+            Assert.assertEquals(0, queue.size());
+        }
+    }
+    
+    /**
+     * 4 threads drain the same prefilled queue taking batchSize items of a group per
+     * dequeue.  Every group has far more than batchSize items so only the last few dequeues
+     * of a group may come up short.  Returns the throughput in items per millisecond
+     */
+    private long runBatchedPollTest(final IGroupedQueue<MyGroupableItem, Long> queue, final int batchSize) throws InterruptedException {
+        final int threads = 4;
+        final int items = 200000;
+        for(long i=0; i<items; i++) {
+            queue.offer(new MyGroupableItem(i, i%100));
+        }
+        
+        final AtomicLong taken = new AtomicLong();
+        final AtomicLong dequeues = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for(int i=0; i<threads; i++) {
+            new Thread() {
+                public void run() {
+                    List<MyGroupableItem> batch = Lists.newArrayListWithCapacity(batchSize);
+                    try {
+                        start.await();
+                        while(true) {
+                            batch.clear();
+                            int n = batchSize == 1 
+                                    ? (queue.poll() == null ? 0 : 1) 
+                                    : queue.drainNextGroup(batch, batchSize);
+                            if(n == 0)
+                                break;
+                            taken.addAndGet(n);
+                            dequeues.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        
+        long startTime = System.nanoTime();
+        start.countDown();
+        Assert.assertTrue(done.await(60, TimeUnit.SECONDS));
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        Assert.assertEquals(items, taken.get());
+        Assert.assertTrue("took "+dequeues.get()+" dequeues", dequeues.get() <= items / batchSize + 100 * threads);
+        return items / millis;
+    }
+    
+    @Test
+    public void wakeupLatency_locking() throws InterruptedException {
+        GroupedPriorityQueueLocking<MyGroupableItem,Long> queue = new GroupedPriorityQueueLocking<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>());
+        long latency = runWakeupLatencyTest(queue);
+//        System.out.println("wakeup latency locking (us): "+latency);
+        Assert.assertTrue("average wakeup took "+latency+"us", latency < MAX_WAKEUP_LATENCY_MICROS);
+    }
+    
+    @Test
+    public void wakeupLatency_lockFree() throws InterruptedException {
+        GroupedPriorityQueueLockFree<MyGroupableItem,Long> queue = new GroupedPriorityQueueLockFree<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>());
+        long latency = runWakeupLatencyTest(queue);
+//        System.out.println("wakeup latency lock free (us): "+latency);
+        Assert.assertTrue("average wakeup took "+latency+"us", latency < MAX_WAKEUP_LATENCY_MICROS);
+    }
+    
+    /**
+     * Far above what a parked worker takes to wake up, so on a busy build machine only lost
+     * wakeups, which leave items waiting for a later offer, fail the test
+     */
+    private static final long MAX_WAKEUP_LATENCY_MICROS = TimeUnit.MILLISECONDS.toMicros(20);
+    
+    /**
+     * Measures how long it takes for an idle worker blocked in take() to get an item
+     * after it is offered.  Returns the average in microseconds.
+     */
+    private long runWakeupLatencyTest(final BlockingQueue<MyGroupableItem> queue) throws InterruptedException {
+        final int rounds = 2000;
+        final int workers = 8;
+        final AtomicLong totalLatency = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(rounds);
+        final ConcurrentMap<MyGroupableItem, Long> offeredAt = new ConcurrentHashMap<MyGroupableItem, Long>();
+        
+        for(int i=0; i<workers; i++) {
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        while(true) {
+                            MyGroupableItem item = queue.take();
+                            totalLatency.addAndGet(System.nanoTime() - offeredAt.remove(item));
+                            done.countDown();
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            };
+            t.setDaemon(true);
+            t.start();
+        }
+        
+        for(long i=0; i<rounds; i++) {
+            //give the workers time to park so we measure a real wakeup
+            Thread.sleep(0, 100000);
+            MyGroupableItem item = new MyGroupableItem(i%10);
+            offeredAt.put(item, System.nanoTime());
+            queue.offer(item);
+        }
+        
+        Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+        return TimeUnit.NANOSECONDS.toMicros(totalLatency.get() / rounds);
+    }
+    
     class OfferThread extends Thread {
         BlockingQueue q;
         List<MyGroupableItem> items;
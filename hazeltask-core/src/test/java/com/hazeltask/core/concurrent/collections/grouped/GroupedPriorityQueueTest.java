@@ -1,6 +1,10 @@
 package com.hazeltask.core.concurrent.collections.grouped;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.Assert;
 
@@ -78,4 +82,133 @@ public class GroupedPriorityQueueTest {
         //all groups empty
         Assert.assertEquals(0, queue.size());
     }
+    
+    @Test
+    public void peekMatchesPoll() {
+        GroupedPriorityQueueLocking<MyGroupableItem,Long> queue = new GroupedPriorityQueueLocking<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>());
+        Assert.assertNull(queue.peek());
+        queue.offer(new MyGroupableItem(1,1));
+        queue.offer(new MyGroupableItem(2,1));
+        queue.offer(new MyGroupableItem(3,2));
+        
+        for(int i=0; i<3; i++) {
+            MyGroupableItem peeked = queue.peek();
+            Assert.assertEquals(peeked, queue.poll());
+        }
+        Assert.assertNull(queue.peek());
+    }
+    
+    @Test
+    public void capacity() throws InterruptedException {
+        GroupedPriorityQueueLocking<MyGroupableItem,Long> queue = new GroupedPriorityQueueLocking<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>(), 3, 2);
+        Assert.assertEquals(3, queue.remainingCapacity());
+        Assert.assertTrue(queue.offer(new MyGroupableItem(1)));
+        Assert.assertTrue(queue.offer(new MyGroupableItem(1)));
+        //group 1 is full
+        Assert.assertFalse(queue.offer(new MyGroupableItem(1)));
+        Assert.assertTrue(queue.offer(new MyGroupableItem(2)));
+        //queue is full
+        Assert.assertFalse(queue.offer(new MyGroupableItem(3)));
+        Assert.assertFalse(queue.offer(new MyGroupableItem(3), 10, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(0, queue.remainingCapacity());
+        Assert.assertEquals(3, queue.size());
+    }
+    
+    @Test(timeout = 10000)
+    public void putBlocksUntilSpace() throws InterruptedException {
+        final GroupedPriorityQueueLocking<MyGroupableItem,Long> queue = new GroupedPriorityQueueLocking<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>(), 1, 1);
+        queue.put(new MyGroupableItem(1,1));
+        
+        final CountDownLatch putDone = new CountDownLatch(1);
+        new Thread() {
+            public void run() {
+                try {
+                    queue.put(new MyGroupableItem(2,1));
+                    putDone.countDown();
+                } catch (InterruptedException e) {}
+            }
+        }.start();
+        
+        Assert.assertFalse(putDone.await(50, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(1, queue.poll().id);
+        Assert.assertTrue(putDone.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, queue.poll().id);
+    }
+    @Test
+    public void sizeAndOldestTimeFollowGroupQueues() {
+        GroupedPriorityQueueLocking<MyGroupableItem,Long> queue = new GroupedPriorityQueueLocking<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>());
+        Assert.assertNull(queue.getOldestQueueTime());
+        queue.offer(new MyGroupableItem(1,1,300));
+        queue.offer(new MyGroupableItem(2,1,400));
+        queue.offer(new MyGroupableItem(3,2,100));
+        queue.offer(new MyGroupableItem(4,2,200));
+        Assert.assertEquals(4, queue.size());
+        Assert.assertEquals(100L, (long)queue.getOldestQueueTime());
+        
+        //changes made directly to a group's queue count too
+        Assert.assertEquals(3, queue.getQueueByGroup(2L).poll().id);
+        Assert.assertEquals(3, queue.size());
+        Assert.assertEquals(200L, (long)queue.getOldestQueueTime());
+        
+        Iterator<MyGroupableItem> it = queue.getQueueByGroup(2L).iterator();
+        it.next();
+        it.remove();
+        Assert.assertEquals(2, queue.size());
+        Assert.assertEquals(300L, (long)queue.getOldestQueueTime());
+        
+        Assert.assertEquals(1, queue.poll().id);
+        Assert.assertEquals(400L, (long)queue.getOldestQueueTime());
+        Assert.assertEquals(2, queue.poll().id);
+        Assert.assertEquals(0, queue.size());
+        Assert.assertNull(queue.getOldestQueueTime());
+    }
+    @Test
+    public void drainNextGroup() {
+        GroupedPriorityQueueLocking<MyGroupableItem,Long> queue = new GroupedPriorityQueueLocking<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>());
+        for(int i=0; i<5; i++) {
+            queue.offer(new MyGroupableItem(i,1));
+        }
+        queue.offer(new MyGroupableItem(10,2));
+        
+        List<MyGroupableItem> batch = new ArrayList<MyGroupableItem>();
+        Assert.assertEquals(3, queue.drainNextGroup(batch, 3));
+        for(int i=0; i<3; i++) {
+            Assert.assertEquals(i, batch.get(i).id);
+        }
+        
+        //group 1 was rotated to the back
+        batch.clear();
+        Assert.assertEquals(1, queue.drainNextGroup(batch, 3));
+        Assert.assertEquals(10, batch.get(0).id);
+        
+        batch.clear();
+        Assert.assertEquals(2, queue.drainNextGroup(batch, 3));
+        Assert.assertEquals(0, queue.drainNextGroup(batch, 3));
+        Assert.assertEquals(0, queue.size());
+    }
+    @Test
+    public void evictIdleGroups() throws InterruptedException {
+        GroupedPriorityQueueLocking<MyGroupableItem,Long> queue = new GroupedPriorityQueueLocking<MyGroupableItem,Long>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<Long>());
+        queue.offer(new MyGroupableItem(1,1));
+        queue.offer(new MyGroupableItem(2,2));
+        Assert.assertEquals(1, queue.poll().id);
+        Assert.assertEquals(2, queue.getGroups().size());
+        
+        //nothing has been idle that long
+        Assert.assertEquals(0, queue.evictIdleGroups(60000));
+        
+        Thread.sleep(10);
+        //group 2 still has an item
+        Assert.assertEquals(1, queue.evictIdleGroups(5));
+        Assert.assertEquals(1, queue.getGroups().size());
+        Assert.assertNull(queue.getQueueByGroup(1L));
+        
+        //group 1 comes back when it gets a new item
+        queue.offer(new MyGroupableItem(3,1));
+        Assert.assertEquals(2, queue.getGroups().size());
+        Assert.assertEquals(2, queue.size());
+        Assert.assertEquals(2, queue.poll().id);
+        Assert.assertEquals(3, queue.poll().id);
+        Assert.assertNull(queue.poll());
+    }
 }
@@ -0,0 +1,100 @@
+package com.hazeltask.core.concurrent.collections.router;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ConsistentHashRouterTest {
+    
+    private Map<String, RouteLoad> loads(List<String> routes, long queued) {
+        Map<String, RouteLoad> loads = new HashMap<String, RouteLoad>();
+        for(String route : routes) {
+            loads.put(route, new RouteLoad(queued, 1));
+        }
+        return loads;
+    }
+    
+    @Test
+    public void emptyList() {
+        ConsistentHashRouter<String> router = new ConsistentHashRouter<String>(Arrays.<String>asList(), 1.25, 64);
+        Assert.assertNull(router.next("a"));
+        Assert.assertNull(router.next());
+    }
+    
+    @Test
+    public void sameKeySameRoute() {
+        List<String> routes = Arrays.asList("m1", "m2", "m3");
+        //big loads so a few items don't hit the bound
+        ConsistentHashRouter<String> router = new ConsistentHashRouter<String>(routes, 1.25, 64);
+        router.updateLoads(loads(routes, 1000));
+        ConsistentHashRouter<String> other = new ConsistentHashRouter<String>(routes, 1.25, 64);
+        other.updateLoads(loads(routes, 1000));
+        
+        for(int i=0; i<50; i++) {
+            String key = "group-"+i;
+            String route = router.next(key);
+            Assert.assertEquals(route, router.next(key));
+            Assert.assertEquals(route, other.next(key));
+        }
+    }
+    
+    @Test
+    public void removingARouteOnlyMovesItsKeys() {
+        List<String> routes = new ArrayList<String>(Arrays.asList("m1", "m2", "m3", "m4"));
+        ConsistentHashRouter<String> router = new ConsistentHashRouter<String>(routes, 100, 64);
+        
+        Map<String, String> before = new HashMap<String, String>();
+        for(int i=0; i<200; i++) {
+            before.put("group-"+i, router.next("group-"+i));
+        }
+        
+        routes.remove("m2");
+        int moved = 0;
+        for(int i=0; i<200; i++) {
+            String key = "group-"+i;
+            String route = router.next(key);
+            if(!before.get(key).equals("m2"))
+                Assert.assertEquals(before.get(key), route);
+            else
+                moved++;
+        }
+        Assert.assertTrue(moved > 0);
+    }
+    
+    @Test
+    public void hotKeySpills() {
+        List<String> routes = Arrays.asList("m1", "m2", "m3");
+        ConsistentHashRouter<String> router = new ConsistentHashRouter<String>(routes, 1.25, 64);
+        
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for(int i=0; i<300; i++) {
+            String route = router.next("hot");
+            Integer c = counts.get(route);
+            counts.put(route, c == null ? 1 : c+1);
+        }
+        Assert.assertEquals(3, counts.size());
+        for(int c : counts.values()) {
+            Assert.assertTrue(c <= 126);
+        }
+    }
+    
+    @Test
+    public void enumKeysHashByName() {
+        List<String> routes = Arrays.asList("m1", "m2", "m3");
+        ConsistentHashRouter<String> router = new ConsistentHashRouter<String>(routes, 100, 64);
+        ConsistentHashRouter<String> other = new ConsistentHashRouter<String>(routes, 100, 64);
+        for(TimeUnitKey key : TimeUnitKey.values()) {
+            Assert.assertEquals(other.next(key.name()), router.next(key));
+        }
+    }
+    
+    private static enum TimeUnitKey {
+        FAST, MEDIUM, SLOW
+    }
+}
@@ -0,0 +1,75 @@
+package com.hazeltask.core.concurrent.collections.router;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class PowerOfTwoChoicesRouterTest {
+    
+    @Test
+    public void emptyList() {
+        PowerOfTwoChoicesRouter<String> router = new PowerOfTwoChoicesRouter<String>(Arrays.<String>asList());
+        Assert.assertNull(router.next());
+    }
+    
+    @Test
+    public void picksShorterWait() {
+        PowerOfTwoChoicesRouter<String> router = new PowerOfTwoChoicesRouter<String>(Arrays.asList("busy", "idle"));
+        Map<String, RouteLoad> loads = new HashMap<String, RouteLoad>();
+        loads.put("busy", new RouteLoad(1000, 10));
+        loads.put("idle", new RouteLoad(0, 10));
+        router.updateLoads(loads);
+        
+        //with two routes both are always compared
+        for(int i=0; i<100; i++) {
+            Assert.assertEquals("idle", router.next());
+        }
+    }
+    
+    @Test
+    public void countsRoutedBetweenUpdates() {
+        PowerOfTwoChoicesRouter<String> router = new PowerOfTwoChoicesRouter<String>(Arrays.asList("a", "b"));
+        //no loads, both look empty until they are given something
+        int a = 0;
+        for(int i=0; i<100; i++) {
+            if(router.next().equals("a"))
+                a++;
+        }
+        Assert.assertTrue(a >= 49 && a <= 51);
+    }
+    
+    @Test
+    public void fasterRouteGetsMore() {
+        List<String> routes = Arrays.asList("slow", "fast");
+        PowerOfTwoChoicesRouter<String> router = new PowerOfTwoChoicesRouter<String>(routes);
+        Map<String, RouteLoad> loads = new HashMap<String, RouteLoad>();
+        loads.put("slow", new RouteLoad(0, 1));
+        loads.put("fast", new RouteLoad(0, 4));
+        router.updateLoads(loads);
+        
+        int fast = 0;
+        for(int i=0; i<100; i++) {
+            if(router.next().equals("fast"))
+                fast++;
+        }
+        Assert.assertEquals(80, fast, 1);
+    }
+    
+    @Test
+    public void routeCondition() {
+        PowerOfTwoChoicesRouter<String> router = new PowerOfTwoChoicesRouter<String>(Arrays.asList("a", "b", "c"));
+        router.setRouteCondition(new RouteCondition<String>() {
+            public boolean isRoutable(String route) {
+                return !route.equals("b");
+            }
+        });
+        for(int i=0; i<100; i++) {
+            Assert.assertFalse("b".equals(router.next()));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.hazeltask.core.concurrent.collections.tracked;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import data.SimpleItem;
+
+public class TrackedConcurrentLinkedQueueTest {
+    TrackedConcurrentLinkedQueue<SimpleItem> queue;
+    
+    @Before
+    public void before() {
+        queue = new TrackedConcurrentLinkedQueue<SimpleItem>();
+        for(int i=0; i<10; i++) {
+            queue.offer(new SimpleItem(1, i));
+        }
+    }
+    
+    @Test
+    public void fifoPollOrder() {
+        queue.offer(new SimpleItem(1, 5));
+        for(int i=0; i<10; i++) {
+            assertEquals(i, queue.poll().getTimeCreated());
+        }
+        assertEquals(5, queue.poll().getTimeCreated());
+        Assert.assertNull(queue.poll());
+        Assert.assertTrue(queue.isEmpty());
+    }
+    
+    @Test
+    public void bulkPollNewest() {
+        List<SimpleItem> stolen = new ArrayList<SimpleItem>();
+        assertEquals(3, queue.pollNewest(3, stolen));
+        assertEquals(9, stolen.get(0).getTimeCreated());
+        assertEquals(8, stolen.get(1).getTimeCreated());
+        assertEquals(7, stolen.get(2).getTimeCreated());
+        assertEquals(7, queue.size());
+        
+        //the claimed items are skipped
+        queue.offer(new SimpleItem(1, 10));
+        assertEquals(10, queue.pollNewest().getTimeCreated());
+        assertEquals(6, queue.pollNewest().getTimeCreated());
+        for(int i=0; i<6; i++) {
+            assertEquals(i, queue.poll().getTimeCreated());
+        }
+        Assert.assertNull(queue.poll());
+        assertEquals(0, queue.size());
+    }
+    
+    @Test
+    public void bulkPollNewestMoreThanThereAre() {
+        queue.poll();
+        List<SimpleItem> stolen = new ArrayList<SimpleItem>();
+        assertEquals(9, queue.pollNewest(20, stolen));
+        assertEquals(9, stolen.get(0).getTimeCreated());
+        assertEquals(1, stolen.get(8).getTimeCreated());
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertNull(queue.getOldestItemTime());
+        assertEquals(0, queue.pollNewest(1, stolen));
+    }
+    
+    @Test
+    public void peekSkipsClaimedHead() {
+        List<SimpleItem> stolen = new ArrayList<SimpleItem>();
+        queue.pollNewest(9, stolen);
+        assertEquals(0L, (long)queue.getOldestItemTime());
+        queue.poll();
+        Assert.assertNull(queue.peek());
+        Assert.assertTrue(queue.isEmpty());
+    }
+    
+    @Test
+    public void removeAndIteratorRemove() {
+        Assert.assertTrue(queue.remove(new SimpleItem(1, 4)));
+        Assert.assertFalse(queue.remove(new SimpleItem(1, 4)));
+        
+        Iterator<SimpleItem> it = queue.iterator();
+        int seen = 0;
+        while(it.hasNext()) {
+            if(it.next().getTimeCreated() < 3)
+                it.remove();
+            seen++;
+        }
+        assertEquals(9, seen);
+        assertEquals(6, queue.size());
+        assertEquals(3L, (long)queue.getOldestItemTime());
+        
+        List<SimpleItem> stolen = new ArrayList<SimpleItem>();
+        assertEquals(6, queue.pollNewest(6, stolen));
+        assertEquals(3, stolen.get(5).getTimeCreated());
+    }
+}
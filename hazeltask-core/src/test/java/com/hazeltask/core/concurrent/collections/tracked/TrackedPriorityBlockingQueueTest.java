@@ -2,6 +2,10 @@ package com.hazeltask.core.concurrent.collections.tracked;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
 import junit.framework.Assert;
 
 import org.junit.Before;
@@ -46,6 +50,20 @@ public class TrackedPriorityBlockingQueueTest {
         assertEquals("expected poll order", item103, queue.poll());
     }
     
+    @Test
+    public void bulkPollNewest() {
+        List<SimpleItem> stolen = new ArrayList<SimpleItem>();
+        assertEquals(3, queue.pollNewest(3, stolen));
+        assertEquals(item103, stolen.get(0));
+        assertEquals(item102, stolen.get(1));
+        assertEquals(item101, stolen.get(2));
+        assertEquals(4, queue.size());
+        assertEquals(item1, queue.poll());
+        assertEquals(3, queue.pollNewest(10, stolen));
+        assertEquals(item2, stolen.get(5));
+        Assert.assertTrue(queue.isEmpty());
+    }
+    
     @Test
     public void getOldestTime() {
         assertEquals(1L, (long)queue.getOldestItemTime());
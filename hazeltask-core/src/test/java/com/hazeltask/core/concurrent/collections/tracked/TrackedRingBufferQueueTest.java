@@ -0,0 +1,238 @@
+package com.hazeltask.core.concurrent.collections.tracked;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import data.SimpleItem;
+
+public class TrackedRingBufferQueueTest {
+    TrackedRingBufferQueue<SimpleItem> queue;
+    
+    SimpleItem item100 = new SimpleItem(1, 100);
+    SimpleItem item101 = new SimpleItem(1, 101);
+    SimpleItem item102 = new SimpleItem(1, 102);
+    SimpleItem item103 = new SimpleItem(1, 103);
+    SimpleItem item1   = new SimpleItem(1, 1);
+    SimpleItem item2   = new SimpleItem(1, 2);
+    SimpleItem item3   = new SimpleItem(1, 3);
+    
+    @Before
+    public void before() {
+        queue = new TrackedRingBufferQueue<SimpleItem>(2);
+        queue.offer(item100);
+        
+        queue.offer(item102);
+        queue.offer(item103);
+        
+        queue.offer(item1);
+        queue.offer(item3);
+        queue.offer(item2);
+        
+        queue.offer(item101);      
+    }
+    
+    @Test
+    public void expectedPollOrder() {
+        assertEquals("expected poll order", item1, queue.poll());
+        assertEquals("expected poll order", item2, queue.poll());
+        assertEquals("expected poll order", item3, queue.poll());
+        assertEquals("expected poll order", item100, queue.poll());
+        assertEquals("expected poll order", item101, queue.poll());
+        assertEquals("expected poll order", item102, queue.poll());
+        assertEquals("expected poll order", item103, queue.poll());
+        Assert.assertNull(queue.poll());
+    }
+    
+    @Test
+    public void pollNewestFromHeap() {
+        assertEquals(item103, queue.pollNewest());
+        assertEquals(item102, queue.pollNewest());
+        assertEquals(item101, queue.pollNewest());
+        assertEquals(item1, queue.poll());
+        assertEquals(item100, queue.pollNewest());
+        assertEquals(item3, queue.pollNewest());
+        assertEquals(item2, queue.pollNewest());
+        Assert.assertNull(queue.pollNewest());
+    }
+    
+    @Test
+    public void pollNewestFromRing() {
+        queue.clear();
+        for(int i=0; i<10; i++) {
+            queue.offer(new SimpleItem(1, i));
+        }
+        //wrap the ring
+        for(int i=0; i<5; i++) {
+            queue.poll();
+            queue.offer(new SimpleItem(1, 10+i));
+        }
+        assertEquals(14, queue.pollNewest().getTimeCreated());
+        assertEquals(13, queue.pollNewest().getTimeCreated());
+        assertEquals(5, queue.poll().getTimeCreated());
+        assertEquals(7, queue.size());
+        assertEquals(6L, (long)queue.getOldestItemTime());
+        queue.offer(new SimpleItem(1, 20));
+        assertEquals(20, queue.pollNewest().getTimeCreated());
+    }
+    
+    @Test
+    public void bulkPollNewestFromHeap() {
+        List<SimpleItem> stolen = new ArrayList<SimpleItem>();
+        assertEquals(3, queue.pollNewest(3, stolen));
+        assertEquals(3, stolen.size());
+        assertEquals(item103, stolen.get(0));
+        assertEquals(item102, stolen.get(1));
+        assertEquals(item101, stolen.get(2));
+        
+        //sorted back into a ring
+        queue.offer(item103);
+        assertEquals(item103, queue.pollNewest());
+        assertEquals(item1, queue.poll());
+        assertEquals(item2, queue.poll());
+        assertEquals(item3, queue.poll());
+        assertEquals(item100, queue.poll());
+        Assert.assertNull(queue.poll());
+    }
+    
+    @Test
+    public void bulkPollNewestFromRing() {
+        queue.clear();
+        for(int i=0; i<10; i++) {
+            queue.offer(new SimpleItem(1, i));
+        }
+        //wrap the ring
+        for(int i=0; i<5; i++) {
+            queue.poll();
+            queue.offer(new SimpleItem(1, 10+i));
+        }
+        List<SimpleItem> stolen = new ArrayList<SimpleItem>();
+        assertEquals(7, queue.pollNewest(7, stolen));
+        for(int i=0; i<7; i++) {
+            assertEquals(14-i, stolen.get(i).getTimeCreated());
+        }
+        assertEquals(3, queue.size());
+        assertEquals(3, queue.pollNewest(10, stolen));
+        assertEquals(5, stolen.get(9).getTimeCreated());
+        Assert.assertTrue(queue.isEmpty());
+        assertEquals(0, queue.pollNewest(1, stolen));
+        queue.offer(item1);
+        assertEquals(item1, queue.poll());
+    }
+    
+    @Test
+    public void inOrderAfterDrain() {
+        queue.clear();
+        for(int i=0; i<50; i++) {
+            queue.offer(new SimpleItem(1, i));
+        }
+        //wrap around the ring while growing
+        for(int i=0; i<1000; i++) {
+            assertEquals(i, queue.poll().getTimeCreated());
+            queue.offer(new SimpleItem(1, 50+i));
+        }
+        assertEquals(50, queue.size());
+        assertEquals(1000L, (long)queue.getOldestItemTime());
+    }
+    
+    @Test
+    public void equalTimesAreFifo() {
+        queue.clear();
+        SimpleItem a = new SimpleItem(1, 5);
+        SimpleItem b = new SimpleItem(2, 5);
+        SimpleItem c = new SimpleItem(3, 5);
+        queue.offer(a);
+        queue.offer(b);
+        queue.offer(c);
+        Assert.assertSame(a, queue.poll());
+        Assert.assertSame(b, queue.poll());
+        Assert.assertSame(c, queue.poll());
+    }
+    
+    @Test
+    public void removeFromMiddleKeepsOrder() {
+        queue.clear();
+        for(int i=0; i<10; i++) {
+            queue.offer(new SimpleItem(1, i));
+        }
+        Assert.assertTrue(queue.remove(new SimpleItem(1, 4)));
+        for(int i=0; i<10; i++) {
+            if(i != 4)
+                assertEquals(i, queue.poll().getTimeCreated());
+        }
+        Assert.assertTrue(queue.isEmpty());
+    }
+    
+    @Test
+    public void iteratorRemove() {
+        Iterator<SimpleItem> it = queue.iterator();
+        int seen = 0;
+        while(it.hasNext()) {
+            if(it.next().getTimeCreated() < 100)
+                it.remove();
+            seen++;
+        }
+        assertEquals(7, seen);
+        assertEquals(4, queue.size());
+        assertEquals(100L, (long)queue.getOldestItemTime());
+    }
+    
+    @Test
+    public void getOldestTime() {
+        assertEquals(1L, (long)queue.getOldestItemTime());
+    }
+    
+    @Test
+    public void getLastAddedTime() throws InterruptedException {
+        Thread.sleep(10);
+        //unless a machine is really really slow... this should be ok
+        long now = System.currentTimeMillis();
+        queue.offer(item101);
+        
+        assertTrue(timeBuffer(now, (long)queue.getLastAddedTime()));
+    }
+    
+    @Test
+    public void getLastRemovedTime() throws InterruptedException {
+        Thread.sleep(10);
+        //unless a machine is really really slow... this should be ok
+        long now = System.currentTimeMillis();
+        queue.poll();
+        
+        assertTrue(timeBuffer(now, (long)queue.getLastRemovedTime()));
+    }
+    
+    @Test
+    public void getOldestTimeNull() {
+        queue.clear();
+        Assert.assertNull("oldest time should be null", queue.getOldestItemTime());
+    }
+    
+    @Test
+    public void getLastRemovedTimeNull() {
+        queue.clear();
+        Assert.assertNull("oldest time should be null", queue.getLastRemovedTime());
+    }
+    
+    @Test
+    public void remove() throws InterruptedException {
+        Thread.sleep(10);
+        long now = System.currentTimeMillis();
+        boolean removed = queue.remove(item100);
+        Assert.assertTrue("item wasn't removed",removed);
+        assertTrue("time removed not within buffer", timeBuffer(now, (long)queue.getLastRemovedTime())); 
+    }
+    
+    private boolean timeBuffer(long expected, long actual) {
+        long buffer = 2;
+        return actual <= (expected+buffer) && actual >= (expected-buffer);
+    }
+}
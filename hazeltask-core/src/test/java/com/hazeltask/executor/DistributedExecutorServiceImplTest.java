@@ -0,0 +1,597 @@
+package com.hazeltask.executor;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import com.hazelcast.core.Member;
+import com.hazeltask.HazeltaskTopology;
+import com.hazeltask.config.ExecutorConfig;
+import com.hazeltask.config.HazeltaskConfig;
+import com.hazeltask.config.MetricsConfig;
+import com.hazeltask.core.concurrent.collections.CopyOnWriteArrayListSet;
+import com.hazeltask.executor.local.LocalTaskExecutorService;
+import com.hazeltask.executor.metrics.ExecutorMetrics;
+import com.hazeltask.executor.task.HazeltaskTask;
+import com.yammer.metrics.core.MetricsRegistry;
+
+public class DistributedExecutorServiceImplTest {
+    private Member local;
+    private Member remote1;
+    private Member remote2;
+    private CopyOnWriteArrayListSet<Member> readyMembers;
+    private HazeltaskTopology<Integer> topology;
+    private IExecutorTopologyService<Integer> topologyService;
+    private LocalTaskExecutorService<Integer> localService;
+    private ExecutorConfig<Integer> config;
+    private ExecutorMetrics metrics;
+    private DistributedFutureTracker<Integer> futureTracker;
+    private Map<Member, List<List<HazeltaskTask<Integer>>>> batchesSent;
+    private Executor asyncDispatcher;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setupData() {
+        local = mock(Member.class);
+        when(local.localMember()).thenReturn(true);
+        remote1 = mock(Member.class);
+        remote2 = mock(Member.class);
+
+        readyMembers = new CopyOnWriteArrayListSet<Member>();
+        topology = mock(HazeltaskTopology.class);
+        when(topology.getReadyMembers()).thenReturn(readyMembers);
+
+        topologyService = mock(IExecutorTopologyService.class);
+        when(topologyService.addPendingTask(any(HazeltaskTask.class), anyBoolean())).thenReturn(true);
+        localService = mock(LocalTaskExecutorService.class);
+
+        config = new ExecutorConfig<Integer>()
+            .withSubmitRetryBackoff(0, 0);
+        metrics = new ExecutorMetrics(new HazeltaskConfig<Integer>()
+            .withMetricsConfig(new MetricsConfig().withMetricsRegistry(new MetricsRegistry())));
+        batchesSent = new HashMap<Member, List<List<HazeltaskTask<Integer>>>>();
+        asyncDispatcher = MoreExecutors.sameThreadExecutor();
+    }
+
+    private DistributedExecutorServiceImpl<Integer> createService() {
+        futureTracker = new DistributedFutureTracker<Integer>(topologyService, metrics, config);
+        return new DistributedExecutorServiceImpl<Integer>(topology, topologyService, config,
+                futureTracker, localService, asyncDispatcher, metrics);
+    }
+    
+    /**
+     * Record the batches sent to the member, which takes up to accept tasks of each
+     */
+    @SuppressWarnings("unchecked")
+    private void acceptBatches(final Member member, final int accept) throws Exception {
+        when(topologyService.sendTasks(any(List.class), eq(member))).thenAnswer(new Answer<Integer>() {
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                List<HazeltaskTask<Integer>> batch = (List<HazeltaskTask<Integer>>) invocation.getArguments()[0];
+                List<List<HazeltaskTask<Integer>>> batches = batchesSent.get(member);
+                if(batches == null) {
+                    batches = new ArrayList<List<HazeltaskTask<Integer>>>();
+                    batchesSent.put(member, batches);
+                }
+                batches.add(new ArrayList<HazeltaskTask<Integer>>(batch));
+                return Math.min(accept, batch.size());
+            }
+        });
+    }
+    
+    private List<NoopTask> noopTasks(int count) {
+        List<NoopTask> tasks = new ArrayList<NoopTask>();
+        for(int i=0; i<count; i++)
+            tasks.add(new NoopTask());
+        return tasks;
+    }
+    
+    private List<Callable<Integer>> callables(int count) {
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for(int i=0; i<count; i++)
+            tasks.add(new ValueTask(i));
+        return tasks;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void saturatedMemberIsSkipped() throws Exception {
+        readyMembers.add(remote1);
+        readyMembers.add(remote2);
+        when(topologyService.sendTask(any(HazeltaskTask.class), eq(remote1))).thenReturn(false);
+        when(topologyService.sendTask(any(HazeltaskTask.class), eq(remote2))).thenReturn(true);
+
+        createService().execute(new NoopTask());
+
+        verify(topologyService).sendTask(any(HazeltaskTask.class), eq(remote1));
+        verify(topologyService).sendTask(any(HazeltaskTask.class), eq(remote2));
+        verify(topologyService, never()).removePendingTask(any(HazeltaskTask.class));
+        Assert.assertEquals(1, metrics.getMemberSaturatedMeter().getMetric().count());
+        Assert.assertEquals(0, metrics.getTaskRejectedMeter().getMetric().count());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void newTaskIsRejectedWhenEveryMemberIsFull() throws Exception {
+        readyMembers.add(remote1);
+        readyMembers.add(remote2);
+        when(topologyService.sendTask(any(HazeltaskTask.class), any(Member.class))).thenReturn(false);
+
+        try {
+            createService().execute(new NoopTask());
+            Assert.fail("every member is full");
+        } catch (RejectedExecutionException e) {
+            //expected
+        }
+
+        //the task never ran, so it mustn't be recovered later
+        verify(topologyService).removePendingTask(any(HazeltaskTask.class));
+        Assert.assertEquals(2, metrics.getMemberSaturatedMeter().getMetric().count());
+        Assert.assertEquals(1, metrics.getTaskRejectedMeter().getMetric().count());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void resubmittedTaskStaysInTheLogWhenEveryMemberIsFull() throws Exception {
+        readyMembers.add(remote1);
+        readyMembers.add(remote2);
+        when(topologyService.sendTask(any(HazeltaskTask.class), any(Member.class))).thenReturn(false);
+
+        HazeltaskTask<Integer> task = new HazeltaskTask<Integer>(UUID.randomUUID(), 1, new NoopTask());
+        Assert.assertFalse(createService().submitHazeltaskTask(task, true));
+
+        verify(topologyService).addPendingTask(task, true);
+        verify(topologyService, never()).removePendingTask(any(HazeltaskTask.class));
+        Assert.assertEquals(2, task.getSubmissionCount());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void executeAllSendsEachMembersShareInOneBatch() throws Exception {
+        readyMembers.add(remote1);
+        readyMembers.add(remote2);
+        acceptBatches(remote1, Integer.MAX_VALUE);
+        acceptBatches(remote2, Integer.MAX_VALUE);
+
+        createService().executeAll(noopTasks(6));
+
+        verify(topologyService).addPendingTasks(any(Collection.class));
+        verify(topologyService, never()).addPendingTask(any(HazeltaskTask.class), anyBoolean());
+        Assert.assertEquals(1, batchesSent.get(remote1).size());
+        Assert.assertEquals(3, batchesSent.get(remote1).get(0).size());
+        Assert.assertEquals(1, batchesSent.get(remote2).size());
+        Assert.assertEquals(3, batchesSent.get(remote2).get(0).size());
+        verify(topologyService, never()).removePendingTask(any(HazeltaskTask.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void executeAllSkipsTasksAlreadyInTheLog() throws Exception {
+        readyMembers.add(remote1);
+        acceptBatches(remote1, Integer.MAX_VALUE);
+        HazeltaskTask<Integer> logged = new HazeltaskTask<Integer>(UUID.randomUUID(), 1, new NoopTask());
+        HazeltaskTask<Integer> notLogged = new HazeltaskTask<Integer>(UUID.randomUUID(), 1, new NoopTask());
+        when(topologyService.addPendingTask(logged, false)).thenReturn(false);
+        when(topologyService.addPendingTask(notLogged, false)).thenReturn(true);
+
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        tasks.add(new NoopTask());
+        tasks.add(logged);
+        tasks.add(notLogged);
+        createService().executeAll(tasks);
+
+        //the live write ahead log entry isn't overwritten and the task isn't run twice
+        ArgumentCaptor<Collection> putAll = ArgumentCaptor.forClass(Collection.class);
+        verify(topologyService).addPendingTasks(putAll.capture());
+        Assert.assertEquals(1, putAll.getValue().size());
+        Assert.assertFalse(putAll.getValue().contains(logged));
+        List<HazeltaskTask<Integer>> sent = batchesSent.get(remote1).get(0);
+        Assert.assertEquals(2, sent.size());
+        Assert.assertFalse(sent.contains(logged));
+        Assert.assertTrue(sent.contains(notLogged));
+        Assert.assertEquals(1, metrics.getTaskRejectedMeter().getMetric().count());
+    }
+
+    @Test
+    public void submitAllFailsTheFuturesOfRefusedTasks() throws Exception {
+        readyMembers.add(remote1);
+        readyMembers.add(remote2);
+        //remote1 has room for one task per batch, remote2 for none
+        acceptBatches(remote1, 1);
+        acceptBatches(remote2, 0);
+
+        List<ListenableFuture<Integer>> futures = createService().submitAll(callables(4));
+
+        //remote1 got tasks 0 and 2 and kept 0, task 2 went to remote2.  remote2 
+        //got tasks 1 and 3, then remote1 kept 1
+        Assert.assertEquals(4, futures.size());
+        Assert.assertFalse(futures.get(0).isDone());
+        Assert.assertFalse(futures.get(1).isDone());
+        assertRejected(futures.get(2));
+        assertRejected(futures.get(3));
+        Assert.assertEquals(2, futureTracker.size());
+        verify(topologyService, times(2)).removePendingTask(any(HazeltaskTask.class));
+        Assert.assertEquals(2, metrics.getTaskRejectedMeter().getMetric().count());
+    }
+    
+    private void assertRejected(Future<?> future) throws InterruptedException {
+        Assert.assertTrue(future.isDone());
+        try {
+            future.get();
+            Assert.fail("the task was refused");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void submitAllForgetsItsFuturesWhenTheLogWriteFails() throws Exception {
+        readyMembers.add(remote1);
+        doThrow(new IllegalStateException("no partition owner")).when(topologyService).addPendingTasks(any(Collection.class));
+
+        DistributedExecutorServiceImpl<Integer> svc = createService();
+        try {
+            svc.submitAll(callables(3));
+            Assert.fail("the write ahead log write failed");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+
+        Assert.assertEquals(0, futureTracker.size());
+        //a failed putAll may have written some of them
+        verify(topologyService, times(3)).removePendingTask(any(HazeltaskTask.class));
+        verify(topologyService, never()).sendTasks(any(List.class), any(Member.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void batchIsSentToAnotherMemberAfterAnError() throws Exception {
+        readyMembers.add(remote1);
+        readyMembers.add(remote2);
+        when(topologyService.sendTasks(any(List.class), eq(remote1))).thenThrow(new RuntimeException("member left"));
+        acceptBatches(remote2, Integer.MAX_VALUE);
+
+        createService().executeAll(noopTasks(2));
+
+        //remote2's own batch and the one remote1 failed to take
+        Assert.assertEquals(2, batchesSent.get(remote2).size());
+        Assert.assertEquals(1, metrics.getSubmitRetryMeter().getMetric().count());
+        verify(topologyService, never()).removePendingTask(any(HazeltaskTask.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void taskGoesToItsPartitionOwner() throws Exception {
+        config.getLoadBalancingConfig().usePartitionOwnerRouting();
+        readyMembers.add(remote1);
+        readyMembers.add(remote2);
+        when(topologyService.getPendingTaskOwner(any(UUID.class))).thenReturn(remote2);
+        when(topologyService.sendTask(any(HazeltaskTask.class), any(Member.class))).thenReturn(true);
+
+        createService().execute(new NoopTask());
+
+        verify(topologyService).sendTask(any(HazeltaskTask.class), eq(remote2));
+        verify(topologyService, never()).sendTask(any(HazeltaskTask.class), eq(remote1));
+        Assert.assertEquals(0, metrics.getPartitionOwnerMissedMeter().getMetric().count());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void missingPartitionOwnerFallsBackToTheRouter() throws Exception {
+        config.getLoadBalancingConfig().usePartitionOwnerRouting();
+        readyMembers.add(remote1);
+        readyMembers.add(remote2);
+        when(topologyService.getPendingTaskOwner(any(UUID.class))).thenReturn(null);
+        when(topologyService.sendTask(any(HazeltaskTask.class), any(Member.class))).thenReturn(true);
+
+        createService().execute(new NoopTask());
+
+        verify(topologyService).sendTask(any(HazeltaskTask.class), eq(remote1));
+        Assert.assertEquals(1, metrics.getPartitionOwnerMissedMeter().getMetric().count());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void partitionOwnerThatIsNotReadyIsSkipped() throws Exception {
+        config.getLoadBalancingConfig().usePartitionOwnerRouting();
+        readyMembers.add(remote1);
+        //still joining, or on its way out
+        Member notReady = mock(Member.class);
+        when(topologyService.getPendingTaskOwner(any(UUID.class))).thenReturn(notReady);
+        when(topologyService.sendTask(any(HazeltaskTask.class), any(Member.class))).thenReturn(true);
+
+        createService().execute(new NoopTask());
+
+        verify(topologyService).sendTask(any(HazeltaskTask.class), eq(remote1));
+        verify(topologyService, never()).sendTask(any(HazeltaskTask.class), eq(notReady));
+        Assert.assertEquals(1, metrics.getPartitionOwnerMissedMeter().getMetric().count());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void retryFollowsAMigratedPartition() throws Exception {
+        config.getLoadBalancingConfig().usePartitionOwnerRouting();
+        readyMembers.add(remote1);
+        readyMembers.add(remote2);
+        //remote1 left while we were sending and remote2 took over its partitions
+        when(topologyService.getPendingTaskOwner(any(UUID.class))).thenReturn(remote1, remote2);
+        when(topologyService.sendTask(any(HazeltaskTask.class), eq(remote1))).thenThrow(new RuntimeException("member left"));
+        when(topologyService.sendTask(any(HazeltaskTask.class), eq(remote2))).thenReturn(true);
+
+        createService().execute(new NoopTask());
+
+        verify(topologyService).sendTask(any(HazeltaskTask.class), eq(remote2));
+        verify(topologyService, never()).removePendingTask(any(HazeltaskTask.class));
+        Assert.assertEquals(0, metrics.getPartitionOwnerMissedMeter().getMetric().count());
+        Assert.assertEquals(1, metrics.getSubmitRetryMeter().getMetric().count());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void retryAvoidsAFailedPartitionOwner() throws Exception {
+        //retry right away but avoid a failed member for a minute
+        config.withSubmitRetryBackoff(0, 60000)
+            .getLoadBalancingConfig().usePartitionOwnerRouting();
+        readyMembers.add(remote1);
+        readyMembers.add(remote2);
+        //the migration hasn't happened yet so remote1 still owns the partition
+        when(topologyService.getPendingTaskOwner(any(UUID.class))).thenReturn(remote1);
+        when(topologyService.sendTask(any(HazeltaskTask.class), eq(remote1))).thenThrow(new RuntimeException("member left"));
+        when(topologyService.sendTask(any(HazeltaskTask.class), eq(remote2))).thenReturn(true);
+
+        createService().execute(new NoopTask());
+
+        verify(topologyService).sendTask(any(HazeltaskTask.class), eq(remote1));
+        verify(topologyService).sendTask(any(HazeltaskTask.class), eq(remote2));
+        Assert.assertEquals(1, metrics.getPartitionOwnerMissedMeter().getMetric().count());
+    }
+
+    @Test
+    public void batchesAreGroupedByPartitionOwner() throws Exception {
+        config.getLoadBalancingConfig().usePartitionOwnerRouting();
+        readyMembers.add(remote1);
+        readyMembers.add(remote2);
+        when(topologyService.getPendingTaskOwner(any(UUID.class))).thenReturn(remote2, remote2, remote1, remote2);
+        acceptBatches(remote1, Integer.MAX_VALUE);
+        acceptBatches(remote2, Integer.MAX_VALUE);
+
+        createService().executeAll(noopTasks(4));
+
+        Assert.assertEquals(1, batchesSent.get(remote1).get(0).size());
+        Assert.assertEquals(3, batchesSent.get(remote2).get(0).size());
+        Assert.assertEquals(0, metrics.getPartitionOwnerMissedMeter().getMetric().count());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void localTaskIsQueuedWithoutSerializing() throws Exception {
+        readyMembers.add(local);
+        when(localService.execute(any(HazeltaskTask.class))).thenReturn(true);
+
+        //it would throw if anything serialized it
+        createService().execute(new UnserializableTask());
+
+        ArgumentCaptor<HazeltaskTask> queued = ArgumentCaptor.forClass(HazeltaskTask.class);
+        verify(localService).execute(queued.capture());
+        Assert.assertEquals(0, queued.getValue().getSerializedSize());
+        verify(topologyService, never()).sendTask(any(HazeltaskTask.class), any(Member.class));
+        Assert.assertEquals(1, metrics.getLocalDispatchMeter().getMetric().count());
+        Assert.assertEquals(0, metrics.getRemoteDispatchMeter().getMetric().count());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void localTaskIsMeasuredWhenQueuedBytesAreLimited() throws Exception {
+        config.withMaxQueuedBytes(1024 * 1024);
+        readyMembers.add(local);
+        when(localService.execute(any(HazeltaskTask.class))).thenReturn(true);
+
+        createService().execute(new NoopTask());
+
+        ArgumentCaptor<HazeltaskTask> queued = ArgumentCaptor.forClass(HazeltaskTask.class);
+        verify(localService).execute(queued.capture());
+        Assert.assertTrue(queued.getValue().getSerializedSize() > 0);
+        Assert.assertEquals(1, metrics.getLocalDispatchMeter().getMetric().count());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void remoteTaskGoesThroughTheTopologyService() throws Exception {
+        readyMembers.add(remote1);
+        when(topologyService.sendTask(any(HazeltaskTask.class), eq(remote1))).thenReturn(true);
+
+        createService().execute(new NoopTask());
+
+        verify(topologyService).sendTask(any(HazeltaskTask.class), eq(remote1));
+        verify(localService, never()).execute(any(HazeltaskTask.class));
+        Assert.assertEquals(0, metrics.getLocalDispatchMeter().getMetric().count());
+        Assert.assertEquals(1, metrics.getRemoteDispatchMeter().getMetric().count());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void localBatchIsQueuedWithoutSerializing() throws Exception {
+        readyMembers.add(local);
+        readyMembers.add(remote1);
+        when(localService.executeAll(any(List.class))).thenReturn(2);
+        acceptBatches(remote1, Integer.MAX_VALUE);
+
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        tasks.add(new UnserializableTask());
+        tasks.add(new NoopTask());
+        tasks.add(new UnserializableTask());
+        tasks.add(new NoopTask());
+        createService().executeAll(tasks);
+
+        //round robin gives the local member the unserializable ones
+        ArgumentCaptor<List> queued = ArgumentCaptor.forClass(List.class);
+        verify(localService).executeAll(queued.capture());
+        Assert.assertEquals(2, queued.getValue().size());
+        Assert.assertEquals(2, batchesSent.get(remote1).get(0).size());
+        verify(topologyService, never()).sendTasks(any(List.class), eq(local));
+        Assert.assertEquals(2, metrics.getLocalDispatchMeter().getMetric().count());
+        Assert.assertEquals(2, metrics.getRemoteDispatchMeter().getMetric().count());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void executeAsyncSendsWhileTheLogWriteIsInFlight() throws Exception {
+        config.useAsynchronousWriteAheadLog();
+        readyMembers.add(remote1);
+        SettableFuture<HazeltaskTask<Integer>> put = SettableFuture.create();
+        when(topologyService.addPendingTaskAsync(any(HazeltaskTask.class))).thenReturn(put);
+        when(topologyService.sendTask(any(HazeltaskTask.class), eq(remote1))).thenReturn(true);
+
+        ListenableFuture<Void> logged = createService().executeAsync(new NoopTask());
+
+        verify(topologyService).sendTask(any(HazeltaskTask.class), eq(remote1));
+        verify(topologyService, never()).addPendingTask(any(HazeltaskTask.class), anyBoolean());
+        Assert.assertFalse(logged.isDone());
+        put.set(null);
+        Assert.assertTrue(logged.isDone());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void executeAsyncRemovesARefusedTaskAfterTheLogWrite() throws Exception {
+        config.useAsynchronousWriteAheadLog();
+        readyMembers.add(remote1);
+        final SettableFuture<HazeltaskTask<Integer>> put = SettableFuture.create();
+        when(topologyService.addPendingTaskAsync(any(HazeltaskTask.class))).thenReturn(put);
+        when(topologyService.sendTask(any(HazeltaskTask.class), eq(remote1))).thenReturn(false);
+        when(topologyService.removePendingTask(any(HazeltaskTask.class))).thenAnswer(new Answer<Boolean>() {
+            public Boolean answer(InvocationOnMock invocation) {
+                //a remove that overtakes the put would leave the task in the log
+                Assert.assertTrue(put.isDone());
+                return true;
+            }
+        });
+        new Timer(true).schedule(new TimerTask() {
+            public void run() {
+                put.set(null);
+            }
+        }, 50);
+
+        ListenableFuture<Void> submitted = createService().executeAsync(new NoopTask());
+        try {
+            submitted.get();
+            Assert.fail("every member is full");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        verify(topologyService).removePendingTask(any(HazeltaskTask.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void executeAsyncDoesntSendOnTheCallersThread() throws Exception {
+        config.useAsynchronousWriteAheadLog();
+        readyMembers.add(remote1);
+        SettableFuture<HazeltaskTask<Integer>> put = SettableFuture.create();
+        when(topologyService.addPendingTaskAsync(any(HazeltaskTask.class))).thenReturn(put);
+        when(topologyService.sendTask(any(HazeltaskTask.class), eq(remote1))).thenReturn(true);
+        final List<Runnable> sends = new ArrayList<Runnable>();
+        asyncDispatcher = new Executor() {
+            public void execute(Runnable command) {
+                sends.add(command);
+            }
+        };
+
+        ListenableFuture<Void> submitted = createService().executeAsync(new NoopTask());
+        verify(topologyService, never()).sendTask(any(HazeltaskTask.class), any(Member.class));
+        //the put finishing isn't enough
+        put.set(null);
+        Assert.assertFalse(submitted.isDone());
+
+        Assert.assertEquals(1, sends.size());
+        sends.get(0).run();
+        verify(topologyService).sendTask(any(HazeltaskTask.class), eq(remote1));
+        Assert.assertTrue(submitted.isDone());
+        submitted.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void executeAsyncFailsWhenThePutFailsAfterTheTaskWasSent() throws Exception {
+        config.useAsynchronousWriteAheadLog();
+        readyMembers.add(remote1);
+        SettableFuture<HazeltaskTask<Integer>> put = SettableFuture.create();
+        when(topologyService.addPendingTaskAsync(any(HazeltaskTask.class))).thenReturn(put);
+        when(topologyService.sendTask(any(HazeltaskTask.class), eq(remote1))).thenReturn(true);
+
+        ListenableFuture<Void> submitted = createService().executeAsync(new NoopTask());
+        verify(topologyService).sendTask(any(HazeltaskTask.class), eq(remote1));
+        IllegalStateException failure = new IllegalStateException("put failed");
+        put.setException(failure);
+        try {
+            submitted.get();
+            Assert.fail("the put failed");
+        } catch (ExecutionException e) {
+            Assert.assertSame(failure, e.getCause());
+        }
+        //the task is out there, don't take it back
+        verify(topologyService, never()).removePendingTask(any(HazeltaskTask.class));
+    }
+
+    private static class NoopTask implements Runnable, Serializable {
+        private static final long serialVersionUID = 1L;
+        public void run() {}
+    }
+    
+    private static class UnserializableTask implements Runnable, Serializable {
+        private static final long serialVersionUID = 1L;
+        public void run() {}
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            throw new NotSerializableException("local tasks shouldn't be serialized");
+        }
+    }
+    
+    private static class ValueTask implements Callable<Integer>, Serializable {
+        private static final long serialVersionUID = 1L;
+        private final int value;
+        
+        private ValueTask(int value) {
+            this.value = value;
+        }
+        
+        public Integer call() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.hazeltask.executor;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Cluster;
+import com.hazelcast.core.DistributedTask;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ILock;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.Member;
+import com.hazelcast.impl.InnerFutureTask;
+import com.hazeltask.HazeltaskTopology;
+import com.hazeltask.clusterop.StealTasksOp;
+import com.hazeltask.config.ExecutorConfig;
+import com.hazeltask.config.ExecutorLoadBalancingConfig;
+import com.hazeltask.config.HazeltaskConfig;
+import com.hazeltask.config.MetricsConfig;
+import com.hazeltask.core.concurrent.NamedThreadFactory;
+import com.hazeltask.core.concurrent.collections.CopyOnWriteArrayListSet;
+import com.hazeltask.executor.metrics.ExecutorMetrics;
+import com.hazeltask.executor.steal.StolenTaskReceiver;
+import com.hazeltask.executor.steal.TaskSteal;
+import com.hazeltask.executor.task.HazeltaskTask;
+import com.yammer.metrics.core.MetricsRegistry;
+
+public class HazelcastExecutorTopologyServiceTest {
+    private HazelcastInstance hazelcast;
+    private IMap<UUID, HazeltaskTask<Integer>> pendingTasks;
+    private IMap<UUID, Boolean> completedTasks;
+    private ExecutorService communication;
+    private HazeltaskTopology<Integer> topology;
+    private ExecutorConfig<Integer> executorConfig;
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Before
+    public void setupData() {
+        hazelcast = mock(HazelcastInstance.class);
+        Cluster cluster = mock(Cluster.class);
+        Member me = mock(Member.class);
+        when(cluster.getLocalMember()).thenReturn(me);
+        when(hazelcast.getCluster()).thenReturn(cluster);
+        when(hazelcast.getConfig()).thenReturn(new Config());
+        communication = mock(ExecutorService.class);
+        when(hazelcast.getExecutorService(anyString())).thenReturn(communication);
+        pendingTasks = mock(IMap.class);
+        completedTasks = mock(IMap.class);
+        when((IMap) hazelcast.getMap("test-pending-tasks")).thenReturn(pendingTasks);
+        when((IMap) hazelcast.getMap("test-completed-tasks")).thenReturn(completedTasks);
+        when(hazelcast.getTopic(anyString())).thenReturn(mock(ITopic.class));
+        when(hazelcast.getLock(any())).thenReturn(mock(ILock.class));
+        
+        topology = mock(HazeltaskTopology.class);
+        when(topology.getName()).thenReturn("test");
+        when(topology.getReadyMembers()).thenReturn(new CopyOnWriteArrayListSet<Member>());
+        
+        executorConfig = new ExecutorConfig<Integer>();
+    }
+    
+    private HazelcastExecutorTopologyService<Integer> createService() {
+        HazeltaskConfig<Integer> config = new HazeltaskConfig<Integer>()
+            .withName("test")
+            .withHazelcastInstance(hazelcast)
+            .withExecutorConfig(executorConfig)
+            .withThreadFactory(new NamedThreadFactory("Hazeltask", "test"))
+            .withMetricsConfig(new MetricsConfig().withMetricsRegistry(new MetricsRegistry()));
+        return new HazelcastExecutorTopologyService<Integer>(config, topology, new ExecutorMetrics(config));
+    }
+    
+    private HazeltaskTask<Integer> task() {
+        return new HazeltaskTask<Integer>(UUID.randomUUID(), 1, new NoopTask());
+    }
+    
+    @Test
+    public void putThatLandsAfterTheTaskFinishedIsRemoved() throws Exception {
+        executorConfig.useAsynchronousWriteAheadLog();
+        HazeltaskTask<Integer> task = task();
+        SettableFuture<HazeltaskTask<Integer>> put = SettableFuture.create();
+        when(pendingTasks.putAsync(task.getId(), task)).thenReturn(put);
+        
+        ListenableFuture<HazeltaskTask<Integer>> logged = createService().addPendingTaskAsync(task);
+        //the task finished, and its marker was left, before the put landed
+        when(completedTasks.containsKey(task.getId())).thenReturn(true);
+        Assert.assertFalse(logged.isDone());
+        put.set(null);
+        logged.get(10, TimeUnit.SECONDS);
+        
+        verify(pendingTasks).removeAsync(task.getId());
+    }
+    
+    @Test
+    public void putForAnUnfinishedTaskIsKept() throws Exception {
+        executorConfig.useAsynchronousWriteAheadLog();
+        HazeltaskTask<Integer> task = task();
+        SettableFuture<HazeltaskTask<Integer>> put = SettableFuture.create();
+        put.set(null);
+        when(pendingTasks.putAsync(task.getId(), task)).thenReturn(put);
+        
+        createService().addPendingTaskAsync(task).get(10, TimeUnit.SECONDS);
+        
+        verify(completedTasks).containsKey(task.getId());
+        verify(pendingTasks, never()).removeAsync(any(UUID.class));
+    }
+    
+    @Test
+    public void markerIsWrittenBeforeTheEntryIsRemoved() {
+        executorConfig.useAsynchronousWriteAheadLog().withRecoveryProcessPollInterval(60000);
+        HazeltaskTask<Integer> task = task();
+        
+        createService().removePendingTask(task);
+        
+        InOrder order = inOrder(completedTasks, pendingTasks);
+        //10 recovery intervals, but never less than 5 minutes
+        order.verify(completedTasks).set(task.getId(), Boolean.TRUE, 600L, TimeUnit.SECONDS);
+        order.verify(pendingTasks).removeAsync(task.getId());
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void noMarkerWithASynchronousWriteAheadLog() {
+        HazeltaskTask<Integer> task = task();
+        HazelcastExecutorTopologyService<Integer> svc = createService();
+        
+        svc.removePendingTask(task);
+        
+        verify(pendingTasks).removeAsync(task.getId());
+        verify(completedTasks, never()).set(any(UUID.class), any(Boolean.class), anyLong(), any(TimeUnit.class));
+        verify(hazelcast, never()).getMap(eq("test-completed-tasks"));
+        Assert.assertFalse(svc.isTaskCompleted(task.getId()));
+    }
+    
+    /**
+     * Answer the steal requests sent to the member in order, with a list of tasks for the 
+     * chunk or an exception for get() to throw
+     * 
+     * @return the requests, as they are sent
+     */
+    @SuppressWarnings("unchecked")
+    private List<StealTasksOp<Integer>> answerSteals(Object... answers) throws Exception {
+        final List<StealTasksOp<Integer>> requests = new ArrayList<StealTasksOp<Integer>>();
+        final Iterator<Object> it = Arrays.asList(answers).iterator();
+        when(communication.submit(any(Runnable.class))).thenAnswer(new Answer<Future<?>>() {
+            public Future<?> answer(InvocationOnMock invocation) throws Throwable {
+                Object inner = ((DistributedTask<?>) invocation.getArguments()[0]).getInner();
+                if(inner instanceof InnerFutureTask)
+                    inner = ((InnerFutureTask<?>) inner).getCallable();
+                requests.add((StealTasksOp<Integer>) inner);
+                
+                Future<Object> chunk = mock(Future.class);
+                Object answer = it.next();
+                if(answer instanceof Exception)
+                    when(chunk.get(anyLong(), any(TimeUnit.class))).thenThrow((Exception) answer);
+                else
+                    when(chunk.get(anyLong(), any(TimeUnit.class))).thenReturn(answer);
+                return chunk;
+            }
+        });
+        return requests;
+    }
+    
+    private long steal(long numberOfTasks, final int accept) {
+        executorConfig.withLoadBalancingConfig(new ExecutorLoadBalancingConfig<Integer>().withStealChunkSize(2));
+        return createService().stealTasks(Arrays.asList(new TaskSteal(mock(Member.class), numberOfTasks, 0)), 
+                new StolenTaskReceiver<Integer>() {
+                    private int accepted;
+                    public int receive(List<HazeltaskTask<Integer>> tasks) {
+                        int n = Math.max(0, Math.min(tasks.size(), accept - accepted));
+                        accepted += n;
+                        return n;
+                    }
+                });
+    }
+    
+    private List<HazeltaskTask<Integer>> tasks(int count) {
+        List<HazeltaskTask<Integer>> tasks = new ArrayList<HazeltaskTask<Integer>>();
+        for(int i = 0; i < count; i++)
+            tasks.add(task());
+        return tasks;
+    }
+    
+    private static void assertRequest(StealTasksOp<Integer> op, int lastChunk, int accepted, long numberOfTasks) {
+        Assert.assertEquals(lastChunk, op.getLastChunk());
+        Assert.assertEquals(accepted, op.getAcceptedFromLastChunk());
+        Assert.assertEquals(numberOfTasks, op.getNumberOfTasks());
+    }
+    
+    @Test
+    public void partialAcceptEndsTheStealWithAnAcknowledgement() throws Exception {
+        List<StealTasksOp<Integer>> requests = answerSteals(tasks(2), Collections.emptyList());
+        
+        Assert.assertEquals(1, steal(10, 1));
+        
+        Assert.assertEquals(2, requests.size());
+        assertRequest(requests.get(0), 0, 0, 2);
+        assertRequest(requests.get(1), 1, 1, 0);
+        Assert.assertEquals(requests.get(0).getStealId(), requests.get(1).getStealId());
+    }
+    
+    @Test
+    public void emptyChunkEndsTheSteal() throws Exception {
+        List<StealTasksOp<Integer>> requests = answerSteals(tasks(2), Collections.emptyList());
+        
+        Assert.assertEquals(2, steal(10, 10));
+        
+        //the empty chunk's request acknowledged the first chunk and nothing is held now
+        Assert.assertEquals(2, requests.size());
+        assertRequest(requests.get(1), 1, 2, 2);
+    }
+    
+    @Test
+    public void timedOutRequestsAreSentAgain() throws Exception {
+        List<StealTasksOp<Integer>> requests = answerSteals(
+                tasks(2), new TimeoutException(), tasks(1), new TimeoutException(), Collections.emptyList());
+        
+        Assert.assertEquals(3, steal(10, 10));
+        
+        Assert.assertEquals(5, requests.size());
+        assertRequest(requests.get(0), 0, 0, 2);
+        //the acknowledgement of the first chunk
+        assertRequest(requests.get(1), 1, 2, 2);
+        assertRequest(requests.get(2), 1, 2, 2);
+        //the final acknowledgement
+        assertRequest(requests.get(3), 2, 1, 0);
+        assertRequest(requests.get(4), 2, 1, 0);
+    }
+    
+    @Test
+    public void stealGivesUpAfterThreeAttempts() throws Exception {
+        List<StealTasksOp<Integer>> requests = answerSteals(
+                tasks(2), new TimeoutException(), new TimeoutException(), new TimeoutException());
+        
+        Assert.assertEquals(2, steal(10, 10));
+        Assert.assertEquals(4, requests.size());
+    }
+    
+    private static class NoopTask implements Runnable, Serializable {
+        private static final long serialVersionUID = 1L;
+        public void run() {}
+    }
+}
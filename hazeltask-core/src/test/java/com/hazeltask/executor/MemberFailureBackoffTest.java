@@ -0,0 +1,58 @@
+package com.hazeltask.executor;
+
+import static org.mockito.Mockito.mock;
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.hazelcast.core.Member;
+
+public class MemberFailureBackoffTest {
+    
+    @Test
+    public void backoffDoublesUpToMax() {
+        MemberFailureBackoff backoff = new MemberFailureBackoff(10, 10, 100);
+        for(int i = 0; i < 50; i++) {
+            assertBetween(5, 10, backoff.getBackoff(1));
+            assertBetween(10, 20, backoff.getBackoff(2));
+            assertBetween(20, 40, backoff.getBackoff(3));
+            assertBetween(50, 100, backoff.getBackoff(5));
+            assertBetween(50, 100, backoff.getBackoff(30));
+        }
+    }
+    
+    @Test
+    public void noBackoff() {
+        MemberFailureBackoff backoff = new MemberFailureBackoff(3, 0, 0);
+        Assert.assertEquals(0, backoff.getBackoff(2));
+        Assert.assertTrue(backoff.backoff(2));
+        
+        Member member = mock(Member.class);
+        backoff.failed(member);
+        Assert.assertFalse(backoff.isExcluded(member));
+    }
+    
+    @Test
+    public void failedMembersAreExcluded() throws InterruptedException {
+        MemberFailureBackoff backoff = new MemberFailureBackoff(3, 10, 50);
+        Member failed = mock(Member.class);
+        Member ok = mock(Member.class);
+        
+        backoff.failed(failed);
+        Assert.assertTrue(backoff.isExcluded(failed));
+        Assert.assertFalse(backoff.isExcluded(ok));
+        
+        Thread.sleep(60);
+        Assert.assertFalse(backoff.isExcluded(failed));
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void atLeastOneTry() {
+        new MemberFailureBackoff(0, 10, 100);
+    }
+    
+    private static void assertBetween(long min, long max, long value) {
+        Assert.assertTrue(value+" < "+min, value >= min);
+        Assert.assertTrue(value+" > "+max, value <= max);
+    }
+}
@@ -0,0 +1,144 @@
+package com.hazeltask.executor;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.hazelcast.core.DistributedTask;
+import com.hazelcast.core.Member;
+
+public class MemberTaskDistributorTest {
+    private List<DistributedTask<?>> sent;
+    private ExecutorService taskDistributor;
+    private Executor dispatcher;
+    private Member slow;
+    private Member fast;
+    
+    @Before
+    public void setupData() {
+        sent = new ArrayList<DistributedTask<?>>();
+        taskDistributor = mock(ExecutorService.class);
+        doAnswer(new Answer<Void>() {
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                sent.add((DistributedTask<?>) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(taskDistributor).execute(any(Runnable.class));
+        
+        dispatcher = new Executor() {
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        slow = mock(Member.class);
+        fast = mock(Member.class);
+    }
+    
+    private DistributedTask<Boolean> task(Member member) {
+        return new DistributedTask<Boolean>(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return true;
+            }
+        }, member);
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void finish(DistributedTask<?> task) {
+        ((DistributedTask) task).getExecutionCallback().done(task);
+    }
+    
+    @Test
+    public void slowMemberOnlyFillsItsOwnLane() {
+        MemberTaskDistributor distributor = new MemberTaskDistributor(taskDistributor, dispatcher, 2, 1, true, 0);
+        
+        DistributedTask<Boolean> slow1 = task(slow);
+        DistributedTask<Boolean> slow2 = task(slow);
+        DistributedTask<Boolean> slow3 = task(slow);
+        Assert.assertTrue(distributor.send(slow1, slow));
+        Assert.assertTrue(distributor.send(slow2, slow));
+        //waits in the lane
+        Assert.assertTrue(distributor.send(slow3, slow));
+        //lane is full
+        Assert.assertFalse(distributor.send(task(slow), slow));
+        Assert.assertEquals(3, distributor.getPending(slow));
+        Assert.assertEquals(2, sent.size());
+        
+        for(int i=0; i<10; i++) {
+            DistributedTask<Boolean> task = task(fast);
+            Assert.assertTrue(distributor.send(task, fast));
+            finish(task);
+        }
+        Assert.assertEquals(0, distributor.getPending(fast));
+        Assert.assertEquals(12, sent.size());
+        
+        //a finished task makes room for the queued one
+        finish(slow1);
+        Assert.assertEquals(13, sent.size());
+        Assert.assertSame(slow3, sent.get(12));
+        Assert.assertEquals(2, distributor.getPending(slow));
+        
+        finish(slow2);
+        finish(slow3);
+        Assert.assertEquals(0, distributor.getPending(slow));
+        Assert.assertTrue(distributor.send(task(slow), slow));
+        Assert.assertEquals(1, distributor.getPending(slow));
+    }
+    
+    @Test
+    public void fullLaneWaitsForRoomWhenMembersDontRefuse() throws Exception {
+        final MemberTaskDistributor distributor = new MemberTaskDistributor(taskDistributor, dispatcher, 2, 1, false, 10000);
+        DistributedTask<Boolean> slow1 = task(slow);
+        Assert.assertTrue(distributor.send(slow1, slow));
+        Assert.assertTrue(distributor.send(task(slow), slow));
+        Assert.assertTrue(distributor.send(task(slow), slow));
+        
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> blocked = caller.submit(new Callable<Boolean>() {
+                public Boolean call() {
+                    return distributor.send(task(slow), slow);
+                }
+            });
+            Thread.sleep(50);
+            Assert.assertFalse(blocked.isDone());
+            
+            finish(slow1);
+            Assert.assertTrue(blocked.get(5, TimeUnit.SECONDS));
+            Assert.assertEquals(3, distributor.getPending(slow));
+            Assert.assertEquals(3, sent.size());
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void fullLaneTakesTheTaskAfterWaitingWhenMembersDontRefuse() {
+        MemberTaskDistributor distributor = new MemberTaskDistributor(taskDistributor, dispatcher, 1, 0, false, 10);
+        DistributedTask<Boolean> first = task(slow);
+        DistributedTask<Boolean> second = task(slow);
+        Assert.assertTrue(distributor.send(first, slow));
+        //nobody makes room, so it goes over the lane's limit
+        Assert.assertTrue(distributor.send(second, slow));
+        Assert.assertEquals(2, distributor.getPending(slow));
+        Assert.assertEquals(1, sent.size());
+        
+        finish(first);
+        Assert.assertSame(second, sent.get(1));
+    }
+}
@@ -0,0 +1,66 @@
+package com.hazeltask.executor.local;
+
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazeltask.config.HazeltaskConfig;
+import com.hazeltask.core.concurrent.collections.grouped.GroupedPriorityQueueLocking;
+import com.hazeltask.core.concurrent.collections.grouped.prioritizer.RoundRobinGroupPrioritizer;
+import com.hazeltask.executor.metrics.ExecutorMetrics;
+import com.hazeltask.executor.task.HazeltaskTask;
+
+public class GroupBatchingWorkQueueTest {
+    GroupedPriorityQueueLocking<HazeltaskTask<String>, String> taskQueue;
+    GroupBatchingWorkQueue<String> workQueue;
+    
+    @Before
+    public void before() {
+        taskQueue = new GroupedPriorityQueueLocking<HazeltaskTask<String>, String>(new ExecutorMetrics(new HazeltaskConfig()), new RoundRobinGroupPrioritizer<String>());
+        workQueue = new GroupBatchingWorkQueue<String>(taskQueue, 3);
+    }
+    
+    private HazeltaskTask<String> task(String group) {
+        return new HazeltaskTask<String>(UUID.randomUUID(), group, (Callable<?>)null);
+    }
+    
+    @Test
+    public void takesBatchesFromOneGroup() throws InterruptedException {
+        for(int i=0; i<4; i++) {
+            workQueue.offer(task("a"));
+        }
+        workQueue.offer(task("b"));
+        
+        Assert.assertEquals("a", ((HazeltaskTask<?>)workQueue.take()).getGroup());
+        //the rest of the batch left the task queue
+        Assert.assertEquals(2, taskQueue.size());
+        Assert.assertEquals("a", ((HazeltaskTask<?>)workQueue.poll()).getGroup());
+        Assert.assertEquals("a", ((HazeltaskTask<?>)workQueue.poll()).getGroup());
+        //group a rotated to the back after its batch
+        Assert.assertEquals("b", ((HazeltaskTask<?>)workQueue.poll()).getGroup());
+        Assert.assertEquals("a", ((HazeltaskTask<?>)workQueue.poll()).getGroup());
+        Assert.assertNull(workQueue.poll());
+    }
+    
+    @Test
+    public void batchIsOnlyVisibleToItsThread() throws InterruptedException {
+        workQueue.offer(task("a"));
+        workQueue.offer(task("a"));
+        workQueue.poll();
+        Assert.assertFalse(workQueue.isEmpty());
+        
+        final boolean[] emptyElsewhere = new boolean[1];
+        Thread t = new Thread() {
+            public void run() {
+                emptyElsewhere[0] = workQueue.isEmpty();
+            }
+        };
+        t.start();
+        t.join();
+        Assert.assertTrue(emptyElsewhere[0]);
+    }
+}
@@ -1,6 +1,266 @@
 package com.hazeltask.executor.local;
 
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazeltask.config.ExecutorConfig;
+import com.hazeltask.config.ExecutorLoadBalancingConfig;
+import com.hazeltask.config.HazeltaskConfig;
+import com.hazeltask.core.concurrent.NamedThreadFactory;
+import com.hazeltask.executor.IExecutorTopologyService;
+import com.hazeltask.executor.metrics.ExecutorMetrics;
+import com.hazeltask.executor.task.HazeltaskTask;
+
 public class LocalTaskExecutorServiceTest {
     //TODO: test getOldestTaskCreatedTime
-    //TODO: test stealTasks
+    
+    private LocalTaskExecutorService<Long> svc;
+    private CountDownLatch release;
+    private List<HazeltaskTask<Long>> queued;
+    
+    @Before
+    public void before() {
+        release = new CountDownLatch(1);
+        svc = createBlockedService(new ExecutorConfig<Long>());
+        
+        queued = new ArrayList<HazeltaskTask<Long>>();
+        for(long i = 0; i < 20; i++) {
+            HazeltaskTask<Long> task = new HazeltaskTask<Long>(UUID.randomUUID(), i % 4, new NoopTask());
+            queued.add(task);
+            svc.execute(task);
+        }
+    }
+    
+    @After
+    public void after() {
+        release.countDown();
+        svc.shutdownNow();
+    }
+    
+    /**
+     * @return a service whose only worker is blocked until release is counted down, so 
+     *         everything else stays queued
+     */
+    @SuppressWarnings("unchecked")
+    private LocalTaskExecutorService<Long> createBlockedService(ExecutorConfig<Long> config) {
+        config.withThreadCount(1)
+              .disableFutureSupport();
+        LocalTaskExecutorService<Long> service = new LocalTaskExecutorService<Long>(mock(HazelcastInstance.class), config, 
+                new NamedThreadFactory("test", "local"), mock(IExecutorTopologyService.class), 
+                new ExecutorMetrics(new HazeltaskConfig<Long>()));
+        
+        final CountDownLatch started = new CountDownLatch(1);
+        service.execute(new HazeltaskTask<Long>(UUID.randomUUID(), 0L, new BlockingTask(started, release)));
+        try {
+            started.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        return service;
+    }
+    
+    @Test
+    public void fullQueueRefusesTasks() {
+        LocalTaskExecutorService<Long> bounded = createBlockedService(new ExecutorConfig<Long>().withMaxQueuedTasks(2));
+        try {
+            Assert.assertTrue(bounded.execute(new HazeltaskTask<Long>(UUID.randomUUID(), 1L, new NoopTask())));
+            Assert.assertTrue(bounded.execute(new HazeltaskTask<Long>(UUID.randomUUID(), 2L, new NoopTask())));
+            Assert.assertFalse(bounded.execute(new HazeltaskTask<Long>(UUID.randomUUID(), 3L, new NoopTask())));
+            Assert.assertEquals(2, bounded.getQueueSize());
+            
+            //a stolen task makes room again
+            Assert.assertEquals(1, bounded.stealTasks(1).size());
+            Assert.assertTrue(bounded.execute(new HazeltaskTask<Long>(UUID.randomUUID(), 3L, new NoopTask())));
+        } finally {
+            bounded.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void queuedBytesLimitRefusesTasks() {
+        LocalTaskExecutorService<Long> bounded = createBlockedService(new ExecutorConfig<Long>().withMaxQueuedBytes(100));
+        try {
+            List<HazeltaskTask<Long>> tasks = new ArrayList<HazeltaskTask<Long>>();
+            for(long i = 0; i < 3; i++) {
+                HazeltaskTask<Long> task = new HazeltaskTask<Long>(UUID.randomUUID(), i, new NoopTask());
+                task.setSerializedSize(40);
+                tasks.add(task);
+            }
+            //stops at the first task that doesn't fit
+            Assert.assertEquals(2, bounded.executeAll(tasks));
+            Assert.assertEquals(2, bounded.getQueueSize());
+            
+            //the bytes of a cancelled task are given back
+            Assert.assertTrue(bounded.cancelTask(tasks.get(0).getId(), 0L));
+            Assert.assertTrue(bounded.execute(tasks.get(2)));
+        } finally {
+            bounded.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void taskBiggerThanTheLimitIsAcceptedAlone() {
+        LocalTaskExecutorService<Long> bounded = createBlockedService(new ExecutorConfig<Long>().withMaxQueuedBytes(100));
+        try {
+            HazeltaskTask<Long> big = new HazeltaskTask<Long>(UUID.randomUUID(), 1L, new NoopTask());
+            big.setSerializedSize(500);
+            Assert.assertTrue(bounded.execute(big));
+            
+            HazeltaskTask<Long> small = new HazeltaskTask<Long>(UUID.randomUUID(), 2L, new NoopTask());
+            small.setSerializedSize(1);
+            Assert.assertFalse(bounded.execute(small));
+        } finally {
+            bounded.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void stealTasks() {
+        Assert.assertEquals(5, svc.stealTasks(5).size());
+        Assert.assertEquals(15, svc.getQueueSize());
+    }
+    
+    @Test
+    public void stealTasksTakesTheNewest() {
+        Collection<HazeltaskTask<Long>> stolen = svc.stealTasks(16);
+        Assert.assertEquals(16, stolen.size());
+        //the first task queued for each group is still here
+        for(HazeltaskTask<Long> task : stolen)
+            Assert.assertFalse(queued.subList(0, 4).contains(task));
+        Assert.assertEquals(4, svc.getQueueSize());
+    }
+    
+    @Test
+    public void stealTasksKeepsAtLeast() {
+        Assert.assertEquals(5, svc.stealTasks(100, 15).size());
+        Assert.assertEquals(15, svc.getQueueSize());
+        Assert.assertTrue(svc.stealTasks(100, 15).isEmpty());
+        Assert.assertTrue(svc.stealTasks(100, 30).isEmpty());
+    }
+    
+    @Test
+    public void chunkedStealPutsBackWhatTheThiefDidntKeep() {
+        UUID stealId = UUID.randomUUID();
+        Assert.assertEquals(5, svc.stealTasks(stealId, 0, 0, 5, 0).size());
+        Assert.assertEquals(15, svc.getQueueSize());
+        Assert.assertEquals(5, svc.stealTasks(stealId, 1, 5, 5, 0).size());
+        Assert.assertEquals(10, svc.getQueueSize());
+        //the thief only kept 2 of the last chunk and is done
+        Assert.assertTrue(svc.stealTasks(stealId, 2, 2, 0, 0).isEmpty());
+        Assert.assertEquals(13, svc.getQueueSize());
+        Assert.assertEquals(0, svc.reclaimExpiredSteals());
+    }
+    
+    @Test
+    public void repeatedChunkRequestsAreAnsweredTheSame() {
+        UUID stealId = UUID.randomUUID();
+        Collection<HazeltaskTask<Long>> first = svc.stealTasks(stealId, 0, 0, 5, 0);
+        //the thief never got our answer
+        Assert.assertEquals(first, svc.stealTasks(stealId, 0, 0, 5, 0));
+        Assert.assertEquals(15, svc.getQueueSize());
+        
+        Collection<HazeltaskTask<Long>> second = svc.stealTasks(stealId, 1, 5, 5, 0);
+        Assert.assertEquals(5, second.size());
+        Assert.assertEquals(second, svc.stealTasks(stealId, 1, 5, 5, 0));
+        Assert.assertEquals(10, svc.getQueueSize());
+        
+        //the thief kept all of them and is done, but didn't hear back the first time
+        Assert.assertTrue(svc.stealTasks(stealId, 2, 5, 0, 0).isEmpty());
+        Assert.assertTrue(svc.stealTasks(stealId, 2, 5, 0, 0).isEmpty());
+        Assert.assertEquals(10, svc.getQueueSize());
+        Assert.assertEquals(0, svc.reclaimExpiredSteals());
+    }
+        
+    @Test
+    public void expiredStealsArePutBack() throws InterruptedException {
+        LocalTaskExecutorService<Long> leased = createBlockedService(new ExecutorConfig<Long>()
+                .withLoadBalancingConfig(new ExecutorLoadBalancingConfig<Long>().withStealLeaseTime(1)));
+        try {
+            for(long i = 0; i < 5; i++)
+                leased.execute(new HazeltaskTask<Long>(UUID.randomUUID(), i, new NoopTask()));
+            UUID stealId = UUID.randomUUID();
+            Assert.assertEquals(3, leased.stealTasks(stealId, 0, 0, 3, 0).size());
+            Assert.assertEquals(2, leased.getQueueSize());
+        
+            Thread.sleep(10);
+            Assert.assertEquals(3, leased.reclaimExpiredSteals());
+            Assert.assertEquals(5, leased.getQueueSize());
+        
+            //a late acknowledgement doesn't drop the tasks that were put back
+            Assert.assertTrue(leased.stealTasks(stealId, 1, 3, 0, 0).isEmpty());
+            Assert.assertEquals(5, leased.getQueueSize());
+        } finally {
+            leased.shutdownNow();
+        }
+    }
+        
+    @Test
+    public void unacknowledgedChunksAreReturnedOnShutdown() {
+        Assert.assertEquals(5, svc.stealTasks(UUID.randomUUID(), 0, 0, 5, 0).size());
+        Assert.assertEquals(20, svc.shutdownNow().size());
+    }
+    
+    @Test
+    public void concurrentStealersDontDoubleTake() throws Exception {
+        ExecutorService stealers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Collection<HazeltaskTask<Long>>>> steals = new ArrayList<Future<Collection<HazeltaskTask<Long>>>>();
+            for(int i = 0; i < 4; i++) {
+                steals.add(stealers.submit(new Callable<Collection<HazeltaskTask<Long>>>() {
+                    public Collection<HazeltaskTask<Long>> call() {
+                        //each stealer thinks it may take the whole surplus
+                        return svc.stealTasks(8, 12);
+                    }
+                }));
+            }
+            int stolen = 0;
+            for(Future<Collection<HazeltaskTask<Long>>> steal : steals)
+                stolen += steal.get().size();
+            Assert.assertEquals(8, stolen);
+            Assert.assertEquals(12, svc.getQueueSize());
+        } finally {
+            stealers.shutdown();
+        }
+    }
+    
+    private static class BlockingTask implements Runnable, java.io.Serializable {
+        private static final long serialVersionUID = 1L;
+        private final transient CountDownLatch started;
+        private final transient CountDownLatch release;
+        
+        private BlockingTask(CountDownLatch started, CountDownLatch release) {
+            this.started = started;
+            this.release = release;
+        }
+        
+        public void run() {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    private static class NoopTask implements Runnable, java.io.Serializable {
+        private static final long serialVersionUID = 1L;
+        public void run() {}
+    }
 }
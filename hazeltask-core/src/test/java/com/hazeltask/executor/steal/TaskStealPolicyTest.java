@@ -0,0 +1,126 @@
+package com.hazeltask.executor.steal;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hazelcast.core.Member;
+import com.hazeltask.executor.MemberLoad;
+import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
+
+public class TaskStealPolicyTest {
+    private Member local;
+    private Member a;
+    private Member b;
+    
+    @Before
+    public void before() {
+        local = mock(Member.class);
+        a = mock(Member.class);
+        b = mock(Member.class);
+    }
+    
+    private Collection<MemberResponse<MemberLoad>> loads(MemberLoad localLoad, MemberLoad aLoad, MemberLoad bLoad) {
+        List<MemberResponse<MemberLoad>> loads = new ArrayList<MemberResponse<MemberLoad>>();
+        loads.add(new MemberResponse<MemberLoad>(local, localLoad));
+        loads.add(new MemberResponse<MemberLoad>(a, aLoad));
+        loads.add(new MemberResponse<MemberLoad>(b, bLoad));
+        return loads;
+    }
+    
+    private TaskSteal stealFrom(List<TaskSteal> steals, Member member) {
+        for(TaskSteal steal : steals) {
+            if(steal.getMember() == member)
+                return steal;
+        }
+        return null;
+    }
+    
+    @Test
+    public void queueLength() {
+        List<TaskSteal> steals = new QueueLengthStealPolicy().plan(local, loads(
+                new MemberLoad(0, 4, 10), new MemberLoad(100, 4, 10), new MemberLoad(200, 4, 10)));
+        //everyone should have 100
+        Assert.assertEquals(1, steals.size());
+        TaskSteal steal = stealFrom(steals, b);
+        Assert.assertEquals(100, steal.getNumberOfTasks());
+        Assert.assertEquals(100, steal.getKeepAtLeast());
+    }
+    
+    @Test
+    public void queueLengthBelowThreshold() {
+        //30 is 30% of the 100 we should have
+        Assert.assertTrue(new QueueLengthStealPolicy().plan(local, loads(
+                new MemberLoad(30, 4, 10), new MemberLoad(70, 4, 10), new MemberLoad(200, 4, 10))).isEmpty());
+        Assert.assertFalse(new QueueLengthStealPolicy(0.5).plan(local, loads(
+                new MemberLoad(30, 4, 10), new MemberLoad(70, 4, 10), new MemberLoad(200, 4, 10))).isEmpty());
+    }
+    
+    @Test
+    public void threadWeighted() {
+        List<TaskSteal> steals = new ThreadWeightedStealPolicy().plan(local, loads(
+                new MemberLoad(0, 8, 10), new MemberLoad(150, 4, 10), new MemberLoad(150, 4, 10)));
+        //we have half of the threads so we should have half of the tasks
+        Assert.assertEquals(2, steals.size());
+        Assert.assertEquals(75, stealFrom(steals, a).getNumberOfTasks());
+        Assert.assertEquals(75, stealFrom(steals, a).getKeepAtLeast());
+        Assert.assertEquals(75, stealFrom(steals, b).getNumberOfTasks());
+    }
+    
+    @Test
+    public void drainTime() {
+        List<TaskSteal> steals = new DrainTimeStealPolicy().plan(local, loads(
+                new MemberLoad(0, 4, 30), new MemberLoad(100, 4, 10), new MemberLoad(200, 4, 20)));
+        //we finish half of the cluster's tasks per second so we should have half of the tasks
+        Assert.assertEquals(2, steals.size());
+        Assert.assertEquals(50, stealFrom(steals, a).getNumberOfTasks());
+        Assert.assertEquals(50, stealFrom(steals, a).getKeepAtLeast());
+        Assert.assertEquals(100, stealFrom(steals, b).getNumberOfTasks());
+        Assert.assertEquals(100, stealFrom(steals, b).getKeepAtLeast());
+    }
+    
+    @Test
+    public void drainTimeBelowOneTaskPerThread() {
+        //slow tasks: every member finishes fewer tasks a second than it has threads
+        List<TaskSteal> steals = new DrainTimeStealPolicy().plan(local, loads(
+                new MemberLoad(0, 8, 2), new MemberLoad(150, 8, 1), new MemberLoad(150, 8, 1)));
+        //we finish half of the cluster's tasks per second so we should have half of the tasks
+        Assert.assertEquals(2, steals.size());
+        Assert.assertEquals(75, stealFrom(steals, a).getNumberOfTasks());
+        Assert.assertEquals(75, stealFrom(steals, a).getKeepAtLeast());
+        Assert.assertEquals(75, stealFrom(steals, b).getNumberOfTasks());
+    }
+    
+    @Test
+    public void drainTimeWithoutARate() {
+        //we haven't run anything yet so our 4 threads count as 4 tasks a second
+        List<TaskSteal> steals = new DrainTimeStealPolicy().plan(local, loads(
+                new MemberLoad(0, 4, 0), new MemberLoad(100, 4, 2), new MemberLoad(100, 4, 2)));
+        Assert.assertEquals(2, steals.size());
+        Assert.assertEquals(50, stealFrom(steals, a).getNumberOfTasks());
+        Assert.assertEquals(50, stealFrom(steals, b).getNumberOfTasks());
+    }
+    
+    @Test
+    public void expectedDrainRate() {
+        Assert.assertEquals(0.5, new MemberLoad(10, 8, 0.5).getExpectedDrainRate());
+        Assert.assertEquals(20.0, new MemberLoad(10, 8, 20).getExpectedDrainRate());
+        Assert.assertEquals(8.0, new MemberLoad(10, 8, 0).getExpectedDrainRate());
+        Assert.assertEquals(1.0, new MemberLoad(10, 0, 0).getExpectedDrainRate());
+    }
+    
+    @Test
+    public void nothingToSteal() {
+        Assert.assertTrue(new QueueLengthStealPolicy().plan(local, loads(
+                new MemberLoad(0, 4, 10), new MemberLoad(0, 4, 10), new MemberLoad(0, 4, 10))).isEmpty());
+        Assert.assertTrue(new QueueLengthStealPolicy().plan(mock(Member.class), loads(
+                new MemberLoad(0, 4, 10), new MemberLoad(100, 4, 10), new MemberLoad(200, 4, 10))).isEmpty());
+    }
+}
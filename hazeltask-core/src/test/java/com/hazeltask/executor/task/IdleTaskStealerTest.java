@@ -0,0 +1,205 @@
+package com.hazeltask.executor.task;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.hazelcast.core.Member;
+import com.hazeltask.HazeltaskTopology;
+import com.hazeltask.config.ExecutorLoadBalancingConfig;
+import com.hazeltask.config.HazeltaskConfig;
+import com.hazeltask.executor.IExecutorTopologyService;
+import com.hazeltask.executor.local.LocalTaskExecutorService;
+import com.hazeltask.executor.metrics.ExecutorMetrics;
+import com.hazeltask.executor.steal.StolenTaskReceiver;
+import com.hazeltask.executor.steal.TaskSteal;
+import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
+
+public class IdleTaskStealerTest {
+    private static final Executor SAME_THREAD = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private Member local;
+    private Member light;
+    private Member heavy;
+    private LocalTaskExecutorService<Long> localSvc;
+    private IExecutorTopologyService<Long> topologyService;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void before() {
+        local = mock(Member.class);
+        when(local.localMember()).thenReturn(true);
+        light = mock(Member.class);
+        heavy = mock(Member.class);
+        localSvc = mock(LocalTaskExecutorService.class);
+        topologyService = mock(IExecutorTopologyService.class);
+        when(localSvc.executeAll(anyTasks())).thenAnswer(new Answer<Integer>() {
+            public Integer answer(InvocationOnMock invocation) {
+                return ((List<?>) invocation.getArguments()[0]).size();
+            }
+        });
+    }
+
+    private IdleTaskStealer<Long> stealer(int lowWaterMark, long minInterval) {
+        ExecutorLoadBalancingConfig<Long> config = new ExecutorLoadBalancingConfig<Long>()
+                .useIdleTaskStealing(lowWaterMark, minInterval);
+        return new IdleTaskStealer<Long>(new HazeltaskTopology<Long>("test", local), localSvc, topologyService,
+                SAME_THREAD, config, new ExecutorMetrics(new HazeltaskConfig<Long>()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void queueSizes(long localSize, long lightSize, long heavySize) {
+        when(localSvc.getQueueSize()).thenReturn(localSize);
+        when(topologyService.getMemberQueueSizes()).thenReturn(Arrays.asList(
+                new MemberResponse<Long>(local, localSize),
+                new MemberResponse<Long>(light, lightSize),
+                new MemberResponse<Long>(heavy, heavySize)));
+    }
+
+    private static List<TaskSteal> anySteals() {
+        return any();
+    }
+
+    private static List<HazeltaskTask<Long>> anyTasks() {
+        return any();
+    }
+
+    private static StolenTaskReceiver<Long> anyReceiver() {
+        return any();
+    }
+
+    /**
+     * Hand the tasks to the receiver like a steal would
+     */
+    private void stealReturns(final Collection<HazeltaskTask<Long>> stolen) {
+        when(topologyService.stealTasks(anySteals(), anyReceiver())).thenAnswer(new Answer<Long>() {
+            @SuppressWarnings("unchecked")
+            public Long answer(InvocationOnMock invocation) {
+                StolenTaskReceiver<Long> receiver = (StolenTaskReceiver<Long>) invocation.getArguments()[1];
+                return (long) receiver.receive(new ArrayList<HazeltaskTask<Long>>(stolen));
+            }
+        });
+    }
+
+    private Collection<HazeltaskTask<Long>> tasks(int count) {
+        List<HazeltaskTask<Long>> tasks = new ArrayList<HazeltaskTask<Long>>();
+        for(int i = 0; i < count; i++)
+            tasks.add(new HazeltaskTask<Long>(UUID.randomUUID(), 1L, new NoopTask()));
+        return tasks;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void stealsHalfTheDifferenceFromMostLoaded() {
+        queueSizes(0, 10, 40);
+        stealReturns(tasks(20));
+
+        Assert.assertTrue(stealer(0, 0).trigger());
+
+        ArgumentCaptor<List> steals = ArgumentCaptor.forClass(List.class);
+        verify(topologyService).stealTasks(steals.capture(), anyReceiver());
+        Assert.assertEquals(1, steals.getValue().size());
+        TaskSteal steal = (TaskSteal) steals.getValue().get(0);
+        Assert.assertSame(heavy, steal.getMember());
+        Assert.assertEquals(20, steal.getNumberOfTasks());
+        Assert.assertEquals(20, steal.getKeepAtLeast());
+        verify(localSvc).executeAll(anyTasks());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void dontStealWhenWeCantGetAboveLowWaterMark() {
+        queueSizes(0, 4, 10);
+        stealer(5, 0).trigger();
+        verify(topologyService, never()).stealTasks(anySteals(), anyReceiver());
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Test
+    public void onlyTriggeredAtLowWaterMark() {
+        queueSizes(3, 0, 40);
+        stealReturns(tasks(1));
+        IdleTaskStealer<Long> stealer = stealer(2, 0);
+
+        stealer.afterExecute(null, null);
+        verify(topologyService, never()).getMemberQueueSizes();
+
+        queueSizes(2, 0, 40);
+        stealer.afterExecute(null, null);
+        ArgumentCaptor<List> steals = ArgumentCaptor.forClass(List.class);
+        verify(topologyService).stealTasks(steals.capture(), anyReceiver());
+        Assert.assertEquals(21, ((TaskSteal) steals.getValue().get(0)).getKeepAtLeast());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void stealsAreRateLimited() {
+        queueSizes(0, 0, 40);
+        stealReturns(tasks(20));
+        IdleTaskStealer<Long> stealer = stealer(0, 60000);
+
+        Assert.assertTrue(stealer.trigger());
+        Assert.assertFalse(stealer.trigger());
+        verify(topologyService, times(1)).getMemberQueueSizes();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void timerStealsAgainAfterAnEmptySteal() throws InterruptedException {
+        IdleTaskStealer<Long> stealer = stealer(0, 0);
+        IdleTaskStealTimerTask<Long> timerTask = new IdleTaskStealTimerTask<Long>(stealer);
+
+        //nobody has anything yet
+        queueSizes(0, 0, 0);
+        stealer.afterExecute(null, null);
+        verify(topologyService, never()).stealTasks(anySteals(), anyReceiver());
+
+        //no task finishes after that, only the timer can start the next steal
+        queueSizes(0, 0, 40);
+        stealReturns(tasks(20));
+        Thread.sleep(10); //the empty steal backed off 2ms
+        Assert.assertTrue(timerTask.execute());
+        verify(topologyService).stealTasks(anySteals(), anyReceiver());
+        verify(localSvc).executeAll(anyTasks());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void timerOnlyStealsAtLowWaterMark() {
+        queueSizes(3, 0, 40);
+        stealReturns(tasks(1));
+        IdleTaskStealer<Long> stealer = stealer(2, 0);
+
+        Assert.assertTrue(new IdleTaskStealTimerTask<Long>(stealer).execute());
+        Assert.assertFalse(stealer.triggerIfIdle());
+        verify(topologyService, never()).getMemberQueueSizes();
+    }
+
+    private static class NoopTask implements Runnable, Serializable {
+        private static final long serialVersionUID = 1L;
+        public void run() {}
+    }
+}
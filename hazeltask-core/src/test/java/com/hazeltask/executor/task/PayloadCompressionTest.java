@@ -0,0 +1,153 @@
+package com.hazeltask.executor.task;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.hazeltask.config.HazeltaskConfig;
+import com.hazeltask.executor.metrics.ExecutorMetrics;
+
+public class PayloadCompressionTest {
+    
+    private static class BigTask implements Runnable, Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String payload;
+        private BigTask(String payload) { this.payload = payload; }
+        public void run() {}
+    }
+    
+    @Test
+    public void lzRoundTrip() throws IOException {
+        assertRoundTrip(new LZPayloadCompressor());
+    }
+    
+    @Test
+    public void deflateRoundTrip() throws IOException {
+        assertRoundTrip(new DeflatePayloadCompressor());
+    }
+    
+    @Test
+    public void lzCompressesRepetitiveData() {
+        byte[] data = repetitive(10000);
+        Assert.assertTrue(new LZPayloadCompressor().compress(data).length < data.length / 10);
+    }
+    
+    @Test(expected=IOException.class)
+    public void lzCorruptData() throws IOException {
+        byte[] data = repetitive(1000);
+        byte[] compressed = new LZPayloadCompressor().compress(data);
+        new LZPayloadCompressor().decompress(Arrays.copyOf(compressed, compressed.length - 3), data.length);
+    }
+    
+    @Test
+    public void belowThresholdIsNotCompressed() throws IOException {
+        PayloadCompression compression = new PayloadCompression(new LZPayloadCompressor(), 4096, null);
+        String small = text(100);
+        byte[] data = write(small, compression);
+        Assert.assertTrue(data.length > small.length());
+        Assert.assertEquals(small, read(data));
+    }
+    
+    @Test
+    public void aboveThresholdIsCompressed() throws IOException {
+        ExecutorMetrics metrics = new ExecutorMetrics(new HazeltaskConfig<String>());
+        PayloadCompression compression = new PayloadCompression(new LZPayloadCompressor(), 1024, metrics);
+        String big = text(20000);
+        byte[] data = write(big, compression);
+        Assert.assertTrue(data.length < big.length() / 2);
+        Assert.assertEquals(big, read(data));
+        Assert.assertEquals(1, metrics.getPayloadCompressionTimer().getMetric().count());
+        Assert.assertEquals(1, metrics.getPayloadCompressionRatio().getMetric().count());
+    }
+    
+    @Test
+    public void hazeltaskTask() throws IOException {
+        String payload = text(20000);
+        HazeltaskTask<String> task = new HazeltaskTask<String>(UUID.randomUUID(), "group", new BigTask(payload));
+        
+        ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+        task.writeData(new DataOutputStream(uncompressed));
+        
+        task.setPayloadCompression(new PayloadCompression(new LZPayloadCompressor(), 1024, null));
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        task.writeData(new DataOutputStream(compressed));
+        Assert.assertTrue(compressed.size() < uncompressed.size() / 2);
+        
+        HazeltaskTask<String> copy = new HazeltaskTask<String>();
+        copy.readData(new DataInputStream(new ByteArrayInputStream(compressed.toByteArray())));
+        Assert.assertEquals(task.getId(), copy.getId());
+        Assert.assertEquals("group", copy.getGroup());
+        Assert.assertEquals(payload, ((BigTask) copy.getInnerRunnable()).payload);
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void taskResponse() throws Exception {
+        String result = text(20000);
+        TaskResponse<String> response = new TaskResponse<String>(null, UUID.randomUUID(), result, TaskResponse.Status.SUCCESS, 
+                new PayloadCompression(new DeflatePayloadCompressor(), 1024, null));
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(response);
+        out.close();
+        Assert.assertTrue(bytes.size() < result.length() / 2);
+        
+        TaskResponse<String> copy = (TaskResponse<String>) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        Assert.assertEquals(response.getTaskId(), copy.getTaskId());
+        Assert.assertEquals(TaskResponse.Status.SUCCESS, copy.getStatus());
+        Assert.assertEquals(result, copy.getResponse());
+    }
+    
+    private static void assertRoundTrip(PayloadCompressor compressor) throws IOException {
+        Random random = new Random(1);
+        for(int size : new int[]{0, 1, 12, 13, 100, 1000, 70000}) {
+            byte[] randomData = new byte[size];
+            random.nextBytes(randomData);
+            byte[][] inputs = {randomData, repetitive(size), text(size).getBytes("UTF-8")};
+            for(byte[] data : inputs) {
+                byte[] compressed = compressor.compress(data);
+                Assert.assertTrue(Arrays.equals(data, compressor.decompress(compressed, data.length)));
+            }
+        }
+    }
+    
+    private static byte[] repetitive(int size) {
+        byte[] data = new byte[size];
+        for(int i = 0; i < size; i++)
+            data[i] = (byte) (i % 7);
+        return data;
+    }
+    
+    private static String text(int size) {
+        Random random = new Random(2);
+        String[] words = {"task ", "group ", "hazel ", "cast ", "member ", "queue "};
+        StringBuilder sb = new StringBuilder(size);
+        while(sb.length() < size)
+            sb.append(words[random.nextInt(words.length)]);
+        sb.setLength(size);
+        return sb.toString();
+    }
+    
+    private static byte[] write(Object value, PayloadCompression compression) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PayloadCompression.writePayload(new DataOutputStream(bytes), value, compression);
+        return bytes.toByteArray();
+    }
+    
+    private static Object read(byte[] data) throws IOException {
+        return PayloadCompression.readPayload(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+}
@@ -0,0 +1,85 @@
+package com.hazeltask.executor.task;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import com.hazelcast.nio.DataSerializable;
+import com.hazelcast.nio.SerializationHelper;
+
+/**
+ * Compares the task codec with plain SerializationHelper for a task with a UUID group
+ * and a small DataSerializable Runnable.  SerializationHelper writes both with java
+ * serialization.  Enable the rule to get timings.
+ */
+public class TaskCodecPerformanceTest {
+    //@Rule
+    public BenchmarkRule benchmarkRun = new BenchmarkRule();
+    
+    private static final int TASKS = 10000;
+    
+    public static class SmallTask implements Runnable, DataSerializable {
+        private static final long serialVersionUID = 1L;
+        private long value;
+        public SmallTask() {}
+        private SmallTask(long value) { this.value = value; }
+        public void run() {}
+        public void writeData(DataOutput out) throws IOException { out.writeLong(value); }
+        public void readData(DataInput in) throws IOException { value = in.readLong(); }
+    }
+    
+    @Test
+    public void bytesPerTask() throws IOException {
+        long codec = 0;
+        long java = 0;
+        for(long i = 0; i < 100; i++) {
+            codec += writeCodec(i).size();
+            java += writeSerializationHelper(i).size();
+        }
+//        System.out.println("Bytes per task: codec="+(codec/100)+" serialization helper="+(java/100));
+        Assert.assertTrue("codec="+(codec/100)+" serialization helper="+(java/100), codec < java);
+    }
+    
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 5)
+    public void write_codec() throws IOException {
+        for(long i = 0; i < TASKS; i++)
+            writeCodec(i);
+    }
+    
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 5)
+    public void write_serializationHelper() throws IOException {
+        for(long i = 0; i < TASKS; i++)
+            writeSerializationHelper(i);
+    }
+    
+    private static ByteArrayOutputStream writeCodec(long i) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new HazeltaskTask<UUID>(UUID.randomUUID(), UUID.randomUUID(), new SmallTask(i)).writeData(new DataOutputStream(bytes));
+        return bytes;
+    }
+    
+    private static ByteArrayOutputStream writeSerializationHelper(long i) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        UUID id = UUID.randomUUID();
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+        SerializationHelper.writeObject(out, UUID.randomUUID());
+        SerializationHelper.writeObject(out, new SmallTask(i));
+        SerializationHelper.writeObject(out, null);
+        out.writeLong(System.currentTimeMillis());
+        out.writeInt(1);
+        return bytes;
+    }
+}
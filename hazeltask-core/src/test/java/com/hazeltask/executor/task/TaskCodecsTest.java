@@ -0,0 +1,196 @@
+package com.hazeltask.executor.task;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.hazelcast.nio.DataSerializable;
+import com.hazelcast.nio.SerializationHelper;
+
+public class TaskCodecsTest {
+    
+    private static enum Color { RED, GREEN { public String toString() { return "green"; } } }
+    
+    public static class DataTask implements Runnable, DataSerializable {
+        private static final long serialVersionUID = 1L;
+        int value;
+        public DataTask() {}
+        public DataTask(int value) { this.value = value; }
+        public void run() {}
+        public void writeData(DataOutput out) throws IOException { out.writeInt(value); }
+        public void readData(DataInput in) throws IOException { value = in.readInt(); }
+    }
+    
+    private static class PrivateDataTask implements Runnable, DataSerializable {
+        private static final long serialVersionUID = 1L;
+        int value;
+        private PrivateDataTask() {}
+        private PrivateDataTask(int value) { this.value = value; }
+        public void run() {}
+        public void writeData(DataOutput out) throws IOException { out.writeInt(value); }
+        public void readData(DataInput in) throws IOException { value = in.readInt(); }
+    }
+    
+    public static class CodecTask implements Callable<Integer> {
+        final int value;
+        public CodecTask(int value) { this.value = value; }
+        public Integer call() { return value; }
+    }
+    
+    private static class CodecTaskCodec implements TaskCodec<CodecTask> {
+        public void write(DataOutput out, CodecTask value) throws IOException {
+            out.writeInt(value.value);
+        }
+        public CodecTask read(DataInput in) throws IOException {
+            return new CodecTask(in.readInt());
+        }
+    }
+    
+    private static class SerializableTask implements Runnable, Serializable {
+        private static final long serialVersionUID = 1L;
+        public void run() {}
+    }
+    
+    @After
+    public void cleanup() {
+        TaskCodecs.unregister(CodecTask.class);
+    }
+    
+    @Test
+    public void builtInTypes() throws IOException {
+        UUID id = UUID.randomUUID();
+        Assert.assertNull(roundTrip(null));
+        Assert.assertEquals("group", roundTrip("group"));
+        Assert.assertEquals(5L, roundTrip(5L));
+        Assert.assertEquals(7, roundTrip(7));
+        Assert.assertEquals(Color.RED, roundTrip(Color.RED));
+        Assert.assertSame(Color.GREEN, roundTrip(Color.GREEN));
+        Assert.assertEquals(id, roundTrip(id));
+        
+        Date date = new Date();
+        Assert.assertEquals(date, roundTrip(date));
+    }
+    
+    @Test
+    public void longStrings() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 70000; i++)
+            sb.append('\u20AC');
+        Assert.assertEquals(sb.toString(), roundTrip(sb.toString()));
+    }
+    
+    @Test
+    public void builtInTypesAreSmall() throws IOException {
+        Assert.assertEquals(9, write(5L).length);
+        Assert.assertEquals(17, write(UUID.randomUUID()).length);
+    }
+    
+    @Test
+    public void dataSerializable() throws IOException {
+        DataTask task = (DataTask) roundTrip(new DataTask(42));
+        Assert.assertEquals(42, task.value);
+    }
+    
+    @Test
+    public void dataSerializableWithAPrivateConstructor() throws IOException {
+        PrivateDataTask task = (PrivateDataTask) roundTrip(new PrivateDataTask(42));
+        Assert.assertEquals(42, task.value);
+    }
+    
+    @Test
+    public void registeredCodec() throws Exception {
+        TaskCodecs.register(CodecTask.class, 1, new CodecTaskCodec());
+        byte[] data = write(new CodecTask(3));
+        Assert.assertEquals(1 + 4 + 4, data.length);
+        Assert.assertEquals(3, (int) ((CodecTask) read(data)).call());
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void duplicateCodecId() {
+        TaskCodecs.register(CodecTask.class, 1, new CodecTaskCodec());
+        TaskCodecs.register(CodecTask.class, 2, new CodecTaskCodec());
+    }
+    
+    @Test(expected=IOException.class)
+    public void unknownCodec() throws IOException {
+        TaskCodecs.register(CodecTask.class, 1, new CodecTaskCodec());
+        byte[] data = write(new CodecTask(3));
+        TaskCodecs.unregister(CodecTask.class);
+        read(data);
+    }
+    
+    @Test
+    public void serializableFallback() throws IOException {
+        Assert.assertTrue(roundTrip(new SerializableTask()) instanceof SerializableTask);
+    }
+    
+    @Test
+    public void hazeltaskTask() throws IOException {
+        UUID id = UUID.randomUUID();
+        HazeltaskTask<Long> task = new HazeltaskTask<Long>(id, 10L, new DataTask(4));
+        task.setSubmissionCount(3);
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        task.writeData(new DataOutputStream(bytes));
+        HazeltaskTask<Long> copy = new HazeltaskTask<Long>();
+        copy.readData(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        
+        Assert.assertEquals(id, copy.getId());
+        Assert.assertEquals(Long.valueOf(10), copy.getGroup());
+        Assert.assertEquals(3, copy.getSubmissionCount());
+        Assert.assertEquals(task.getTimeCreated(), copy.getTimeCreated());
+        Assert.assertEquals(4, ((DataTask) copy.getInnerRunnable()).value);
+        Assert.assertNull(copy.getInnerCallable());
+    }
+    
+    @Test
+    public void hazeltaskTaskWrittenBeforeTheCodecs() throws IOException {
+        UUID id = UUID.randomUUID();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+        SerializationHelper.writeObject(out, 10L);
+        SerializationHelper.writeObject(out, new SerializableTask());
+        SerializationHelper.writeObject(out, null);
+        out.writeLong(1234L);
+        out.writeInt(2);
+        
+        HazeltaskTask<Long> copy = new HazeltaskTask<Long>();
+        copy.readData(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        
+        Assert.assertEquals(id, copy.getId());
+        Assert.assertEquals(Long.valueOf(10), copy.getGroup());
+        Assert.assertTrue(copy.getInnerRunnable() instanceof SerializableTask);
+        Assert.assertNull(copy.getInnerCallable());
+        Assert.assertEquals(1234L, copy.getTimeCreated());
+        Assert.assertEquals(2, copy.getSubmissionCount());
+    }
+    
+    private static Object roundTrip(Object value) throws IOException {
+        return read(write(value));
+    }
+    
+    private static byte[] write(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TaskCodecs.writeObject(new DataOutputStream(bytes), value);
+        return bytes.toByteArray();
+    }
+    
+    private static Object read(byte[] data) throws IOException {
+        return TaskCodecs.readObject(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+}
@@ -0,0 +1,53 @@
+package com.hazeltask.executor.task;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import com.hazeltask.HazeltaskTopology;
+import com.hazeltask.config.HazeltaskConfig;
+import com.hazeltask.config.MetricsConfig;
+import com.hazeltask.executor.DistributedExecutorServiceImpl;
+import com.hazeltask.executor.IExecutorTopologyService;
+import com.hazeltask.executor.metrics.ExecutorMetrics;
+import com.hazeltask.hazelcast.MemberTasks.MemberResponse;
+import com.yammer.metrics.core.MetricsRegistry;
+
+public class TaskRecoveryTimerTaskTest {
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void finishedTaskIsRemovedInsteadOfRecovered() {
+        IExecutorTopologyService<Integer> topologyService = mock(IExecutorTopologyService.class);
+        DistributedExecutorServiceImpl<Integer> svc = mock(DistributedExecutorServiceImpl.class);
+        HazeltaskTask<Integer> finished = new HazeltaskTask<Integer>(UUID.randomUUID(), 1, new NoopTask());
+        HazeltaskTask<Integer> lost = new HazeltaskTask<Integer>(UUID.randomUUID(), 1, new NoopTask());
+        when(topologyService.getOldestTaskTimestamps()).thenReturn(Collections.<MemberResponse<Long>>emptyList());
+        when(topologyService.getLocalPendingTasks(anyString())).thenReturn(Arrays.asList(finished, lost));
+        //its write ahead log put landed after it finished
+        when(topologyService.isTaskCompleted(finished.getId())).thenReturn(true);
+        
+        ExecutorMetrics metrics = new ExecutorMetrics(new HazeltaskConfig<Integer>()
+            .withMetricsConfig(new MetricsConfig().withMetricsRegistry(new MetricsRegistry())));
+        new TaskRecoveryTimerTask<Integer>(mock(HazeltaskTopology.class), svc, topologyService, metrics).execute();
+        
+        verify(topologyService).removePendingTask(finished);
+        verify(svc, never()).submitHazeltaskTask(finished, true);
+        verify(svc).submitHazeltaskTask(lost, true);
+        verify(topologyService, never()).removePendingTask(lost);
+    }
+    
+    private static class NoopTask implements Runnable, Serializable {
+        private static final long serialVersionUID = 1L;
+        public void run() {}
+    }
+}
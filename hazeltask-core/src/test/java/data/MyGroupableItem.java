@@ -24,6 +24,12 @@ public class MyGroupableItem implements Groupable<Long>, TrackCreated {
         this.id = id;
     }
     
+    public MyGroupableItem(long id, long group, long time) {
+        this.group = group;
+        this.time = time;
+        this.id = id;
+    }
+    
     @Override
     public Long getGroup() {
         return group;